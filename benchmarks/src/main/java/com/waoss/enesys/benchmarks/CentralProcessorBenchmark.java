@@ -0,0 +1,88 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.benchmarks;
+
+import com.waoss.enesys.Console;
+import com.waoss.enesys.cpu.CentralProcessor;
+import com.waoss.enesys.cpu.instructions.Instruction;
+import com.waoss.enesys.cpu.instructions.InstructionConstants;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the dispatch of the processor : {@link CentralProcessor#step()} on a mix of instructions, and the
+ * debugging path {@link CentralProcessor#process(Instruction)}.The score is in instructions per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CentralProcessorBenchmark {
+
+    private static final int INSTRUCTIONS = 1024;
+
+    /**
+     * LDA #$05, STA $10, ADC $10, TAX, INY, CLC, NOP, BCC back to the start
+     */
+    private static final int[] mix = {0xa9, 0x05, 0x85, 0x10, 0x65, 0x10, 0xaa, 0xc8, 0x18, 0xea, 0x90, 0xf4};
+
+    private Console console;
+    private CentralProcessor centralProcessor;
+    private Instruction[] instructions;
+
+    @Setup
+    public void setUp() {
+        console = new Console();
+        console.loadBinaries(mix, Programs.START);
+        centralProcessor = console.getCentralProcessor();
+        instructions = new Instruction[]{
+                instruction(0xa9, 0x05), instruction(0xaa), instruction(0xc8), instruction(0x18), instruction(0xea)
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void step() {
+        final CentralProcessor centralProcessor = this.centralProcessor;
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            centralProcessor.step();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void process() {
+        final CentralProcessor centralProcessor = this.centralProcessor;
+        final Instruction[] instructions = this.instructions;
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            centralProcessor.process(instructions[i % instructions.length]);
+        }
+        console.getRegisterFile().setProgramCounter(Programs.START);
+    }
+
+    private Instruction instruction(int opCode, Integer... arguments) {
+        final Instruction instruction = new Instruction(opCode, InstructionConstants.addressings[opCode]);
+        instruction.setCentralProcessor(centralProcessor);
+        instruction.setArguments(arguments);
+        return instruction;
+    }
+}
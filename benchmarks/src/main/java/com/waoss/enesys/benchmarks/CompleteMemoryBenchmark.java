@@ -0,0 +1,94 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.benchmarks;
+
+import com.waoss.enesys.mem.CompleteMemory;
+import com.waoss.enesys.mem.Memory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link CompleteMemory#read(int)} and {@link CompleteMemory#write(int, int)} on RAM, on its mirrors and on a
+ * page mapped to a device.The score is in accesses per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompleteMemoryBenchmark {
+
+    private static final int ACCESSES = 4096;
+
+    /**
+     * Where the accesses start : RAM, a mirror of RAM and the device
+     */
+    @Param({"0x0000", "0x1800", "0x6000"})
+    public String base;
+
+    private CompleteMemory completeMemory;
+    private int start;
+
+    @Setup
+    public void setUp() {
+        completeMemory = new CompleteMemory();
+        completeMemory.mapDevice(0x60, 0x20, new Memory() {
+            private final byte[] bytes = new byte[0x2000];
+
+            @Override
+            public int read(int address) {
+                return bytes[address & 0x1fff] & 0xff;
+            }
+
+            @Override
+            public void write(int address, int value) {
+                bytes[address & 0x1fff] = (byte) value;
+            }
+
+            @Override
+            public int size() {
+                return bytes.length;
+            }
+        });
+        start = Integer.decode(base);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public void read(Blackhole blackhole) {
+        final CompleteMemory completeMemory = this.completeMemory;
+        int sum = 0;
+        for (int i = 0; i < ACCESSES; i++) {
+            sum += completeMemory.read(start + (i & 0x07ff));
+        }
+        blackhole.consume(sum);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public void write() {
+        final CompleteMemory completeMemory = this.completeMemory;
+        for (int i = 0; i < ACCESSES; i++) {
+            completeMemory.write(start + (i & 0x07ff), i);
+        }
+    }
+}
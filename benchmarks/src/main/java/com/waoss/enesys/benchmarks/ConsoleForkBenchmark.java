@@ -0,0 +1,52 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.benchmarks;
+
+import com.waoss.enesys.Console;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Console#fork()} followed by a write to RAM, which copies the written page.The score is in forks
+ * per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsoleForkBenchmark {
+
+    private Console console;
+
+    @Setup
+    public void setUp() {
+        console = Programs.FILL.load();
+        Programs.run(console, 10_000);
+    }
+
+    @Benchmark
+    public Console fork() {
+        final Console fork = console.fork();
+        fork.getCompleteMemory().write(0x0000, 0x42);
+        return fork;
+    }
+}
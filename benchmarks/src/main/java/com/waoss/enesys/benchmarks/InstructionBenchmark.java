@@ -0,0 +1,61 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.benchmarks;
+
+import com.waoss.enesys.Console;
+import com.waoss.enesys.cpu.instructions.Instruction;
+import com.waoss.enesys.mem.Addressing;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the decoding of the arguments of an {@link Instruction} with {@link
+ * Instruction#parseArgumentsAccordingToAddressing()}, for every addressing mode that takes arguments.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstructionBenchmark {
+
+    @Param({"ABSOLUTE", "ABSOLUTE_X", "IMMEDIATE", "INDEXED_INDIRECT", "INDIRECT", "INDIRECT_INDEXED", "RELATIVE",
+            "ZERO_PAGE", "ZERO_PAGE_X"})
+    public Addressing addressing;
+
+    private Instruction instruction;
+    private Integer[] arguments;
+
+    @Setup
+    public void setUp() {
+        final Console console = new Console();
+        instruction = new Instruction(0xea, addressing);
+        instruction.setCentralProcessor(console.getCentralProcessor());
+        arguments = new Integer[]{0x10, 0x02};
+    }
+
+    @Benchmark
+    public Integer[] parseArgumentsAccordingToAddressing() {
+        instruction.setArguments(arguments);
+        instruction.parseArgumentsAccordingToAddressing();
+        return instruction.getArguments();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.benchmarks;
+
+import com.waoss.enesys.Console;
+import com.waoss.enesys.MasterClock;
+import com.waoss.enesys.mem.CompleteMemory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many frames the console runs per second with the PPU rendering a screen full of tiles and sprites,
+ * rendering a dot at a time or whole scanlines at once.The CPU runs a busy loop that does not touch the PPU.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PictureProcessorBenchmark {
+
+    /**
+     * Whether the scanlines are rendered at once
+     */
+    @Param({"false", "true"})
+    public boolean scanlineRendering;
+
+    private Console console;
+
+    @Setup
+    public void setUp() {
+        console = new Console();
+        //JMP $0600
+        console.loadBinaries(new int[]{0x4c, 0x00, 0x06}, 0x0600);
+        console.getPictureProcessor().setScanlineRenderingEnabled(scanlineRendering);
+        final CompleteMemory completeMemory = console.getCompleteMemory();
+        final Random random = new Random(0);
+        completeMemory.write(0x2006, 0x00);
+        completeMemory.write(0x2006, 0x00);
+        for (int i = 0; i < 0x2800; i++) {
+            completeMemory.write(0x2007, random.nextInt(0x100));
+        }
+        for (int i = 0; i < 0x100; i++) {
+            completeMemory.write(0x2004, random.nextInt(0x100));
+        }
+        completeMemory.write(0x2001, 0x1e);
+    }
+
+    @Benchmark
+    public int[] frame() {
+        console.getMasterClock().runFor(MasterClock.FRAME_CYCLES);
+        return console.getPictureProcessor().getFrame();
+    }
+}
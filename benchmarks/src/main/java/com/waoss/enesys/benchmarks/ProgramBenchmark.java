@@ -0,0 +1,62 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.benchmarks;
+
+import com.waoss.enesys.Console;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the canned {@link Programs} end to end, from consoles they were loaded in with {@link
+ * Console#loadBinaries(int[], int)}.The score is in instructions per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgramBenchmark {
+
+    private static final int INSTRUCTIONS = 16384;
+
+    @Param
+    public Programs program;
+
+    /**
+     * Whether the decoded instructions are kept in the block cache of the processor
+     */
+    @Param({"true", "false"})
+    public boolean cached;
+
+    private Console console;
+
+    @Setup
+    public void setUp() {
+        console = program.load();
+        console.getCentralProcessor().getBasicBlockCache().setEnabled(cached);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void run() {
+        Programs.run(console, INSTRUCTIONS);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.benchmarks;
+
+import com.waoss.enesys.Console;
+import com.waoss.enesys.cpu.CentralProcessor;
+
+/**
+ * Canned 6502 programs for the benchmarks.All of them are loaded at $0600 and end with a BRK.
+ */
+public enum Programs {
+
+    /**
+     * Two nested counting loops : INY/BNE inside INX/BNE
+     */
+    COUNT(0xa2, 0x00, 0xa0, 0x00, 0xc8, 0xd0, 0xfd, 0xe8, 0xd0, 0xfa, 0x00),
+
+    /**
+     * Fills $0200-$05FF, the screen of the standalone 6502, with every colour in turn
+     */
+    FILL(0xa9, 0x00, 0xaa, 0x9d, 0x00, 0x02, 0x9d, 0x00, 0x03, 0x9d, 0x00, 0x04, 0x9d, 0x00, 0x05, 0xe8, 0xd0, 0xf1,
+            0x18, 0x69, 0x01, 0xd0, 0xeb, 0x00),
+
+    /**
+     * Calls a subroutine that pushes and pulls the A register and stores it through a zero page pointer
+     */
+    SUBROUTINE(0xa2, 0x00, 0x20, 0x0a, 0x06, 0xe8, 0xd0, 0xfa, 0x00, 0xea, 0x8a, 0x48, 0x91, 0x10, 0x68, 0x60);
+
+    /**
+     * Where the programs are loaded
+     */
+    public static final int START = 0x0600;
+
+    private final int[] binaries;
+
+    Programs(int... binaries) {
+        this.binaries = binaries;
+    }
+
+    public int[] getBinaries() {
+        return binaries.clone();
+    }
+
+    /**
+     * Creates a console with the program loaded
+     *
+     * @return the console
+     */
+    public Console load() {
+        final Console console = new Console();
+        console.loadBinaries(binaries, START);
+        return console;
+    }
+
+    /**
+     * Executes a number of instructions of the program, starting it over every time it reaches its BRK
+     *
+     * @param console
+     *         The console the program was loaded in
+     * @param instructions
+     *         The number of instructions to execute
+     */
+    public static void run(Console console, int instructions) {
+        final CentralProcessor centralProcessor = console.getCentralProcessor();
+        for (int i = 0; i < instructions; i++) {
+            centralProcessor.step();
+            if (centralProcessor.getOpCode() == 0x00) {
+                console.getRegisterFile().setProgramCounter(START);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.benchmarks;
+
+import com.waoss.enesys.Console;
+import com.waoss.enesys.SaveState;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures saving and loading a {@link SaveState} of a console in memory.The score is in microseconds per state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaveStateBenchmark {
+
+    private Console console;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        console = Programs.FILL.load();
+        Programs.run(console, 10_000);
+        buffer = ByteBuffer.allocate(SaveState.size(console));
+    }
+
+    @Benchmark
+    public ByteBuffer save() {
+        buffer.clear();
+        SaveState.save(console, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer load() throws IOException {
+        buffer.clear();
+        SaveState.save(console, buffer);
+        buffer.flip();
+        SaveState.load(console, buffer);
+        return buffer;
+    }
+}
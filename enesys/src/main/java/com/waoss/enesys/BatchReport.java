@@ -0,0 +1,209 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys;
+
+import com.google.gson.GsonBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>The report of a {@link BatchRunner}, written as JSON by {@link #toJson()}.
+ * It has the settings of the batch and a {@link Run} for every binary, in the order they were given.</p>
+ */
+public final class BatchReport {
+
+    private final int address;
+    private final String budgetUnit;
+    private final long budget;
+    private final int threads;
+    private long wallTimeMillis;
+    private final List<Run> runs = new ArrayList<>();
+
+    BatchReport(int address, BatchRunner.BudgetUnit budgetUnit, long budget, int threads) {
+        this.address = address;
+        this.budgetUnit = budgetUnit.name();
+        this.budget = budget;
+        this.threads = threads;
+    }
+
+    public List<Run> getRuns() {
+        return runs;
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    void setWallTimeMillis(long wallTimeMillis) {
+        this.wallTimeMillis = wallTimeMillis;
+    }
+
+    /**
+     * Returns true if any run ended with an error
+     *
+     * @return true if any run ended with an error
+     */
+    public boolean hasErrors() {
+        return runs.stream().anyMatch(run -> run.stopReason == StopReason.ERROR);
+    }
+
+    /**
+     * Returns the report as pretty printed JSON
+     *
+     * @return the JSON
+     */
+    public String toJson() {
+        return new GsonBuilder().setPrettyPrinting().create().toJson(this);
+    }
+
+    /**
+     * Why a run stopped
+     */
+    public enum StopReason {
+        /**
+         * The budget was used up
+         */
+        BUDGET,
+        /**
+         * A BRK was executed
+         */
+        BRK,
+        /**
+         * An instruction jumped or branched to itself, which is how test programs usually trap
+         */
+        TRAP,
+        /**
+         * The binary could not be read or an instruction could not be executed
+         */
+        ERROR
+    }
+
+    /**
+     * The result of running a single binary
+     */
+    public static final class Run {
+
+        final String binary;
+        StopReason stopReason;
+        String error;
+        long instructions;
+        long cycles;
+        long nanos;
+        double instructionsPerSecond;
+        double cyclesPerSecond;
+        Registers registers;
+        String memoryDigest;
+
+        Run(String binary) {
+            this.binary = binary;
+        }
+
+        public String getBinary() {
+            return binary;
+        }
+
+        public StopReason getStopReason() {
+            return stopReason;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public long getInstructions() {
+            return instructions;
+        }
+
+        public long getCycles() {
+            return cycles;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public double getInstructionsPerSecond() {
+            return instructionsPerSecond;
+        }
+
+        public double getCyclesPerSecond() {
+            return cyclesPerSecond;
+        }
+
+        public Registers getRegisters() {
+            return registers;
+        }
+
+        /**
+         * Returns the SHA-256 of the RAM at the end of the run, in hexadecimal
+         *
+         * @return the digest of the RAM
+         */
+        public String getMemoryDigest() {
+            return memoryDigest;
+        }
+    }
+
+    /**
+     * The registers at the end of a run
+     */
+    public static final class Registers {
+
+        final int x;
+        final int y;
+        final int a;
+        final int flags;
+        final int programCounter;
+        final int stackPointer;
+
+        Registers(Console console) {
+            this.x = console.getRegisterFile().getX();
+            this.y = console.getRegisterFile().getY();
+            this.a = console.getRegisterFile().getA();
+            this.flags = console.getRegisterFile().getProcessorStatus();
+            this.programCounter = console.getRegisterFile().getProgramCounter();
+            this.stackPointer = console.getRegisterFile().getStackPointer();
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getA() {
+            return a;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        public int getProgramCounter() {
+            return programCounter;
+        }
+
+        public int getStackPointer() {
+            return stackPointer;
+        }
+    }
+}
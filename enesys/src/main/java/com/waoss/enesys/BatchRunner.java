@@ -0,0 +1,238 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys;
+
+import com.waoss.enesys.cpu.CentralProcessor;
+import com.waoss.enesys.mem.CompleteMemory;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Runs a batch of binaries headless, each on a {@link Console} of its own, for a fixed budget of instructions or
+ * cycles.
+ * The runs are spread over a work-stealing {@link ForkJoinPool}.A run stops early when it executes a BRK or when an
+ * instruction jumps or branches to itself.The result is a {@link BatchReport} with the registers and a digest of the
+ * memory at the end of every run and how fast it ran.</p>
+ *
+ * @see Enesys#main(String...)
+ */
+public final class BatchRunner {
+
+    private int address = 0x0600;
+    private BudgetUnit budgetUnit = BudgetUnit.INSTRUCTIONS;
+    private long budget = 1_000_000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean flatMemory;
+
+    /**
+     * Runs the binaries and waits for all of them
+     *
+     * @param binaries
+     *         The binaries
+     *
+     * @return the report, with the runs in the order of the binaries
+     *
+     * @throws InterruptedException
+     *         If the waiting thread is interrupted
+     */
+    @NotNull
+    public BatchReport run(@NotNull List<Path> binaries) throws InterruptedException {
+        final BatchReport batchReport = new BatchReport(address, budgetUnit, budget, threads);
+        final List<Callable<BatchReport.Run>> tasks = new ArrayList<>(binaries.size());
+        for (Path binary : binaries) {
+            tasks.add(() -> run(binary));
+        }
+        final long start = System.nanoTime();
+        final ForkJoinPool forkJoinPool = new ForkJoinPool(threads);
+        try {
+            for (Future<BatchReport.Run> future : forkJoinPool.invokeAll(tasks)) {
+                batchReport.getRuns().add(future.get());
+            }
+        } catch (ExecutionException e) {
+            //run never throws
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            forkJoinPool.shutdown();
+        }
+        batchReport.setWallTimeMillis((System.nanoTime() - start) / 1_000_000);
+        return batchReport;
+    }
+
+    /**
+     * Runs a single binary
+     *
+     * @param binary
+     *         The binary
+     *
+     * @return the result
+     */
+    @NotNull
+    public BatchReport.Run run(@NotNull Path binary) {
+        final BatchReport.Run run = new BatchReport.Run(binary.toString());
+        final Console console = new Console();
+        final byte[] memory = flatMemory ? new byte[CompleteMemory.SIZE] :
+                console.getCompleteMemory().getRandomAccessMemory().getBytes();
+        if (flatMemory) {
+            console.getCompleteMemory().mapReadWrite(0x00, CompleteMemory.PAGE_COUNT, memory, 0);
+        }
+        final CentralProcessor centralProcessor = console.getCentralProcessor();
+        //a BRK ends the run where it is, instead of pushing onto the stack and jumping through $FFFE
+        centralProcessor.setHaltingOnBreak(true);
+        long start = System.nanoTime();
+        try {
+            console.loadBinaries(binary, address);
+            //only the execution counts for the speed of the run
+            start = System.nanoTime();
+            run.stopReason = execute(console, run);
+        } catch (IOException | ProcessingException e) {
+            run.stopReason = BatchReport.StopReason.ERROR;
+            run.error = e.toString();
+        }
+        run.nanos = System.nanoTime() - start;
+        run.cycles = centralProcessor.getCycles();
+        final double seconds = Math.max(run.nanos, 1) / 1e9;
+        run.instructionsPerSecond = run.instructions / seconds;
+        run.cyclesPerSecond = run.cycles / seconds;
+        run.registers = new BatchReport.Registers(console);
+        run.memoryDigest = digest(memory);
+        return run;
+    }
+
+    private BatchReport.StopReason execute(Console console, BatchReport.Run run) {
+        final CentralProcessor centralProcessor = console.getCentralProcessor();
+        final boolean countsInstructions = budgetUnit == BudgetUnit.INSTRUCTIONS;
+        long instructions = 0;
+        try {
+            while ((countsInstructions ? instructions : centralProcessor.getCycles()) < budget) {
+                final int programCounter = console.getRegisterFile().getProgramCounter();
+                centralProcessor.step();
+                instructions++;
+                if (centralProcessor.getOpCode() == 0x00) {
+                    return BatchReport.StopReason.BRK;
+                }
+                if (console.getRegisterFile().getProgramCounter() == programCounter) {
+                    return BatchReport.StopReason.TRAP;
+                }
+            }
+            return BatchReport.StopReason.BUDGET;
+        } finally {
+            run.instructions = instructions;
+        }
+    }
+
+    private static String digest(byte[] memory) {
+        try {
+            final StringBuilder stringBuilder = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(memory)) {
+                stringBuilder.append(String.format("%02x", b & 0xff));
+            }
+            return stringBuilder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            //every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int getAddress() {
+        return address;
+    }
+
+    /**
+     * Sets where the binaries are loaded and start executing
+     *
+     * @param address
+     *         The address
+     */
+    public void setAddress(int address) {
+        this.address = address & 0xffff;
+    }
+
+    public BudgetUnit getBudgetUnit() {
+        return budgetUnit;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets how long every binary runs at most
+     *
+     * @param budget
+     *         The number of instructions or cycles
+     * @param budgetUnit
+     *         Whether the budget is in instructions or in cycles
+     */
+    public void setBudget(long budget, @NotNull BudgetUnit budgetUnit) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("The budget must not be negative : " + budget);
+        }
+        this.budget = budget;
+        this.budgetUnit = budgetUnit;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the parallelism of the pool the binaries run in
+     *
+     * @param threads
+     *         The number of threads
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("There must be at least one thread : " + threads);
+        }
+        this.threads = threads;
+    }
+
+    public boolean isFlatMemory() {
+        return flatMemory;
+    }
+
+    /**
+     * Sets whether the whole address space is RAM, like for plain 6502 binaries, instead of the memory map of the NES
+     *
+     * @param flatMemory
+     *         true to map 64 KiB of RAM
+     */
+    public void setFlatMemory(boolean flatMemory) {
+        this.flatMemory = flatMemory;
+    }
+
+    /**
+     * What a budget counts
+     */
+    public enum BudgetUnit {
+        INSTRUCTIONS,
+        CYCLES
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys;
+
+/**
+ * <p>A part of the console that is driven by the {@link MasterClock}, like the CPU.
+ * A component counts its own cycles, which are the cycles of the master clock divided by the divider it was added to
+ * the clock with.Components are not ticked cycle by cycle : the clock asks them to catch up to a point in time and they
+ * run as far as they need to in one go.</p>
+ *
+ * @see MasterClock
+ */
+public interface ClockedComponent {
+
+    /**
+     * Returns the number of cycles the component executed
+     *
+     * @return the number of cycles the component executed
+     */
+    long getCycles();
+
+    /**
+     * Runs the component until it executed at least the given number of cycles.
+     * A component may run past the target;the next call should then run that many cycles less.
+     *
+     * @param cycles
+     *         The number of cycles to reach
+     */
+    void runUntil(long cycles);
+
+    /**
+     * Asks the component to return from {@link #runUntil(long)} as soon as it can, before the cycles it was asked to
+     * reach.Components that run in one go, which is most of them, ignore it.
+     *
+     * @see MasterClock#reschedule()
+     */
+    default void stopEarly() {
+    }
+}
@@ -19,12 +19,21 @@
 package com.waoss.enesys;
 
 import com.google.gson.GsonBuilder;
+import com.waoss.enesys.apu.AudioProcessor;
+import com.waoss.enesys.cartridge.Cartridge;
+import com.waoss.enesys.cartridge.Mapper;
 import com.waoss.enesys.cpu.CentralProcessor;
 import com.waoss.enesys.cpu.registers.*;
 import com.waoss.enesys.mem.CompleteMemory;
-import com.waoss.enesys.mem.Memory;
+import com.waoss.enesys.ppu.PictureProcessor;
+import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -39,70 +48,294 @@ public class Console implements Serializable {
      */
     public static final long serialVersionUID = 12325890890L;
 
-    private final AtomicReference<CompleteMemory> completeMemory = new AtomicReference<>(new CompleteMemory());
-    private final AtomicReference<ProcessorStatus> processorStatus = new AtomicReference<>(new ProcessorStatus());
-    private final AtomicReference<AccumalativeRegister> ARegister = new AtomicReference<>(new AccumalativeRegister());
-    private final AtomicReference<XRegister> XRegister = new AtomicReference<>(new XRegister());
-    private final AtomicReference<YRegister> YRegister = new AtomicReference<>(new YRegister());
-    private final AtomicReference<StackPointer> stackPointer = new AtomicReference<>(new StackPointer());
+    private final AtomicReference<CompleteMemory> completeMemory;
+    /**
+     * The primitive register file;the register objects below are views of it
+     */
+    private final RegisterFile registerFile = new RegisterFile();
+    private final transient Scheduler scheduler = new Scheduler();
+    private final AtomicReference<ProcessorStatus> processorStatus = new AtomicReference<>(
+            new ProcessorStatus(registerFile));
+    private final AtomicReference<AccumalativeRegister> ARegister = new AtomicReference<>(
+            new AccumalativeRegister(registerFile));
+    private final AtomicReference<XRegister> XRegister = new AtomicReference<>(new XRegister(registerFile));
+    private final AtomicReference<YRegister> YRegister = new AtomicReference<>(new YRegister(registerFile));
+    private final AtomicReference<StackPointer> stackPointer = new AtomicReference<>(new StackPointer(registerFile));
     private final AtomicReference<ProgramCounter> programCounter = new AtomicReference<>(
-            new ProgramCounter((short) 0x0600));
-    private final AtomicReference<CentralProcessor> centralProcessor = new AtomicReference<>(
-            new CentralProcessor(this));
+            new ProgramCounter(registerFile));
+    private final AtomicReference<CentralProcessor> centralProcessor;
+    private final transient PictureProcessor pictureProcessor;
+    private final transient AudioProcessor audioProcessor;
+    private final transient MasterClock masterClock = new MasterClock();
+    private final transient Rewind rewind;
+    private transient Mapper mapper;
+    private final transient int mapperInterruptEvent;
+
+    public Console() {
+        this(new CompleteMemory());
+    }
+
+    /**
+     * Creates a console around a memory, like the fork of the memory of another console
+     */
+    private Console(@NotNull CompleteMemory completeMemory) {
+        this.completeMemory = new AtomicReference<>(completeMemory);
+        //the processor adds its events to the scheduler first, so that the events of the forks have the same ids
+        this.centralProcessor = new AtomicReference<>(new CentralProcessor(this));
+        this.pictureProcessor = new PictureProcessor(this);
+        this.audioProcessor = new AudioProcessor(this);
+        this.rewind = new Rewind(this);
+        this.mapperInterruptEvent = scheduler.addEvent(
+                (event, cycles) -> getCentralProcessor().setInterruptLines(CentralProcessor.MAPPER_INTERRUPT,
+                        mapper != null && mapper.isInterruptRequested()));
+        registerFile.setProgramCounter(0x0600);
+        completeMemory.mapDevice(0x20, 0x20, pictureProcessor);
+        completeMemory.mapDevice(0x40, 1, audioProcessor);
+        masterClock.add(getCentralProcessor(), MasterClock.CPU_DIVIDER);
+        masterClock.add(pictureProcessor, MasterClock.PPU_DIVIDER);
+        masterClock.add(audioProcessor, MasterClock.CPU_DIVIDER);
+        masterClock.add(rewind, MasterClock.CPU_DIVIDER);
+    }
+
+    /**
+     * Returns the register file that stores the values of all the registers
+     *
+     * @return the register file
+     */
+    public RegisterFile getRegisterFile() {
+        return registerFile;
+    }
 
     public ProcessorStatus getProcessorStatus() {
         return processorStatus.get();
     }
 
+    /**
+     * Copies the value of the register into the register file
+     *
+     * @param processorStatus
+     *         the register to copy
+     *
+     * @deprecated the registers of a console are views of its {@link RegisterFile};this only copies the value
+     */
+    @Deprecated
     public void setProcessorStatus(ProcessorStatus processorStatus) {
-        this.processorStatus.set(processorStatus);
+        registerFile.setProcessorStatus(processorStatus.getValue());
     }
 
     public AccumalativeRegister getARegister() {
         return ARegister.get();
     }
 
+    /**
+     * Copies the value of the register into the register file
+     *
+     * @param ARegister
+     *         the register to copy
+     *
+     * @deprecated the registers of a console are views of its {@link RegisterFile};this only copies the value
+     */
+    @Deprecated
     public void setARegister(AccumalativeRegister ARegister) {
-        this.ARegister.set(ARegister);
+        registerFile.setA(ARegister.getValue());
     }
 
     public XRegister getXRegister() {
         return XRegister.get();
     }
 
+    /**
+     * Copies the value of the register into the register file
+     *
+     * @param XRegister
+     *         the register to copy
+     *
+     * @deprecated the registers of a console are views of its {@link RegisterFile};this only copies the value
+     */
+    @Deprecated
     public void setXRegister(XRegister XRegister) {
-        this.XRegister.set(XRegister);
+        registerFile.setX(XRegister.getValue());
     }
 
     public YRegister getYRegister() {
         return YRegister.get();
     }
 
+    /**
+     * Copies the value of the register into the register file
+     *
+     * @param YRegister
+     *         the register to copy
+     *
+     * @deprecated the registers of a console are views of its {@link RegisterFile};this only copies the value
+     */
+    @Deprecated
     public void setYRegister(YRegister YRegister) {
-        this.YRegister.set(YRegister);
+        registerFile.setY(YRegister.getValue());
     }
 
     public StackPointer getStackPointer() {
         return stackPointer.get();
     }
 
+    /**
+     * Copies the value of the register into the register file
+     *
+     * @param stackPointer
+     *         the register to copy
+     *
+     * @deprecated the registers of a console are views of its {@link RegisterFile};this only copies the value
+     */
+    @Deprecated
     public void setStackPointer(StackPointer stackPointer) {
-        this.stackPointer.set(stackPointer);
+        registerFile.setStackPointer(stackPointer.getValue());
     }
 
     public ProgramCounter getProgramCounter() {
         return programCounter.get();
     }
 
+    /**
+     * Copies the value of the register into the register file
+     *
+     * @param programCounter
+     *         the register to copy
+     *
+     * @deprecated the registers of a console are views of its {@link RegisterFile};this only copies the value
+     */
+    @Deprecated
     public void setProgramCounter(ProgramCounter programCounter) {
-        this.programCounter.set(programCounter);
+        registerFile.setProgramCounter(programCounter.getValue());
+    }
+
+    /**
+     * Returns the scheduler of the timed events of the console, like the interrupts
+     *
+     * @return the scheduler
+     */
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Returns the master clock that drives the processor of the console
+     *
+     * @return the master clock
+     */
+    public MasterClock getMasterClock() {
+        return masterClock;
+    }
+
+    /**
+     * Returns the PPU of the console, whose registers are mapped at $2000-$3FFF
+     *
+     * @return the PPU
+     */
+    public PictureProcessor getPictureProcessor() {
+        return pictureProcessor;
+    }
+
+    /**
+     * Returns the APU of the console, whose registers are mapped at $4000-$4017
+     *
+     * @return the APU
+     */
+    public AudioProcessor getAudioProcessor() {
+        return audioProcessor;
+    }
+
+    /**
+     * Returns the rewind of the console, which captures its state while the master clock runs it once it is enabled
+     *
+     * @return the rewind
+     */
+    public Rewind getRewind() {
+        return rewind;
+    }
+
+    /**
+     * Returns the mapper of the cartridge that is loaded
+     *
+     * @return the mapper, or null if no cartridge is loaded
+     */
+    public Mapper getMapper() {
+        return mapper;
+    }
+
+    /**
+     * Loads an iNES cartridge : maps its PRG-ROM and PRG-RAM through its mapper, and jumps to its reset vector.The
+     * file is mapped in memory, not read.The processor must not be running.
+     *
+     * @param path
+     *         The iNES file
+     *
+     * @throws IOException
+     *         If the file can not be read, is not an iNES file or has a mapper that is not supported
+     *
+     * @see Cartridge
+     */
+    public void loadCartridge(@NotNull Path path) throws IOException {
+        final Cartridge cartridge = Cartridge.load(path);
+        final Mapper mapper = cartridge.createMapper();
+        final CompleteMemory completeMemory = getCompleteMemory();
+        mapper.attach(completeMemory);
+        mapper.setRegisterListener(this::mapperRegisterWritten);
+        final ByteBuffer trainer = cartridge.getTrainer();
+        if (trainer != null) {
+            final ByteBuffer bytes = trainer.duplicate();
+            bytes.clear();
+            completeMemory.writeBlock(0x7000, bytes);
+        }
+        this.mapper = mapper;
+        registerFile.setProgramCounter(completeMemory.readWord(0xfffc));
+    }
+
+    /**
+     * Catches the PPU and the APU up with the CPU before a register of the mapper changes the banks or the IRQ counter
+     * they see, and has the clock predict the IRQ again.The interrupt line of the mapper is updated once the write is
+     * done, at the next instruction boundary.
+     */
+    private void mapperRegisterWritten() {
+        pictureProcessor.synchronize();
+        audioProcessor.synchronize();
+        masterClock.reschedule();
+        scheduler.post(mapperInterruptEvent, getCentralProcessor().getCycles());
+    }
+
+    /**
+     * Returns true if the processor compiles the code that runs often into JVM bytecode
+     *
+     * @return true if dynamic recompilation is enabled
+     *
+     * @see com.waoss.enesys.cpu.Recompiler
+     */
+    public boolean isDynamicRecompilationEnabled() {
+        return getCentralProcessor().getRecompiler().isEnabled();
+    }
+
+    /**
+     * Enables or disables the compiling of the code that runs often into JVM bytecode.It is disabled by default.
+     *
+     * @param enabled
+     *         true to enable dynamic recompilation
+     */
+    public void setDynamicRecompilationEnabled(boolean enabled) {
+        getCentralProcessor().getRecompiler().setEnabled(enabled);
     }
 
     public CompleteMemory getCompleteMemory() {
         return completeMemory.get();
     }
 
+    /**
+     * Sets the memory of the console and maps the registers of the PPU and of the APU in it
+     *
+     * @param completeMemory
+     *         the memory
+     */
     public void setCompleteMemory(CompleteMemory completeMemory) {
+        completeMemory.mapDevice(0x20, 0x20, pictureProcessor);
+        completeMemory.mapDevice(0x40, 1, audioProcessor);
         this.completeMemory.set(completeMemory);
     }
 
@@ -120,6 +353,69 @@ public class Console implements Serializable {
                 new ConsoleAdapter()).create().toJson(this);
     }
 
+    /**
+     * <p>Returns a new console in the same state as this one, that runs independently of it.
+     * The memory of the fork shares the arrays of this one copy-on-write (see {@link CompleteMemory#fork()}), and so do
+     * the nametables and the pattern tables of the PPUs, so forking costs the same however much memory is mapped.The
+     * fork has its own registers and processor, with the settings of the processor of this one, but no code decoded
+     * yet;its APU only makes samples once its ring buffer is asked for.</p>
+     * <p>This must be called by the thread that runs this console, or while it is stopped.The fork can then be run by
+     * another thread, at the same time as this console and the other forks.</p>
+     *
+     * @return the fork
+     */
+    @NotNull
+    public Console fork() {
+        final Console fork = new Console(getCompleteMemory().fork());
+        if (mapper != null) {
+            fork.mapper = mapper.fork(fork.getCompleteMemory());
+            fork.mapper.setRegisterListener(fork::mapperRegisterWritten);
+        }
+        fork.registerFile.copyFrom(registerFile);
+        final CentralProcessor centralProcessor = getCentralProcessor();
+        final CentralProcessor forkedProcessor = fork.getCentralProcessor();
+        forkedProcessor.setCycles(centralProcessor.getCycles());
+        forkedProcessor.setInterruptLines(centralProcessor.getInterruptLines(), true);
+        fork.scheduler.copyFrom(scheduler);
+        forkedProcessor.getBasicBlockCache().setEnabled(centralProcessor.getBasicBlockCache().isEnabled());
+        forkedProcessor.getRecompiler().setEnabled(centralProcessor.getRecompiler().isEnabled());
+        forkedProcessor.getRecompiler().setThreshold(centralProcessor.getRecompiler().getThreshold());
+        fork.pictureProcessor.copyFrom(pictureProcessor);
+        fork.audioProcessor.copyFrom(audioProcessor);
+        fork.masterClock.setCycles(masterClock.getCycles());
+        return fork;
+    }
+
+    /**
+     * Saves the state of the console to a file
+     *
+     * @param path
+     *         The file
+     *
+     * @throws IOException
+     *         If the file can not be written
+     *
+     * @see SaveState
+     */
+    public void saveState(@NotNull Path path) throws IOException {
+        SaveState.save(this, path);
+    }
+
+    /**
+     * Loads a state saved by {@link #saveState(Path)}.The processor must not be running.
+     *
+     * @param path
+     *         The file
+     *
+     * @throws IOException
+     *         If the file can not be read or does not hold a valid state
+     *
+     * @see SaveState
+     */
+    public void loadState(@NotNull Path path) throws IOException {
+        SaveState.load(this, path);
+    }
+
     /**
      * Loads a set of binaries at the given program counter
      *
@@ -129,12 +425,40 @@ public class Console implements Serializable {
      *         The program counter to load them at
      */
     public void loadBinaries(int[] binaries, int pc) {
-        Memory memory = getCompleteMemory();
-        for (int i = 0; i < binaries.length; i++) { //iterating
-            int binary = binaries[i];
-            memory.write(pc + i, binary);
+        final byte[] bytes = new byte[binaries.length];
+        for (int i = 0; i < binaries.length; i++) {
+            bytes[i] = (byte) binaries[i];
+        }
+        getCompleteMemory().writeBlock(pc, bytes, 0, bytes.length);
+        registerFile.setProgramCounter(pc);
+    }
+
+    /**
+     * Loads the binaries of a file at the given program counter.The file is read in bulk, at most the bytes that fit
+     * from the program counter to the end of the address space, and written to the memory a page at a time.
+     *
+     * @param path
+     *         The file
+     * @param pc
+     *         The program counter to load them at
+     *
+     * @throws IOException
+     *         If the file can not be read
+     *
+     * @see CompleteMemory#writeBlock(int, ByteBuffer)
+     */
+    public void loadBinaries(@NotNull Path path, int pc) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), CompleteMemory.SIZE - pc));
+            //a channel may read less than asked for, but a file channel reads it all at once unless it ends
+            int read;
+            do {
+                read = channel.read(buffer);
+            } while (read >= 0 && buffer.hasRemaining());
+            buffer.flip();
+            getCompleteMemory().writeBlock(pc, buffer);
         }
-        getProgramCounter().setValue(pc);
+        registerFile.setProgramCounter(pc);
     }
 
     /**
@@ -21,9 +21,15 @@ package com.waoss.enesys;
 import com.google.gson.TypeAdapter;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
+import com.waoss.enesys.cpu.registers.RegisterFile;
+import com.waoss.enesys.mem.RandomAccessMemory;
 
 import java.io.IOException;
 
+/**
+ * <p>Writes a {@link Console} as readable JSON, with its registers, its cycles and its RAM, and reads it back.
+ * This is meant for debugging;{@link SaveState} is the compact format that saves everything that is mapped.</p>
+ */
 public class ConsoleAdapter extends TypeAdapter<Console> {
 
     @Override
@@ -40,11 +46,14 @@ public class ConsoleAdapter extends TypeAdapter<Console> {
         out.name("programCounter").value(value.getProgramCounter().getValue());
         out.name("stackPointer").value(value.getStackPointer().getValue());
         out.endObject();
+        out.name("cycles").value(value.getCentralProcessor().getCycles());
         out.endObject();
         out.name("memory");
         out.beginArray();
-        for (int i = 0; i < value.getCompleteMemory().size(); i++) {
-            out.value(value.getCompleteMemory().read(i));
+        final byte[] bytes = new byte[RandomAccessMemory.SIZE];
+        value.getCompleteMemory().getRandomAccessMemory().readBlock(0, bytes, 0, bytes.length);
+        for (byte b : bytes) {
+            out.value(b & 0xff);
         }
         out.endArray();
         out.endObject();
@@ -52,6 +61,76 @@ public class ConsoleAdapter extends TypeAdapter<Console> {
 
     @Override
     public Console read(final JsonReader in) throws IOException {
-        return null;
+        final Console console = new Console();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "processor":
+                    readProcessor(in, console);
+                    break;
+                case "memory":
+                    //the values past the end of the RAM wrap around, as when they were written one by one
+                    final byte[] bytes = new byte[RandomAccessMemory.SIZE];
+                    int count = 0;
+                    in.beginArray();
+                    for (; in.hasNext(); count++) {
+                        bytes[count & (bytes.length - 1)] = (byte) in.nextInt();
+                    }
+                    in.endArray();
+                    console.getCompleteMemory().getRandomAccessMemory().writeBlock(0, bytes, 0,
+                            Math.min(count, bytes.length));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return console;
+    }
+
+    private static void readProcessor(final JsonReader in, final Console console) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "registers":
+                    readRegisters(in, console.getRegisterFile());
+                    break;
+                case "cycles":
+                    console.getCentralProcessor().setCycles(in.nextLong());
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    private static void readRegisters(final JsonReader in, final RegisterFile registerFile) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "x":
+                    registerFile.setX(in.nextInt());
+                    break;
+                case "y":
+                    registerFile.setY(in.nextInt());
+                    break;
+                case "a":
+                    registerFile.setA(in.nextInt());
+                    break;
+                case "flags":
+                    registerFile.setProcessorStatus(in.nextInt());
+                    break;
+                case "programCounter":
+                    registerFile.setProgramCounter(in.nextInt());
+                    break;
+                case "stackPointer":
+                    registerFile.setStackPointer(in.nextInt());
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
     }
 }
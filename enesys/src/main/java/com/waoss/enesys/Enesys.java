@@ -18,7 +18,117 @@
 
 package com.waoss.enesys;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>The headless entry into Enesys : runs a batch of binaries with a {@link BatchRunner} and writes the {@link
+ * BatchReport} as JSON.
+ * Meant for running regression sets on build servers;the exit status is 1 if any run failed and 2 if the arguments are
+ * wrong.</p>
+ */
 public class Enesys {
+
+    private static final String usage = String.join(System.lineSeparator(),
+            "Usage: enesys [options] <binary>...",
+            "  -a, --address <address>   where the binaries are loaded and started, like 0x0600 or $0600 (0x0600)",
+            "  -i, --instructions <n>    run every binary for at most n instructions (1000000)",
+            "  -c, --cycles <n>          run every binary for at most n cycles instead",
+            "  -t, --threads <n>         the number of threads to run the binaries in (all the cores)",
+            "  -l, --list <file>         also run the binaries listed in the file, one per line",
+            "  -o, --report <file>       write the report to the file instead of the standard output",
+            "  -f, --flat                map 64 KiB of RAM instead of the memory map of the NES",
+            "  -h, --help                print this");
+
     public static void main(String... args) {
+        final BatchRunner batchRunner = new BatchRunner();
+        final List<Path> binaries = new ArrayList<>();
+        Path report = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-a":
+                    case "--address":
+                        batchRunner.setAddress(parseAddress(value(args, ++ i)));
+                        break;
+                    case "-i":
+                    case "--instructions":
+                        batchRunner.setBudget(Long.parseLong(value(args, ++ i)), BatchRunner.BudgetUnit.INSTRUCTIONS);
+                        break;
+                    case "-c":
+                    case "--cycles":
+                        batchRunner.setBudget(Long.parseLong(value(args, ++ i)), BatchRunner.BudgetUnit.CYCLES);
+                        break;
+                    case "-t":
+                    case "--threads":
+                        batchRunner.setThreads(Integer.parseInt(value(args, ++ i)));
+                        break;
+                    case "-l":
+                    case "--list":
+                        for (String line : Files.readAllLines(Paths.get(value(args, ++ i)), StandardCharsets.UTF_8)) {
+                            if (! line.trim().isEmpty()) {
+                                binaries.add(Paths.get(line.trim()));
+                            }
+                        }
+                        break;
+                    case "-o":
+                    case "--report":
+                        report = Paths.get(value(args, ++ i));
+                        break;
+                    case "-f":
+                    case "--flat":
+                        batchRunner.setFlatMemory(true);
+                        break;
+                    case "-h":
+                    case "--help":
+                        System.out.println(usage);
+                        return;
+                    default:
+                        if (args[i].startsWith("-")) {
+                            throw new IllegalArgumentException("Unknown option : " + args[i]);
+                        }
+                        binaries.add(Paths.get(args[i]));
+                }
+            }
+            if (binaries.isEmpty()) {
+                throw new IllegalArgumentException("No binaries to run");
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println(usage);
+            System.exit(2);
+            return;
+        }
+        try {
+            final BatchReport batchReport = batchRunner.run(binaries);
+            if (report != null) {
+                Files.write(report, batchReport.toJson().getBytes(StandardCharsets.UTF_8));
+            } else {
+                System.out.println(batchReport.toJson());
+            }
+            System.exit(batchReport.hasErrors() ? 1 : 0);
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(args[index - 1] + " needs a value");
+        }
+        return args[index];
+    }
+
+    private static int parseAddress(String address) {
+        if (address.startsWith("$")) {
+            return Integer.parseInt(address.substring(1), 16);
+        }
+        return Integer.decode(address);
     }
 }
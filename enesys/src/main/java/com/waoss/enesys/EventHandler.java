@@ -0,0 +1,36 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys;
+
+/**
+ * Runs an event of a {@link Scheduler} when it is due
+ */
+@FunctionalInterface
+public interface EventHandler {
+
+    /**
+     * Called at the instruction boundary at which the event is due
+     *
+     * @param event
+     *         The id of the event
+     * @param cycles
+     *         The CPU cycles reached, which may be past the cycles the event was posted for
+     */
+    void eventDue(int event, long cycles);
+}
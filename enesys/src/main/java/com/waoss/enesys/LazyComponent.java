@@ -0,0 +1,39 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys;
+
+/**
+ * <p>A {@link ClockedComponent} that is left behind by the {@link MasterClock} until it is needed, like the PPU.
+ * The clock does not catch it up at every slice but only when its next event is due and when the clock stops;in
+ * between, the component catches up on its own when the CPU reads or writes one of its registers.</p>
+ * <p>The next event is a prediction : it is whatever the component would do on its own that the rest of the console
+ * sees without asking, like an NMI.When something the CPU does moves the event earlier than predicted, the component
+ * calls {@link MasterClock#reschedule()}.</p>
+ *
+ * @see MasterClock
+ */
+public interface LazyComponent extends ClockedComponent {
+
+    /**
+     * Returns the number of cycles at which the component must have caught up at the latest
+     *
+     * @return the cycles of the next event, or {@link Long#MAX_VALUE} if there is none
+     */
+    long getNextEventCycles();
+}
@@ -0,0 +1,335 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>The master clock of the NES, from which the clocks of the CPU, the PPU and the APU are divided.
+ * The clock runs the {@link ClockedComponent}s added to it in lockstep, but lazily : time is cut into slices of a fixed
+ * number of master cycles (a scanline by default) and at the end of every slice each component catches up to it, in
+ * the order they were added.The slices are aligned to the master cycles, so how the components interleave only
+ * depends on how far the emulation went, never on how it is run.</p>
+ * <p>{@link LazyComponent}s, like the PPU, are left behind : they catch up when the CPU accesses their registers, when
+ * the event they predict is due and when the clock stops.A slice always ends at the next event, and when the first
+ * component is the only one that is not lazy there are no other slices, so the CPU runs uninterrupted from one event to
+ * the next.</p>
+ * <p>The clock can either run as fast as the host allows or be throttled to the real frequency of the console.
+ * Throttling only waits between frames, so both give exactly the same results.</p>
+ *
+ * @see ClockedComponent
+ * @see LazyComponent
+ */
+public final class MasterClock {
+
+    /**
+     * The frequency of the master clock of an NTSC console, in Hz
+     */
+    public static final long NTSC_FREQUENCY = 21_477_272L;
+
+    /**
+     * The master clock divided by this is the clock of the CPU;1.79 MHz for an NTSC console
+     */
+    public static final int CPU_DIVIDER = 12;
+
+    /**
+     * The master clock divided by this is the clock of the PPU : one dot every 4 master cycles
+     */
+    public static final int PPU_DIVIDER = 4;
+
+    /**
+     * The number of master cycles in a scanline : 341 dots
+     */
+    public static final int SCANLINE_CYCLES = 341 * PPU_DIVIDER;
+
+    /**
+     * The number of master cycles in a frame : 262 scanlines
+     */
+    public static final int FRAME_CYCLES = 262 * SCANLINE_CYCLES;
+
+    private final long frequency;
+    private ClockedComponent[] components = new ClockedComponent[0];
+    private int[] dividers = new int[0];
+    private int sliceCycles = SCANLINE_CYCLES;
+
+    /*
+     * The next events of the lazy components in master cycles, Long.MAX_VALUE for the other ones, and whether more than
+     * one component is not lazy
+     */
+    private long[] events = new long[0];
+    private boolean sliced;
+
+    /*
+     * The component being run, whether it was asked to stop early, and whether the clock was halted
+     */
+    private ClockedComponent current;
+    private boolean rescheduled;
+    private boolean halted;
+
+    /**
+     * The number of master cycles elapsed
+     */
+    private long cycles;
+
+    private volatile boolean throttled = true;
+    private volatile boolean running;
+
+    /**
+     * Creates a clock at the frequency of an NTSC console
+     */
+    public MasterClock() {
+        this(NTSC_FREQUENCY);
+    }
+
+    /**
+     * Creates a clock at the given frequency
+     *
+     * @param frequency
+     *         The frequency in Hz
+     */
+    public MasterClock(long frequency) {
+        if (frequency <= 0) {
+            throw new IllegalArgumentException("The frequency must be positive : " + frequency);
+        }
+        this.frequency = frequency;
+    }
+
+    /**
+     * Adds a component that is clocked at the master clock divided by the divider.
+     * Components catch up in the order they are added.
+     *
+     * @param component
+     *         The component
+     * @param divider
+     *         The divider
+     */
+    public void add(ClockedComponent component, int divider) {
+        if (divider <= 0) {
+            throw new IllegalArgumentException("The divider must be positive : " + divider);
+        }
+        components = Arrays.copyOf(components, components.length + 1);
+        dividers = Arrays.copyOf(dividers, dividers.length + 1);
+        components[components.length - 1] = component;
+        dividers[dividers.length - 1] = divider;
+        events = new long[components.length];
+        int eager = 0;
+        for (ClockedComponent clockedComponent : components) {
+            if (! (clockedComponent instanceof LazyComponent)) {
+                eager++;
+            }
+        }
+        sliced = eager > 1;
+    }
+
+    /**
+     * Runs all the components for a number of master cycles
+     *
+     * @param masterCycles
+     *         The number of master cycles
+     */
+    public void runFor(long masterCycles) {
+        runUntil(cycles + masterCycles);
+    }
+
+    /**
+     * Runs all the components until the given number of master cycles elapsed.The lazy components are caught up too
+     * before this returns.
+     *
+     * @param masterCycles
+     *         The number of master cycles to reach
+     */
+    public void runUntil(long masterCycles) {
+        final ClockedComponent[] components = this.components;
+        final int[] dividers = this.dividers;
+        final long[] events = this.events;
+        try {
+            while (cycles < masterCycles && ! halted) {
+                long end = sliced ? Math.min(masterCycles, (cycles / sliceCycles + 1) * sliceCycles) : masterCycles;
+                for (int i = 0; i < components.length; i++) {
+                    events[i] = Long.MAX_VALUE;
+                    if (components[i] instanceof LazyComponent) {
+                        final long event = ((LazyComponent) components[i]).getNextEventCycles();
+                        if (event <= end / dividers[i]) {
+                            events[i] = Math.max(cycles + 1, event * dividers[i]);
+                            end = Math.min(end, events[i]);
+                        }
+                    }
+                }
+                for (int i = 0; i < components.length; i++) {
+                    if (events[i] <= end || end == masterCycles || ! (components[i] instanceof LazyComponent)) {
+                        current = components[i];
+                        components[i].runUntil(end / dividers[i]);
+                        if (rescheduled) {
+                            //the component changed the next events : the slice ends where it stopped
+                            rescheduled = false;
+                            end = Math.max(cycles + 1, Math.min(end, components[i].getCycles() * dividers[i]));
+                        }
+                    }
+                }
+                cycles = end;
+            }
+        } finally {
+            current = null;
+            halted = false;
+        }
+    }
+
+    /**
+     * <p>Tells the clock that the next event of a {@link LazyComponent} may be earlier than it predicted, for example
+     * because the CPU enabled the NMI.The component being run is asked to stop early (see {@link
+     * ClockedComponent#stopEarly()}) so that the events are predicted again.</p>
+     * <p>This does nothing if the clock is not running a component.</p>
+     */
+    public void reschedule() {
+        if (current != null) {
+            rescheduled = true;
+            current.stopEarly();
+        }
+    }
+
+    /**
+     * <p>Makes {@link #runUntil(long)} return at the end of the slice being run, which ends where the component being
+     * run stopped, for example when the CPU halts on a BRK.The lazy components are caught up to there;{@link #run()}
+     * stops too.</p>
+     * <p>This does nothing if the clock is not running a component.</p>
+     */
+    public void halt() {
+        if (current != null) {
+            halted = true;
+            running = false;
+            reschedule();
+        }
+    }
+
+    /**
+     * <p>Runs frame after frame until {@link #stop()} is called.
+     * When the clock is throttled, it waits after every frame until the real time caught up with the emulated time.If
+     * the host is too slow to keep up for more than a frame the clock does not try to make up for it.</p>
+     */
+    public void run() {
+        running = true;
+        final double nanosPerCycle = 1e9 / frequency;
+        long start = System.nanoTime();
+        long startCycles = cycles;
+        while (running) {
+            runFor(FRAME_CYCLES);
+            if (throttled) {
+                final long wait = start + (long) ((cycles - startCycles) * nanosPerCycle) - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                } else if (- wait > FRAME_CYCLES * nanosPerCycle) {
+                    start = System.nanoTime();
+                    startCycles = cycles;
+                }
+            } else {
+                start = System.nanoTime();
+                startCycles = cycles;
+            }
+        }
+    }
+
+    /**
+     * Stops {@link #run()} after the frame being run
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Returns true if {@link #run()} is running
+     *
+     * @return true if {@link #run()} is running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns true if {@link #run()} runs at the frequency of the clock
+     *
+     * @return true if the clock is throttled
+     */
+    public boolean isThrottled() {
+        return throttled;
+    }
+
+    /**
+     * Sets whether {@link #run()} runs at the frequency of the clock or as fast as it can
+     *
+     * @param throttled
+     *         true to run at the frequency of the clock
+     */
+    public void setThrottled(boolean throttled) {
+        this.throttled = throttled;
+    }
+
+    /**
+     * Returns the number of master cycles elapsed
+     *
+     * @return the number of master cycles elapsed
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Sets the number of master cycles elapsed, for example when a save state is loaded.
+     * The components are not touched;their cycles are set on their own.
+     *
+     * @param cycles
+     *         the number of master cycles elapsed
+     */
+    public void setCycles(long cycles) {
+        this.cycles = cycles;
+    }
+
+    /**
+     * Returns the frequency of the clock in Hz
+     *
+     * @return the frequency of the clock
+     */
+    public long getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * Returns the number of master cycles after which all the components that are not lazy catch up
+     *
+     * @return the length of a slice in master cycles
+     */
+    public int getSliceCycles() {
+        return sliceCycles;
+    }
+
+    /**
+     * Sets the number of master cycles after which all the components that are not lazy catch up.
+     * Shorter slices interleave the components more finely but cost more;there are no slices if only one component is
+     * not lazy.
+     *
+     * @param sliceCycles
+     *         the length of a slice in master cycles
+     */
+    public void setSliceCycles(int sliceCycles) {
+        if (sliceCycles <= 0) {
+            throw new IllegalArgumentException("The slices must be positive : " + sliceCycles);
+        }
+        this.sliceCycles = sliceCycles;
+    }
+}
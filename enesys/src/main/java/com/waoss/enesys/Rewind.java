@@ -0,0 +1,540 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>Lets a {@link Console} go back in time.
+ * While it is enabled the rewind captures the state of the console every {@link #getInterval()} CPU cycles into a ring
+ * buffer of a fixed number of megabytes, evicting the oldest captures when it is full.It is driven by the {@link
+ * MasterClock} of the console as a {@link LazyComponent} whose event is the next capture, so it captures on the thread
+ * that runs the emulation;{@link #capture()} can also be called directly, for example when the processor is run
+ * without the clock.</p>
+ * <p>Every {@link #getKeyframeInterval()}th capture is a keyframe : a whole {@link SaveState}.The captures in between
+ * are the XOR of their state and the state of the keyframe, which is mostly zeros.Both are run-length encoded : the
+ * runs of zeros are skipped, so a delta takes a few bytes for every byte that changed since the keyframe.Seeking to a
+ * capture decodes its keyframe and at most one delta.</p>
+ * <p>Capturing takes a few microseconds for the 2 KiB of RAM and the 12 KiB of memory of the PPU.It is not a
+ * checkpoint : the dirty pages are left for the deltas of {@link SaveState}, which the captures do not use.Seeking
+ * loads a state, which marks every page dirty.The rewind is not thread safe : it must be used by the thread that runs
+ * the console or while the console is stopped.</p>
+ *
+ * @see Console#getRewind()
+ */
+public final class Rewind implements LazyComponent {
+
+    /**
+     * The default size of the ring buffer in megabytes
+     */
+    public static final int DEFAULT_BUDGET = 16;
+
+    /**
+     * The default number of CPU cycles between two captures : one frame
+     */
+    public static final int DEFAULT_INTERVAL = MasterClock.FRAME_CYCLES / MasterClock.CPU_DIVIDER;
+
+    /**
+     * The default number of captures from a keyframe to the next : a second of frames
+     */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 60;
+
+    private final Console console;
+    private boolean enabled;
+    private int budget = DEFAULT_BUDGET;
+    private int interval = DEFAULT_INTERVAL;
+    private int keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
+
+    /*
+     * The cycles of the clock and the cycles of the processor at which the next capture is taken
+     */
+    private long cycles;
+    private long nextCapture;
+
+    /*
+     * The encoded captures and where the next one is written
+     */
+    private byte[] ring;
+    private int writePosition;
+
+    /*
+     * The captures, oldest first, in a ring of their own.The oldest capture is always a keyframe.
+     */
+    private long[] captureCycles = new long[64];
+    private int[] captureOffsets = new int[64];
+    private int[] captureLengths = new int[64];
+    private int[] captureSizes = new int[64];
+    private boolean[] keyframes = new boolean[64];
+    private int first;
+    private int count;
+
+    /*
+     * The state being captured, the decoded state of the last keyframe and the buffers of encoding and decoding
+     */
+    private ByteBuffer state;
+    private byte[] keyframe;
+    private int sinceKeyframe;
+    private byte[] encoded;
+    private byte[] decoded;
+
+    Rewind(@NotNull Console console) {
+        this.console = console;
+    }
+
+    /**
+     * Returns true if the rewind captures the console while it runs
+     *
+     * @return true if the rewind is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the capturing.The ring buffer is allocated when the rewind is enabled and freed, with all the
+     * captures, when it is disabled.It is disabled by default.
+     *
+     * @param enabled
+     *         true to enable the rewind
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (! enabled) {
+            clear();
+            ring = null;
+        }
+    }
+
+    /**
+     * Returns the size of the ring buffer in megabytes
+     *
+     * @return the size of the ring buffer
+     */
+    public int getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the size of the ring buffer in megabytes.The captures are thrown away.
+     *
+     * @param budget
+     *         the size of the ring buffer
+     */
+    public void setBudget(int budget) {
+        if (budget <= 0 || budget > Integer.MAX_VALUE >> 20) {
+            throw new IllegalArgumentException("The budget must be between 1 and 2047 megabytes : " + budget);
+        }
+        this.budget = budget;
+        clear();
+        ring = null;
+    }
+
+    /**
+     * Returns the number of CPU cycles between two captures
+     *
+     * @return the interval of the captures
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Sets the number of CPU cycles between two captures
+     *
+     * @param interval
+     *         the interval of the captures
+     */
+    public void setInterval(int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("The interval must be positive : " + interval);
+        }
+        this.interval = interval;
+        nextCapture = nextCapture(console.getCentralProcessor().getCycles());
+    }
+
+    /**
+     * Returns the number of captures from a keyframe to the next
+     *
+     * @return the interval of the keyframes
+     */
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * Sets the number of captures from a keyframe to the next.Deltas are smaller when their keyframe is close, but
+     * keyframes are bigger than deltas.
+     *
+     * @param keyframeInterval
+     *         the interval of the keyframes
+     */
+    public void setKeyframeInterval(int keyframeInterval) {
+        if (keyframeInterval <= 0) {
+            throw new IllegalArgumentException("The keyframe interval must be positive : " + keyframeInterval);
+        }
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Returns the number of captures that can be sought to
+     *
+     * @return the number of captures
+     */
+    public int getCaptureCount() {
+        return count;
+    }
+
+    /**
+     * Returns the CPU cycles of a capture
+     *
+     * @param index
+     *         The index of the capture, the oldest being 0
+     *
+     * @return the cycles of the processor when the capture was taken
+     */
+    public long getCaptureCycles(int index) {
+        return captureCycles[slot(index)];
+    }
+
+    /**
+     * Returns the number of bytes of the ring buffer the captures take
+     *
+     * @return the number of bytes used
+     */
+    public long getUsedBytes() {
+        long used = 0;
+        for (int i = 0; i < count; i++) {
+            used += captureLengths[slot(i)];
+        }
+        return used;
+    }
+
+    /**
+     * Throws away all the captures
+     */
+    public void clear() {
+        first = 0;
+        count = 0;
+        writePosition = 0;
+        keyframe = null;
+    }
+
+    @Override
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Returns the CPU cycles of the next capture
+     *
+     * @return the cycles of the next capture, or {@link Long#MAX_VALUE} if the rewind is disabled
+     */
+    @Override
+    public long getNextEventCycles() {
+        return enabled ? nextCapture : Long.MAX_VALUE;
+    }
+
+    /**
+     * Captures the console if it is enabled and its processor reached the next capture
+     *
+     * @param cycles
+     *         The CPU cycles the clock reached
+     */
+    @Override
+    public void runUntil(long cycles) {
+        this.cycles = cycles;
+        if (enabled) {
+            final long processorCycles = console.getCentralProcessor().getCycles();
+            if (processorCycles >= nextCapture) {
+                capture();
+                nextCapture = nextCapture(processorCycles);
+            }
+        }
+    }
+
+    /**
+     * Captures the state of the console now.The ring buffer is allocated if the rewind was never enabled.
+     */
+    public void capture() {
+        if (ring == null) {
+            ring = new byte[budget << 20];
+        }
+        final int size = SaveState.size(console);
+        if (state == null || state.capacity() != size) {
+            state = ByteBuffer.allocate(size);
+            encoded = new byte[2 * size + 16];
+            keyframe = null;
+        }
+        state.clear();
+        SaveState.snapshot(console, state);
+        final byte[] bytes = state.array();
+        final long processorCycles = console.getCentralProcessor().getCycles();
+        if (keyframe != null && count > 0 && sinceKeyframe < keyframeInterval) {
+            if (store(encode(bytes, keyframe, size, encoded), size, processorCycles, false)) {
+                sinceKeyframe++;
+                return;
+            }
+        }
+        if (keyframe == null) {
+            keyframe = new byte[size];
+        }
+        System.arraycopy(bytes, 0, keyframe, 0, size);
+        store(encode(bytes, null, size, encoded), size, processorCycles, true);
+        sinceKeyframe = 1;
+    }
+
+    /**
+     * Loads a capture into the console and throws away the captures after it, so that the console resumes from it
+     *
+     * @param index
+     *         The index of the capture, the oldest being 0
+     *
+     * @throws IOException
+     *         If the capture does not fit the memory of the console anymore
+     */
+    public void seek(int index) throws IOException {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Capture " + index + " of " + count);
+        }
+        int keyframeIndex = index;
+        while (! keyframes[slot(keyframeIndex)]) {
+            keyframeIndex--;
+        }
+        final int keyframeSlot = slot(keyframeIndex);
+        final int size = captureSizes[keyframeSlot];
+        final byte[] keyframe = new byte[size];
+        decode(ring, captureOffsets[keyframeSlot], captureLengths[keyframeSlot], keyframe, false);
+        if (decoded == null || decoded.length != size) {
+            decoded = new byte[size];
+        }
+        System.arraycopy(keyframe, 0, decoded, 0, size);
+        final int slot = slot(index);
+        if (index != keyframeIndex) {
+            decode(ring, captureOffsets[slot], captureLengths[slot], decoded, true);
+        }
+        SaveState.load(console, ByteBuffer.wrap(decoded));
+        this.keyframe = keyframe;
+        sinceKeyframe = index - keyframeIndex + 1;
+        writePosition = captureOffsets[slot] + captureLengths[slot];
+        count = index + 1;
+        nextCapture = nextCapture(captureCycles[slot]);
+    }
+
+    /**
+     * Seeks to the last capture taken at or before the given CPU cycles
+     *
+     * @param cycles
+     *         The cycles of the processor to go back to
+     *
+     * @return the cycles of the capture, or -1 if there is no capture that old
+     *
+     * @throws IOException
+     *         If the capture does not fit the memory of the console anymore
+     * @see #seek(int)
+     */
+    public long seekBefore(long cycles) throws IOException {
+        for (int index = count - 1; index >= 0; index--) {
+            if (captureCycles[slot(index)] <= cycles) {
+                seek(index);
+                return captureCycles[slot(index)];
+            }
+        }
+        return - 1;
+    }
+
+    private long nextCapture(long processorCycles) {
+        return (processorCycles / interval + 1) * interval;
+    }
+
+    private int slot(int index) {
+        return (first + index) & (captureCycles.length - 1);
+    }
+
+    /**
+     * Stores an encoded capture, evicting the oldest ones to make room.A delta is not stored if its keyframe was
+     * evicted.
+     */
+    private boolean store(int length, int size, long processorCycles, boolean keyframe) {
+        if (length > ring.length) {
+            clear();
+            return keyframe;
+        }
+        makeRoom(length);
+        if (! keyframe && count == 0) {
+            return false;
+        }
+        if (count == captureCycles.length) {
+            growCaptures();
+        }
+        System.arraycopy(encoded, 0, ring, writePosition, length);
+        final int slot = slot(count++);
+        captureCycles[slot] = processorCycles;
+        captureOffsets[slot] = writePosition;
+        captureLengths[slot] = length;
+        captureSizes[slot] = size;
+        keyframes[slot] = keyframe;
+        writePosition += length;
+        return true;
+    }
+
+    /*
+     * The captures lie one after the other from the oldest one, wrapping around at the end of the ring.The new capture
+     * goes after the last one, or at the start of the ring if it does not fit at the end.
+     */
+    private void makeRoom(int length) {
+        while (true) {
+            if (count == 0) {
+                if (writePosition + length > ring.length) {
+                    writePosition = 0;
+                }
+                return;
+            }
+            final int oldest = captureOffsets[first];
+            if (oldest >= writePosition) {
+                if (writePosition + length <= oldest) {
+                    return;
+                }
+                evictOldest();
+            } else if (writePosition + length <= ring.length) {
+                return;
+            } else {
+                writePosition = 0;
+            }
+        }
+    }
+
+    /**
+     * Evicts the oldest keyframe with its deltas
+     */
+    private void evictOldest() {
+        do {
+            first = (first + 1) & (captureCycles.length - 1);
+            count--;
+        } while (count > 0 && ! keyframes[first]);
+    }
+
+    private void growCaptures() {
+        final int length = captureCycles.length;
+        captureCycles = unwrap(captureCycles, new long[length * 2]);
+        captureOffsets = unwrap(captureOffsets, new int[length * 2]);
+        captureLengths = unwrap(captureLengths, new int[length * 2]);
+        captureSizes = unwrap(captureSizes, new int[length * 2]);
+        final boolean[] grownKeyframes = new boolean[length * 2];
+        for (int i = 0; i < length; i++) {
+            grownKeyframes[i] = keyframes[(first + i) & (length - 1)];
+        }
+        keyframes = grownKeyframes;
+        first = 0;
+    }
+
+    private long[] unwrap(long[] array, long[] grown) {
+        System.arraycopy(array, first, grown, 0, array.length - first);
+        System.arraycopy(array, 0, grown, array.length - first, first);
+        return grown;
+    }
+
+    private int[] unwrap(int[] array, int[] grown) {
+        System.arraycopy(array, first, grown, 0, array.length - first);
+        System.arraycopy(array, 0, grown, array.length - first, first);
+        return grown;
+    }
+
+    /**
+     * Encodes the bytes, XORed with the base if there is one, as runs of zeros and runs of literal bytes : the length
+     * of the zeros, the number of literals and the literals.A single zero does not end a run of literals.
+     *
+     * @return the length of the encoded bytes
+     */
+    private static int encode(byte[] bytes, byte[] base, int size, byte[] encoded) {
+        int position = 0;
+        int i = 0;
+        while (i < size) {
+            final int zerosStart = i;
+            while (i < size && (bytes[i] ^ (base != null ? base[i] : 0)) == 0) {
+                i++;
+            }
+            final int literalsStart = i;
+            while (i < size && ((bytes[i] ^ (base != null ? base[i] : 0)) != 0 ||
+                    (i + 1 < size && (bytes[i + 1] ^ (base != null ? base[i + 1] : 0)) != 0))) {
+                i++;
+            }
+            position = writeVarint(encoded, position, literalsStart - zerosStart);
+            position = writeVarint(encoded, position, i - literalsStart);
+            for (int j = literalsStart; j < i; j++) {
+                encoded[position++] = (byte) (bytes[j] ^ (base != null ? base[j] : 0));
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Decodes what {@link #encode(byte[], byte[], int, byte[])} encoded, XORing the literals into the bytes for a delta
+     */
+    private static void decode(byte[] encoded, int offset, int length, byte[] bytes, boolean xor) {
+        int position = offset;
+        int i = 0;
+        while (position < offset + length) {
+            int zeros = 0;
+            for (int shift = 0; ; shift += 7) {
+                final byte b = encoded[position++];
+                zeros |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            int literals = 0;
+            for (int shift = 0; ; shift += 7) {
+                final byte b = encoded[position++];
+                literals |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            if (! xor) {
+                Arrays.fill(bytes, i, i + zeros, (byte) 0);
+            }
+            i += zeros;
+            if (xor) {
+                for (int j = 0; j < literals; j++) {
+                    bytes[i++] ^= encoded[position++];
+                }
+            } else {
+                System.arraycopy(encoded, position, bytes, i, literals);
+                i += literals;
+                position += literals;
+            }
+        }
+        if (! xor) {
+            Arrays.fill(bytes, i, bytes.length, (byte) 0);
+        }
+    }
+
+    private static int writeVarint(byte[] encoded, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            encoded[position++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        encoded[position++] = (byte) value;
+        return position;
+    }
+}
@@ -0,0 +1,516 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys;
+
+import com.waoss.enesys.apu.AudioProcessor;
+import com.waoss.enesys.cartridge.Mapper;
+import com.waoss.enesys.cpu.CentralProcessor;
+import com.waoss.enesys.cpu.registers.RegisterFile;
+import com.waoss.enesys.mem.CompleteMemory;
+import com.waoss.enesys.ppu.PictureProcessor;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Saves and loads the state of a {@link Console} in a compact binary format.
+ * The state is the registers, the cycles of the processor and of the master clock, every array that is mapped
+ * read-write in the {@link CompleteMemory}, so the RAM and whatever else was mapped, and the memory of the {@link
+ * PictureProcessor}, copied in bulk, and the state of the components : the registers of the PPU, the {@link
+ * AudioProcessor} without its samples, and the {@link Mapper} with its CHR-RAM.ROM is not saved : a state is loaded
+ * into a console that has the same things mapped and the same cartridge as the one it was saved from.</p>
+ * <p>The format, big-endian :</p>
+ * <ul>
+ * <li>The magic number {@link #MAGIC} and the version {@link #VERSION} as a short</li>
+ * <li>A, X, Y and the stack pointer as bytes, the program counter as a short and the processor status as a byte</li>
+ * <li>The cycles of the processor and the master cycles as longs, and 1 as a byte if a non-maskable interrupt is
+ * pending, 0 otherwise</li>
+ * <li>The number of arrays as a short, then for every array its length as an int and its bytes : the arrays of the
+ * memory, then the ones of the PPU (see {@link PictureProcessor#getMemoryArrays()})</li>
+ * <li>The length of the state of the components as an int, then the state of the PPU, of the APU and of the mapper
+ * (see {@link PictureProcessor#save(ByteBuffer)}, {@link AudioProcessor#save(ByteBuffer)} and {@link
+ * Mapper#save(ByteBuffer)})</li>
+ * </ul>
+ * <p>Saving a state is a checkpoint : it clears the dirty flags of the memory and of the PPU.A delta saved with {@link
+ * #saveDelta(Console, ByteBuffer)} has only the pages written since the last checkpoint, and is a checkpoint itself,
+ * so a state followed by its deltas is a history of the console.{@link #merge(ByteBuffer, ByteBuffer)} applies a delta
+ * to a state, giving the state the console was in when the delta was saved.A delta starts with {@link #DELTA_MAGIC}
+ * and has the same header as a state, then the lengths of the arrays and the number of pages as an int, then for
+ * every page the index of its array and its index in the array as shorts and its bytes, then the whole state of the
+ * components, CHR-RAM included.</p>
+ * <p>The JSON written by {@link ConsoleAdapter} is meant for debugging, not for this.</p>
+ */
+public final class SaveState {
+
+    /**
+     * The magic number a save state starts with : "ENSS"
+     */
+    public static final int MAGIC = 0x454e5353;
+
+    /**
+     * The magic number a delta starts with : "ENSD"
+     */
+    public static final int DELTA_MAGIC = 0x454e5344;
+
+    /**
+     * The version of the format that is written, and the only one that is read
+     */
+    public static final short VERSION = 6;
+
+    /*
+     * The offsets of the registers and of the number of arrays, and the size of everything before the arrays.
+     */
+    private static final int REGISTERS_OFFSET = 4 + 2;
+    private static final int ARRAY_COUNT_OFFSET = REGISTERS_OFFSET + 4 + 2 + 1 + 8 + 8 + 1;
+    private static final int HEADER_SIZE = ARRAY_COUNT_OFFSET + 2;
+
+    private SaveState() {
+    }
+
+    /**
+     * Returns the number of bytes the state of the console takes
+     *
+     * @param console
+     *         The console
+     *
+     * @return the size of the state
+     */
+    public static int size(@NotNull Console console) {
+        int size = HEADER_SIZE;
+        for (byte[] array : arrays(console)) {
+            size += 4 + array.length;
+        }
+        return size + 4 + componentsSize(console);
+    }
+
+    /**
+     * Writes the state of the console at the position of the buffer and clears the dirty flags of its memory
+     *
+     * @param console
+     *         The console;its processor must not be running
+     * @param buffer
+     *         The buffer, with at least {@link #size(Console)} bytes remaining
+     */
+    public static void save(@NotNull Console console, @NotNull ByteBuffer buffer) {
+        snapshot(console, buffer);
+        clearDirty(console);
+    }
+
+    /**
+     * Writes the state of the console at the position of the buffer, like {@link #save(Console, ByteBuffer)}, but
+     * leaves the dirty flags alone : it is not a checkpoint, so the deltas saved afterwards still have the pages
+     * written since the last one.This is for the captures of the {@link Rewind}.
+     *
+     * @param console
+     *         The console;its processor must not be running
+     * @param buffer
+     *         The buffer, with at least {@link #size(Console)} bytes remaining
+     */
+    static void snapshot(@NotNull Console console, @NotNull ByteBuffer buffer) {
+        final List<byte[]> arrays = arrays(console);
+        saveHeader(console, buffer, MAGIC, arrays);
+        for (byte[] array : arrays) {
+            buffer.putInt(array.length).put(array);
+        }
+        saveComponents(console, buffer);
+    }
+
+    /**
+     * Returns a new buffer with the state of the console, ready to be read
+     *
+     * @param console
+     *         The console;its processor must not be running
+     *
+     * @return the buffer
+     */
+    @NotNull
+    public static ByteBuffer save(@NotNull Console console) {
+        final ByteBuffer buffer = ByteBuffer.allocate(size(console));
+        save(console, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Writes the state of the console to a file, replacing it
+     *
+     * @param console
+     *         The console;its processor must not be running
+     * @param path
+     *         The file
+     *
+     * @throws IOException
+     *         If the file can not be written
+     */
+    public static void save(@NotNull Console console, @NotNull Path path) throws IOException {
+        final ByteBuffer buffer = save(console);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes a delta of the console would take now
+     *
+     * @param console
+     *         The console
+     *
+     * @return the size of the delta
+     */
+    public static int deltaSize(@NotNull Console console) {
+        final List<byte[]> arrays = arrays(console);
+        int size = HEADER_SIZE + 4;
+        for (int index = 0; index < arrays.size(); index++) {
+            final byte[] array = arrays.get(index);
+            size += 4;
+            for (int page = 0; page * CompleteMemory.PAGE_SIZE < array.length; page++) {
+                if (isDirty(console, arrays, index, page)) {
+                    size += 4 + pageLength(array, page);
+                }
+            }
+        }
+        return size + 4 + componentsSize(console);
+    }
+
+    /**
+     * Writes the registers, the cycles and the pages written since the last checkpoint at the position of the buffer,
+     * and clears the dirty flags of the memory
+     *
+     * @param console
+     *         The console;its processor must not be running
+     * @param buffer
+     *         The buffer, with at least {@link #deltaSize(Console)} bytes remaining
+     */
+    public static void saveDelta(@NotNull Console console, @NotNull ByteBuffer buffer) {
+        final List<byte[]> arrays = arrays(console);
+        saveHeader(console, buffer, DELTA_MAGIC, arrays);
+        for (byte[] array : arrays) {
+            buffer.putInt(array.length);
+        }
+        final int pageCountPosition = buffer.position();
+        int pageCount = 0;
+        buffer.putInt(0);
+        for (int index = 0; index < arrays.size(); index++) {
+            final byte[] array = arrays.get(index);
+            for (int page = 0; page * CompleteMemory.PAGE_SIZE < array.length; page++) {
+                if (isDirty(console, arrays, index, page)) {
+                    buffer.putShort((short) index).putShort((short) page);
+                    buffer.put(array, page * CompleteMemory.PAGE_SIZE, pageLength(array, page));
+                    pageCount++;
+                }
+            }
+        }
+        buffer.putInt(pageCountPosition, pageCount);
+        saveComponents(console, buffer);
+        clearDirty(console);
+    }
+
+    /**
+     * Returns a new buffer with a delta of the console, ready to be read
+     *
+     * @param console
+     *         The console;its processor must not be running
+     *
+     * @return the buffer
+     *
+     * @see #saveDelta(Console, ByteBuffer)
+     */
+    @NotNull
+    public static ByteBuffer saveDelta(@NotNull Console console) {
+        final ByteBuffer buffer = ByteBuffer.allocate(deltaSize(console));
+        saveDelta(console, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * <p>Applies a delta to a state, from the position of the state to its limit.
+     * The state becomes the state of the console when the delta was saved, if it was the state of the console at the
+     * checkpoint before.The delta is read from its position, which is left after it.Nothing is changed if the delta is
+     * not valid.</p>
+     *
+     * @param state
+     *         The state
+     * @param delta
+     *         The delta
+     *
+     * @throws IOException
+     *         If the state or the delta are not valid, or their arrays do not match
+     */
+    public static void merge(@NotNull ByteBuffer state, @NotNull ByteBuffer delta) throws IOException {
+        final int start = state.position();
+        final int deltaStart = delta.position();
+        final int[] arrayPositions;
+        final int pagesEnd;
+        final int componentsPosition;
+        final int componentsLength;
+        try {
+            checkHeader(state, start, MAGIC);
+            checkHeader(delta, deltaStart, DELTA_MAGIC);
+            final int arrayCount = state.getShort(start + ARRAY_COUNT_OFFSET);
+            if (delta.getShort(deltaStart + ARRAY_COUNT_OFFSET) != arrayCount) {
+                throw new IOException("The delta has " + delta.getShort(deltaStart + ARRAY_COUNT_OFFSET) +
+                        " arrays, the state " + arrayCount);
+            }
+            arrayPositions = new int[arrayCount];
+            int position = start + HEADER_SIZE;
+            int deltaPosition = deltaStart + HEADER_SIZE;
+            for (int index = 0; index < arrayCount; index++) {
+                final int length = state.getInt(position);
+                if (delta.getInt(deltaPosition) != length) {
+                    throw new IOException("The delta has an array of " + delta.getInt(deltaPosition) +
+                            " bytes where the state has " + length);
+                }
+                arrayPositions[index] = position + 4;
+                position += 4 + length;
+                deltaPosition += 4;
+            }
+            componentsPosition = position + 4;
+            componentsLength = state.getInt(position);
+            if (componentsPosition + componentsLength > state.limit()) {
+                throw new EOFException("The save state is truncated");
+            }
+            final int pageCount = delta.getInt(deltaPosition);
+            deltaPosition += 4;
+            for (int i = 0; i < pageCount; i++) {
+                final int index = delta.getShort(deltaPosition);
+                final int page = delta.getShort(deltaPosition + 2);
+                if (index < 0 || index >= arrayCount || page < 0 ||
+                        page * CompleteMemory.PAGE_SIZE >= state.getInt(arrayPositions[index] - 4)) {
+                    throw new IOException("The delta has a page that is not in the state : " + index + ":" + page);
+                }
+                deltaPosition += 4 + Math.min(CompleteMemory.PAGE_SIZE,
+                        state.getInt(arrayPositions[index] - 4) - page * CompleteMemory.PAGE_SIZE);
+            }
+            pagesEnd = deltaPosition;
+            if (delta.getInt(pagesEnd) != componentsLength) {
+                throw new IOException("The delta has components of " + delta.getInt(pagesEnd) +
+                        " bytes where the state has " + componentsLength);
+            }
+            if (pagesEnd + 4 + componentsLength > delta.limit()) {
+                throw new EOFException("The delta is truncated");
+            }
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new EOFException("The save state or the delta is truncated");
+        }
+        copy(delta, deltaStart + REGISTERS_OFFSET, state, start + REGISTERS_OFFSET,
+                ARRAY_COUNT_OFFSET - REGISTERS_OFFSET);
+        int deltaPosition = deltaStart + HEADER_SIZE + 4 * arrayPositions.length + 4;
+        while (deltaPosition < pagesEnd) {
+            final int index = delta.getShort(deltaPosition);
+            final int page = delta.getShort(deltaPosition + 2);
+            final int length = Math.min(CompleteMemory.PAGE_SIZE,
+                    state.getInt(arrayPositions[index] - 4) - page * CompleteMemory.PAGE_SIZE);
+            copy(delta, deltaPosition + 4, state, arrayPositions[index] + page * CompleteMemory.PAGE_SIZE, length);
+            deltaPosition += 4 + length;
+        }
+        copy(delta, pagesEnd + 4, state, componentsPosition, componentsLength);
+        delta.position(pagesEnd + 4 + componentsLength);
+    }
+
+    /**
+     * <p>Reads a state at the position of the buffer into the console.
+     * The whole state is checked before anything is changed, so the console is untouched if it is not valid.The
+     * decoded and compiled code of the arrays is thrown away.</p>
+     *
+     * @param console
+     *         The console;its processor must not be running
+     * @param buffer
+     *         The buffer
+     *
+     * @throws IOException
+     *         If the buffer does not hold a state of this version, or its arrays do not match the ones of the console
+     */
+    public static void load(@NotNull Console console, @NotNull ByteBuffer buffer) throws IOException {
+        final CompleteMemory completeMemory = console.getCompleteMemory();
+        final PictureProcessor pictureProcessor = console.getPictureProcessor();
+        final List<byte[]> arrays = arrays(console);
+        final int memoryArrayCount = arrays.size() - pictureProcessor.getMemoryArrays().size();
+        final int start = buffer.position();
+        try {
+            checkHeader(buffer, start, MAGIC);
+            if (buffer.getShort(start + ARRAY_COUNT_OFFSET) != arrays.size()) {
+                throw new IOException("The save state has " + buffer.getShort(start + ARRAY_COUNT_OFFSET) +
+                        " arrays, the console " + arrays.size());
+            }
+            int position = start + HEADER_SIZE;
+            for (byte[] array : arrays) {
+                if (buffer.getInt(position) != array.length) {
+                    throw new IOException("The save state has an array of " + buffer.getInt(position) +
+                            " bytes where the console has " + array.length);
+                }
+                position += 4 + array.length;
+            }
+            if (buffer.getInt(position) != componentsSize(console)) {
+                throw new IOException("The save state has components of " + buffer.getInt(position) +
+                        " bytes where the console has " + componentsSize(console));
+            }
+            if (position + 4 + componentsSize(console) > buffer.limit()) {
+                throw new EOFException("The save state is truncated");
+            }
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new EOFException("The save state is truncated");
+        }
+        buffer.position(start + REGISTERS_OFFSET);
+        final RegisterFile registerFile = console.getRegisterFile();
+        registerFile.setA(buffer.get() & 0xff);
+        registerFile.setX(buffer.get() & 0xff);
+        registerFile.setY(buffer.get() & 0xff);
+        registerFile.setStackPointer(buffer.get() & 0xff);
+        registerFile.setProgramCounter(buffer.getShort() & 0xffff);
+        registerFile.setProcessorStatus(buffer.get() & 0xff);
+        final CentralProcessor centralProcessor = console.getCentralProcessor();
+        centralProcessor.setCycles(buffer.getLong());
+        console.getMasterClock().setCycles(buffer.getLong());
+        //the interrupts of the state are posted again : the pending NMI here, the IRQ lines by the components
+        console.getScheduler().clear();
+        if (buffer.get() != 0) {
+            centralProcessor.requestNonMaskableInterrupt();
+        }
+        buffer.getShort();
+        for (int index = 0; index < arrays.size(); index++) {
+            final byte[] array = arrays.get(index);
+            buffer.getInt();
+            buffer.get(array);
+            if (index < memoryArrayCount) {
+                completeMemory.arrayWritten(array);
+            } else {
+                pictureProcessor.arrayWritten(array);
+            }
+        }
+        buffer.getInt();
+        pictureProcessor.load(buffer);
+        console.getAudioProcessor().load(buffer);
+        final Mapper mapper = console.getMapper();
+        if (mapper != null) {
+            mapper.load(buffer);
+            centralProcessor.setInterruptLines(CentralProcessor.MAPPER_INTERRUPT, mapper.isInterruptRequested());
+        }
+    }
+
+    /**
+     * Reads a state from a file into the console
+     *
+     * @param console
+     *         The console;its processor must not be running
+     * @param path
+     *         The file
+     *
+     * @throws IOException
+     *         If the file can not be read or does not hold a valid state
+     *
+     * @see #load(Console, ByteBuffer)
+     */
+    public static void load(@NotNull Console console, @NotNull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Not a save state : " + path);
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("The save state is truncated");
+                }
+            }
+            buffer.flip();
+            load(console, buffer);
+        }
+    }
+
+    private static void saveHeader(Console console, ByteBuffer buffer, int magic, List<byte[]> arrays) {
+        final RegisterFile registerFile = console.getRegisterFile();
+        buffer.putInt(magic).putShort(VERSION);
+        buffer.put((byte) registerFile.getA()).put((byte) registerFile.getX()).put((byte) registerFile.getY());
+        buffer.put((byte) registerFile.getStackPointer()).putShort((short) registerFile.getProgramCounter());
+        buffer.put((byte) registerFile.getProcessorStatus());
+        buffer.putLong(console.getCentralProcessor().getCycles()).putLong(console.getMasterClock().getCycles());
+        buffer.put((byte) (console.getCentralProcessor().isNonMaskableInterruptRequested() ? 1 : 0));
+        buffer.putShort((short) arrays.size());
+    }
+
+    /*
+     * The arrays of the memory, then the ones of the PPU
+     */
+    private static List<byte[]> arrays(Console console) {
+        final List<byte[]> arrays = new ArrayList<>(console.getCompleteMemory().getReadWriteArrays());
+        arrays.addAll(console.getPictureProcessor().getMemoryArrays());
+        return arrays;
+    }
+
+    private static boolean isDirty(Console console, List<byte[]> arrays, int index, int page) {
+        final PictureProcessor pictureProcessor = console.getPictureProcessor();
+        final byte[] array = arrays.get(index);
+        return index < arrays.size() - pictureProcessor.getMemoryArrays().size() ?
+                console.getCompleteMemory().isDirty(array, page) : pictureProcessor.isDirty(array, page);
+    }
+
+    private static void clearDirty(Console console) {
+        console.getCompleteMemory().clearDirty();
+        console.getPictureProcessor().clearDirty();
+    }
+
+    private static int componentsSize(Console console) {
+        final Mapper mapper = console.getMapper();
+        return PictureProcessor.STATE_SIZE + AudioProcessor.STATE_SIZE + (mapper != null ? mapper.getStateSize() : 0);
+    }
+
+    private static void saveComponents(Console console, ByteBuffer buffer) {
+        buffer.putInt(componentsSize(console));
+        console.getPictureProcessor().save(buffer);
+        console.getAudioProcessor().save(buffer);
+        final Mapper mapper = console.getMapper();
+        if (mapper != null) {
+            mapper.save(buffer);
+        }
+    }
+
+    private static void checkHeader(ByteBuffer buffer, int start, int magic) throws IOException {
+        if (buffer.getInt(start) != magic) {
+            throw new IOException(magic == MAGIC ? "Not a save state" : "Not a delta");
+        }
+        if (buffer.getShort(start + 4) != VERSION) {
+            throw new IOException("Unsupported save state version : " + buffer.getShort(start + 4));
+        }
+    }
+
+    private static int pageLength(byte[] array, int page) {
+        return Math.min(CompleteMemory.PAGE_SIZE, array.length - page * CompleteMemory.PAGE_SIZE);
+    }
+
+    private static void copy(ByteBuffer source, int sourcePosition, ByteBuffer target, int targetPosition,
+                             int length) {
+        final ByteBuffer from = source.duplicate();
+        from.limit(sourcePosition + length).position(sourcePosition);
+        final ByteBuffer to = target.duplicate();
+        to.position(targetPosition);
+        to.put(from);
+    }
+}
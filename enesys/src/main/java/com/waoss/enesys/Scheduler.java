@@ -0,0 +1,206 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * <p>The timed events of a {@link Console}, like the interrupts and the deadlines of the devices.
+ * An event is an id that a handler is added for, posted to happen at a number of CPU cycles.The pending events are kept
+ * in a min-heap of primitive longs, the cycles in the high bits and the id in the low ones, so posting and taking an
+ * event does not allocate anything and the events of the same cycle happen in the order of their ids.</p>
+ * <p>The processor only compares its cycles to {@link #getNextDeadline()} at every instruction boundary, and runs the
+ * events that are due with {@link #runDue(long)} once it is reached;the devices are never polled.The scheduler is not
+ * thread safe : it is used by the thread that runs the console.</p>
+ *
+ * @see EventHandler
+ */
+public final class Scheduler {
+
+    /**
+     * The number of low bits of an entry of the heap that hold the id of the event
+     */
+    private static final int EVENT_BITS = 8;
+    private static final int EVENT_MASK = (1 << EVENT_BITS) - 1;
+
+    private EventHandler[] handlers = new EventHandler[0];
+    private long[] heap = new long[16];
+    private int size;
+    private long nextDeadline = Long.MAX_VALUE;
+
+    /**
+     * Adds the handler of a new event
+     *
+     * @param handler
+     *         The handler
+     *
+     * @return the id of the event
+     */
+    public int addEvent(@NotNull EventHandler handler) {
+        if (handlers.length > EVENT_MASK) {
+            throw new IllegalStateException("Too many events : " + handlers.length);
+        }
+        handlers = Arrays.copyOf(handlers, handlers.length + 1);
+        handlers[handlers.length - 1] = handler;
+        return handlers.length - 1;
+    }
+
+    /**
+     * Posts an event.An event can be pending more than once;if the cycles are already reached it happens at the next
+     * instruction boundary.
+     *
+     * @param event
+     *         The id of the event
+     * @param cycles
+     *         The CPU cycles at which it happens
+     */
+    public void post(int event, long cycles) {
+        if (event < 0 || event >= handlers.length) {
+            throw new IllegalArgumentException("Unknown event : " + event);
+        }
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        heap[size] = (Math.max(cycles, 0) << EVENT_BITS) | event;
+        siftUp(size++);
+        nextDeadline = heap[0] >>> EVENT_BITS;
+    }
+
+    /**
+     * Cancels every pending occurrence of an event
+     *
+     * @param event
+     *         The id of the event
+     */
+    public void cancel(int event) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if ((heap[i] & EVENT_MASK) != event) {
+                heap[kept++] = heap[i];
+            }
+        }
+        if (kept != size) {
+            size = kept;
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+            nextDeadline = size > 0 ? heap[0] >>> EVENT_BITS : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Cancels every pending event, for example before the state of the console is loaded
+     */
+    public void clear() {
+        size = 0;
+        nextDeadline = Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns true if an event is pending
+     *
+     * @param event
+     *         The id of the event
+     *
+     * @return true if the event was posted and did not happen yet
+     */
+    public boolean isPending(int event) {
+        for (int i = 0; i < size; i++) {
+            if ((heap[i] & EVENT_MASK) == event) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the CPU cycles of the earliest pending event
+     *
+     * @return the cycles of the next event, or {@link Long#MAX_VALUE} if none is pending
+     */
+    public long getNextDeadline() {
+        return nextDeadline;
+    }
+
+    /**
+     * Runs the handlers of the events that are due, earliest first.The events they post are run too if they are due.
+     *
+     * @param cycles
+     *         The CPU cycles reached
+     */
+    public void runDue(long cycles) {
+        while (nextDeadline <= cycles) {
+            final int event = (int) (heap[0] & EVENT_MASK);
+            heap[0] = heap[--size];
+            siftDown(0);
+            nextDeadline = size > 0 ? heap[0] >>> EVENT_BITS : Long.MAX_VALUE;
+            handlers[event].eventDue(event, cycles);
+        }
+    }
+
+    /**
+     * Copies the pending events of another scheduler, whose events were added in the same order, for example the one
+     * of the console a fork was made from
+     *
+     * @param scheduler
+     *         The scheduler
+     */
+    public void copyFrom(@NotNull Scheduler scheduler) {
+        heap = scheduler.heap.clone();
+        size = scheduler.size;
+        nextDeadline = scheduler.nextDeadline;
+    }
+
+    private void siftUp(int index) {
+        final long entry = heap[index];
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (heap[parent] <= entry) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = entry;
+    }
+
+    private void siftDown(int index) {
+        if (index >= size) {
+            return;
+        }
+        final long entry = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (entry <= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = entry;
+    }
+}
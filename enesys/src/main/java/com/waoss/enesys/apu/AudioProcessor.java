@@ -0,0 +1,574 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.waoss.enesys.apu;
+
+import com.waoss.enesys.Console;
+import com.waoss.enesys.LazyComponent;
+import com.waoss.enesys.MasterClock;
+import com.waoss.enesys.cpu.CentralProcessor;
+import com.waoss.enesys.mem.Memory;
+import com.waoss.enesys.ppu.PictureProcessor;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>The APU of the NES, the audio processing unit of the 2A03 : two pulse channels, a triangle, a noise channel and
+ * the DMC, mixed into 16 bit samples.
+ * The CPU programs it through the registers at $4000-$4017, which also hold the OAM DMA of the PPU at $4014.</p>
+ * <p>The APU is a {@link LazyComponent} clocked in CPU cycles : the channels are not run with the CPU, but advanced in
+ * bulk when a register is read or written, when a batch of samples is due and when the frame counter or the DMC
+ * interrupts the CPU.The pulses and the triangle advance in constant time however many cycles they are advanced by.
+ * </p>
+ * <p>The channels are not sampled : they are advanced from a change of their output to the next, and the changes of
+ * the mix are added to a {@link BandLimitedBuffer} at the cycles they happen, which resamples them without aliasing.
+ * The samples are written a batch at a time to a {@link SampleRing}, which a {@link LineOutput} or a headless sink
+ * drains on another thread;the thread that runs the console never locks, waits or allocates for them.The buffers of
+ * the samples are only allocated, and the samples only made, once the ring buffer is asked for with {@link
+ * #getSampleRing()}, so the APU of a console that nobody listens to, like a fork, only runs its channels.</p>
+ *
+ * @see Console#getAudioProcessor()
+ */
+public final class AudioProcessor implements Memory, LazyComponent {
+
+    /**
+     * The default number of samples per second
+     */
+    public static final int DEFAULT_SAMPLE_RATE = 44_100;
+
+    /**
+     * The number of samples written to the ring buffer at once, give or take one
+     */
+    public static final int BATCH_SIZE = 256;
+
+    /**
+     * The number of samples the ring buffer holds, about 370 milliseconds at the default rate
+     */
+    public static final int RING_CAPACITY = 1 << 14;
+
+    /**
+     * The number of bytes {@link #save(ByteBuffer)} writes : the channels and the frame counter
+     */
+    public static final int STATE_SIZE = 2 * PulseChannel.STATE_SIZE + TriangleChannel.STATE_SIZE +
+            NoiseChannel.STATE_SIZE + DeltaModulationChannel.STATE_SIZE + 8 + 1 + 1 + 1 + 4 + 4 + 1 + 4;
+
+    /*
+     * The CPU cycles of the steps of the frame counter in its two modes, and of the whole sequences
+     */
+    private static final int[] fourSteps = {7457, 14913, 22371, 29829};
+    private static final int[] fiveSteps = {7457, 14913, 22371, 29829, 37281};
+    private static final int FOUR_STEP_PERIOD = 29830;
+    private static final int FIVE_STEP_PERIOD = 37282;
+
+    /*
+     * The registers
+     */
+    private static final int OAM_DMA = 0x14;
+    private static final int STATUS = 0x15;
+    private static final int FRAME_COUNTER = 0x17;
+
+    /*
+     * The nonlinear mixer, as lookup tables of the sum of the pulses and of 3 * triangle + 2 * noise + DMC
+     */
+    private static final short[] pulseLevels = new short[31];
+    private static final short[] otherLevels = new short[203];
+
+    static {
+        for (int i = 1; i < pulseLevels.length; i++) {
+            pulseLevels[i] = (short) (32767 * 95.52 / (8128.0 / i + 100));
+        }
+        for (int i = 1; i < otherLevels.length; i++) {
+            otherLevels[i] = (short) (32767 * 163.67 / (24329.0 / i + 100));
+        }
+    }
+
+    @NotNull
+    private final Console console;
+
+    private final PulseChannel firstPulse = new PulseChannel(true);
+    private final PulseChannel secondPulse = new PulseChannel(false);
+    private final TriangleChannel triangle = new TriangleChannel();
+    private final NoiseChannel noise = new NoiseChannel();
+    private final DeltaModulationChannel deltaModulation = new DeltaModulationChannel();
+
+    private long cycles;
+    private boolean running;
+
+    /*
+     * The frame counter.The cycles are counted from the start of the sequence, so they are -1 after its last step.
+     */
+    private boolean fiveStepMode;
+    private boolean interruptInhibited;
+    private boolean frameInterruptRequested;
+    private int frameStep;
+    private int frameCycles;
+    private boolean interruptAsserted;
+
+    /*
+     * The samples : the output of the mixer, and the frame of the band-limited buffer, which ends every batch.The
+     * buffers are null until the ring buffer is asked for.
+     */
+    private int level;
+    private int sampleRate = DEFAULT_SAMPLE_RATE;
+    private BandLimitedBuffer buffer;
+    private long batchCycles = computeBatchCycles(DEFAULT_SAMPLE_RATE);
+    private long frameStart;
+    private short[] batch;
+    private SampleRing sampleRing;
+
+    public AudioProcessor(@NotNull Console console) {
+        this.console = console;
+    }
+
+    /**
+     * Reads a register.Only the status at $4015 can be read;reading it acknowledges the interrupt of the frame counter.
+     *
+     * @param address
+     *         The address
+     *
+     * @return the value
+     */
+    @Override
+    public int read(int address) {
+        if ((address & 0xff) != STATUS) {
+            return 0;
+        }
+        synchronize();
+        int value = 0;
+        value |= firstPulse.length > 0 ? 0x01 : 0;
+        value |= secondPulse.length > 0 ? 0x02 : 0;
+        value |= triangle.length > 0 ? 0x04 : 0;
+        value |= noise.length > 0 ? 0x08 : 0;
+        value |= deltaModulation.isActive() ? 0x10 : 0;
+        value |= frameInterruptRequested ? 0x40 : 0;
+        value |= deltaModulation.interruptRequested ? 0x80 : 0;
+        frameInterruptRequested = false;
+        updateInterruptLine();
+        return value;
+    }
+
+    /**
+     * Writes a register
+     *
+     * @param address
+     *         The address
+     * @param value
+     *         The value
+     */
+    @Override
+    public void write(int address, int value) {
+        final int register = address & 0xff;
+        if (register == OAM_DMA) {
+            copyToObjectAttributeMemory(value);
+            return;
+        }
+        synchronize();
+        switch (register >>> 2) {
+            case 0:
+                firstPulse.write(register & 3, value);
+                break;
+            case 1:
+                secondPulse.write(register & 3, value);
+                break;
+            case 2:
+                triangle.write(register & 3, value);
+                break;
+            case 3:
+                noise.write(register & 3, value);
+                break;
+            case 4:
+                deltaModulation.write(register & 3, value);
+                break;
+            default:
+                if (register == STATUS) {
+                    writeStatus(value);
+                } else if (register == FRAME_COUNTER) {
+                    writeFrameCounter(value);
+                }
+                break;
+        }
+        updateLevel();
+        updateInterruptLine();
+        if (register == 0x10 || register == STATUS || register == FRAME_COUNTER) {
+            //the interrupts may come earlier than predicted
+            console.getMasterClock().reschedule();
+        }
+    }
+
+    @Override
+    public int size() {
+        return 0x100;
+    }
+
+    /**
+     * Returns the number of CPU cycles the APU ran for
+     *
+     * @return the number of cycles
+     */
+    @Override
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Sets the number of CPU cycles the APU ran for, for example when a save state is loaded.The batches of samples
+     * are due at the same intervals from the new number of cycles.
+     *
+     * @param cycles
+     *         the number of cycles
+     */
+    public void setCycles(long cycles) {
+        frameStart += cycles - this.cycles;
+        this.cycles = cycles;
+    }
+
+    /**
+     * Advances the channels and the frame counter until the given number of CPU cycles is reached, from a change of
+     * the output to the next, and writes the batches of samples that are due on the way
+     *
+     * @param cycles
+     *         The number of cycles to reach
+     */
+    @Override
+    public void runUntil(long cycles) {
+        running = true;
+        try {
+            while (this.cycles < cycles) {
+                final long frameEvent = this.cycles + getStepCycles() - frameCycles;
+                final long batchEnd = buffer != null ? frameStart + batchCycles : Long.MAX_VALUE;
+                long next = Math.min(cycles, Math.min(frameEvent, batchEnd));
+                final long change = getCyclesUntilChange();
+                if (change < next - this.cycles) {
+                    next = this.cycles + change;
+                }
+                advance(next - this.cycles);
+                if (next == frameEvent) {
+                    clockFrameCounter();
+                }
+                updateLevel();
+                if (next == batchEnd) {
+                    flush();
+                }
+            }
+        } finally {
+            running = false;
+        }
+        updateInterruptLine();
+    }
+
+    /**
+     * Returns the cycle after the one at which the current batch of samples is complete, or at which the frame counter
+     * or the DMC interrupts the CPU, whichever comes first.The interrupts can only move when a register is written.
+     *
+     * @return the cycles of the next event
+     */
+    @Override
+    public long getNextEventCycles() {
+        long event = buffer != null ? frameStart + batchCycles + 1 : Long.MAX_VALUE;
+        if (! fiveStepMode && ! interruptInhibited && ! frameInterruptRequested) {
+            event = Math.min(event, cycles + fourSteps[3] - frameCycles + 1);
+        }
+        final long deltaModulationInterrupt = deltaModulation.getCyclesUntilInterrupt();
+        if (deltaModulationInterrupt != Long.MAX_VALUE) {
+            event = Math.min(event, cycles + deltaModulationInterrupt + 1);
+        }
+        return event;
+    }
+
+    /**
+     * Catches the APU up with the CPU, unless it is being run
+     */
+    public void synchronize() {
+        if (! running) {
+            runUntil(console.getCentralProcessor().getCycles());
+        }
+    }
+
+    /**
+     * Returns the number of samples per second
+     *
+     * @return the sample rate
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Sets the number of samples per second.The samples already written to the ring buffer are not resampled.
+     *
+     * @param sampleRate
+     *         the sample rate, lower than the frequency of the CPU
+     */
+    public void setSampleRate(int sampleRate) {
+        if (this.buffer == null) {
+            this.sampleRate = sampleRate;
+            this.batchCycles = computeBatchCycles(sampleRate);
+            return;
+        }
+        final BandLimitedBuffer buffer = newBuffer(sampleRate);
+        synchronize();
+        flush();
+        this.sampleRate = sampleRate;
+        this.buffer = buffer;
+        this.batchCycles = computeBatchCycles(sampleRate);
+        buffer.addDelta(0, level);
+        console.getMasterClock().reschedule();
+    }
+
+    /**
+     * Returns the ring buffer the samples are written to, which another thread may drain.The first call allocates it
+     * and starts making the samples from the current cycle, so it is made by the thread that runs the console or while
+     * it is stopped.
+     *
+     * @return the ring buffer
+     */
+    @NotNull
+    public SampleRing getSampleRing() {
+        if (sampleRing == null) {
+            synchronize();
+            batch = new short[BATCH_SIZE * 2];
+            buffer = newBuffer(sampleRate);
+            buffer.addDelta(0, level);
+            frameStart = cycles;
+            sampleRing = new SampleRing(RING_CAPACITY);
+            console.getMasterClock().reschedule();
+        }
+        return sampleRing;
+    }
+
+    /**
+     * Writes the samples up to the current cycle to the ring buffer without waiting for the batch to be complete
+     */
+    public void flush() {
+        if (buffer != null) {
+            buffer.endFrame(cycles - frameStart);
+            sampleRing.write(batch, 0, buffer.read(batch, 0, batch.length));
+        }
+        frameStart = cycles;
+    }
+
+    /**
+     * Copies the state of another APU, for a fork of its console.The samples of the other APU are not copied, and this
+     * one only makes its own once its ring buffer is asked for.
+     *
+     * @param audioProcessor
+     *         The APU
+     */
+    public void copyFrom(@NotNull AudioProcessor audioProcessor) {
+        firstPulse.copyFrom(audioProcessor.firstPulse);
+        secondPulse.copyFrom(audioProcessor.secondPulse);
+        triangle.copyFrom(audioProcessor.triangle);
+        noise.copyFrom(audioProcessor.noise);
+        deltaModulation.copyFrom(audioProcessor.deltaModulation);
+        cycles = audioProcessor.cycles;
+        fiveStepMode = audioProcessor.fiveStepMode;
+        interruptInhibited = audioProcessor.interruptInhibited;
+        frameInterruptRequested = audioProcessor.frameInterruptRequested;
+        frameStep = audioProcessor.frameStep;
+        frameCycles = audioProcessor.frameCycles;
+        interruptAsserted = audioProcessor.interruptAsserted;
+        sampleRate = audioProcessor.sampleRate;
+        batchCycles = audioProcessor.batchCycles;
+        frameStart = cycles;
+        level = audioProcessor.level;
+        if (buffer != null) {
+            buffer.clear();
+            buffer.addDelta(0, level);
+        }
+    }
+
+    /**
+     * Writes the state of the APU at the position of the buffer, for a save state.The samples are not saved.
+     *
+     * @param buffer
+     *         The buffer, with at least {@link #STATE_SIZE} bytes remaining
+     */
+    public void save(@NotNull ByteBuffer buffer) {
+        firstPulse.save(buffer);
+        secondPulse.save(buffer);
+        triangle.save(buffer);
+        noise.save(buffer);
+        deltaModulation.save(buffer);
+        buffer.putLong(cycles).put((byte) (fiveStepMode ? 1 : 0)).put((byte) (interruptInhibited ? 1 : 0));
+        buffer.put((byte) (frameInterruptRequested ? 1 : 0)).putInt(frameStep).putInt(frameCycles);
+        buffer.put((byte) (interruptAsserted ? 1 : 0)).putInt(level);
+    }
+
+    /**
+     * Reads the state of the APU written by {@link #save(ByteBuffer)} at the position of the buffer.The samples up to
+     * now are written to the ring buffer first, and the interrupt line of the CPU is set to the one of the state.
+     *
+     * @param buffer
+     *         The buffer, with at least {@link #STATE_SIZE} bytes remaining
+     */
+    public void load(@NotNull ByteBuffer buffer) {
+        flush();
+        firstPulse.load(buffer);
+        secondPulse.load(buffer);
+        triangle.load(buffer);
+        noise.load(buffer);
+        deltaModulation.load(buffer);
+        cycles = buffer.getLong();
+        fiveStepMode = buffer.get() != 0;
+        interruptInhibited = buffer.get() != 0;
+        frameInterruptRequested = buffer.get() != 0;
+        frameStep = buffer.getInt();
+        frameCycles = buffer.getInt();
+        interruptAsserted = buffer.get() != 0;
+        level = buffer.getInt();
+        frameStart = cycles;
+        if (this.buffer != null) {
+            this.buffer.clear();
+            this.buffer.addDelta(0, level);
+        }
+        console.getCentralProcessor().setInterruptLines(CentralProcessor.APU_INTERRUPT, interruptAsserted);
+    }
+
+    private static BandLimitedBuffer newBuffer(int sampleRate) {
+        final double clockRate = (double) MasterClock.NTSC_FREQUENCY / MasterClock.CPU_DIVIDER;
+        return new BandLimitedBuffer(clockRate, sampleRate, BATCH_SIZE * 2);
+    }
+
+    private static long computeBatchCycles(int sampleRate) {
+        return BATCH_SIZE * MasterClock.NTSC_FREQUENCY / ((long) MasterClock.CPU_DIVIDER * sampleRate);
+    }
+
+    /**
+     * Returns the number of cycles until the output of a channel may change
+     */
+    private long getCyclesUntilChange() {
+        long cycles = Math.min(firstPulse.getCyclesUntilChange(), secondPulse.getCyclesUntilChange());
+        cycles = Math.min(cycles, Math.min(triangle.getCyclesUntilChange(), noise.getCyclesUntilChange()));
+        return Math.min(cycles, deltaModulation.getCyclesUntilChange());
+    }
+
+    private void advance(long cycles) {
+        if (cycles == 0) {
+            return;
+        }
+        firstPulse.advance(cycles);
+        secondPulse.advance(cycles);
+        triangle.advance(cycles);
+        noise.advance(cycles);
+        deltaModulation.advance(cycles, console.getCompleteMemory());
+        frameCycles += cycles;
+        this.cycles += cycles;
+    }
+
+    private int getStepCycles() {
+        return (fiveStepMode ? fiveSteps : fourSteps)[frameStep];
+    }
+
+    private void clockFrameCounter() {
+        final int[] steps = fiveStepMode ? fiveSteps : fourSteps;
+        final boolean last = frameStep == steps.length - 1;
+        //the fourth step of the five step sequence clocks nothing
+        if (frameStep != 3 || ! fiveStepMode) {
+            clockQuarterFrame();
+            if (frameStep == 1 || last) {
+                clockHalfFrame();
+            }
+        }
+        if (last) {
+            if (! fiveStepMode && ! interruptInhibited) {
+                frameInterruptRequested = true;
+            }
+            frameStep = 0;
+            frameCycles -= fiveStepMode ? FIVE_STEP_PERIOD : FOUR_STEP_PERIOD;
+        } else {
+            frameStep++;
+        }
+    }
+
+    private void clockQuarterFrame() {
+        firstPulse.clockQuarterFrame();
+        secondPulse.clockQuarterFrame();
+        triangle.clockQuarterFrame();
+        noise.clockQuarterFrame();
+    }
+
+    private void clockHalfFrame() {
+        firstPulse.clockHalfFrame();
+        secondPulse.clockHalfFrame();
+        triangle.clockHalfFrame();
+        noise.clockHalfFrame();
+    }
+
+    /**
+     * Mixes the outputs of the channels, and adds the change of the mix to the band-limited buffer
+     */
+    private void updateLevel() {
+        final int pulses = firstPulse.getOutput() + secondPulse.getOutput();
+        final int others = 3 * triangle.getOutput() + 2 * noise.getOutput() + deltaModulation.getOutput();
+        final int level = pulseLevels[pulses] + otherLevels[others];
+        if (level != this.level) {
+            if (buffer != null) {
+                buffer.addDelta(cycles - frameStart, level - this.level);
+            }
+            this.level = level;
+        }
+    }
+
+    private void writeStatus(int value) {
+        firstPulse.setEnabled((value & 0x01) != 0);
+        secondPulse.setEnabled((value & 0x02) != 0);
+        triangle.setEnabled((value & 0x04) != 0);
+        noise.setEnabled((value & 0x08) != 0);
+        deltaModulation.setEnabled((value & 0x10) != 0, console.getCompleteMemory());
+    }
+
+    private void writeFrameCounter(int value) {
+        fiveStepMode = (value & 0x80) != 0;
+        interruptInhibited = (value & 0x40) != 0;
+        if (interruptInhibited) {
+            frameInterruptRequested = false;
+        }
+        //the sequence restarts;the five step one clocks everything at once
+        frameStep = 0;
+        frameCycles = 0;
+        if (fiveStepMode) {
+            clockQuarterFrame();
+            clockHalfFrame();
+        }
+    }
+
+    /**
+     * Copies a page of the memory of the CPU to the OAM of the PPU through its $2004 register, and stalls the CPU for
+     * the 513 cycles this takes, 514 on odd cycles
+     */
+    private void copyToObjectAttributeMemory(int page) {
+        final Memory memory = console.getCompleteMemory();
+        final PictureProcessor pictureProcessor = console.getPictureProcessor();
+        for (int i = 0; i < 0x100; i++) {
+            pictureProcessor.write(0x2004, memory.read((page << 8) | i));
+        }
+        final CentralProcessor centralProcessor = console.getCentralProcessor();
+        final long cycles = centralProcessor.getCycles();
+        centralProcessor.setCycles(cycles + 513 + (cycles & 1));
+    }
+
+    private void updateInterruptLine() {
+        final boolean asserted = frameInterruptRequested || deltaModulation.interruptRequested;
+        if (asserted != interruptAsserted) {
+            interruptAsserted = asserted;
+            console.getCentralProcessor().setInterruptLines(CentralProcessor.APU_INTERRUPT, asserted);
+        }
+    }
+}
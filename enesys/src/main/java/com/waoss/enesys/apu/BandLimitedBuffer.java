@@ -0,0 +1,206 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.waoss.enesys.apu;
+
+import java.util.Arrays;
+
+/**
+ * <p>Synthesizes band-limited samples from the changes of a signal stamped with the cycles of a much faster clock, like
+ * the 1.79 MHz of the APU.
+ * Each change of amplitude adds a band-limited impulse, taken from tables built once for 32 phases between two
+ * samples, to the samples around it;reading the samples integrates the impulses back into steps.So the signal is
+ * resampled without aliasing in a single pass, at a cost that depends on the number of changes and samples rather than
+ * on the number of cycles.A one pole high-pass filter removes the DC offset of the output.</p>
+ * <p>The cycles are counted from the start of the current frame, which {@link #endFrame(long)} ends, making the
+ * samples before its end available.</p>
+ */
+public final class BandLimitedBuffer {
+
+    /*
+     * The impulses : 32 phases of 16 taps whose sums are exactly 1 << KERNEL_BITS, so the steps settle at their deltas
+     */
+    private static final int PHASE_BITS = 5;
+    private static final int PHASES = 1 << PHASE_BITS;
+    private static final int WIDTH = 16;
+    private static final int KERNEL_BITS = 15;
+    private static final int[][] kernels = new int[PHASES][WIDTH];
+
+    /**
+     * The bits of the fractions of the times, in samples
+     */
+    private static final int TIME_BITS = 32;
+
+    /**
+     * The time constant of the high-pass filter, in a power of two of samples : 512, or about 14 Hz at 44.1 kHz
+     */
+    private static final int HIGH_PASS_BITS = 9;
+
+    static {
+        //a windowed sinc that cuts off a little below the Nyquist frequency, centered between the 8th and 9th taps
+        final double cutoff = 0.9;
+        for (int phase = 0; phase < PHASES; phase++) {
+            final double[] taps = new double[WIDTH];
+            double sum = 0;
+            for (int i = 0; i < WIDTH; i++) {
+                final double x = i - (WIDTH / 2 - 1) - (double) phase / PHASES;
+                final double sinc = x == 0 ? 1 : Math.sin(Math.PI * cutoff * x) / (Math.PI * cutoff * x);
+                final double window = Math.abs(x) >= WIDTH / 2 ? 0 : 0.42 + 0.5 * Math.cos(Math.PI * x / (WIDTH / 2))
+                        + 0.08 * Math.cos(2 * Math.PI * x / (WIDTH / 2));
+                taps[i] = sinc * window;
+                sum += taps[i];
+            }
+            int total = 0;
+            for (int i = 0; i < WIDTH; i++) {
+                kernels[phase][i] = (int) Math.round(taps[i] / sum * (1 << KERNEL_BITS));
+                total += kernels[phase][i];
+            }
+            kernels[phase][WIDTH / 2 - 1] += (1 << KERNEL_BITS) - total;
+        }
+    }
+
+    private final int capacity;
+    private final long[] impulses;
+    private final long factor;
+    private long offset;
+    private int available;
+    private long integrator;
+    private long highPass;
+
+    /**
+     * Creates a buffer
+     *
+     * @param clockRate
+     *         The number of cycles per second
+     * @param sampleRate
+     *         The number of samples per second, lower than the clock rate
+     * @param capacity
+     *         The number of samples a frame can make available
+     */
+    public BandLimitedBuffer(double clockRate, int sampleRate, int capacity) {
+        if (sampleRate <= 0 || sampleRate >= clockRate || capacity <= 0) {
+            throw new IllegalArgumentException("Invalid rates or capacity : " + clockRate + ", " + sampleRate + ", " +
+                    capacity);
+        }
+        this.capacity = capacity;
+        this.impulses = new long[capacity + WIDTH];
+        this.factor = Math.round(sampleRate / clockRate * (1L << TIME_BITS));
+    }
+
+    /**
+     * Adds a change of amplitude
+     *
+     * @param time
+     *         The cycle of the change, from the start of the frame
+     * @param delta
+     *         The change
+     */
+    public void addDelta(long time, int delta) {
+        final long fixed = offset + time * factor;
+        final int index = (int) (fixed >>> TIME_BITS);
+        if (index >= capacity) {
+            throw new IllegalStateException("The frame is longer than the buffer");
+        }
+        final int[] kernel = kernels[(int) (fixed >>> (TIME_BITS - PHASE_BITS)) & (PHASES - 1)];
+        final long[] impulses = this.impulses;
+        for (int i = 0; i < WIDTH; i++) {
+            impulses[index + i] += (long) delta * kernel[i];
+        }
+    }
+
+    /**
+     * Ends the current frame and starts the next one;the samples before the end of the frame become available
+     *
+     * @param time
+     *         The cycle the frame ends at, from its start
+     */
+    public void endFrame(long time) {
+        offset += time * factor;
+        available = (int) (offset >>> TIME_BITS);
+        if (available > capacity) {
+            throw new IllegalStateException("The frame is longer than the buffer");
+        }
+    }
+
+    /**
+     * Returns the number of samples that can be read
+     *
+     * @return the number of samples available
+     */
+    public int available() {
+        return available;
+    }
+
+    /**
+     * Returns the number of samples a given number of cycles from the start of the frame makes available, counting the
+     * ones that already are
+     *
+     * @param time
+     *         The cycles
+     *
+     * @return the number of samples
+     */
+    public int getSamplesAt(long time) {
+        return (int) ((offset + time * factor) >>> TIME_BITS);
+    }
+
+    /**
+     * Reads the samples that are available, at most as many as fit in the given array, and removes them
+     *
+     * @param destination
+     *         The array to read the samples into
+     * @param offset
+     *         The index of the first sample
+     * @param length
+     *         The maximum number of samples
+     *
+     * @return the number of samples read
+     */
+    public int read(short[] destination, int offset, int length) {
+        final int count = Math.min(length, available);
+        final long[] impulses = this.impulses;
+        long integrator = this.integrator;
+        long highPass = this.highPass;
+        for (int i = 0; i < count; i++) {
+            integrator += impulses[i];
+            final long sample = integrator >> KERNEL_BITS;
+            final long filtered = sample - (highPass >> HIGH_PASS_BITS);
+            highPass += filtered;
+            destination[offset + i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, filtered));
+        }
+        this.integrator = integrator;
+        this.highPass = highPass;
+        System.arraycopy(impulses, count, impulses, 0, impulses.length - count);
+        Arrays.fill(impulses, impulses.length - count, impulses.length, 0);
+        available -= count;
+        this.offset -= (long) count << TIME_BITS;
+        return count;
+    }
+
+    /**
+     * Removes the samples and the changes, and starts a frame at the current time
+     */
+    public void clear() {
+        Arrays.fill(impulses, 0);
+        offset &= (1L << TIME_BITS) - 1;
+        available = 0;
+        integrator = 0;
+        highPass = 0;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.waoss.enesys.apu;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A channel of the APU that is silenced by a length counter : a pulse, the triangle or the noise.
+ * The channels are advanced in bulk by {@link #advance(long)}, between the changes of their outputs and the steps of
+ * the frame counter, which clock their length counters, their envelopes and their sweeps.The envelope is here too,
+ * for the pulses and the noise.</p>
+ */
+abstract class Channel {
+
+    /**
+     * The number of bytes {@link #save(ByteBuffer)} writes
+     */
+    static final int STATE_SIZE = 1 + 4 + 1 + 1 + 4 + 1 + 4 + 4;
+
+    /**
+     * The lengths the length counters are loaded with, indexed by the 5 bits written to the registers
+     */
+    private static final int[] lengths = {
+            10, 254, 20, 2, 40, 4, 80, 6, 160, 8, 60, 10, 14, 12, 26, 14,
+            12, 16, 24, 18, 48, 20, 96, 22, 192, 24, 72, 26, 16, 28, 32, 30
+    };
+
+    /*
+     * The length counter, which is halted by the same bit that loops the envelope
+     */
+    private boolean enabled;
+    int length;
+    boolean halted;
+
+    /*
+     * The envelope : a constant volume, or a volume that decays from 15 with a period of the 4 bits written
+     */
+    boolean constantVolume;
+    int volume;
+    private boolean envelopeStarted;
+    private int envelopeDivider;
+    private int decay;
+
+    /**
+     * Advances the timer of the channel
+     *
+     * @param cycles
+     *         The number of CPU cycles
+     */
+    abstract void advance(long cycles);
+
+    /**
+     * Returns the output of the channel
+     *
+     * @return the output, from 0 to 15
+     */
+    abstract int getOutput();
+
+    /**
+     * Returns the number of CPU cycles until the output of the channel may change, unless the frame counter clocks it
+     * or a register is written
+     *
+     * @return the number of cycles, at least 1, or {@link Long#MAX_VALUE} if the output does not change
+     */
+    abstract long getCyclesUntilChange();
+
+    /**
+     * Clocks what the frame counter clocks every quarter of a frame
+     */
+    void clockQuarterFrame() {
+        if (envelopeStarted) {
+            envelopeStarted = false;
+            decay = 15;
+            envelopeDivider = volume;
+        } else if (envelopeDivider == 0) {
+            envelopeDivider = volume;
+            if (decay > 0) {
+                decay--;
+            } else if (halted) {
+                decay = 15;
+            }
+        } else {
+            envelopeDivider--;
+        }
+    }
+
+    /**
+     * Clocks what the frame counter clocks every half of a frame
+     */
+    void clockHalfFrame() {
+        if (length > 0 && ! halted) {
+            length--;
+        }
+    }
+
+    /**
+     * Enables or disables the channel;a disabled channel has its length counter cleared and can not load it
+     */
+    final void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (! enabled) {
+            length = 0;
+        }
+    }
+
+    /**
+     * Loads the length counter from the 5 upper bits of a register, if the channel is enabled
+     */
+    final void loadLength(int value) {
+        if (enabled) {
+            length = lengths[value >>> 3];
+        }
+    }
+
+    /**
+     * Writes the register shared by the envelopes : the halt of the length counter, the constant volume flag and the
+     * volume or the period of the envelope
+     */
+    final void writeEnvelope(int value) {
+        halted = (value & 0x20) != 0;
+        constantVolume = (value & 0x10) != 0;
+        volume = value & 0x0f;
+    }
+
+    /**
+     * Restarts the envelope at the next quarter of a frame
+     */
+    final void restartEnvelope() {
+        envelopeStarted = true;
+    }
+
+    /**
+     * Returns the volume of the envelope
+     */
+    final int getVolume() {
+        return constantVolume ? volume : decay;
+    }
+
+    /**
+     * Copies the state of another channel, for a fork of the console
+     */
+    void copyFrom(Channel channel) {
+        enabled = channel.enabled;
+        length = channel.length;
+        halted = channel.halted;
+        constantVolume = channel.constantVolume;
+        volume = channel.volume;
+        envelopeStarted = channel.envelopeStarted;
+        envelopeDivider = channel.envelopeDivider;
+        decay = channel.decay;
+    }
+
+    /**
+     * Writes the state of the channel, for a save state
+     */
+    void save(ByteBuffer buffer) {
+        buffer.put((byte) (enabled ? 1 : 0)).putInt(length).put((byte) (halted ? 1 : 0));
+        buffer.put((byte) (constantVolume ? 1 : 0)).putInt(volume);
+        buffer.put((byte) (envelopeStarted ? 1 : 0)).putInt(envelopeDivider).putInt(decay);
+    }
+
+    /**
+     * Reads the state of the channel written by {@link #save(ByteBuffer)}
+     */
+    void load(ByteBuffer buffer) {
+        enabled = buffer.get() != 0;
+        length = buffer.getInt();
+        halted = buffer.get() != 0;
+        constantVolume = buffer.get() != 0;
+        volume = buffer.getInt();
+        envelopeStarted = buffer.get() != 0;
+        envelopeDivider = buffer.getInt();
+        decay = buffer.getInt();
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.waoss.enesys.apu;
+
+import com.waoss.enesys.mem.Memory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>The delta modulation channel, the DMC : a 7 bit output level that a sample of 1 bit deltas read from the memory
+ * of the CPU moves up and down by 2.
+ * It interrupts the CPU when a sample that does not loop has been read, at a cycle that is known as soon as the sample
+ * starts, see {@link #getCyclesUntilInterrupt()}.</p>
+ */
+final class DeltaModulationChannel {
+
+    /**
+     * The number of bytes {@link #save(ByteBuffer)} writes
+     */
+    static final int STATE_SIZE = 1 + 1 + 4 + 8 + 4 + 4 + 4 + 4 + 4 + 4 + 1 + 4 + 4 + 1 + 1;
+
+    /**
+     * The periods of the NTSC timer in CPU cycles, indexed by the 4 bits written to the register
+     */
+    private static final int[] periods = {
+            428, 380, 340, 320, 286, 254, 226, 214, 190, 160, 142, 128, 106, 84, 72, 54
+    };
+
+    private boolean interruptEnabled;
+    private boolean looping;
+    private int period = periods[0];
+    private long timer = periods[0];
+    private int level;
+
+    private int sampleAddress = 0xc000;
+    private int sampleLength = 1;
+    private int currentAddress;
+    private int bytesRemaining;
+
+    /*
+     * The sample buffer and the output unit, which shifts out its 8 bits
+     */
+    private int buffer;
+    private boolean bufferFull;
+    private int shiftRegister;
+    private int bitsRemaining = 8;
+    private boolean silenced = true;
+
+    boolean interruptRequested;
+
+    /**
+     * Writes one of the 4 registers of the channel
+     *
+     * @param register
+     *         The register, from 0 to 3
+     * @param value
+     *         The value
+     */
+    void write(int register, int value) {
+        switch (register) {
+            case 0:
+                interruptEnabled = (value & 0x80) != 0;
+                looping = (value & 0x40) != 0;
+                period = periods[value & 0x0f];
+                if (! interruptEnabled) {
+                    interruptRequested = false;
+                }
+                break;
+            case 1:
+                level = value & 0x7f;
+                break;
+            case 2:
+                sampleAddress = 0xc000 | (value << 6);
+                break;
+            default:
+                sampleLength = (value << 4) + 1;
+                break;
+        }
+    }
+
+    /**
+     * Starts the sample again if it is over, or stops it
+     *
+     * @param enabled
+     *         false to stop the sample
+     * @param memory
+     *         The memory of the CPU, the first byte of the sample is read from
+     */
+    void setEnabled(boolean enabled, Memory memory) {
+        interruptRequested = false;
+        if (! enabled) {
+            bytesRemaining = 0;
+        } else if (bytesRemaining == 0) {
+            currentAddress = sampleAddress;
+            bytesRemaining = sampleLength;
+            fill(memory);
+        }
+    }
+
+    /**
+     * Returns true if bytes of the sample remain to be read
+     */
+    boolean isActive() {
+        return bytesRemaining > 0;
+    }
+
+    /**
+     * Advances the timer, reading the bytes of the sample as the output unit needs them
+     *
+     * @param cycles
+     *         The number of CPU cycles
+     * @param memory
+     *         The memory of the CPU
+     */
+    void advance(long cycles, Memory memory) {
+        while (cycles >= timer) {
+            cycles -= timer;
+            timer = period;
+            if (! silenced) {
+                if ((shiftRegister & 1) != 0) {
+                    if (level <= 125) {
+                        level += 2;
+                    }
+                } else if (level >= 2) {
+                    level -= 2;
+                }
+            }
+            shiftRegister >>>= 1;
+            if (-- bitsRemaining == 0) {
+                bitsRemaining = 8;
+                silenced = ! bufferFull;
+                if (bufferFull) {
+                    shiftRegister = buffer;
+                    bufferFull = false;
+                    fill(memory);
+                }
+            }
+        }
+        timer -= cycles;
+    }
+
+    /**
+     * Returns the number of CPU cycles until the channel interrupts the CPU, or {@link Long#MAX_VALUE} if it will not
+     * unless a register is written
+     *
+     * @return the number of cycles until the interrupt
+     */
+    long getCyclesUntilInterrupt() {
+        if (! interruptEnabled || looping || bytesRemaining == 0 || interruptRequested) {
+            return Long.MAX_VALUE;
+        }
+        //the buffer is full, and the next byte is read when the output unit empties it
+        return timer + (bitsRemaining - 1) * (long) period + (bytesRemaining - 1) * 8L * period;
+    }
+
+    /**
+     * Returns the number of CPU cycles until the output level may change, unless a register is written
+     *
+     * @return the number of cycles, at least 1, or {@link Long#MAX_VALUE} if the output does not change
+     */
+    long getCyclesUntilChange() {
+        if (! silenced) {
+            return timer;
+        }
+        //the bits of the buffer are shifted out once the output unit starts its next cycle
+        return bufferFull ? timer + (bitsRemaining - 1) * (long) period : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the output level
+     *
+     * @return the output, from 0 to 127
+     */
+    int getOutput() {
+        return level;
+    }
+
+    private void fill(Memory memory) {
+        if (bufferFull || bytesRemaining == 0) {
+            return;
+        }
+        buffer = memory.read(currentAddress);
+        bufferFull = true;
+        currentAddress = currentAddress == 0xffff ? 0x8000 : currentAddress + 1;
+        if (-- bytesRemaining == 0) {
+            if (looping) {
+                currentAddress = sampleAddress;
+                bytesRemaining = sampleLength;
+            } else if (interruptEnabled) {
+                interruptRequested = true;
+            }
+        }
+    }
+
+    /**
+     * Copies the state of another channel, for a fork of the console
+     */
+    void copyFrom(DeltaModulationChannel channel) {
+        interruptEnabled = channel.interruptEnabled;
+        looping = channel.looping;
+        period = channel.period;
+        timer = channel.timer;
+        level = channel.level;
+        sampleAddress = channel.sampleAddress;
+        sampleLength = channel.sampleLength;
+        currentAddress = channel.currentAddress;
+        bytesRemaining = channel.bytesRemaining;
+        buffer = channel.buffer;
+        bufferFull = channel.bufferFull;
+        shiftRegister = channel.shiftRegister;
+        bitsRemaining = channel.bitsRemaining;
+        silenced = channel.silenced;
+        interruptRequested = channel.interruptRequested;
+    }
+
+    /**
+     * Writes the state of the channel, for a save state
+     */
+    void save(ByteBuffer buffer) {
+        buffer.put((byte) (interruptEnabled ? 1 : 0)).put((byte) (looping ? 1 : 0)).putInt(period).putLong(timer);
+        buffer.putInt(level).putInt(sampleAddress).putInt(sampleLength).putInt(currentAddress).putInt(bytesRemaining);
+        buffer.putInt(this.buffer).put((byte) (bufferFull ? 1 : 0)).putInt(shiftRegister).putInt(bitsRemaining);
+        buffer.put((byte) (silenced ? 1 : 0)).put((byte) (interruptRequested ? 1 : 0));
+    }
+
+    /**
+     * Reads the state of the channel written by {@link #save(ByteBuffer)}
+     */
+    void load(ByteBuffer buffer) {
+        interruptEnabled = buffer.get() != 0;
+        looping = buffer.get() != 0;
+        period = buffer.getInt();
+        timer = buffer.getLong();
+        level = buffer.getInt();
+        sampleAddress = buffer.getInt();
+        sampleLength = buffer.getInt();
+        currentAddress = buffer.getInt();
+        bytesRemaining = buffer.getInt();
+        this.buffer = buffer.getInt();
+        bufferFull = buffer.get() != 0;
+        shiftRegister = buffer.getInt();
+        bitsRemaining = buffer.getInt();
+        silenced = buffer.get() != 0;
+        interruptRequested = buffer.get() != 0;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.waoss.enesys.apu;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Plays the samples of a {@link SampleRing} on a {@link SourceDataLine} of the default mixer.
+ * A daemon thread drains the ring buffer into the line, waiting on the line rather than on the thread that runs the
+ * console, and sleeping for a millisecond when the ring buffer is empty.</p>
+ *
+ * @see AudioProcessor#getSampleRing()
+ */
+public final class LineOutput implements AutoCloseable {
+
+    /**
+     * The number of samples copied from the ring buffer to the line at once
+     */
+    private static final int CHUNK_SIZE = 512;
+
+    @NotNull
+    private final SampleRing sampleRing;
+    @NotNull
+    private final SourceDataLine line;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Opens a line for the samples of an APU and starts playing them
+     *
+     * @param audioProcessor
+     *         The APU
+     *
+     * @throws LineUnavailableException
+     *         If there is no line for 16 bit mono samples at the rate of the APU
+     */
+    public LineOutput(@NotNull AudioProcessor audioProcessor) throws LineUnavailableException {
+        this(audioProcessor.getSampleRing(), audioProcessor.getSampleRate());
+    }
+
+    /**
+     * Opens a line and starts playing the samples of a ring buffer
+     *
+     * @param sampleRing
+     *         The ring buffer, which must not have another consumer
+     * @param sampleRate
+     *         The number of samples per second
+     *
+     * @throws LineUnavailableException
+     *         If there is no line for 16 bit mono samples at this rate
+     */
+    public LineOutput(@NotNull SampleRing sampleRing, int sampleRate) throws LineUnavailableException {
+        this.sampleRing = sampleRing;
+        final AudioFormat format = new AudioFormat(sampleRate, 16, 1, true, false);
+        this.line = AudioSystem.getSourceDataLine(format);
+        line.open(format, CHUNK_SIZE * 2 * 8);
+        line.start();
+        this.thread = new Thread(this::drain, "Enesys audio");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops playing and closes the line
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        line.stop();
+        line.close();
+    }
+
+    private void drain() {
+        final short[] samples = new short[CHUNK_SIZE];
+        final byte[] bytes = new byte[CHUNK_SIZE * 2];
+        while (running) {
+            final int count = sampleRing.read(samples, 0, samples.length);
+            if (count == 0) {
+                LockSupport.parkNanos(1_000_000L);
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                bytes[2 * i] = (byte) samples[i];
+                bytes[2 * i + 1] = (byte) (samples[i] >> 8);
+            }
+            line.write(bytes, 0, count * 2);
+        }
+    }
+}
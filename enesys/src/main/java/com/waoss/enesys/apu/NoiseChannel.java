@@ -0,0 +1,128 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.waoss.enesys.apu;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>The noise channel : the lowest bit of a 15 bit linear feedback shift register, with an envelope.
+ * The register is shifted every period of the timer, at least 4 CPU cycles, so unlike the other channels advancing it
+ * takes a step per period.</p>
+ */
+final class NoiseChannel extends Channel {
+
+    /**
+     * The number of bytes {@link #save(ByteBuffer)} writes
+     */
+    static final int STATE_SIZE = Channel.STATE_SIZE + 4 + 8 + 1 + 4;
+
+    /**
+     * The periods of the NTSC timer in CPU cycles, indexed by the 4 bits written to the register
+     */
+    private static final int[] periods = {
+            4, 8, 16, 32, 64, 96, 128, 160, 202, 254, 380, 508, 762, 1016, 2034, 4068
+    };
+
+    private int period = periods[0];
+    private long timer = periods[0];
+    private boolean shortMode;
+    private int shiftRegister = 1;
+
+    /**
+     * Writes one of the 4 registers of the channel
+     *
+     * @param register
+     *         The register, from 0 to 3;the second one is not used
+     * @param value
+     *         The value
+     */
+    void write(int register, int value) {
+        switch (register) {
+            case 0:
+                writeEnvelope(value);
+                break;
+            case 2:
+                shortMode = (value & 0x80) != 0;
+                period = periods[value & 0x0f];
+                break;
+            case 3:
+                loadLength(value);
+                restartEnvelope();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    void advance(long cycles) {
+        while (cycles >= timer) {
+            cycles -= timer;
+            timer = period;
+            final int feedback = (shiftRegister ^ (shiftRegister >>> (shortMode ? 6 : 1))) & 1;
+            shiftRegister = (shiftRegister >>> 1) | (feedback << 14);
+        }
+        timer -= cycles;
+    }
+
+    @Override
+    int getOutput() {
+        if (length == 0 || (shiftRegister & 1) != 0) {
+            return 0;
+        }
+        return getVolume();
+    }
+
+    @Override
+    long getCyclesUntilChange() {
+        if (length == 0 || getVolume() == 0) {
+            return Long.MAX_VALUE;
+        }
+        //the next 14 outputs are the bits already in the register
+        final int changes = (shiftRegister ^ (shiftRegister >>> 1)) & 0x3fff;
+        final int steps = changes == 0 ? 14 : Integer.numberOfTrailingZeros(changes) + 1;
+        return timer + (steps - 1) * (long) period;
+    }
+
+    @Override
+    void copyFrom(Channel channel) {
+        super.copyFrom(channel);
+        final NoiseChannel noise = (NoiseChannel) channel;
+        period = noise.period;
+        timer = noise.timer;
+        shortMode = noise.shortMode;
+        shiftRegister = noise.shiftRegister;
+    }
+
+    @Override
+    void save(ByteBuffer buffer) {
+        super.save(buffer);
+        buffer.putInt(period).putLong(timer).put((byte) (shortMode ? 1 : 0)).putInt(shiftRegister);
+    }
+
+    @Override
+    void load(ByteBuffer buffer) {
+        super.load(buffer);
+        period = buffer.getInt();
+        timer = buffer.getLong();
+        shortMode = buffer.get() != 0;
+        shiftRegister = buffer.getInt();
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.waoss.enesys.apu;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>One of the two pulse channels : a square wave of 4 duty cycles, with an envelope and a sweep that bends its
+ * period.
+ * Its sequencer steps every 2 * (period + 1) CPU cycles, so its timer is advanced in constant time however many
+ * cycles it is advanced by.</p>
+ */
+final class PulseChannel extends Channel {
+
+    /**
+     * The number of bytes {@link #save(ByteBuffer)} writes
+     */
+    static final int STATE_SIZE = Channel.STATE_SIZE + 4 + 4 + 4 + 8 + 1 + 4 + 1 + 4 + 4 + 1;
+
+    /**
+     * The 8 steps of each of the duty cycles, as bits from the first step in the lowest one
+     */
+    private static final int[] duties = {0b00000010, 0b00000110, 0b00011110, 0b11111001};
+
+    /**
+     * The first pulse negates the change of the sweep in ones' complement, the second one in two's complement
+     */
+    private final boolean onesComplement;
+
+    private int duty;
+    private int step;
+    private int period;
+    private long timer = 2;
+
+    private boolean sweepEnabled;
+    private int sweepPeriod;
+    private boolean sweepNegated;
+    private int sweepShift;
+    private int sweepDivider;
+    private boolean sweepReloaded;
+
+    PulseChannel(boolean onesComplement) {
+        this.onesComplement = onesComplement;
+    }
+
+    /**
+     * Writes one of the 4 registers of the channel
+     *
+     * @param register
+     *         The register, from 0 to 3
+     * @param value
+     *         The value
+     */
+    void write(int register, int value) {
+        switch (register) {
+            case 0:
+                duty = value >>> 6;
+                writeEnvelope(value);
+                break;
+            case 1:
+                sweepEnabled = (value & 0x80) != 0;
+                sweepPeriod = (value >>> 4) & 7;
+                sweepNegated = (value & 0x08) != 0;
+                sweepShift = value & 7;
+                sweepReloaded = true;
+                break;
+            case 2:
+                period = (period & 0x700) | value;
+                break;
+            default:
+                period = (period & 0xff) | ((value & 7) << 8);
+                loadLength(value);
+                restartEnvelope();
+                step = 0;
+                break;
+        }
+    }
+
+    @Override
+    void advance(long cycles) {
+        if (cycles < timer) {
+            timer -= cycles;
+            return;
+        }
+        final long cyclesPerStep = 2L * (period + 1);
+        cycles -= timer;
+        step = (int) ((step + 1 + cycles / cyclesPerStep) & 7);
+        timer = cyclesPerStep - cycles % cyclesPerStep;
+    }
+
+    @Override
+    int getOutput() {
+        if (length == 0 || isMuted() || ((duties[duty] >>> step) & 1) == 0) {
+            return 0;
+        }
+        return getVolume();
+    }
+
+    @Override
+    long getCyclesUntilChange() {
+        if (length == 0 || isMuted() || getVolume() == 0) {
+            return Long.MAX_VALUE;
+        }
+        //the steps of the duty cycle until the next one with the other output
+        final int bits = duties[duty];
+        final int output = (bits >>> step) & 1;
+        int steps = 1;
+        while (((bits >>> ((step + steps) & 7)) & 1) == output) {
+            steps++;
+        }
+        return timer + (steps - 1) * 2L * (period + 1);
+    }
+
+    @Override
+    void clockHalfFrame() {
+        super.clockHalfFrame();
+        if (sweepDivider == 0 && sweepEnabled && sweepShift > 0 && ! isMuted()) {
+            period = getSweepTarget();
+        }
+        if (sweepDivider == 0 || sweepReloaded) {
+            sweepDivider = sweepPeriod;
+            sweepReloaded = false;
+        } else {
+            sweepDivider--;
+        }
+    }
+
+    /**
+     * Returns true if the period is too short, or if the sweep would make it too long, even if the sweep is disabled
+     */
+    private boolean isMuted() {
+        return period < 8 || getSweepTarget() > 0x7ff;
+    }
+
+    private int getSweepTarget() {
+        final int change = period >>> sweepShift;
+        if (! sweepNegated) {
+            return period + change;
+        }
+        return onesComplement ? period - change - 1 : period - change;
+    }
+
+    @Override
+    void copyFrom(Channel channel) {
+        super.copyFrom(channel);
+        final PulseChannel pulse = (PulseChannel) channel;
+        duty = pulse.duty;
+        step = pulse.step;
+        period = pulse.period;
+        timer = pulse.timer;
+        sweepEnabled = pulse.sweepEnabled;
+        sweepPeriod = pulse.sweepPeriod;
+        sweepNegated = pulse.sweepNegated;
+        sweepShift = pulse.sweepShift;
+        sweepDivider = pulse.sweepDivider;
+        sweepReloaded = pulse.sweepReloaded;
+    }
+
+    @Override
+    void save(ByteBuffer buffer) {
+        super.save(buffer);
+        buffer.putInt(duty).putInt(step).putInt(period).putLong(timer);
+        buffer.put((byte) (sweepEnabled ? 1 : 0)).putInt(sweepPeriod).put((byte) (sweepNegated ? 1 : 0));
+        buffer.putInt(sweepShift).putInt(sweepDivider).put((byte) (sweepReloaded ? 1 : 0));
+    }
+
+    @Override
+    void load(ByteBuffer buffer) {
+        super.load(buffer);
+        duty = buffer.getInt();
+        step = buffer.getInt();
+        period = buffer.getInt();
+        timer = buffer.getLong();
+        sweepEnabled = buffer.get() != 0;
+        sweepPeriod = buffer.getInt();
+        sweepNegated = buffer.get() != 0;
+        sweepShift = buffer.getInt();
+        sweepDivider = buffer.getInt();
+        sweepReloaded = buffer.get() != 0;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.waoss.enesys.apu;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A ring buffer of 16 bit samples with one producer, the thread that runs the APU, and one consumer, like a {@link
+ * LineOutput} or a headless sink that reads the samples itself.
+ * Neither side locks or allocates : the samples are kept in a {@code short[]} whose size is a power of two, and each
+ * side only writes its own position, which it publishes with an ordered store once the samples are copied.The producer
+ * never waits : the samples that do not fit are dropped, and counted.</p>
+ *
+ * @see AudioProcessor#getSampleRing()
+ */
+public final class SampleRing {
+
+    private final short[] samples;
+    private final int mask;
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicLong readPosition = new AtomicLong();
+    private long dropped;
+
+    /**
+     * Creates a ring buffer
+     *
+     * @param capacity
+     *         The number of samples it holds, rounded up to a power of two
+     */
+    public SampleRing(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity : " + capacity);
+        }
+        final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.samples = new short[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns the number of samples the ring buffer holds
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return samples.length;
+    }
+
+    /**
+     * Writes samples, dropping the ones that do not fit.Only the producer may call this.
+     *
+     * @param source
+     *         The array the samples are in
+     * @param offset
+     *         The index of the first sample
+     * @param length
+     *         The number of samples
+     *
+     * @return the number of samples written
+     */
+    public int write(short[] source, int offset, int length) {
+        final long write = writePosition.get();
+        final int count = (int) Math.min(length, samples.length - (write - readPosition.get()));
+        copy(source, offset, samples, (int) write & mask, count, true);
+        writePosition.lazySet(write + count);
+        dropped += length - count;
+        return count;
+    }
+
+    /**
+     * Reads the samples that are available, at most as many as fit in the given array.Only the consumer may call this.
+     *
+     * @param destination
+     *         The array to read the samples into
+     * @param offset
+     *         The index of the first sample
+     * @param length
+     *         The maximum number of samples
+     *
+     * @return the number of samples read
+     */
+    public int read(short[] destination, int offset, int length) {
+        final long read = readPosition.get();
+        final int count = (int) Math.min(length, writePosition.get() - read);
+        copy(samples, (int) read & mask, destination, offset, count, false);
+        readPosition.lazySet(read + count);
+        return count;
+    }
+
+    /**
+     * Returns the number of samples that can be read
+     *
+     * @return the number of samples available
+     */
+    public int available() {
+        return (int) (writePosition.get() - readPosition.get());
+    }
+
+    /**
+     * Returns the number of samples the producer dropped because the ring buffer was full.Only the producer may call
+     * this.
+     *
+     * @return the number of samples dropped
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Copies samples to or from the ring, in two parts if they wrap around its end
+     */
+    private void copy(short[] source, int sourceIndex, short[] destination, int destinationIndex, int count,
+                      boolean intoRing) {
+        final int ringIndex = intoRing ? destinationIndex : sourceIndex;
+        final int first = Math.min(count, samples.length - ringIndex);
+        System.arraycopy(source, sourceIndex, destination, destinationIndex, first);
+        if (first < count) {
+            if (intoRing) {
+                System.arraycopy(source, sourceIndex + first, destination, 0, count - first);
+            } else {
+                System.arraycopy(source, 0, destination, destinationIndex + first, count - first);
+            }
+        }
+    }
+}
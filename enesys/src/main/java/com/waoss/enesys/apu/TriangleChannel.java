@@ -0,0 +1,143 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.waoss.enesys.apu;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>The triangle channel : a triangle wave of 32 steps, silenced by a linear counter as well as by its length
+ * counter.
+ * Its sequencer steps every period + 1 CPU cycles while both counters are not zero, so its timer is advanced in
+ * constant time however many cycles it is advanced by.The sequencer is held at the ultrasonic periods below 2, which
+ * games only use to silence the channel.</p>
+ */
+final class TriangleChannel extends Channel {
+
+    /**
+     * The number of bytes {@link #save(ByteBuffer)} writes
+     */
+    static final int STATE_SIZE = Channel.STATE_SIZE + 4 + 4 + 8 + 4 + 4 + 1;
+
+    private int period;
+    private int step;
+    private long timer = 1;
+
+    private int linearCounter;
+    private int linearReload;
+    private boolean linearReloaded;
+
+    /**
+     * Writes one of the 4 registers of the channel
+     *
+     * @param register
+     *         The register, from 0 to 3;the second one is not used
+     * @param value
+     *         The value
+     */
+    void write(int register, int value) {
+        switch (register) {
+            case 0:
+                //the same bit controls the linear counter and halts the length counter
+                halted = (value & 0x80) != 0;
+                linearReload = value & 0x7f;
+                break;
+            case 2:
+                period = (period & 0x700) | value;
+                break;
+            case 3:
+                period = (period & 0xff) | ((value & 7) << 8);
+                loadLength(value);
+                linearReloaded = true;
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    void advance(long cycles) {
+        if (cycles < timer) {
+            timer -= cycles;
+            return;
+        }
+        final long cyclesPerStep = period + 1;
+        cycles -= timer;
+        timer = cyclesPerStep - cycles % cyclesPerStep;
+        if (isStepping()) {
+            step = (int) ((step + 1 + cycles / cyclesPerStep) & 31);
+        }
+    }
+
+    @Override
+    long getCyclesUntilChange() {
+        return isStepping() ? timer : Long.MAX_VALUE;
+    }
+
+    private boolean isStepping() {
+        return length > 0 && linearCounter > 0 && period >= 2;
+    }
+
+    @Override
+    int getOutput() {
+        return step < 16 ? 15 - step : step - 16;
+    }
+
+    @Override
+    void clockQuarterFrame() {
+        if (linearReloaded) {
+            linearCounter = linearReload;
+        } else if (linearCounter > 0) {
+            linearCounter--;
+        }
+        if (! halted) {
+            linearReloaded = false;
+        }
+    }
+
+    @Override
+    void copyFrom(Channel channel) {
+        super.copyFrom(channel);
+        final TriangleChannel triangle = (TriangleChannel) channel;
+        period = triangle.period;
+        step = triangle.step;
+        timer = triangle.timer;
+        linearCounter = triangle.linearCounter;
+        linearReload = triangle.linearReload;
+        linearReloaded = triangle.linearReloaded;
+    }
+
+    @Override
+    void save(ByteBuffer buffer) {
+        super.save(buffer);
+        buffer.putInt(period).putInt(step).putLong(timer);
+        buffer.putInt(linearCounter).putInt(linearReload).put((byte) (linearReloaded ? 1 : 0));
+    }
+
+    @Override
+    void load(ByteBuffer buffer) {
+        super.load(buffer);
+        period = buffer.getInt();
+        step = buffer.getInt();
+        timer = buffer.getLong();
+        linearCounter = buffer.getInt();
+        linearReload = buffer.getInt();
+        linearReloaded = buffer.get() != 0;
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * <p>This package contains the APU, the audio processing unit of the NES : the two pulse channels, the triangle, the
+ * noise channel and the DMC of the 2A03 and the frame counter that clocks them, programmed by the CPU through the
+ * registers at $4000-$4017.
+ * Its samples go to a lock-free ring buffer that a {@link com.waoss.enesys.apu.LineOutput} plays, or that a headless
+ * sink reads with {@link com.waoss.enesys.apu.SampleRing#read(short[], int, int)}.</p>
+ *
+ * @see com.waoss.enesys.apu.AudioProcessor
+ */
+
+package com.waoss.enesys.apu;
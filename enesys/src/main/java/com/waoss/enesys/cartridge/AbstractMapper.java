@@ -0,0 +1,358 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cartridge;
+
+import com.waoss.enesys.mem.CompleteMemory;
+import com.waoss.enesys.mem.Memory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>The base of the mappers.
+ * It maps the PRG-RAM at $6000-$7FFF and itself at $8000-$FFFF, as the device that gets the writes to the PRG-ROM.The
+ * mappers write their registers in {@link #writeRegister(int, int)} and switch banks in {@link #updateBanks()} with
+ * {@link #mapPrg(int, int, int)} and {@link #mapChr(int, int, int)}, which only change the pages that point to another
+ * bank and never copy anything.</p>
+ * <p>The banks are numbered in units of their size and wrap around the size of the ROM, so negative banks count from
+ * the end : -1 is the last bank.</p>
+ */
+public abstract class AbstractMapper implements Mapper, Memory, Cloneable {
+
+    /**
+     * The size of the slots of PRG-ROM and of CHR the banks are made of
+     */
+    protected static final int PRG_SLOT_SIZE = 0x2000;
+    protected static final int CHR_SLOT_SIZE = 0x0400;
+
+    @NotNull
+    private final Cartridge cartridge;
+    private final ByteBuffer prg;
+    private final boolean chrRam;
+    private ByteBuffer chr;
+    private Mirroring mirroring;
+    private CompleteMemory completeMemory;
+    private Runnable registerListener;
+
+    /*
+     * The offsets of the slots of $8000-$FFFF in the PRG-ROM and of the slots of $0000-$1FFF in the CHR
+     */
+    private int[] prgOffsets = new int[4];
+    private int[] chrOffsets = new int[8];
+
+    protected AbstractMapper(@NotNull Cartridge cartridge) {
+        this.cartridge = cartridge;
+        this.prg = cartridge.getPrg();
+        this.chrRam = cartridge.getChr().capacity() == 0;
+        this.chr = chrRam ? ByteBuffer.allocate(cartridge.getChrRamSize()) : cartridge.getChr();
+        this.mirroring = cartridge.getMirroring();
+        Arrays.fill(prgOffsets, - 1);
+    }
+
+    @NotNull
+    @Override
+    public Cartridge getCartridge() {
+        return cartridge;
+    }
+
+    @Override
+    public void attach(@NotNull CompleteMemory completeMemory) {
+        this.completeMemory = completeMemory;
+        if (cartridge.getPrgRamSize() > 0) {
+            final byte[] prgRam = new byte[Math.max(cartridge.getPrgRamSize(), CompleteMemory.PAGE_SIZE)];
+            for (int page = 0x60; page < 0x80; page += prgRam.length / CompleteMemory.PAGE_SIZE) {
+                completeMemory.mapReadWrite(page, Math.min(prgRam.length / CompleteMemory.PAGE_SIZE, 0x80 - page),
+                        prgRam, 0);
+            }
+        }
+        completeMemory.mapDevice(0x80, 0x80, this);
+        Arrays.fill(prgOffsets, - 1);
+        updateBanks();
+    }
+
+    @NotNull
+    @Override
+    public Mapper fork(@NotNull CompleteMemory completeMemory) {
+        final AbstractMapper fork;
+        try {
+            fork = (AbstractMapper) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        if (chrRam) {
+            final ByteBuffer chr = ByteBuffer.allocate(this.chr.capacity());
+            chr.put(this.chr.duplicate()).clear();
+            fork.chr = chr;
+        }
+        fork.prgOffsets = new int[prgOffsets.length];
+        fork.chrOffsets = chrOffsets.clone();
+        Arrays.fill(fork.prgOffsets, - 1);
+        fork.completeMemory = completeMemory;
+        completeMemory.mapDevice(0x80, 0x80, fork);
+        fork.updateBanks();
+        return fork;
+    }
+
+    @Override
+    public int readCharacter(int address) {
+        return chr.get(chrOffsets[(address >>> 10) & 7] | (address & 0x3ff)) & 0xff;
+    }
+
+    @Override
+    public void writeCharacter(int address, int value) {
+        if (chrRam) {
+            chr.put(chrOffsets[(address >>> 10) & 7] | (address & 0x3ff), (byte) value);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Mirroring getMirroring() {
+        return mirroring;
+    }
+
+    @Override
+    public void setRegisterListener(@Nullable Runnable registerListener) {
+        this.registerListener = registerListener;
+    }
+
+    @Override
+    public int getStateSize() {
+        return 1 + (chrRam ? chr.capacity() : 0) + getRegistersSize();
+    }
+
+    @Override
+    public void save(@NotNull ByteBuffer buffer) {
+        buffer.put((byte) mirroring.ordinal());
+        if (chrRam) {
+            buffer.put(chr.array(), 0, chr.capacity());
+        }
+        saveRegisters(buffer);
+    }
+
+    @Override
+    public void load(@NotNull ByteBuffer buffer) {
+        mirroring = Mirroring.values()[buffer.get()];
+        if (chrRam) {
+            buffer.get(chr.array(), 0, chr.capacity());
+        }
+        loadRegisters(buffer);
+        updateBanks();
+    }
+
+    /**
+     * Sets the mirroring, unless the cartridge has four screens
+     *
+     * @param mirroring
+     *         the mirroring
+     */
+    protected void setMirroring(@NotNull Mirroring mirroring) {
+        if (this.mirroring != Mirroring.FOUR_SCREEN) {
+            this.mirroring = mirroring;
+        }
+    }
+
+    /**
+     * Reads the registers of the mapper;the PRG-ROM is read from its pages, so this is only open bus
+     *
+     * @param address
+     *         The address
+     *
+     * @return 0
+     */
+    @Override
+    public int read(int address) {
+        return 0;
+    }
+
+    @Override
+    public int readWord(int address) {
+        return 0;
+    }
+
+    @Override
+    public int readWordInPage(int address) {
+        return 0;
+    }
+
+    @Override
+    public void readBlock(int address, @NotNull byte[] destination, int offset, int length) {
+        Arrays.fill(destination, offset, offset + length, (byte) 0);
+    }
+
+    /**
+     * Writes a register of the mapper, after telling the register listener
+     *
+     * @param address
+     *         The address, between $8000 and $FFFF
+     * @param value
+     *         The value
+     */
+    @Override
+    public final void write(int address, int value) {
+        final Runnable registerListener = this.registerListener;
+        if (registerListener != null) {
+            registerListener.run();
+        }
+        writeRegister(address, value);
+    }
+
+    /**
+     * Writes the registers of the mapper a byte at a time, after telling the register listener once
+     *
+     * @param address
+     *         The address of the first byte
+     * @param source
+     *         The array
+     * @param offset
+     *         Where the bytes are in the array
+     * @param length
+     *         The number of bytes
+     */
+    @Override
+    public final void writeBlock(int address, @NotNull byte[] source, int offset, int length) {
+        final Runnable registerListener = this.registerListener;
+        if (registerListener != null && length > 0) {
+            registerListener.run();
+        }
+        for (int i = 0; i < length; i++) {
+            writeRegister((address + i) & 0xffff, source[offset + i] & 0xff);
+        }
+    }
+
+    /**
+     * Writes a register of the mapper
+     *
+     * @param address
+     *         The address, between $8000 and $FFFF
+     * @param value
+     *         The value
+     */
+    protected abstract void writeRegister(int address, int value);
+
+    @Override
+    public int size() {
+        return 0x8000;
+    }
+
+    /**
+     * Returns the number of bytes {@link #saveRegisters(ByteBuffer)} writes
+     *
+     * @return the size of the registers
+     */
+    protected int getRegistersSize() {
+        return 0;
+    }
+
+    /**
+     * Writes the registers of the mapper, for a save state
+     *
+     * @param buffer
+     *         The buffer
+     */
+    protected void saveRegisters(@NotNull ByteBuffer buffer) {
+    }
+
+    /**
+     * Reads the registers written by {@link #saveRegisters(ByteBuffer)};the banks are mapped afterwards
+     *
+     * @param buffer
+     *         The buffer
+     */
+    protected void loadRegisters(@NotNull ByteBuffer buffer) {
+    }
+
+    /**
+     * Maps the banks the registers select
+     */
+    protected abstract void updateBanks();
+
+    /**
+     * Returns the number of banks of PRG-ROM of a size
+     *
+     * @param size
+     *         The size of a bank
+     *
+     * @return the number of banks, at least 1
+     */
+    protected int getPrgBankCount(int size) {
+        return Math.max(prg.capacity() / size, 1);
+    }
+
+    /**
+     * Returns the number of banks of CHR of a size
+     *
+     * @param size
+     *         The size of a bank
+     *
+     * @return the number of banks, at least 1
+     */
+    protected int getChrBankCount(int size) {
+        return Math.max(chr.capacity() / size, 1);
+    }
+
+    /**
+     * Maps a bank of PRG-ROM for the CPU
+     *
+     * @param address
+     *         The address it is seen at, a multiple of 8 KiB above $8000
+     * @param size
+     *         The size of the bank, a multiple of 8 KiB
+     * @param bank
+     *         The bank, in units of its size
+     */
+    protected void mapPrg(int address, int size, int bank) {
+        final int offset = Math.floorMod(bank, getPrgBankCount(size)) * size % prg.capacity();
+        final int slot = (address - 0x8000) / PRG_SLOT_SIZE;
+        for (int i = 0; i < size / PRG_SLOT_SIZE; i++) {
+            final int slotOffset = (offset + i * PRG_SLOT_SIZE) % prg.capacity();
+            if (prgOffsets[slot + i] != slotOffset) {
+                prgOffsets[slot + i] = slotOffset;
+                final int firstPage = (address >>> 8) + i * (PRG_SLOT_SIZE >>> 8);
+                if (prg.capacity() >= PRG_SLOT_SIZE) {
+                    completeMemory.mapReadOnly(firstPage, PRG_SLOT_SIZE >>> 8, prg, slotOffset);
+                } else {
+                    // ROMs smaller than a slot are mirrored in it
+                    for (int page = 0; page < PRG_SLOT_SIZE >>> 8; page++) {
+                        completeMemory.mapReadOnly(firstPage + page, 1, prg, (page << 8) % prg.capacity());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps a bank of CHR for the PPU
+     *
+     * @param address
+     *         The address it is seen at, a multiple of 1 KiB below $2000
+     * @param size
+     *         The size of the bank, a multiple of 1 KiB
+     * @param bank
+     *         The bank, in units of its size
+     */
+    protected void mapChr(int address, int size, int bank) {
+        final int offset = Math.floorMod(bank, getChrBankCount(size)) * size;
+        for (int i = 0; i < size / CHR_SLOT_SIZE; i++) {
+            chrOffsets[(address >>> 10) + i] = (offset + i * CHR_SLOT_SIZE) % chr.capacity();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cartridge;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>A cartridge, read from an iNES or NES 2.0 file.
+ * The file is mapped in memory read-only and the PRG-ROM and CHR-ROM are slices of it, so loading a cartridge copies
+ * nothing : the bytes are read from the file by the operating system when the CPU or the PPU first reads them.</p>
+ * <p>The header gives the mapper, the mirroring of the nametables, the sizes of the ROMs and of the RAMs and whether the
+ * PRG-RAM is kept by a battery.A cartridge without CHR-ROM has CHR-RAM.</p>
+ *
+ * @see #createMapper()
+ */
+public final class Cartridge {
+
+    /**
+     * The size of the header
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * The size of the trainer, that is loaded at $7000 by some copiers
+     */
+    public static final int TRAINER_SIZE = 512;
+
+    /**
+     * The unit of the size of the PRG-ROM in the header
+     */
+    public static final int PRG_ROM_UNIT = 0x4000;
+
+    /**
+     * The unit of the size of the CHR-ROM in the header
+     */
+    public static final int CHR_ROM_UNIT = 0x2000;
+
+    /**
+     * The magic number an iNES file starts with : "NES" and an end of file
+     */
+    public static final int MAGIC = 0x4e45531a;
+
+    private final ByteBuffer prg;
+    private final ByteBuffer chr;
+    @Nullable
+    private final ByteBuffer trainer;
+    private final int mapperNumber;
+    private final int submapper;
+    private final Mirroring mirroring;
+    private final boolean battery;
+    private final boolean nes2;
+    private final int prgRamSize;
+    private final int chrRamSize;
+
+    private Cartridge(ByteBuffer prg, ByteBuffer chr, @Nullable ByteBuffer trainer, int mapperNumber, int submapper,
+                      Mirroring mirroring, boolean battery, boolean nes2, int prgRamSize, int chrRamSize) {
+        this.prg = prg;
+        this.chr = chr;
+        this.trainer = trainer;
+        this.mapperNumber = mapperNumber;
+        this.submapper = submapper;
+        this.mirroring = mirroring;
+        this.battery = battery;
+        this.nes2 = nes2;
+        this.prgRamSize = prgRamSize;
+        this.chrRamSize = chrRamSize;
+    }
+
+    /**
+     * Maps a file in memory and reads the cartridge in it
+     *
+     * @param path
+     *         The file
+     *
+     * @return the cartridge
+     *
+     * @throws IOException
+     *         If the file can not be read or is not an iNES file
+     */
+    @NotNull
+    public static Cartridge load(@NotNull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads the cartridge in a buffer, from its position.The ROMs are slices of the buffer, so it must not change.
+     *
+     * @param buffer
+     *         The buffer
+     *
+     * @return the cartridge
+     *
+     * @throws IOException
+     *         If the buffer does not hold an iNES file
+     */
+    @NotNull
+    public static Cartridge parse(@NotNull ByteBuffer buffer) throws IOException {
+        final int start = buffer.position();
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(start) != MAGIC) {
+            throw new IOException("Not an iNES file");
+        }
+        final int flags6 = buffer.get(start + 6) & 0xff;
+        final int flags7 = buffer.get(start + 7) & 0xff;
+        final boolean nes2 = (flags7 & 0x0c) == 0x08;
+        int mapperNumber = (flags6 >>> 4) | (flags7 & 0xf0);
+        int submapper = 0;
+        long prgSize = (buffer.get(start + 4) & 0xff) * (long) PRG_ROM_UNIT;
+        long chrSize = (buffer.get(start + 5) & 0xff) * (long) CHR_ROM_UNIT;
+        int prgRamSize = 0x2000;
+        int chrRamSize = 0x2000;
+        if (nes2) {
+            final int byte8 = buffer.get(start + 8) & 0xff;
+            final int byte9 = buffer.get(start + 9) & 0xff;
+            mapperNumber |= (byte8 & 0x0f) << 8;
+            submapper = byte8 >>> 4;
+            prgSize = romSize(buffer.get(start + 4) & 0xff, byte9 & 0x0f, PRG_ROM_UNIT);
+            chrSize = romSize(buffer.get(start + 5) & 0xff, byte9 >>> 4, CHR_ROM_UNIT);
+            prgRamSize = ramSize(buffer.get(start + 10) & 0x0f) + ramSize((buffer.get(start + 10) & 0xf0) >>> 4);
+            chrRamSize = ramSize(buffer.get(start + 11) & 0x0f) + ramSize((buffer.get(start + 11) & 0xf0) >>> 4);
+        } else if ((buffer.get(start + 8) & 0xff) != 0) {
+            prgRamSize = (buffer.get(start + 8) & 0xff) * 0x2000;
+        }
+        if (prgSize == 0) {
+            throw new IOException("The cartridge has no PRG-ROM");
+        }
+        final boolean hasTrainer = (flags6 & 0x04) != 0;
+        final long prgStart = start + HEADER_SIZE + (hasTrainer ? TRAINER_SIZE : 0);
+        if (prgStart + prgSize + chrSize > buffer.limit()) {
+            throw new EOFException("The cartridge is truncated");
+        }
+        final Mirroring mirroring = (flags6 & 0x08) != 0 ? Mirroring.FOUR_SCREEN :
+                (flags6 & 0x01) != 0 ? Mirroring.VERTICAL : Mirroring.HORIZONTAL;
+        return new Cartridge(slice(buffer, (int) prgStart, (int) prgSize),
+                slice(buffer, (int) (prgStart + prgSize), (int) chrSize),
+                hasTrainer ? slice(buffer, start + HEADER_SIZE, TRAINER_SIZE) : null, mapperNumber, submapper, mirroring,
+                (flags6 & 0x02) != 0, nes2, prgRamSize,
+                chrSize == 0 ? Math.max(chrRamSize, 0x2000) : nes2 ? chrRamSize : 0);
+    }
+
+    /**
+     * Creates the mapper of the cartridge
+     *
+     * @return the mapper
+     *
+     * @throws IOException
+     *         If the mapper is not supported
+     *
+     * @see Mappers
+     */
+    @NotNull
+    public Mapper createMapper() throws IOException {
+        if (! Mappers.isSupported(mapperNumber)) {
+            throw new IOException("Unsupported mapper : " + mapperNumber);
+        }
+        return Mappers.create(this);
+    }
+
+    /**
+     * Returns the PRG-ROM, a read-only slice of the file
+     *
+     * @return the PRG-ROM
+     */
+    @NotNull
+    public ByteBuffer getPrg() {
+        return prg.duplicate();
+    }
+
+    /**
+     * Returns the CHR-ROM, a read-only slice of the file that is empty if the cartridge has CHR-RAM
+     *
+     * @return the CHR-ROM
+     */
+    @NotNull
+    public ByteBuffer getChr() {
+        return chr.duplicate();
+    }
+
+    /**
+     * Returns the trainer
+     *
+     * @return the trainer, or null if the cartridge has none
+     */
+    @Nullable
+    public ByteBuffer getTrainer() {
+        return trainer != null ? trainer.duplicate() : null;
+    }
+
+    public int getMapperNumber() {
+        return mapperNumber;
+    }
+
+    /**
+     * Returns the submapper of a NES 2.0 file
+     *
+     * @return the submapper, 0 for an iNES file
+     */
+    public int getSubmapper() {
+        return submapper;
+    }
+
+    /**
+     * Returns the mirroring the header gives;some mappers change it
+     *
+     * @return the mirroring
+     */
+    @NotNull
+    public Mirroring getMirroring() {
+        return mirroring;
+    }
+
+    /**
+     * Returns true if the PRG-RAM is kept by a battery
+     *
+     * @return true if the cartridge has a battery
+     */
+    public boolean hasBattery() {
+        return battery;
+    }
+
+    /**
+     * Returns true if the file is a NES 2.0 file
+     *
+     * @return true for NES 2.0
+     */
+    public boolean isNes2() {
+        return nes2;
+    }
+
+    /**
+     * Returns the size of the PRG-RAM;iNES files that do not say have 8 KiB
+     *
+     * @return the size of the PRG-RAM
+     */
+    public int getPrgRamSize() {
+        return prgRamSize;
+    }
+
+    /**
+     * Returns the size of the CHR-RAM;at least 8 KiB if the cartridge has no CHR-ROM
+     *
+     * @return the size of the CHR-RAM
+     */
+    public int getChrRamSize() {
+        return chrRamSize;
+    }
+
+    /**
+     * Returns the size of a ROM in a NES 2.0 header, which is either a number of units or, when the high nibble is all
+     * ones, an exponent and a multiplier
+     */
+    private static long romSize(int low, int high, int unit) {
+        if (high == 0x0f) {
+            return (1L << (low >>> 2)) * ((low & 0x03) * 2 + 1);
+        }
+        return ((long) high << 8 | low) * unit;
+    }
+
+    private static int ramSize(int shift) {
+        return shift == 0 ? 0 : 64 << shift;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        final ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        return slice.slice().asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cartridge;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The CNROM : fixed PRG-ROM and a switchable 8 KiB bank of CHR-ROM
+ */
+public class CnromMapper extends AbstractMapper {
+
+    public static final int NUMBER = 3;
+
+    private int bank;
+
+    public CnromMapper(@NotNull Cartridge cartridge) {
+        super(cartridge);
+    }
+
+    @Override
+    public int getNumber() {
+        return NUMBER;
+    }
+
+    @Override
+    protected void writeRegister(int address, int value) {
+        bank = value & 0xff;
+        updateBanks();
+    }
+
+    @Override
+    protected int getRegistersSize() {
+        return 4;
+    }
+
+    @Override
+    protected void saveRegisters(@NotNull ByteBuffer buffer) {
+        buffer.putInt(bank);
+    }
+
+    @Override
+    protected void loadRegisters(@NotNull ByteBuffer buffer) {
+        bank = buffer.getInt();
+    }
+
+    @Override
+    protected void updateBanks() {
+        mapPrg(0x8000, 0x4000, 0);
+        mapPrg(0xc000, 0x4000, 1);
+        mapChr(0x0000, 0x2000, bank);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cartridge;
+
+import com.waoss.enesys.mem.CompleteMemory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>The mapper of a cartridge : the chip that decides which banks of PRG-ROM the CPU sees at $8000-$FFFF and which
+ * banks of CHR the PPU sees at $0000-$1FFF, and that is programmed by writing to the PRG-ROM.
+ * The banks are switched by remapping pages of the {@link CompleteMemory};nothing is copied.</p>
+ * <p>New mappers are made known to {@link Mappers} by their iNES number.Most of them extend {@link AbstractMapper}.</p>
+ */
+public interface Mapper {
+
+    /**
+     * Returns the iNES number of the mapper
+     *
+     * @return the number of the mapper
+     */
+    int getNumber();
+
+    /**
+     * Returns the cartridge the mapper is on
+     *
+     * @return the cartridge
+     */
+    @NotNull
+    Cartridge getCartridge();
+
+    /**
+     * Maps the PRG-ROM, the PRG-RAM and the registers of the mapper in the address space of the CPU
+     *
+     * @param completeMemory
+     *         The memory of the CPU
+     */
+    void attach(@NotNull CompleteMemory completeMemory);
+
+    /**
+     * Returns a copy of the mapper, in the same state, that is attached to a fork of the memory it is attached to.The
+     * PRG-RAM of the fork is left as it was forked.
+     *
+     * @param completeMemory
+     *         The fork of the memory
+     *
+     * @return the copy of the mapper
+     *
+     * @see CompleteMemory#fork()
+     */
+    @NotNull
+    Mapper fork(@NotNull CompleteMemory completeMemory);
+
+    /**
+     * Reads the pattern tables the PPU sees
+     *
+     * @param address
+     *         The address, between $0000 and $1FFF
+     *
+     * @return the value
+     */
+    int readCharacter(int address);
+
+    /**
+     * Writes the pattern tables the PPU sees.Writes to CHR-ROM are ignored.
+     *
+     * @param address
+     *         The address, between $0000 and $1FFF
+     * @param value
+     *         The value
+     */
+    void writeCharacter(int address, int value);
+
+    /**
+     * Returns how the nametables are mirrored now
+     *
+     * @return the mirroring
+     */
+    @NotNull
+    Mirroring getMirroring();
+
+    /**
+     * Sets what the mapper runs before one of its registers is written, like catching the PPU up with the CPU before
+     * the banks, the mirroring or the IRQ counter it sees change
+     *
+     * @param registerListener
+     *         What to run, or null
+     */
+    void setRegisterListener(@Nullable Runnable registerListener);
+
+    /**
+     * Tells the mapper the PPU rendered a scanline, for mappers that count them like the MMC3
+     */
+    default void scanline() {
+    }
+
+    /**
+     * Returns true if the mapper asks the CPU for an IRQ
+     *
+     * @return true if an IRQ is requested
+     */
+    default boolean isInterruptRequested() {
+        return false;
+    }
+
+    /**
+     * Returns how many more calls to {@link #scanline()} it takes for the mapper to request an IRQ, so that the PPU can
+     * predict it
+     *
+     * @return the number of scanlines, or -1 if no IRQ will be requested until a register is written
+     */
+    default int getScanlinesUntilInterrupt() {
+        return - 1;
+    }
+
+    /**
+     * Returns the number of bytes {@link #save(ByteBuffer)} writes, which is the same for every state of the mapper
+     *
+     * @return the size of the state
+     */
+    default int getStateSize() {
+        return 0;
+    }
+
+    /**
+     * Writes the state of the mapper at the position of the buffer, for a save state : its registers, the mirroring and
+     * the CHR-RAM.The PRG-RAM is saved with the memory.
+     *
+     * @param buffer
+     *         The buffer, with at least {@link #getStateSize()} bytes remaining
+     */
+    default void save(@NotNull ByteBuffer buffer) {
+    }
+
+    /**
+     * Reads the state of the mapper written by {@link #save(ByteBuffer)} at the position of the buffer, and maps the
+     * banks it selects
+     *
+     * @param buffer
+     *         The buffer, with at least {@link #getStateSize()} bytes remaining
+     */
+    default void load(@NotNull ByteBuffer buffer) {
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cartridge;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * <p>The mappers enesys knows, by their iNES number.</p>
+ * <p>NROM (0), MMC1 (1), UxROM (2), CNROM (3) and MMC3 (4) are known from the start;others can be registered.</p>
+ */
+public final class Mappers {
+
+    private static final Map<Integer, Function<Cartridge, Mapper>> factories = new ConcurrentHashMap<>();
+
+    static {
+        register(NromMapper.NUMBER, NromMapper::new);
+        register(Mmc1Mapper.NUMBER, Mmc1Mapper::new);
+        register(UxromMapper.NUMBER, UxromMapper::new);
+        register(CnromMapper.NUMBER, CnromMapper::new);
+        register(Mmc3Mapper.NUMBER, Mmc3Mapper::new);
+    }
+
+    private Mappers() {
+    }
+
+    /**
+     * Registers a mapper, replacing the one that had the number
+     *
+     * @param number
+     *         The iNES number
+     * @param factory
+     *         Creates the mapper of a cartridge
+     */
+    public static void register(int number, @NotNull Function<Cartridge, Mapper> factory) {
+        factories.put(number, factory);
+    }
+
+    /**
+     * Returns true if a mapper is registered with the number
+     *
+     * @param number
+     *         The iNES number
+     *
+     * @return true if the mapper is supported
+     */
+    public static boolean isSupported(int number) {
+        return factories.containsKey(number);
+    }
+
+    /**
+     * Creates the mapper of a cartridge
+     *
+     * @param cartridge
+     *         The cartridge
+     *
+     * @return the mapper
+     *
+     * @throws IllegalArgumentException
+     *         If the mapper of the cartridge is not supported
+     */
+    @NotNull
+    public static Mapper create(@NotNull Cartridge cartridge) {
+        final Function<Cartridge, Mapper> factory = factories.get(cartridge.getMapperNumber());
+        if (factory == null) {
+            throw new IllegalArgumentException("Unsupported mapper : " + cartridge.getMapperNumber());
+        }
+        return factory.apply(cartridge);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cartridge;
+
+/**
+ * How the four nametables the PPU addresses at $2000-$2FFF are mapped to the 2 KiB of VRAM of the console, or to the 4
+ * KiB of a cartridge with its own
+ */
+public enum Mirroring {
+
+    /**
+     * $2000 and $2400 are the first table, $2800 and $2C00 the second one
+     */
+    HORIZONTAL(0, 0, 1, 1),
+
+    /**
+     * $2000 and $2800 are the first table, $2400 and $2C00 the second one
+     */
+    VERTICAL(0, 1, 0, 1),
+
+    /**
+     * All four are the first table
+     */
+    SINGLE_SCREEN_LOWER(0, 0, 0, 0),
+
+    /**
+     * All four are the second table
+     */
+    SINGLE_SCREEN_UPPER(1, 1, 1, 1),
+
+    /**
+     * The four are different;the cartridge has 2 KiB of VRAM more
+     */
+    FOUR_SCREEN(0, 1, 2, 3);
+
+    private final int[] tables;
+
+    Mirroring(int... tables) {
+        this.tables = tables;
+    }
+
+    /**
+     * Returns the address in VRAM a nametable address is mirrored to
+     *
+     * @param address
+     *         The address, between $2000 and $3EFF
+     *
+     * @return the address in VRAM, below $0800, or below $1000 for four screens
+     */
+    public int map(int address) {
+        return tables[(address >>> 10) & 3] << 10 | (address & 0x3ff);
+    }
+}
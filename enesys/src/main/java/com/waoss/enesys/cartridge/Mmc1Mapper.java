@@ -0,0 +1,136 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cartridge;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>The MMC1 (SxROM).Its registers are written one bit at a time through a shift register : five writes of bit 0
+ * load the register the address of the last one selects, and a write with bit 7 set resets it.</p>
+ * <p>It switches 16 or 32 KiB of PRG-ROM, 4 or 8 KiB of CHR and the mirroring.</p>
+ */
+public class Mmc1Mapper extends AbstractMapper {
+
+    public static final int NUMBER = 1;
+
+    private int shift = 0x10;
+    private int control = 0x0c;
+    private int characterBank0;
+    private int characterBank1;
+    private int programBank;
+
+    public Mmc1Mapper(@NotNull Cartridge cartridge) {
+        super(cartridge);
+    }
+
+    @Override
+    public int getNumber() {
+        return NUMBER;
+    }
+
+    @Override
+    protected void writeRegister(int address, int value) {
+        if ((value & 0x80) != 0) {
+            shift = 0x10;
+            control |= 0x0c;
+            updateBanks();
+            return;
+        }
+        final boolean full = (shift & 1) != 0;
+        shift = (shift >>> 1) | ((value & 1) << 4);
+        if (full) {
+            switch ((address >>> 13) & 3) {
+                case 0:
+                    control = shift;
+                    break;
+                case 1:
+                    characterBank0 = shift;
+                    break;
+                case 2:
+                    characterBank1 = shift;
+                    break;
+                default:
+                    programBank = shift;
+                    break;
+            }
+            shift = 0x10;
+            updateBanks();
+        }
+    }
+
+    @Override
+    protected int getRegistersSize() {
+        return 5 * 4;
+    }
+
+    @Override
+    protected void saveRegisters(@NotNull ByteBuffer buffer) {
+        buffer.putInt(shift).putInt(control).putInt(characterBank0).putInt(characterBank1).putInt(programBank);
+    }
+
+    @Override
+    protected void loadRegisters(@NotNull ByteBuffer buffer) {
+        shift = buffer.getInt();
+        control = buffer.getInt();
+        characterBank0 = buffer.getInt();
+        characterBank1 = buffer.getInt();
+        programBank = buffer.getInt();
+    }
+
+    @Override
+    protected void updateBanks() {
+        switch (control & 3) {
+            case 0:
+                setMirroring(Mirroring.SINGLE_SCREEN_LOWER);
+                break;
+            case 1:
+                setMirroring(Mirroring.SINGLE_SCREEN_UPPER);
+                break;
+            case 2:
+                setMirroring(Mirroring.VERTICAL);
+                break;
+            default:
+                setMirroring(Mirroring.HORIZONTAL);
+                break;
+        }
+        final int bank = programBank & 0x0f;
+        switch ((control >>> 2) & 3) {
+            case 0:
+            case 1:
+                mapPrg(0x8000, 0x8000, bank >>> 1);
+                break;
+            case 2:
+                mapPrg(0x8000, 0x4000, 0);
+                mapPrg(0xc000, 0x4000, bank);
+                break;
+            default:
+                mapPrg(0x8000, 0x4000, bank);
+                mapPrg(0xc000, 0x4000, - 1);
+                break;
+        }
+        if ((control & 0x10) == 0) {
+            mapChr(0x0000, 0x2000, characterBank0 >>> 1);
+        } else {
+            mapChr(0x0000, 0x1000, characterBank0);
+            mapChr(0x1000, 0x1000, characterBank1);
+        }
+    }
+}
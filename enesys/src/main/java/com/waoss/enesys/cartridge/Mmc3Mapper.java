@@ -0,0 +1,166 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cartridge;
+
+import com.waoss.enesys.mem.CompleteMemory;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>The MMC3 (TxROM).It switches 8 KiB banks of PRG-ROM and 1 or 2 KiB banks of CHR through a bank select and a bank
+ * data register, and counts the scanlines the PPU renders to raise an IRQ.</p>
+ * <p>The counter is clocked by {@link #scanline()} rather than by the address lines of the PPU.</p>
+ */
+public class Mmc3Mapper extends AbstractMapper {
+
+    public static final int NUMBER = 4;
+
+    private int[] registers = {0, 2, 4, 5, 6, 7, 0, 1};
+    private int bankSelect;
+    private int irqLatch;
+    private int irqCounter;
+    private boolean irqReload;
+    private boolean irqEnabled;
+    private boolean irqRequested;
+
+    public Mmc3Mapper(@NotNull Cartridge cartridge) {
+        super(cartridge);
+    }
+
+    @Override
+    public int getNumber() {
+        return NUMBER;
+    }
+
+    @NotNull
+    @Override
+    public Mapper fork(@NotNull CompleteMemory completeMemory) {
+        final Mmc3Mapper fork = (Mmc3Mapper) super.fork(completeMemory);
+        fork.registers = registers.clone();
+        return fork;
+    }
+
+    @Override
+    protected void writeRegister(int address, int value) {
+        final boolean even = (address & 1) == 0;
+        switch ((address >>> 13) & 3) {
+            case 0:
+                if (even) {
+                    bankSelect = value;
+                } else {
+                    registers[bankSelect & 7] = value;
+                }
+                updateBanks();
+                break;
+            case 1:
+                if (even) {
+                    setMirroring((value & 1) != 0 ? Mirroring.HORIZONTAL : Mirroring.VERTICAL);
+                }
+                break;
+            case 2:
+                if (even) {
+                    irqLatch = value;
+                } else {
+                    irqReload = true;
+                }
+                break;
+            default:
+                irqEnabled = ! even;
+                if (even) {
+                    irqRequested = false;
+                }
+                break;
+        }
+    }
+
+    @Override
+    public void scanline() {
+        if (irqCounter == 0 || irqReload) {
+            irqCounter = irqLatch;
+            irqReload = false;
+        } else {
+            irqCounter--;
+        }
+        if (irqCounter == 0 && irqEnabled) {
+            irqRequested = true;
+        }
+    }
+
+    @Override
+    public boolean isInterruptRequested() {
+        return irqRequested;
+    }
+
+    @Override
+    public int getScanlinesUntilInterrupt() {
+        if (! irqEnabled || irqRequested) {
+            return - 1;
+        }
+        //the counter is reloaded or decremented by the next scanline, then decremented down to 0
+        return (irqCounter == 0 || irqReload ? irqLatch : irqCounter - 1) + 1;
+    }
+
+    @Override
+    protected int getRegistersSize() {
+        return registers.length * 4 + 3 * 4 + 3;
+    }
+
+    @Override
+    protected void saveRegisters(@NotNull ByteBuffer buffer) {
+        for (int register : registers) {
+            buffer.putInt(register);
+        }
+        buffer.putInt(bankSelect).putInt(irqLatch).putInt(irqCounter);
+        buffer.put((byte) (irqReload ? 1 : 0)).put((byte) (irqEnabled ? 1 : 0)).put((byte) (irqRequested ? 1 : 0));
+    }
+
+    @Override
+    protected void loadRegisters(@NotNull ByteBuffer buffer) {
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = buffer.getInt();
+        }
+        bankSelect = buffer.getInt();
+        irqLatch = buffer.getInt();
+        irqCounter = buffer.getInt();
+        irqReload = buffer.get() != 0;
+        irqEnabled = buffer.get() != 0;
+        irqRequested = buffer.get() != 0;
+    }
+
+    @Override
+    protected void updateBanks() {
+        if ((bankSelect & 0x40) == 0) {
+            mapPrg(0x8000, 0x2000, registers[6]);
+            mapPrg(0xc000, 0x2000, - 2);
+        } else {
+            mapPrg(0x8000, 0x2000, - 2);
+            mapPrg(0xc000, 0x2000, registers[6]);
+        }
+        mapPrg(0xa000, 0x2000, registers[7]);
+        mapPrg(0xe000, 0x2000, - 1);
+        final int inversion = (bankSelect & 0x80) << 5;
+        mapChr(inversion, 0x0800, registers[0] >>> 1);
+        mapChr(inversion | 0x0800, 0x0800, registers[1] >>> 1);
+        mapChr(inversion ^ 0x1000, 0x0400, registers[2]);
+        mapChr((inversion ^ 0x1000) | 0x0400, 0x0400, registers[3]);
+        mapChr((inversion ^ 0x1000) | 0x0800, 0x0400, registers[4]);
+        mapChr((inversion ^ 0x1000) | 0x0c00, 0x0400, registers[5]);
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <p>This package contains the cartridges : the parser of iNES and NES 2.0 files and the mappers, the chips of the
+ * cartridge that switch the banks of PRG-ROM and CHR-ROM the CPU and the PPU see.A ROM file is mapped in memory and never
+ * copied;switching a bank only changes which slice of it a page of the address space points to.</p>
+ *
+ * @see com.waoss.enesys.cartridge.Cartridge
+ * @see com.waoss.enesys.cartridge.Mapper
+ */
+
+package com.waoss.enesys.cartridge;
@@ -0,0 +1,180 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cpu;
+
+import com.waoss.enesys.cpu.instructions.InstructionConstants;
+import com.waoss.enesys.cpu.instructions.Instructions;
+import com.waoss.enesys.mem.Addressing;
+import com.waoss.enesys.mem.CompleteMemory;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * <p>A straight run of decoded instructions, that ends at a branch, a jump, a return or a BRK.
+ * Every instruction is decoded once into parallel arrays : its address, opcode, size, operand bytes, addressing, its
+ * {@link InstructionImplementation} and its effective address when that does not depend on the registers or the
+ * memory.The processor then executes the block without reading the instructions from memory again.</p>
+ *
+ * @see BasicBlockCache
+ */
+final class BasicBlock {
+
+    /**
+     * The maximum number of instructions in a block.A block is at most 96 bytes long, so it is on 2 pages at most.
+     */
+    static final int MAX_INSTRUCTIONS = 32;
+
+    /**
+     * The effective address of instructions whose effective address has to be resolved when they are executed
+     */
+    static final int UNRESOLVED = - 1;
+
+    /**
+     * True for the opcodes that end a block : branches, jumps, returns, BRK and the illegal opcodes
+     */
+    private static final boolean[] endsBlock = new boolean[256];
+
+    static {
+        for (int opCode = 0; opCode < endsBlock.length; opCode++) {
+            switch (InstructionConstants.instructions[opCode]) {
+                case "BCC":
+                case "BCS":
+                case "BEQ":
+                case "BNE":
+                case "BMI":
+                case "BPL":
+                case "BVC":
+                case "BVS":
+                case "JMP":
+                case "JSR":
+                case "RTS":
+                case "RTI":
+                case "BRK":
+                    endsBlock[opCode] = true;
+                    break;
+                default:
+                    endsBlock[opCode] = Instructions.getInstructionSize(opCode) == 0;
+            }
+        }
+    }
+
+    final int length;
+    final int[] addresses;
+    final int[] opCodes;
+    final int[] sizes;
+    final int[] operandLows;
+    final int[] operandHighs;
+    final int[] effectiveAddresses;
+    final Addressing[] addressings;
+    final InstructionImplementation[] implementations;
+
+    /**
+     * The page of the first and the last byte of the block
+     */
+    final int firstPage;
+    final int lastPage;
+
+    /**
+     * False once the memory the block was decoded from changed
+     */
+    boolean valid = true;
+
+    /**
+     * The number of times the block was entered, and its compiled code once the {@link Recompiler} compiled it
+     */
+    int executions;
+    @Nullable
+    CompiledBlock compiledBlock;
+
+    private BasicBlock(int length, int[] addresses, int[] opCodes, int[] sizes, int[] operandLows, int[] operandHighs) {
+        this.length = length;
+        this.addresses = addresses;
+        this.opCodes = opCodes;
+        this.sizes = sizes;
+        this.operandLows = operandLows;
+        this.operandHighs = operandHighs;
+        this.effectiveAddresses = new int[length];
+        this.addressings = new Addressing[length];
+        this.implementations = new InstructionImplementation[length];
+        for (int i = 0; i < length; i++) {
+            addressings[i] = InstructionConstants.addressings[opCodes[i]];
+            implementations[i] = InstructionDispatchTable.get(opCodes[i]);
+            effectiveAddresses[i] = resolveStatically(i);
+        }
+        this.firstPage = addresses[0] >>> 8;
+        this.lastPage = ((addresses[length - 1] + sizes[length - 1] - 1) >>> 8) & 0xff;
+    }
+
+    /**
+     * Decodes the block that starts at the address.The block only spans pages that are mapped to arrays, so that any
+     * change to it is seen by the {@link com.waoss.enesys.mem.PageWriteListener}s.
+     *
+     * @param completeMemory
+     *         The memory to decode from
+     * @param address
+     *         The address of the first instruction
+     *
+     * @return the block, or null if the first instruction is not on pages mapped to arrays
+     */
+    @Nullable
+    static BasicBlock decode(CompleteMemory completeMemory, int address) {
+        final int[] addresses = new int[MAX_INSTRUCTIONS];
+        final int[] opCodes = new int[MAX_INSTRUCTIONS];
+        final int[] sizes = new int[MAX_INSTRUCTIONS];
+        final int[] operandLows = new int[MAX_INSTRUCTIONS];
+        final int[] operandHighs = new int[MAX_INSTRUCTIONS];
+        int length = 0;
+        int programCounter = address & 0xffff;
+        while (length < MAX_INSTRUCTIONS && completeMemory.isMappedToArray(programCounter >>> 8)) {
+            final int opCode = completeMemory.read(programCounter);
+            final int size = Math.max(Instructions.getInstructionSize(opCode), 1);
+            if (! completeMemory.isMappedToArray((programCounter + size - 1) >>> 8)) {
+                break;
+            }
+            addresses[length] = programCounter;
+            opCodes[length] = opCode;
+            sizes[length] = size;
+            operandLows[length] = size > 1 ? completeMemory.read(programCounter + 1) : 0;
+            operandHighs[length] = size > 2 ? completeMemory.read(programCounter + 2) : 0;
+            length++;
+            if (endsBlock[opCode]) {
+                break;
+            }
+            programCounter = (programCounter + size) & 0xffff;
+        }
+        return length > 0 ? new BasicBlock(length, addresses, opCodes, sizes, operandLows, operandHighs) : null;
+    }
+
+    private int resolveStatically(int index) {
+        switch (addressings[index]) {
+            case ABSOLUTE:
+                return (operandHighs[index] << 8) | operandLows[index];
+            case IMMEDIATE:
+                return (addresses[index] + 1) & 0xffff;
+            case RELATIVE:
+                return (addresses[index] + sizes[index] + (byte) operandLows[index]) & 0xffff;
+            case ZERO_PAGE:
+                return operandLows[index];
+            case IMPLIED:
+            case ACCUMULATOR:
+                return 0;
+            default:
+                return UNRESOLVED;
+        }
+    }
+}
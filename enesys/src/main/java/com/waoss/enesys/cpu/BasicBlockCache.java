@@ -0,0 +1,197 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cpu;
+
+import com.waoss.enesys.mem.CompleteMemory;
+import com.waoss.enesys.mem.PageWriteListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>A cache of decoded {@link BasicBlock}s, found by the address of their first instruction.
+ * Blocks are only decoded from pages that are mapped to arrays.The cache watches the pages it decoded blocks from and
+ * when one of them changes, through a write or a new mapping, every block on the page is thrown away, so self-modifying
+ * code and bank switching stay correct.</p>
+ *
+ * @see CentralProcessor#step()
+ */
+public final class BasicBlockCache implements PageWriteListener {
+
+    @NotNull
+    private final CompleteMemory completeMemory;
+
+    /**
+     * The blocks by the page and the low byte of their address;the array of a page is only created when needed
+     */
+    private final BasicBlock[][] blocks = new BasicBlock[CompleteMemory.PAGE_COUNT][];
+
+    /**
+     * The blocks that start on the page before and end on the page
+     */
+    private final List<List<BasicBlock>> spilledBlocks = new ArrayList<>(CompleteMemory.PAGE_COUNT);
+
+    private final boolean[] watched = new boolean[CompleteMemory.PAGE_COUNT];
+    private boolean enabled = true;
+    private long decodedBlocks;
+
+    /**
+     * Creates a cache for the memory and starts listening to it
+     *
+     * @param completeMemory
+     *         The memory blocks are decoded from
+     */
+    public BasicBlockCache(@NotNull CompleteMemory completeMemory) {
+        this.completeMemory = completeMemory;
+        for (int page = 0; page < CompleteMemory.PAGE_COUNT; page++) {
+            spilledBlocks.add(new ArrayList<>());
+        }
+        completeMemory.addPageWriteListener(this);
+    }
+
+    /**
+     * Returns the block that starts at the address, decoding it if it is not in the cache
+     *
+     * @param address
+     *         The address of the first instruction
+     *
+     * @return the block, or null if the cache is disabled or the address is not on a page mapped to an array
+     */
+    @Nullable
+    BasicBlock get(int address) {
+        if (! enabled) {
+            return null;
+        }
+        final int page = (address >>> 8) & 0xff;
+        BasicBlock[] pageBlocks = blocks[page];
+        if (pageBlocks != null && pageBlocks[address & 0xff] != null) {
+            return pageBlocks[address & 0xff];
+        }
+        final BasicBlock block = BasicBlock.decode(completeMemory, address);
+        if (block == null) {
+            return null;
+        }
+        decodedBlocks++;
+        if (pageBlocks == null) {
+            pageBlocks = blocks[page] = new BasicBlock[CompleteMemory.PAGE_SIZE];
+        }
+        pageBlocks[address & 0xff] = block;
+        watch(block.firstPage);
+        if (block.lastPage != block.firstPage) {
+            spilledBlocks.get(block.lastPage).add(block);
+            watch(block.lastPage);
+        }
+        return block;
+    }
+
+    /**
+     * Throws away every block on the page
+     *
+     * @param page
+     *         The page, that is the high byte of its addresses
+     */
+    @Override
+    public void pageWritten(int page) {
+        if (! watched[page]) {
+            return;
+        }
+        watched[page] = false;
+        completeMemory.unwatchPage(page);
+        final BasicBlock[] pageBlocks = blocks[page];
+        if (pageBlocks != null) {
+            for (BasicBlock block : pageBlocks) {
+                if (block != null) {
+                    block.valid = false;
+                }
+            }
+            blocks[page] = null;
+        }
+        for (BasicBlock block : spilledBlocks.get(page)) {
+            block.valid = false;
+            final BasicBlock[] firstPageBlocks = blocks[block.firstPage];
+            if (firstPageBlocks != null && firstPageBlocks[block.addresses[0] & 0xff] == block) {
+                firstPageBlocks[block.addresses[0] & 0xff] = null;
+            }
+        }
+        spilledBlocks.get(page).clear();
+    }
+
+    /**
+     * Throws away every block
+     */
+    public void invalidate() {
+        for (int page = 0; page < CompleteMemory.PAGE_COUNT; page++) {
+            pageWritten(page);
+        }
+    }
+
+    /**
+     * Throws away every block and stops listening to the memory
+     */
+    public void close() {
+        invalidate();
+        completeMemory.removePageWriteListener(this);
+    }
+
+    /**
+     * Returns the memory the blocks are decoded from
+     *
+     * @return the memory the blocks are decoded from
+     */
+    @NotNull
+    public CompleteMemory getCompleteMemory() {
+        return completeMemory;
+    }
+
+    /**
+     * Returns the number of blocks that were decoded.A loop that runs from the cache does not increase it.
+     *
+     * @return the number of blocks that were decoded
+     */
+    public long getDecodedBlocks() {
+        return decodedBlocks;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the cache.A disabled cache is empty and the processor decodes every instruction from
+     * memory.
+     *
+     * @param enabled
+     *         true to enable the cache
+     */
+    public void setEnabled(boolean enabled) {
+        if (! enabled) {
+            invalidate();
+        }
+        this.enabled = enabled;
+    }
+
+    private void watch(int page) {
+        if (! watched[page]) {
+            watched[page] = true;
+            completeMemory.watchPage(page);
+        }
+    }
+}
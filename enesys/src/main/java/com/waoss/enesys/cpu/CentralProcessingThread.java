@@ -19,7 +19,7 @@
 package com.waoss.enesys.cpu;
 
 import com.waoss.enesys.Console;
-import com.waoss.enesys.cpu.instructions.*;
+import com.waoss.enesys.MasterClock;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -28,12 +28,17 @@ import java.util.concurrent.atomic.AtomicReference;
 /**
  * <p>A thread in which the central processing of the CPU occurs.
  * The CPU uses the {@link CentralProcessor#start()} method to start processing.
- * Processing starts a loop from the program counter and the thread reads every byte and finds the
- * corresponding instruction and then uses the {@link CentralProcessor#process(Instruction)} function to process the
- * instruction</p>
+ * Processing starts a loop from the program counter and the thread executes a decoded block of instructions at a
+ * time, from the {@link BasicBlockCache} of the processor.Decoding happens in primitive fields of the processor, so the
+ * loop does not allocate anything per instruction</p>
+ * <p>The loop is driven by the {@link MasterClock} of the console, a frame at a time and as fast as it can.The PPU and
+ * the other lazy components only stop the processor at their events, so it runs uninterrupted in between;the thread
+ * stops at the end of the frame after {@link #setRunning(boolean)} is called, or right after a BRK that halts the
+ * processor, which halts the clock too.A processor that is not the one of its console is not on the clock, so it just
+ * runs block after block.</p>
  *
  * @see CentralProcessor
- * @see CentralProcessor#process(Instruction)
+ * @see CentralProcessor#step()
  * @see CentralProcessor#start()
  * @see Console
  */
@@ -75,20 +80,22 @@ public class CentralProcessingThread extends Thread {
     @Override
     public void run() {
         setRunning(true);
-        int i;
-        while (isRunning()) {
-            i = console.get().getProgramCounter().getValue();
-            int opCode = console.get().getCompleteMemory().read(i);
-            int size = Instructions.getInstructionSize(opCode);
-            @NotNull final Integer[] arguments = new Integer[size - 1];
-            for (short j = 1; j < size; j++) {
-                arguments[j - 1] = console.get().getCompleteMemory().read(i + j);
+        final CentralProcessor centralProcessor = this.centralProcessor.get();
+        final Console console = this.console.get();
+        try {
+            if (console.getCentralProcessor() == centralProcessor) {
+                final MasterClock masterClock = console.getMasterClock();
+                while (isRunning()) {
+                    masterClock.runFor(MasterClock.FRAME_CYCLES);
+                }
+            } else {
+                //a processor that is not the one of the console is not on its clock
+                while (isRunning()) {
+                    centralProcessor.runBlock(Long.MAX_VALUE);
+                }
             }
-            @NotNull final Instruction result = new Instruction(opCode, InstructionConstants.addressings[opCode]);
-            result.setCentralProcessor(centralProcessor.get());
-            result.argumentsProperty().set(arguments);
-            result.parseArgumentsAccordingToAddressing();
-            centralProcessor.get().process(result);
+        } finally {
+            setRunning(false);
         }
     }
 
@@ -18,34 +18,38 @@
 
 package com.waoss.enesys.cpu;
 
+import com.waoss.enesys.ClockedComponent;
 import com.waoss.enesys.Console;
+import com.waoss.enesys.MasterClock;
 import com.waoss.enesys.ProcessingException;
+import com.waoss.enesys.Scheduler;
 import com.waoss.enesys.annotations.Incomplete;
 import com.waoss.enesys.cpu.instructions.Instruction;
+import com.waoss.enesys.cpu.instructions.InstructionConstants;
 import com.waoss.enesys.cpu.instructions.InstructionName;
+import com.waoss.enesys.cpu.instructions.Instructions;
 import com.waoss.enesys.cpu.registers.*;
+import com.waoss.enesys.mem.Addressing;
 import com.waoss.enesys.mem.CompleteMemory;
-import javafx.beans.property.BooleanProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * <p>An instance of this class represents the CPU of the NES
  * The CPU of the NES had only 6 registers.All of them,except the {@link ProgramCounter} were 8 bits wide.
- * Each and every instruction of the NES is implemented as a method that takes in an {@link Instruction}.The
- * instruction
- * object contains
- * all the required data to execute the instruction.Every method also returns a boolean which is true, if and only if
- * any change to the program
- * counter was done.The {@link #process(Instruction)} method takes in an instruction object and finds the method to
- * invoke using reflection.
+ * Each and every instruction of the NES is implemented as a method that works on the decoding state of the processor
+ * : the opcode, the operand bytes and the effective address of the instruction being executed.These are primitive
+ * fields that are reused for every instruction, so that executing does not allocate.Every method also returns a
+ * boolean which is true, if and only if any change to the program counter was done.The {@link #step()} method decodes
+ * the instruction at the program counter and finds the method to invoke in the {@link InstructionDispatchTable}.
+ * Instructions are decoded a {@link BasicBlock} at a time and kept in a {@link BasicBlockCache}, so code that runs
+ * again, like a loop, is not decoded again.When the {@link Recompiler} is enabled, blocks that run often are compiled
+ * into JVM bytecode that calls the instruction methods directly.
  * All shit(processing) happens in another thread.Which is stored in an atomic reference for thread safety.It is
  * <strong>strongly recommended</strong> that the {@link #run()}
  * method not be used unless for debugging, for it runs stuff in the thread that calls it and the loop is infinite
@@ -54,21 +58,45 @@ import java.util.concurrent.atomic.AtomicReference;
  * implementation of {@link InstructionExecutionHandler}
  * and use the {@link #addInstructionExecutionHandler(InstructionExecutionHandler)} or {@link
  * #getInstructionExecutionHandlers()},which returns an {@link ObservableList} and you
- * can use {@link ObservableList#add(Object)}
+ * can use {@link ObservableList#add(Object)}.These handlers are called on the thread of the processor for every
+ * instruction, which is slow;to trace the execution use the {@link InstructionTracer} instead, that hands records of
+ * the executed instructions to its handlers in batches, on a thread of its own.
  * </p>
+ * <p>The processor counts the cycles it executed, with the penalties for crossing pages and taking branches, so that it
+ * can be driven by a {@link MasterClock} as a {@link ClockedComponent}.</p>
+ * <p>The interrupts are events of the {@link Scheduler} of the console, which the processor runs when they are due at
+ * an instruction boundary;it only compares its cycles to the next deadline of the scheduler.The NMI is taken as soon as
+ * it is requested, and the IRQ whenever one of the interrupt lines is asserted while the interrupt flag is clear.</p>
  *
+ * @see #step()
  * @see #process(Instruction)
  * @see InstructionExecutionHandler
  * @see #addInstructionExecutionHandler(InstructionExecutionHandler)
  */
 @Incomplete
-public final class CentralProcessor implements Cloneable {
+public final class CentralProcessor implements Cloneable, ClockedComponent {
+
+    /**
+     * The interrupt line of the mapper of the cartridge
+     */
+    public static final int MAPPER_INTERRUPT = 1 << 0;
+
+    /**
+     * The interrupt line of the APU, shared by its frame counter and its DMC
+     */
+    public static final int APU_INTERRUPT = 1 << 1;
 
     /**
      * The console "this" is a part of.
      */
     private final transient AtomicReference<Console> console = new AtomicReference<>();
 
+    /**
+     * The register file of the console;the registers are read and written as primitives
+     */
+    @NotNull
+    private final RegisterFile registerFile;
+
     /**
      * The {@link CentralProcessingThread} in which shit happens
      */
@@ -79,6 +107,64 @@ public final class CentralProcessor implements Cloneable {
      */
     private final AtomicBoolean runningInMainThread = new AtomicBoolean(false);
 
+    /*
+     * The decoding state of the instruction being executed.
+     */
+    private int opCode;
+    private int instructionAddress;
+    private int instructionSize;
+    private int operandLow;
+    private int operandHigh;
+    private int effectiveAddress;
+    private Addressing addressing;
+    private InstructionImplementation implementation;
+    private boolean pageCrossed;
+    private int branchCycles;
+
+    /**
+     * The number of cycles executed since the processor was created
+     */
+    private long cycles;
+
+    /**
+     * The decoded blocks, the block being executed and the index of its next instruction
+     */
+    @NotNull
+    private BasicBlockCache basicBlockCache;
+    @Nullable
+    private BasicBlock block;
+    private int blockIndex;
+
+    /**
+     * The optional compiler of hot blocks, and the cycles after which compiled code returns
+     */
+    @NotNull
+    private final Recompiler recompiler = new Recompiler();
+    private long cycleLimit;
+    private long runTarget;
+
+    /**
+     * The scheduler of the console, the events of the interrupts and the interrupt lines that are asserted
+     */
+    private final transient Scheduler scheduler;
+    private final int nonMaskableInterruptEvent;
+    private final int interruptEvent;
+    private int interruptLines;
+    private boolean haltingOnBreak;
+
+    /**
+     * The tracer of the executed instructions;instructions are only recorded while it has handlers
+     */
+    @NotNull
+    private final InstructionTracer instructionTracer = new InstructionTracer(this);
+    private volatile boolean tracing;
+
+    /**
+     * The instruction being executed;only built when it is asked for
+     */
+    @Nullable
+    private Instruction currentInstruction;
+
     private ObservableList<InstructionExecutionHandler> instructionExecutionHandlers = FXCollections.observableArrayList();
 
     public ObservableList<InstructionExecutionHandler> getInstructionExecutionHandlers() {
@@ -97,7 +183,16 @@ public final class CentralProcessor implements Cloneable {
      */
     public CentralProcessor(Console console) {
         this.console.set(console);
+        this.registerFile = console.getRegisterFile();
+        this.basicBlockCache = new BasicBlockCache(console.getCompleteMemory());
         this.thread.set(new CentralProcessingThread(this));
+        this.scheduler = console.getScheduler();
+        this.nonMaskableInterruptEvent = scheduler.addEvent((event, cycles) -> interrupt(0xfffa));
+        this.interruptEvent = scheduler.addEvent((event, cycles) -> {
+            if (interruptLines != 0 && ! registerFile.isFlagSet(ProcessorStatus.INTERRUPT)) {
+                interrupt(0xfffe);
+            }
+        });
     }
 
     /**
@@ -148,6 +243,46 @@ public final class CentralProcessor implements Cloneable {
         return console.get().getCompleteMemory();
     }
 
+    /**
+     * Returns the {@link RegisterFile} that stores the values of all the registers
+     *
+     * @return the {@link RegisterFile}
+     */
+    @NotNull
+    public RegisterFile getRegisterFile() {
+        return registerFile;
+    }
+
+    /**
+     * Returns the cache of the decoded instructions
+     *
+     * @return the {@link BasicBlockCache}
+     */
+    @NotNull
+    public BasicBlockCache getBasicBlockCache() {
+        return basicBlockCache;
+    }
+
+    /**
+     * Returns the compiler of the blocks that run often;it is disabled by default
+     *
+     * @return the {@link Recompiler}
+     */
+    @NotNull
+    public Recompiler getRecompiler() {
+        return recompiler;
+    }
+
+    /**
+     * Returns the tracer of the executed instructions
+     *
+     * @return the {@link InstructionTracer}
+     */
+    @NotNull
+    public InstructionTracer getInstructionTracer() {
+        return instructionTracer;
+    }
+
     /**
      * Returns the {@link ProcessorStatus}
      *
@@ -211,145 +346,167 @@ public final class CentralProcessor implements Cloneable {
         return thread.get();
     }
 
-    // Instructions implementation 
+    // Instructions implementation
 
     /**
      * Loads a value into the A register.
      * Implementation of {@link com.waoss.enesys.cpu.instructions.InstructionName#LDA}
      *
-     * @param instruction
-     *         The instruction
-     *
      * @return false; because this instruction does not change the Program counter
      */
-    public boolean lda(@NotNull Instruction instruction) throws ProcessingException {
-        return loadRegister(getARegister(), instruction, InstructionName.LDA);
+    public boolean lda() {
+        return loadRegister(RegisterFile.A);
     }
 
     /**
-     * <p>Stores the value of the A register into the index specified
+     * <p>Stores the value of the A register into the effective address
      * Implementation of {@link com.waoss.enesys.cpu.instructions.InstructionName#STA}</p>
      *
-     * @param instruction
-     *         The instruction
-     *
      * @return false; because this instruction does not change the Program counter
      */
-    public boolean sta(@NotNull Instruction instruction) throws ProcessingException {
-        return storeRegister(getARegister(), instruction, InstructionName.STA);
+    public boolean sta() {
+        return storeRegister(registerFile.getA());
     }
 
     /**
-     * <p>Stores the value of the X register into the index specified
+     * <p>Loads a value into the X register
      * Implementation of {@link InstructionName#LDX}</p>
      *
-     * @param instruction
-     *         The instruction
-     *
      * @return false; because this instruction does not change the Program counter
-     *
-     * @throws ProcessingException
-     *         If the instruction is not valid
      */
-    public boolean ldx(@NotNull Instruction instruction) throws ProcessingException {
-        return loadRegister(getXRegister(), instruction, InstructionName.LDX);
+    public boolean ldx() {
+        return loadRegister(RegisterFile.X);
     }
 
     /**
-     * <p>Stores the value stored in the X register into the address specified</p>
-     *
-     * @param instruction
-     *         The instruction
+     * <p>Stores the value stored in the X register into the effective address</p>
      *
      * @return false; because this instruction does not change the Program counter
-     *
-     * @throws ProcessingException
-     *         If the instruction is not valid
      */
-    public boolean stx(@NotNull Instruction instruction) throws ProcessingException {
-        return storeRegister(getXRegister(), instruction, InstructionName.STX);
+    public boolean stx() {
+        return storeRegister(registerFile.getX());
     }
 
     /**
      * <p>Increments the value of the X register by 1</p>
      *
-     * @param instruction
-     *         The instruction
-     *
      * @return false; because this instruction does not change the Program counter
      */
-    public boolean inx(Instruction instruction) {
-        getXRegister().setValue((getXRegister().getValue() + 1));
+    public boolean inx() {
+        registerFile.setX((registerFile.getX() + 1) & 0xff);
+        checkZeroAndNegative(registerFile.getX());
         return false;
     }
 
     /**
-     * <p>Stores the value of the Y register into the index specified
-     * Implementation of {@link InstructionName#LDY}</p>
-     *
-     * @param instruction
-     *         The instruction
+     * <p>Decrements the value of the X register by 1</p>
      *
      * @return false; because this instruction does not change the Program counter
-     *
-     * @throws ProcessingException
-     *         If the instruction is not valid
      */
-    public boolean ldy(@NotNull Instruction instruction) throws ProcessingException {
-        loadRegister(getYRegister(), instruction, InstructionName.LDY);
+    public boolean dex() {
+        registerFile.setX((registerFile.getX() - 1) & 0xff);
+        checkZeroAndNegative(registerFile.getX());
         return false;
     }
 
     /**
-     * <p>Stores the value stored in the Y register into the address specified</p>
-     *
-     * @param instruction
-     *         The instruction
+     * <p>Loads a value into the Y register
+     * Implementation of {@link InstructionName#LDY}</p>
      *
      * @return false; because this instruction does not change the Program counter
+     */
+    public boolean ldy() {
+        return loadRegister(RegisterFile.Y);
+    }
+
+    /**
+     * <p>Stores the value stored in the Y register into the effective address</p>
      *
-     * @throws ProcessingException
-     *         If the instruction is not valid
+     * @return false; because this instruction does not change the Program counter
      */
-    public boolean sty(@NotNull Instruction instruction) throws ProcessingException {
-        return storeRegister(getYRegister(), instruction, InstructionName.STY);
+    public boolean sty() {
+        return storeRegister(registerFile.getY());
     }
 
     /**
      * <p>Increments the value of the Y register by 1</p>
      *
-     * @param instruction
-     *         The instruction
+     * @return false; because this instruction does not change the Program counter
+     */
+    public boolean iny() {
+        registerFile.setY((registerFile.getY() + 1) & 0xff);
+        checkZeroAndNegative(registerFile.getY());
+        return false;
+    }
+
+    /**
+     * <p>Decrements the value of the Y register by 1</p>
      *
      * @return false; because this instruction does not change the Program counter
      */
-    public boolean iny(Instruction instruction) {
-        getYRegister().setValue(getYRegister().getValue() + 1);
+    public boolean dey() {
+        registerFile.setY((registerFile.getY() - 1) & 0xff);
+        checkZeroAndNegative(registerFile.getY());
         return false;
     }
 
     /**
-     * Breaks execution.An interrupt.Interrupts the running thread.
+     * <p>Increments the value at the effective address by 1</p>
      *
-     * @param instruction
-     *         The instruction
+     * @return false; because this instruction does not change the Program counter
+     */
+    public boolean inc() {
+        final int result = (readOperand() + 1) & 0xff;
+        getCompleteMemory().write(effectiveAddress, result);
+        checkZeroAndNegative(result);
+        return false;
+    }
+
+    /**
+     * <p>Decrements the value at the effective address by 1</p>
      *
      * @return false; because this instruction does not change the Program counter
      */
-    public boolean brk(Instruction instruction) {
-        interruptThread();
+    public boolean dec() {
+        final int result = (readOperand() - 1) & 0xff;
+        getCompleteMemory().write(effectiveAddress, result);
+        checkZeroAndNegative(result);
         return false;
     }
 
     /**
-     * No operation.Does nothing.
+     * Break.A software interrupt : pushes the address after its padding byte and the status with the break bit set, and
+     * jumps to the vector at $FFFE.If the processor halts on breaks it stays on the BRK and stops the thread instead,
+     * right after the BRK : the clock of the console is halted too.
      *
-     * @param instruction
-     *         The instruction.
+     * @return true; the program counter is always changed
+     *
+     * @see #setHaltingOnBreak(boolean)
+     */
+    public boolean brk() {
+        if (haltingOnBreak) {
+            interruptThread();
+            stopEarly();
+            final Console console = getConsole();
+            if (console.getCentralProcessor() == this) {
+                console.getMasterClock().halt();
+            }
+            return true;
+        }
+        final int returnAddress = instructionAddress + 2;
+        push(returnAddress >>> 8);
+        push(returnAddress);
+        push(registerFile.getProcessorStatus() | ProcessorStatus.BREAK | ProcessorStatus.UNUSED);
+        registerFile.setFlag(ProcessorStatus.INTERRUPT, true);
+        return updateProgramCounter(getCompleteMemory().readWord(0xfffe));
+    }
+
+    /**
+     * No operation.Does nothing.
      *
      * @return false; no operation = no change in PC
      */
-    public boolean nop(@Nullable Instruction instruction) {
+    public boolean nop() {
         return false;
     }
 
@@ -358,15 +515,48 @@ public final class CentralProcessor implements Cloneable {
      * Stores into the accumalator the "AND" of the value and the previous value
      * Implementation of {@link com.waoss.enesys.cpu.instructions.InstructionName#AND}
      *
-     * @param instruction
-     *         The instruction
-     *
      * @return false; because this instruction does not change the Program counter
      */
-    public boolean and(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.AND);
-        getARegister().setValue(getARegister().getValue() & instruction.argumentsProperty().get()[0]);
-        checkZeroAndNegative(getARegister().getValue());
+    public boolean and() {
+        registerFile.setA(registerFile.getA() & readOperand());
+        checkZeroAndNegative(registerFile.getA());
+        return false;
+    }
+
+    /**
+     * Logical bitwise OR
+     *
+     * @return false;no change to PC
+     */
+    public boolean ora() {
+        registerFile.setA(registerFile.getA() | readOperand());
+        checkZeroAndNegative(registerFile.getA());
+        return false;
+    }
+
+    /**
+     * Logical exclusive OR
+     *
+     * @return false;no change to PC
+     */
+    public boolean eor() {
+        registerFile.setA(registerFile.getA() ^ readOperand());
+        checkZeroAndNegative(registerFile.getA());
+        return false;
+    }
+
+    /**
+     * Bit test.Sets the zero flag from the AND of the A register and the value and copies bits 6 and 7 of the value
+     * into the overflow and negative flags
+     *
+     * @return false;no change to PC
+     */
+    public boolean bit() {
+        final int value = readOperand();
+        final int unaffected = registerFile.getProcessorStatus() & ~ (ProcessorStatus.ZERO | ProcessorStatus.OVERFLOW |
+                ProcessorStatus.NEGATIVE);
+        registerFile.setProcessorStatus(unaffected | (value & (ProcessorStatus.OVERFLOW | ProcessorStatus.NEGATIVE)) |
+                ((registerFile.getA() & value) == 0 ? ProcessorStatus.ZERO : 0));
         return false;
     }
 
@@ -374,16 +564,20 @@ public final class CentralProcessor implements Cloneable {
      * Add with carry
      * Implementation of {@link InstructionName#ADC}
      *
-     * @param instruction
-     *         The instruction
+     * @return false; because this instruction does not change the Program counter
+     */
+    public boolean adc() {
+        addWithCarry(readOperand());
+        return false;
+    }
+
+    /**
+     * Subtract with carry.The NES has no decimal mode, so this is an addition of the complement of the value
      *
      * @return false; because this instruction does not change the Program counter
      */
-    public boolean adc(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.ADC);
-        getARegister().setValue(
-                getARegister().getValue() + instruction.argumentsProperty().get()[0] + (getProcessorStatus().isCarryFlagEnabled() ? 1 : 0));
-        checkZeroAndNegative(getARegister().getValue());
+    public boolean sbc() {
+        addWithCarry(readOperand() ^ 0xff);
         return false;
     }
 
@@ -391,420 +585,668 @@ public final class CentralProcessor implements Cloneable {
      * Branch on carry clear
      * Implementation of {@link InstructionName#BCC}
      *
-     * @param instruction
-     *         The instruction
-     *
      * @return True if branching happened
-     *
-     * @throws ProcessingException
-     *         If some shit happens
      */
-    public boolean bcc(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.BCC);
-        return branchOnFlag("carryFlagEnabled", instruction, false);
+    public boolean bcc() {
+        return branchOnFlag(ProcessorStatus.CARRY, false);
     }
 
     /**
      * Branch on carry set
      * Implementation of {@link InstructionName#BCS}
      *
-     * @param instruction
-     *         The instruction
+     * @return True if branching happened
+     */
+    public boolean bcs() {
+        return branchOnFlag(ProcessorStatus.CARRY, true);
+    }
+
+    /**
+     * Branch on equals
      *
      * @return True if branching happened
+     */
+    public boolean beq() {
+        return branchOnFlag(ProcessorStatus.ZERO, true);
+    }
+
+    /**
+     * Branch on not equals
      *
-     * @throws ProcessingException
-     *         If some shit happens
+     * @return True if branching happened
      */
-    public boolean bcs(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.BCS);
-        return branchOnFlag("carryFlagEnabled", instruction, true);
+    public boolean bne() {
+        return branchOnFlag(ProcessorStatus.ZERO, false);
     }
 
     /**
-     * Branch on overflow clear
+     * Branch on minus
      *
-     * @param instruction
-     *         The instruction
+     * @return True if branching happened
+     */
+    public boolean bmi() {
+        return branchOnFlag(ProcessorStatus.NEGATIVE, true);
+    }
+
+    /**
+     * Branch on plus
      *
-     * @return True if branching happened.
+     * @return True if branching happened
+     */
+    public boolean bpl() {
+        return branchOnFlag(ProcessorStatus.NEGATIVE, false);
+    }
+
+    /**
+     * Branch on overflow clear
      *
-     * @throws ProcessingException
-     *         If some shit happens
+     * @return True if branching happened.
      */
-    public boolean bvc(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.BVC);
-        return branchOnFlag("overflowFlagEnabled", instruction, false);
+    public boolean bvc() {
+        return branchOnFlag(ProcessorStatus.OVERFLOW, false);
     }
 
     /**
      * Branch on overflow set
      *
-     * @param instruction
-     *         The instruction
-     *
      * @return True if branching happened,false otherwise.
-     *
-     * @throws ProcessingException
-     *         If some shit happens
      */
-    public boolean bvs(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.BVS);
-        return branchOnFlag("overflowFlagEnabled", instruction, true);
+    public boolean bvs() {
+        return branchOnFlag(ProcessorStatus.OVERFLOW, true);
     }
 
     /**
-     * Set carry flag
+     * Jumps to the effective address
      *
-     * @param instruction
-     *         The instruction
-     *
-     * @return False:for no manupilation to the Program counter was doen
+     * @return true; the program counter is always changed
+     */
+    public boolean jmp() {
+        return updateProgramCounter(effectiveAddress);
+    }
+
+    /**
+     * Jump to subroutine.Pushes the address of the last byte of the instruction and jumps to the effective address
      *
-     * @throws ProcessingException
-     *         If some shit happens
+     * @return true; the program counter is always changed
      */
-    public boolean sec(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.SEC);
-        getProcessorStatus().setCarryFlagEnabled(true);
-        return false;
+    public boolean jsr() {
+        final int returnAddress = instructionAddress + instructionSize - 1;
+        push(returnAddress >> 8);
+        push(returnAddress & 0xff);
+        return updateProgramCounter(effectiveAddress);
     }
 
     /**
-     * Set decimal flag
+     * Return from subroutine
      *
-     * @param instruction
-     *         The instruction
+     * @return true; the program counter is always changed
+     */
+    public boolean rts() {
+        final int low = pull();
+        final int high = pull();
+        return updateProgramCounter((((high << 8) | low) + 1) & 0xffff);
+    }
+
+    /**
+     * Return from interrupt.Pulls the processor status and then the program counter
      *
-     * @return False : No change of Program counter
+     * @return true; the program counter is always changed
+     */
+    public boolean rti() {
+        restoreProcessorStatus(pull());
+        final int low = pull();
+        final int high = pull();
+        return updateProgramCounter((high << 8) | low);
+    }
+
+    /**
+     * Pushes the A register on the stack
      *
-     * @throws ProcessingException
-     *         If some shit happens
+     * @return false; no change to PC
      */
-    public boolean sed(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.SED);
-        getProcessorStatus().setDecimalFlagEnabled(true);
+    public boolean pha() {
+        push(registerFile.getA());
         return false;
     }
 
     /**
-     * Set the interrupt disable flag disallowing interrupts
-     *
-     * @param instruction
-     *         The instruction
+     * Pulls the A register from the stack
      *
      * @return false; no change to PC
-     *
-     * @throws ProcessingException
-     *         if some shit happens
      */
-    public boolean sei(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.SEI);
-        getProcessorStatus().setInterruptFlagEnabled(true);
+    public boolean pla() {
+        registerFile.setA(pull());
+        checkZeroAndNegative(registerFile.getA());
         return false;
     }
 
     /**
-     * Arithmetic shift left
-     *
-     * @param instruction
-     *         The instruction
-     *
-     * @return false; no change to the PC
+     * Pushes the processor status on the stack, with the break flag set
      *
-     * @throws ProcessingException
-     *         If some shit happens
+     * @return false; no change to PC
      */
-    public boolean asl(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.ASL);
-        final AccumalativeRegister accumalativeRegister = getARegister();
-        accumalativeRegister.setValue(accumalativeRegister.getValue() << instruction.getArguments()[0]);
-        checkZeroAndNegative(accumalativeRegister.getValue());
+    public boolean php() {
+        push(registerFile.getProcessorStatus() | ProcessorStatus.BREAK | ProcessorStatus.UNUSED);
         return false;
     }
 
     /**
-     * Clears the carry flag
-     *
-     * @param instruction
-     *         The instruction
+     * Pulls the processor status from the stack
      *
      * @return false; no change to PC
-     *
-     * @throws ProcessingException
-     *         if some shit happens
      */
-    public boolean clc(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.CLC);
-        setFlag("carryFlagEnabled", false);
+    public boolean plp() {
+        restoreProcessorStatus(pull());
         return false;
     }
 
     /**
-     * Clear interrupt disable allowing interrupts
-     *
-     * @param instruction
-     *         The instruction
+     * Set carry flag
      *
-     * @return false;no change to CP
+     * @return False:for no manupilation to the Program counter was doen
+     */
+    public boolean sec() {
+        registerFile.setFlag(ProcessorStatus.CARRY, true);
+        return false;
+    }
+
+    /**
+     * Set decimal flag
      *
-     * @throws ProcessingException
-     *         if any shit happens
+     * @return False : No change of Program counter
      */
-    public boolean cli(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.CLI);
-        setFlag("interruptFlagEnabled", false);
+    public boolean sed() {
+        registerFile.setFlag(ProcessorStatus.DECIMAL, true);
         return false;
     }
 
     /**
-     * Clear overflow flag
+     * Set the interrupt disable flag disallowing interrupts
      *
-     * @param instruction
-     *         The instruction
+     * @return false; no change to PC
+     */
+    public boolean sei() {
+        registerFile.setFlag(ProcessorStatus.INTERRUPT, true);
+        return false;
+    }
+
+    /**
+     * Arithmetic shift left of the A register or of the value at the effective address
      *
-     * @return false;no change top PC
+     * @return false; no change to the PC
+     */
+    public boolean asl() {
+        final int value = readModifiable();
+        registerFile.setFlag(ProcessorStatus.CARRY, (value & 0x80) != 0);
+        writeModified((value << 1) & 0xff);
+        return false;
+    }
+
+    /**
+     * Logical shift right of the A register or of the value at the effective address
      *
-     * @throws ProcessingException
-     *         if some shit happens
+     * @return false; no change to PC
      */
-    public boolean clv(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.CLV);
-        setFlag("overflowFlagEnabled", false);
+    public boolean lsr() {
+        final int value = readModifiable();
+        registerFile.setFlag(ProcessorStatus.CARRY, (value & 0x01) != 0);
+        writeModified(value >> 1);
         return false;
     }
 
     /**
-     * Logical shift right
+     * Rotate left through the carry flag
      *
-     * @param instruction
-     *         The instruction
+     * @return false; no change to PC
+     */
+    public boolean rol() {
+        final int value = readModifiable();
+        final int carry = registerFile.isFlagSet(ProcessorStatus.CARRY) ? 0x01 : 0;
+        registerFile.setFlag(ProcessorStatus.CARRY, (value & 0x80) != 0);
+        writeModified(((value << 1) | carry) & 0xff);
+        return false;
+    }
+
+    /**
+     * Rotate right through the carry flag
      *
      * @return false; no change to PC
+     */
+    public boolean ror() {
+        final int value = readModifiable();
+        final int carry = registerFile.isFlagSet(ProcessorStatus.CARRY) ? 0x80 : 0;
+        registerFile.setFlag(ProcessorStatus.CARRY, (value & 0x01) != 0);
+        writeModified((value >> 1) | carry);
+        return false;
+    }
+
+    /**
+     * Clears the carry flag
      *
-     * @throws ProcessingException
-     *         if some shit happens
+     * @return false; no change to PC
      */
-    public boolean lsr(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.LSR);
-        final AccumalativeRegister accumalativeRegister = getARegister();
-        accumalativeRegister.setValue(accumalativeRegister.getValue() >> instruction.getArguments()[0]);
+    public boolean clc() {
+        registerFile.setFlag(ProcessorStatus.CARRY, false);
         return false;
     }
 
     /**
-     * Logical bitwise OR
+     * Clears the decimal flag
      *
-     * @param instruction
-     *         The instruction
+     * @return false; no change to PC
+     */
+    public boolean cld() {
+        registerFile.setFlag(ProcessorStatus.DECIMAL, false);
+        return false;
+    }
+
+    /**
+     * Clear interrupt disable allowing interrupts
      *
-     * @return false;no change to PC
+     * @return false;no change to CP
+     */
+    public boolean cli() {
+        registerFile.setFlag(ProcessorStatus.INTERRUPT, false);
+        postInterrupt();
+        return false;
+    }
+
+    /**
+     * Clear overflow flag
      *
-     * @throws ProcessingException
-     *         if some shit happens
+     * @return false;no change top PC
      */
-    public boolean ora(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.ORA);
-        final AccumalativeRegister accumalativeRegister = getARegister();
-        accumalativeRegister.setValue(accumalativeRegister.getValue() | instruction.getArguments()[0]);
+    public boolean clv() {
+        registerFile.setFlag(ProcessorStatus.OVERFLOW, false);
         return false;
     }
 
     /**
      * Transfer A to X
      *
-     * @param instruction
-     *         The instruction
-     *
      * @return false;no change to PC
-     *
-     * @throws ProcessingException
-     *         if some shit happens
      */
-    public boolean tax(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.TAX);
-        transferRegister(getARegister(), getXRegister());
+    public boolean tax() {
+        transferRegister(RegisterFile.A, RegisterFile.X);
         return false;
     }
 
     /**
      * Transfer A to Y
      *
-     * @param instruction
-     *         The instruction
-     *
      * @return false; no change to PC
-     *
-     * @throws ProcessingException
-     *         if some shit happens
      */
-    public boolean tay(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.TAY);
-        transferRegister(getARegister(), getYRegister());
+    public boolean tay() {
+        transferRegister(RegisterFile.A, RegisterFile.Y);
         return false;
     }
 
     /**
      * Transfer Stack Pointer to X
      *
-     * @param instruction
-     *         The instruction
-     *
      * @return false; no change to PC
-     *
-     * @throws ProcessingException
-     *         if some shit happens
      */
-    public boolean tsx(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.TSX);
-        transferRegister(getStackPointer(), getXRegister());
+    public boolean tsx() {
+        transferRegister(RegisterFile.STACK_POINTER, RegisterFile.X);
         return false;
     }
 
     /**
      * Transfer X to A
      *
-     * @param instruction
-     *         The instruction
-     *
      * @return false; no change to PC
-     *
-     * @throws ProcessingException
-     *         if some shit happens
      */
-    public boolean txa(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.TXA);
-        transferRegister(getXRegister(), getARegister());
+    public boolean txa() {
+        transferRegister(RegisterFile.X, RegisterFile.A);
         return false;
     }
 
     /**
      * Transfer X to Stack Pointer
      *
-     * @param instruction
-     *         The instruction
-     *
      * @return false; no change to PC
-     *
-     * @throws ProcessingException
-     *         if some shit happens
      */
-    public boolean txs(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.TXS);
-        transferRegister(getXRegister(), getStackPointer());
+    public boolean txs() {
+        registerFile.setStackPointer(registerFile.getX());
         return false;
     }
 
     /**
      * Transfer Y to A
      *
-     * @param instruction
-     *         The instruction
-     *
      * @return false; no change to PC
-     *
-     * @throws ProcessingException
-     *         if some shit happens
      */
-    public boolean tya(@NotNull Instruction instruction) throws ProcessingException {
-        checkInstructionName(instruction, InstructionName.TYA);
-        transferRegister(getYRegister(), getARegister());
+    public boolean tya() {
+        transferRegister(RegisterFile.Y, RegisterFile.A);
         return false;
     }
 
     /**
      * Compares some value with the A register.
      *
-     * @param instruction
-     *         The instruction
-     *
      * @return false; no change to PC
      *
-     * @throws ProcessingException
-     *         if some shit happens
-     * @see #cpx(Instruction)
-     * @see #cpy(Instruction)
+     * @see #cpx()
+     * @see #cpy()
      */
-    public boolean cmp(@NotNull Instruction instruction) throws ProcessingException {
-        final Integer toCompare = instruction.getArguments()[0];
-        final Integer aRegisterValue = getARegister().getValue();
-        compareRegisters(aRegisterValue, toCompare);
+    public boolean cmp() {
+        compareRegisters(registerFile.getA(), readOperand());
         return false;
     }
 
     /**
      * Compares some value with the X register.
      *
-     * @param instruction
-     *         The instruction
-     *
      * @return false; no change to PC
      *
-     * @throws ProcessingException
-     *         if some shit happens
-     * @see #cmp(Instruction)
-     * @see #cpy(Instruction)
+     * @see #cmp()
+     * @see #cpy()
      */
-    public boolean cpx(@NotNull Instruction instruction) throws ProcessingException {
-        final Integer toCompare = instruction.getArguments()[0];
-        final Integer xRegisterValue = getXRegister().getValue();
-        compareRegisters(xRegisterValue, toCompare);
+    public boolean cpx() {
+        compareRegisters(registerFile.getX(), readOperand());
         return false;
     }
 
     /**
      * Compares some value with the Y register.
      *
-     * @param instruction
-     *         The instruction
-     *
      * @return false; no change to PC
      *
-     * @throws ProcessingException
-     *         if some shit happens
-     * @see #cmp(Instruction)
-     * @see #cpx(Instruction)
+     * @see #cmp()
+     * @see #cpx()
      */
-    public boolean cpy(@NotNull Instruction instruction) throws ProcessingException {
-        final Integer toCompare = instruction.getArguments()[0];
-        final Integer yRegisterValue = getYRegister().getValue();
-        compareRegisters(yRegisterValue, toCompare);
+    public boolean cpy() {
+        compareRegisters(registerFile.getY(), readOperand());
         return false;
     }
 
 
     // End of Instructions implementation
 
+    /**
+     * <p>Fetches, decodes and executes the instruction at the program counter.
+     * The opcode, the operand bytes and the effective address are decoded into primitive fields of the processor
+     * that are reused for every instruction, so a step does not allocate anything.An {@link Instruction} object is
+     * only built if there are {@link InstructionExecutionHandler}s to notify.</p>
+     * <p>The instruction is taken from the block being executed if it is the next one, or else from the block that
+     * starts at the program counter in the {@link BasicBlockCache}.It is only read from memory if it cannot be
+     * cached.</p>
+     * <p>The events of the scheduler that are due, like a pending NMI or IRQ, are run first at the instruction
+     * boundary, as in {@link #runUntil(long)};the instruction is then the first one of the handler.</p>
+     *
+     * @return the number of cycles the instruction took, with the interrupt taken before it
+     *
+     * @throws ProcessingException
+     *         If the instruction is illegal or not implemented
+     */
+    public int step() throws ProcessingException {
+        int interruptCycles = 0;
+        if (cycles >= scheduler.getNextDeadline()) {
+            final long start = cycles;
+            scheduler.runDue(cycles);
+            interruptCycles = (int) (cycles - start);
+        }
+        final int programCounter = registerFile.getProgramCounter();
+        final BasicBlock block = nextBlock(programCounter);
+        if (block != null) {
+            decode(block, blockIndex++);
+            return interruptCycles + execute();
+        }
+        final CompleteMemory completeMemory = getCompleteMemory();
+        final int opCode = completeMemory.read(programCounter);
+        final int size = Math.max(Instructions.getInstructionSize(opCode), 1);
+        decode(opCode, programCounter, size, size > 1 ? completeMemory.read(programCounter + 1) : 0,
+                size > 2 ? completeMemory.read(programCounter + 2) : 0);
+        return interruptCycles + execute();
+    }
+
     /**
      * <p>Processes an instruction.
-     * Invokes the required method for the instruction implementation.The method to invoke is found dynamically using
-     * reflection.
-     * All instruction implementation methods have the same name as the instruction in lower case.The instruction name
-     * from the instruction
-     * object given as a parameter is converted to lowercase using {@link String#toLowerCase()}.Then a method of that
-     * name is invoked.The method is still incomplete as there is no complete handling of the updation of the program
-     * counter.</p>
+     * This is meant for debugging : the instruction is decoded as if it was fetched at the program counter, with its
+     * arguments being the operand bytes that follow the opcode in memory (the arguments before {@link
+     * Instruction#parseArgumentsAccordingToAddressing()}).Then it is executed like in {@link #step()}.If the
+     * instruction was created without an opcode the opcode is found by its {@link InstructionName} and {@link
+     * Addressing}.</p>
      *
      * @param instruction
      *         The instruction
+     *
+     * @return the number of cycles the instruction took
+     *
+     * @throws ProcessingException
+     *         If the instruction is illegal or not implemented
      */
-    @Incomplete
-    public void process(@NotNull Instruction instruction) {
-        @NotNull String name = instruction.getInstructionName().toString().toLowerCase();
-        Method method;
-        try {
-            method = getClass().getMethod(name, Instruction.class);
-            method.invoke(this, instruction);
-            final ProgramCounter programCounter = getProgramCounter();
-            programCounter.setValue(programCounter.getValue() + instruction.argumentsProperty().get().length);
-        } catch (@NotNull NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-            e.printStackTrace();
+    public int process(@NotNull Instruction instruction) throws ProcessingException {
+        final int opCode = instruction.getOpCode() != null ? instruction.getOpCode() :
+                Instructions.getOpCode(instruction.getInstructionName(), instruction.getAddressing());
+        if (opCode < 0) {
+            throw new ProcessingException("Unimplemented instruction : " + instruction.getInstructionName());
         }
-        /*
-        * Executing all the handlers
-        */
-        instructionExecutionHandlers.forEach(
-                instructionExecutionHandler -> instructionExecutionHandler.handle(this, instruction));
+        final Integer[] arguments = instruction.getArguments();
+        final int argumentCount = arguments != null ? arguments.length : 0;
+        decode(opCode, registerFile.getProgramCounter(), argumentCount + 1, argumentCount > 0 ? arguments[0] : 0,
+                argumentCount > 1 ? arguments[1] : 0);
+        currentInstruction = instruction;
+        return execute();
+    }
+
+    /**
+     * <p>Returns the instruction that is being (or was last) executed.
+     * The instruction is built from the decoding state only the first time this is called for an instruction, so
+     * nothing is allocated unless somebody asks for it.Its arguments are the operand bytes.</p>
+     *
+     * @return the instruction that is being (or was last) executed, or null if nothing was executed yet
+     */
+    @Nullable
+    public Instruction getCurrentInstruction() {
+        if (currentInstruction == null && addressing != null) {
+            final Integer[] arguments = new Integer[instructionSize - 1];
+            if (arguments.length > 0) {
+                arguments[0] = operandLow;
+            }
+            if (arguments.length > 1) {
+                arguments[1] = operandHigh;
+            }
+            final Instruction instruction = new Instruction(opCode, addressing);
+            instruction.setCentralProcessor(this);
+            instruction.setArguments(arguments);
+            currentInstruction = instruction;
+        }
+        return currentInstruction;
+    }
+
+    /**
+     * Returns the opcode of the instruction that is being (or was last) executed
+     *
+     * @return the opcode of the instruction that is being (or was last) executed
+     */
+    public int getOpCode() {
+        return opCode;
+    }
+
+    /**
+     * Returns the address the operand of the instruction that is being (or was last) executed is read from or
+     * written to.For branches and jumps it is the target.
+     *
+     * @return the effective address
+     */
+    public int getEffectiveAddress() {
+        return effectiveAddress;
+    }
+
+    /**
+     * Returns the number of cycles executed since the processor was created
+     *
+     * @return the number of cycles executed
+     */
+    @Override
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Sets the number of cycles executed, for example when a save state is loaded
+     *
+     * @param cycles
+     *         the number of cycles executed
+     */
+    public void setCycles(long cycles) {
+        this.cycles = cycles;
+    }
+
+    /**
+     * <p>Executes instructions until the given number of cycles is reached.
+     * Instructions are not split, so the processor usually runs a few cycles past the target;the next call runs that
+     * many cycles less.</p>
+     *
+     * @param cycles
+     *         The number of cycles to reach
+     */
+    @Override
+    public void runUntil(long cycles) {
+        runTarget = cycles;
+        while (this.cycles < runTarget) {
+            runBlock(runTarget);
+        }
+    }
+
+    /**
+     * Makes {@link #runUntil(long)} return after the instruction being executed, for example when it wrote a register
+     * that changes when the next event of the {@link MasterClock} is
+     */
+    @Override
+    public void stopEarly() {
+        runTarget = cycles;
+        cycleLimit = cycles;
+    }
+
+    /**
+     * Executes the instruction at the program counter and the rest of its {@link BasicBlock}, without looking the
+     * block up again for every instruction.Stops early if the block is thrown away or the cycles are reached.
+     *
+     * @param cycles
+     *         The number of cycles after which no instruction is started
+     */
+    void runBlock(long cycles) {
+        if (this.cycles >= scheduler.getNextDeadline()) {
+            scheduler.runDue(this.cycles);
+            return;
+        }
+        final BasicBlock block = nextBlock(registerFile.getProgramCounter());
+        if (block == null) {
+            step();
+            return;
+        }
+        cycleLimit = cycles;
+        if (blockIndex == 0 && recompiler.isEnabled()) {
+            final CompiledBlock compiledBlock = recompiler.profile(block);
+            if (compiledBlock != null) {
+                compiledBlock.execute(this);
+                return;
+            }
+        }
+        do {
+            decode(block, blockIndex++);
+            execute();
+        } while (blockIndex < block.length && block.valid && this.cycles < cycleLimit &&
+                this.cycles < scheduler.getNextDeadline());
+    }
+
+    /**
+     * Requests a non-maskable interrupt, like the PPU does when the vertical blank starts.The processor takes it at the
+     * next instruction boundary : it pushes the program counter and the status and jumps to the vector at $FFFA.
+     */
+    public void requestNonMaskableInterrupt() {
+        scheduler.post(nonMaskableInterruptEvent, cycles);
+    }
+
+    /**
+     * Returns true if a non-maskable interrupt was requested and not taken yet
+     *
+     * @return true if a non-maskable interrupt is pending
+     */
+    public boolean isNonMaskableInterruptRequested() {
+        return scheduler.isPending(nonMaskableInterruptEvent);
+    }
+
+    /**
+     * <p>Asserts or releases interrupt lines, like {@link #MAPPER_INTERRUPT}.
+     * The IRQ is level triggered : while any line is asserted it is taken at the next instruction boundary at which the
+     * interrupt flag is clear, and again after the handler returns if the device was not acknowledged.</p>
+     *
+     * @param lines
+     *         The lines
+     * @param asserted
+     *         true to assert them, false to release them
+     */
+    public void setInterruptLines(int lines, boolean asserted) {
+        interruptLines = asserted ? interruptLines | lines : interruptLines & ~ lines;
+        if (asserted) {
+            postInterrupt();
+        }
+    }
+
+    /**
+     * Returns the interrupt lines that are asserted
+     *
+     * @return the lines, 0 if the IRQ is not requested
+     */
+    public int getInterruptLines() {
+        return interruptLines;
+    }
+
+    /**
+     * Returns true if a BRK stops the thread of the processor rather than jumping to the vector at $FFFE
+     *
+     * @return true if the processor halts on breaks
+     */
+    public boolean isHaltingOnBreak() {
+        return haltingOnBreak;
+    }
+
+    /**
+     * Sets whether a BRK stops the thread of the processor rather than jumping to the vector at $FFFE, like the
+     * programs of the standalone 6502 expect
+     *
+     * @param haltingOnBreak
+     *         true to halt on breaks
+     */
+    public void setHaltingOnBreak(boolean haltingOnBreak) {
+        this.haltingOnBreak = haltingOnBreak;
+    }
+
+    /**
+     * Decodes an instruction of compiled code.The opcode and the operands are constants of the code.
+     *
+     * @see CompiledCode#decode(CentralProcessor, int, int, int, int, int, int)
+     */
+    void decodeCompiled(int opCode, int instructionAddress, int instructionSize, int operandLow, int operandHigh,
+                        int effectiveAddress) {
+        this.opCode = opCode;
+        this.instructionAddress = instructionAddress;
+        this.instructionSize = instructionSize;
+        this.operandLow = operandLow;
+        this.operandHigh = operandHigh;
+        this.addressing = InstructionConstants.addressings[opCode];
+        this.currentInstruction = null;
+        this.pageCrossed = false;
+        this.branchCycles = 0;
+        this.effectiveAddress = effectiveAddress != BasicBlock.UNRESOLVED ? effectiveAddress : resolveEffectiveAddress();
+    }
+
+    /**
+     * Finishes an instruction of compiled code like the interpreter does
+     *
+     * @return true if the compiled code may go on with the next instruction : its block is still valid and neither the
+     * cycles nor the next event are reached
+     *
+     * @see CompiledCode#executed(CentralProcessor, boolean)
+     */
+    boolean executedCompiled(boolean programCounterChanged) {
+        blockIndex++;
+        finish(programCounterChanged);
+        final BasicBlock block = this.block;
+        return block != null && block.valid && cycles < cycleLimit && cycles < scheduler.getNextDeadline();
     }
 
     /**
@@ -879,84 +1321,233 @@ public final class CentralProcessor implements Cloneable {
                 that.runningInMainThread) : that.runningInMainThread == null;
     }
 
-    // Internal API 
+    // Internal API
 
-    private void transferRegister(Register register1, Register register2) {
-        register1.setValue(register2.getValue());
+    private void decode(int opCode, int instructionAddress, int instructionSize, int operandLow, int operandHigh) {
+        this.opCode = opCode;
+        this.instructionAddress = instructionAddress;
+        this.instructionSize = instructionSize;
+        this.operandLow = operandLow & 0xff;
+        this.operandHigh = operandHigh & 0xff;
+        this.addressing = InstructionConstants.addressings[opCode];
+        this.implementation = InstructionDispatchTable.get(opCode);
+        this.currentInstruction = null;
+        this.pageCrossed = false;
+        this.branchCycles = 0;
+        this.effectiveAddress = resolveEffectiveAddress();
     }
 
-    private void checkZeroAndNegative(int value) {
-        if (value == 0) {
-            getProcessorStatus().setZeroFlagEnabled(true);
-        } else if (value < 0) {
-            getProcessorStatus().setNegativeFlagEnabled(true);
+    private void decode(BasicBlock block, int index) {
+        this.opCode = block.opCodes[index];
+        this.instructionAddress = block.addresses[index];
+        this.instructionSize = block.sizes[index];
+        this.operandLow = block.operandLows[index];
+        this.operandHigh = block.operandHighs[index];
+        this.addressing = block.addressings[index];
+        this.implementation = block.implementations[index];
+        this.currentInstruction = null;
+        this.pageCrossed = false;
+        this.branchCycles = 0;
+        final int effectiveAddress = block.effectiveAddresses[index];
+        this.effectiveAddress = effectiveAddress != BasicBlock.UNRESOLVED ? effectiveAddress : resolveEffectiveAddress();
+    }
+
+    void setTracing(boolean tracing) {
+        this.tracing = tracing;
+    }
+
+    /**
+     * Returns the block the instruction at the program counter is in : the block being executed if it is its next
+     * instruction, or else the block that starts at the program counter in the cache
+     */
+    @Nullable
+    private BasicBlock nextBlock(int programCounter) {
+        final BasicBlock block = this.block;
+        final int index = blockIndex;
+        if (block != null && index < block.length && block.addresses[index] == programCounter && block.valid) {
+            return block;
+        }
+        final CompleteMemory completeMemory = getCompleteMemory();
+        if (basicBlockCache.getCompleteMemory() != completeMemory) {
+            final boolean enabled = basicBlockCache.isEnabled();
+            basicBlockCache.close();
+            basicBlockCache = new BasicBlockCache(completeMemory);
+            basicBlockCache.setEnabled(enabled);
         }
+        blockIndex = 0;
+        return this.block = basicBlockCache.get(programCounter);
+    }
+
+    private int execute() {
+        return finish(implementation.execute(this));
     }
 
-    private void checkInstructionName(@NotNull Instruction instruction, InstructionName name) throws
-            ProcessingException {
-        if (instruction.instructionNameProperty().get() != name) {
-            throw new ProcessingException("Wrong Instruction");
+    private int finish(boolean programCounterChanged) {
+        if (! programCounterChanged) {
+            registerFile.setProgramCounter(instructionAddress + instructionSize);
+        }
+        final int cycles = InstructionConstants.instructionCycles[opCode] + branchCycles +
+                (pageCrossed ? InstructionConstants.pageCrossingCycles[opCode] : 0);
+        this.cycles += cycles;
+        if (tracing) {
+            instructionTracer.record(instructionAddress, opCode, operandLow, operandHigh, registerFile, this.cycles);
+        }
+        /*
+        * Executing all the handlers
+        */
+        if (! instructionExecutionHandlers.isEmpty()) {
+            final Instruction instruction = getCurrentInstruction();
+            instructionExecutionHandlers.forEach(
+                    instructionExecutionHandler -> instructionExecutionHandler.handle(this, instruction));
+        }
+        return cycles;
+    }
+
+    private int resolveEffectiveAddress() {
+        final int absolute = (operandHigh << 8) | operandLow;
+        switch (addressing) {
+            case ABSOLUTE:
+                return absolute;
+            case ABSOLUTE_X:
+                return index(absolute, registerFile.getX());
+            case ABSOLUTE_Y:
+                return index(absolute, registerFile.getY());
+            case IMMEDIATE:
+                return (instructionAddress + 1) & 0xffff;
+            case INDEXED_INDIRECT:
+                return readZeroPagePointer((operandLow + registerFile.getX()) & 0xff);
+            case INDIRECT:
+                //the 6502 never carries into the high byte of the pointer
+                return getCompleteMemory().readWordInPage(absolute);
+            case INDIRECT_INDEXED:
+                return index(readZeroPagePointer(operandLow), registerFile.getY());
+            case RELATIVE:
+                return (instructionAddress + instructionSize + (byte) operandLow) & 0xffff;
+            case ZERO_PAGE:
+                return operandLow;
+            case ZERO_PAGE_X:
+                return (operandLow + registerFile.getX()) & 0xff;
+            case ZERO_PAGE_Y:
+                return (operandLow + registerFile.getY()) & 0xff;
+            default:
+                return 0;
         }
     }
 
-    private boolean loadRegister(@NotNull Register register, @NotNull Instruction instruction, InstructionName name) throws
-            ProcessingException {
-        checkInstructionName(instruction, name);
-        Registers.loadRegister(register, instruction.argumentsProperty().get()[0]);
-        checkZeroAndNegative((Integer) register.getValue());
-        return false;
+    private int index(int base, int index) {
+        final int address = (base + index) & 0xffff;
+        pageCrossed = ((base ^ address) & 0xff00) != 0;
+        return address;
     }
 
-    private boolean storeRegister(@NotNull Register register, @NotNull Instruction instruction, InstructionName name) throws
-            ProcessingException {
-        checkInstructionName(instruction, name);
-        Registers.storeRegister(register, console.get(), instruction.argumentsProperty().get()[0]);
-        checkZeroAndNegative((Byte) register.getValue());
-        return false;
+    private int readZeroPagePointer(int address) {
+        return getCompleteMemory().readWordInPage(address);
     }
 
-    private boolean branchOnFlag(@NotNull String flagName, @NotNull Instruction instruction, boolean bool) throws
-            ProcessingException {
-        final ProcessorStatus currentProcessorStatus = getProcessorStatus();
-        flagName += "Property";
-        try {
-            final Method method = ProcessorStatus.class.getMethod(flagName);
-            final BooleanProperty flagProperty = (BooleanProperty) method.invoke(currentProcessorStatus);
-            final ProgramCounter programCounter = getProgramCounter();
-            if ((bool && flagProperty.get()) || (! bool && ! flagProperty.get())) {
-                return updateProgramCounter(programCounter,
-                        (programCounter.getValue() + instruction.argumentsProperty().get()[0]));
+    /**
+     * Immediate operands are taken from the instruction, so that {@link #process(Instruction)} does not need them to
+     * be in memory
+     */
+    private int readOperand() {
+        return addressing == Addressing.IMMEDIATE ? operandLow : getCompleteMemory().read(effectiveAddress);
+    }
 
-            }
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-            e.printStackTrace();
+    private int readModifiable() {
+        return addressing == Addressing.ACCUMULATOR ? registerFile.getA() : readOperand();
+    }
+
+    private void writeModified(int value) {
+        if (addressing == Addressing.ACCUMULATOR) {
+            registerFile.setA(value);
+        } else {
+            getCompleteMemory().write(effectiveAddress, value);
         }
-        return false;
+        checkZeroAndNegative(value);
     }
 
-    private boolean updateProgramCounter(@NotNull final ProgramCounter programCounter, Integer newValue) {
-        programCounter.setValue(newValue);
-        return true;
+    private void interrupt(int vector) {
+        final int programCounter = registerFile.getProgramCounter();
+        push(programCounter >>> 8);
+        push(programCounter);
+        push((registerFile.getProcessorStatus() & ~ ProcessorStatus.BREAK) | ProcessorStatus.UNUSED);
+        registerFile.setFlag(ProcessorStatus.INTERRUPT, true);
+        registerFile.setProgramCounter(getCompleteMemory().readWord(vector));
+        cycles += 7;
     }
 
-    private void setFlag(String flagName, boolean newValue) {
-        final ProcessorStatus currentProcessorStatus = getProcessorStatus();
-        flagName += "Property";
-        try {
-            final Method method = ProcessorStatus.class.getMethod(flagName);
-            final BooleanProperty flagProperty = (BooleanProperty) method.invoke(currentProcessorStatus);
-            flagProperty.setValue(newValue);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-            e.printStackTrace();
+    /**
+     * Posts the IRQ if a line is asserted and the interrupt flag is clear
+     */
+    private void postInterrupt() {
+        if (interruptLines != 0 && ! registerFile.isFlagSet(ProcessorStatus.INTERRUPT)) {
+            scheduler.post(interruptEvent, cycles);
         }
     }
 
-    private void compareRegisters(Integer integer1, Integer integer2) {
-        checkZeroAndNegative(integer1 - integer2);
-        if (integer1 > integer2) {
-            getProcessorStatus().setCarryFlagEnabled(true);
+    private void push(int value) {
+        final int current = registerFile.getStackPointer();
+        getCompleteMemory().write(0x0100 | current, value & 0xff);
+        registerFile.setStackPointer(current - 1);
+    }
+
+    private int pull() {
+        registerFile.setStackPointer(registerFile.getStackPointer() + 1);
+        return getCompleteMemory().read(0x0100 | registerFile.getStackPointer());
+    }
+
+    private void restoreProcessorStatus(int value) {
+        //the break and unused bits only exist on the stack
+        final int unaffected = ProcessorStatus.BREAK | ProcessorStatus.UNUSED;
+        registerFile.setProcessorStatus((value & ~ unaffected) | (registerFile.getProcessorStatus() & unaffected));
+        postInterrupt();
+    }
+
+    private void addWithCarry(int value) {
+        final int accumulator = registerFile.getA();
+        final int sum = accumulator + value + (registerFile.isFlagSet(ProcessorStatus.CARRY) ? 1 : 0);
+        registerFile.setFlag(ProcessorStatus.CARRY, sum > 0xff);
+        registerFile.setFlag(ProcessorStatus.OVERFLOW, ((accumulator ^ sum) & (value ^ sum) & 0x80) != 0);
+        registerFile.setA(sum & 0xff);
+        checkZeroAndNegative(sum & 0xff);
+    }
+
+    private void transferRegister(int from, int to) {
+        registerFile.set(to, registerFile.get(from));
+        checkZeroAndNegative(registerFile.get(to));
+    }
+
+    private void checkZeroAndNegative(int value) {
+        registerFile.setZeroAndNegative(value);
+    }
+
+    private boolean loadRegister(int index) {
+        registerFile.set(index, readOperand());
+        checkZeroAndNegative(registerFile.get(index));
+        return false;
+    }
+
+    private boolean storeRegister(int value) {
+        getCompleteMemory().write(effectiveAddress, value);
+        return false;
+    }
+
+    private boolean branchOnFlag(int flag, boolean bool) {
+        if (registerFile.isFlagSet(flag) == bool) {
+            //the effective address of a relative instruction is the target
+            branchCycles = (((instructionAddress + instructionSize) ^ effectiveAddress) & 0xff00) != 0 ? 2 : 1;
+            return updateProgramCounter(effectiveAddress);
         }
+        return false;
+    }
+
+    private boolean updateProgramCounter(int newValue) {
+        registerFile.setProgramCounter(newValue);
+        return true;
+    }
+
+    private void compareRegisters(int integer1, int integer2) {
+        checkZeroAndNegative((integer1 - integer2) & 0xff);
+        registerFile.setFlag(ProcessorStatus.CARRY, integer1 >= integer2);
     }
 
 }
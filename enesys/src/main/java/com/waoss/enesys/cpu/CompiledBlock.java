@@ -0,0 +1,39 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cpu;
+
+/**
+ * <p>A {@link BasicBlock} compiled into JVM bytecode by the {@link Recompiler}.
+ * The generated classes implement this interface;their code decodes every instruction of the block from constants and
+ * calls its method on the processor directly, through {@link CompiledCode}.</p>
+ *
+ * @see Recompiler
+ */
+@FunctionalInterface
+public interface CompiledBlock {
+
+    /**
+     * Executes the block from its first instruction.Returns early if the block is thrown away, like when it modifies
+     * itself, or when the cycles the processor runs until are reached;the processor then goes on interpreting.
+     *
+     * @param centralProcessor
+     *         The processor
+     */
+    void execute(CentralProcessor centralProcessor);
+}
@@ -0,0 +1,69 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cpu;
+
+/**
+ * <p>The entry points into the processor for the code the {@link Recompiler} generates.
+ * The generated classes are loaded by their own class loader, so they cannot call the package-private methods of
+ * {@link CentralProcessor};they call these instead, which are small enough to be inlined.This is not meant to be
+ * used by anything else.</p>
+ */
+public final class CompiledCode {
+
+    private CompiledCode() {
+    }
+
+    /**
+     * Decodes the instruction about to be executed
+     *
+     * @param centralProcessor
+     *         The processor
+     * @param opCode
+     *         The opcode
+     * @param instructionAddress
+     *         The address of the instruction
+     * @param instructionSize
+     *         The size of the instruction
+     * @param operandLow
+     *         The first operand byte
+     * @param operandHigh
+     *         The second operand byte
+     * @param effectiveAddress
+     *         The effective address if it is known when compiling, or else -1
+     */
+    public static void decode(CentralProcessor centralProcessor, int opCode, int instructionAddress,
+                              int instructionSize, int operandLow, int operandHigh, int effectiveAddress) {
+        centralProcessor.decodeCompiled(opCode, instructionAddress, instructionSize, operandLow, operandHigh,
+                effectiveAddress);
+    }
+
+    /**
+     * Finishes the instruction that was executed
+     *
+     * @param centralProcessor
+     *         The processor
+     * @param programCounterChanged
+     *         What the instruction method returned
+     *
+     * @return true if the compiled code may go on with the next instruction
+     */
+    public static boolean executed(CentralProcessor centralProcessor, boolean programCounterChanged) {
+        return centralProcessor.executedCompiled(programCounterChanged);
+    }
+}
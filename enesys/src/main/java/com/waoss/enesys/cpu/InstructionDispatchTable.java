@@ -0,0 +1,244 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cpu;
+
+import com.waoss.enesys.ProcessingException;
+import com.waoss.enesys.cpu.instructions.InstructionConstants;
+import com.waoss.enesys.cpu.instructions.InstructionName;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * <p>Maps every opcode to the {@link InstructionImplementation} that executes it.<br>
+ * The table is built once, when the class is initialized, from {@link InstructionConstants#instructions}.Processing an
+ * instruction is then a single array index instead of a reflective method lookup.Opcodes that are either illegal or
+ * not implemented yet are mapped to an implementation that throws a {@link ProcessingException}.</p>
+ *
+ * @see CentralProcessor#step()
+ */
+public final class InstructionDispatchTable {
+
+    /**
+     * The implementations stored in such a manner that the opcode is the index
+     */
+    private static final InstructionImplementation[] byOpCode = new InstructionImplementation[256];
+
+    /**
+     * The implementations stored in such a manner that the ordinal of the {@link InstructionName} is the index
+     */
+    private static final InstructionImplementation[] byInstructionName =
+            new InstructionImplementation[InstructionName.values().length];
+
+    /**
+     * True for the opcodes that have an implementation
+     */
+    private static final boolean[] supported = new boolean[256];
+
+    static {
+        for (InstructionName instructionName : InstructionName.values()) {
+            byInstructionName[instructionName.ordinal()] = implementationOf(instructionName);
+        }
+        for (int opCode = 0; opCode < byOpCode.length; opCode++) {
+            final InstructionName instructionName = nameOf(opCode);
+            final InstructionImplementation implementation = instructionName != null ?
+                    byInstructionName[instructionName.ordinal()] : null;
+            byOpCode[opCode] = implementation != null ? implementation : unsupported(opCode);
+            supported[opCode] = implementation != null;
+        }
+    }
+
+    private InstructionDispatchTable() {
+    }
+
+    /**
+     * Returns the implementation of the opcode
+     *
+     * @param opCode
+     *         The opcode
+     *
+     * @return the implementation of the opcode; never null
+     */
+    @NotNull
+    public static InstructionImplementation get(int opCode) {
+        return byOpCode[opCode & 0xff];
+    }
+
+    /**
+     * Returns true if the opcode has an implementation, so that it is not executed by one that throws a {@link
+     * ProcessingException}
+     *
+     * @param opCode
+     *         The opcode
+     *
+     * @return true if the opcode has an implementation
+     */
+    public static boolean isSupported(int opCode) {
+        return supported[opCode & 0xff];
+    }
+
+    /**
+     * Returns the implementation of the instruction
+     *
+     * @param instructionName
+     *         The name of the instruction
+     *
+     * @return the implementation of the instruction or null if it is not implemented
+     */
+    @Nullable
+    public static InstructionImplementation get(@NotNull InstructionName instructionName) {
+        return byInstructionName[instructionName.ordinal()];
+    }
+
+    @Nullable
+    private static InstructionName nameOf(int opCode) {
+        //illegal opcodes like KIL do not have an InstructionName
+        try {
+            return InstructionName.getByOpCode(opCode);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @NotNull
+    private static InstructionImplementation unsupported(int opCode) {
+        return centralProcessor -> {
+            throw new ProcessingException(opCode);
+        };
+    }
+
+    @Nullable
+    private static InstructionImplementation implementationOf(@NotNull InstructionName instructionName) {
+        switch (instructionName) {
+            case ADC:
+                return CentralProcessor::adc;
+            case AND:
+                return CentralProcessor::and;
+            case ASL:
+                return CentralProcessor::asl;
+            case BCC:
+                return CentralProcessor::bcc;
+            case BCS:
+                return CentralProcessor::bcs;
+            case BEQ:
+                return CentralProcessor::beq;
+            case BIT:
+                return CentralProcessor::bit;
+            case BMI:
+                return CentralProcessor::bmi;
+            case BNE:
+                return CentralProcessor::bne;
+            case BPL:
+                return CentralProcessor::bpl;
+            case BRK:
+                return CentralProcessor::brk;
+            case BVC:
+                return CentralProcessor::bvc;
+            case BVS:
+                return CentralProcessor::bvs;
+            case CLC:
+                return CentralProcessor::clc;
+            case CLD:
+                return CentralProcessor::cld;
+            case CLI:
+                return CentralProcessor::cli;
+            case CLV:
+                return CentralProcessor::clv;
+            case CMP:
+                return CentralProcessor::cmp;
+            case CPX:
+                return CentralProcessor::cpx;
+            case CPY:
+                return CentralProcessor::cpy;
+            case DEC:
+                return CentralProcessor::dec;
+            case DEX:
+                return CentralProcessor::dex;
+            case DEY:
+                return CentralProcessor::dey;
+            case EOR:
+                return CentralProcessor::eor;
+            case INC:
+                return CentralProcessor::inc;
+            case INX:
+                return CentralProcessor::inx;
+            case INY:
+                return CentralProcessor::iny;
+            case JMP:
+                return CentralProcessor::jmp;
+            case JSR:
+                return CentralProcessor::jsr;
+            case LDA:
+                return CentralProcessor::lda;
+            case LDX:
+                return CentralProcessor::ldx;
+            case LDY:
+                return CentralProcessor::ldy;
+            case LSR:
+                return CentralProcessor::lsr;
+            case NOP:
+                return CentralProcessor::nop;
+            case ORA:
+                return CentralProcessor::ora;
+            case PHA:
+                return CentralProcessor::pha;
+            case PHP:
+                return CentralProcessor::php;
+            case PLA:
+                return CentralProcessor::pla;
+            case PLP:
+                return CentralProcessor::plp;
+            case ROL:
+                return CentralProcessor::rol;
+            case ROR:
+                return CentralProcessor::ror;
+            case RTI:
+                return CentralProcessor::rti;
+            case RTS:
+                return CentralProcessor::rts;
+            case SBC:
+                return CentralProcessor::sbc;
+            case SEC:
+                return CentralProcessor::sec;
+            case SED:
+                return CentralProcessor::sed;
+            case SEI:
+                return CentralProcessor::sei;
+            case STA:
+                return CentralProcessor::sta;
+            case STX:
+                return CentralProcessor::stx;
+            case STY:
+                return CentralProcessor::sty;
+            case TAX:
+                return CentralProcessor::tax;
+            case TAY:
+                return CentralProcessor::tay;
+            case TSX:
+                return CentralProcessor::tsx;
+            case TXA:
+                return CentralProcessor::txa;
+            case TXS:
+                return CentralProcessor::txs;
+            case TYA:
+                return CentralProcessor::tya;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cpu;
+
+/**
+ * The implementation of a single instruction.<br>
+ * It is a functional interface whose function is {@link #execute(CentralProcessor)}, so every instruction method of
+ * {@link CentralProcessor} can be used as one with a method reference like {@code CentralProcessor::lda}.The
+ * instruction is read from the decoding state of the processor, not from an {@link
+ * com.waoss.enesys.cpu.instructions.Instruction} object.
+ *
+ * @see InstructionDispatchTable
+ */
+@FunctionalInterface
+public interface InstructionImplementation {
+
+    /**
+     * Executes the instruction on the processor
+     *
+     * @param centralProcessor
+     *         The processor to execute the decoded instruction on
+     *
+     * @return true if, and only if, the program counter was changed by the instruction
+     */
+    boolean execute(CentralProcessor centralProcessor);
+}
@@ -0,0 +1,145 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cpu;
+
+import com.waoss.enesys.cpu.instructions.InstructionConstants;
+
+/**
+ * <p>A batch of records of executed instructions, read straight from the ring buffer of an {@link InstructionTracer}.
+ * A record has the address, the opcode and the operand bytes of the instruction, the registers after it was executed
+ * and the cycles the processor executed until then.The records are read by their index in the batch;nothing is
+ * allocated for them.</p>
+ * <p>A batch is only valid while it is being handled.</p>
+ */
+public final class InstructionTraceBatch {
+
+    private final long[] records;
+    private final int mask;
+    private long start;
+    private int size;
+
+    InstructionTraceBatch(long[] records, int capacity) {
+        this.records = records;
+        this.mask = capacity - 1;
+    }
+
+    void reset(long start, int size) {
+        this.start = start;
+        this.size = size;
+    }
+
+    /**
+     * Returns the number of records in the batch
+     *
+     * @return the number of records
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getProgramCounter(int index) {
+        return (int) (instruction(index) & 0xffff);
+    }
+
+    public int getOpCode(int index) {
+        return (int) (instruction(index) >>> 16) & 0xff;
+    }
+
+    /**
+     * Returns the name of the instruction, like "LDA"
+     *
+     * @param index
+     *         The index of the record
+     *
+     * @return the name of the instruction
+     */
+    public String getInstructionName(int index) {
+        return InstructionConstants.instructions[getOpCode(index)];
+    }
+
+    public int getOperandLow(int index) {
+        return (int) (instruction(index) >>> 24) & 0xff;
+    }
+
+    public int getOperandHigh(int index) {
+        return (int) (instruction(index) >>> 32) & 0xff;
+    }
+
+    public int getA(int index) {
+        return (int) registers(index) & 0xff;
+    }
+
+    public int getX(int index) {
+        return (int) (registers(index) >>> 8) & 0xff;
+    }
+
+    public int getY(int index) {
+        return (int) (registers(index) >>> 16) & 0xff;
+    }
+
+    public int getStackPointer(int index) {
+        return (int) (registers(index) >>> 24) & 0xff;
+    }
+
+    public int getProcessorStatus(int index) {
+        return (int) (registers(index) >>> 32) & 0xff;
+    }
+
+    /**
+     * Returns the number of cycles the processor executed, including the instruction
+     *
+     * @param index
+     *         The index of the record
+     *
+     * @return the cycles
+     */
+    public long getCycles(int index) {
+        return records[offset(index) + 2];
+    }
+
+    /**
+     * Formats a record like a line of a trace log
+     *
+     * @param index
+     *         The index of the record
+     *
+     * @return the formatted record
+     */
+    public String toString(int index) {
+        return String.format("%04X  %02X %02X %02X  %s  A:%02X X:%02X Y:%02X P:%02X SP:%02X CYC:%d",
+                getProgramCounter(index), getOpCode(index), getOperandLow(index), getOperandHigh(index),
+                getInstructionName(index), getA(index), getX(index), getY(index), getProcessorStatus(index),
+                getStackPointer(index), getCycles(index));
+    }
+
+    private long instruction(int index) {
+        return records[offset(index)];
+    }
+
+    private long registers(int index) {
+        return records[offset(index) + 1];
+    }
+
+    private int offset(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Record " + index + " is not in a batch of " + size);
+        }
+        return (int) ((start + index) & mask) * InstructionTracer.RECORD_LENGTH;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cpu;
+
+/**
+ * <p>Receives the instructions a processor executed, in batches, from the {@link InstructionTracer}.
+ * Handlers are called on the thread of the tracer, never on the thread of the processor.It is a functional interface
+ * and it's function is {@link #handle(InstructionTraceBatch)}</p>
+ *
+ * @see InstructionTracer#addHandler(InstructionTraceHandler)
+ */
+@FunctionalInterface
+public interface InstructionTraceHandler {
+
+    /**
+     * Handles a batch of executed instructions.The batch is reused, so it must not be kept after this returns.
+     *
+     * @param batch
+     *         The executed instructions, oldest first
+     */
+    void handle(InstructionTraceBatch batch);
+}
@@ -0,0 +1,307 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cpu;
+
+import com.waoss.enesys.cpu.registers.RegisterFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Traces the instructions a processor executes without slowing it down much.
+ * The processor writes a record of primitives for every executed instruction into a preallocated ring buffer and a
+ * thread of the tracer hands the records to the {@link InstructionTraceHandler}s in batches.Nothing is recorded while
+ * there are no handlers, so tracing costs a single check per instruction when nobody listens.</p>
+ * <p>The tracer can sample : it can record only every Nth instruction, or only some opcodes.If the handlers are slower
+ * than the processor, the records that do not fit in the buffer are dropped, and counted, so the processor never
+ * waits;a blocking tracer makes the processor wait for room instead, so no record is lost.</p>
+ *
+ * @see CentralProcessor#getInstructionTracer()
+ */
+public final class InstructionTracer {
+
+    /**
+     * The default number of records in the buffer
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * The maximum number of records in a batch
+     */
+    public static final int MAX_BATCH_SIZE = 4096;
+
+    /**
+     * The number of longs a record takes : the instruction, the registers and the cycles
+     */
+    static final int RECORD_LENGTH = 3;
+
+    private final CentralProcessor centralProcessor;
+    private final CopyOnWriteArrayList<InstructionTraceHandler> handlers = new CopyOnWriteArrayList<>();
+    private final int capacity;
+    private long[] records;
+
+    /*
+     * The number of records written by the processor and read by the thread of the tracer
+     */
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong read = new AtomicLong();
+    private long writing;
+    private volatile long dropped;
+
+    /*
+     * The sampling
+     */
+    private volatile int sampleInterval = 1;
+    private volatile boolean[] recordedOpCodes;
+    private int countdown = 1;
+    private volatile boolean blocking;
+
+    private volatile Thread thread;
+
+    /**
+     * Creates a tracer with the default capacity
+     *
+     * @param centralProcessor
+     *         The processor to trace
+     */
+    InstructionTracer(CentralProcessor centralProcessor) {
+        this(centralProcessor, DEFAULT_CAPACITY);
+    }
+
+    InstructionTracer(CentralProcessor centralProcessor, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of 2 : " + capacity);
+        }
+        this.centralProcessor = centralProcessor;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds a handler and starts tracing if it is the first one
+     *
+     * @param handler
+     *         The handler
+     */
+    public synchronized void addHandler(@NotNull InstructionTraceHandler handler) {
+        handlers.add(handler);
+        if (thread == null) {
+            if (records == null) {
+                records = new long[capacity * RECORD_LENGTH];
+            }
+            read.set(written.get());
+            thread = new Thread(this::deliver, "InstructionTracer");
+            thread.setDaemon(true);
+            thread.start();
+            centralProcessor.setTracing(true);
+        }
+    }
+
+    /**
+     * Removes a handler and stops tracing if it was the last one.The records that were not delivered yet are thrown
+     * away, and the thread of the tracer is waited for unless a handler removes itself, so that no handler added
+     * afterwards gets a record twice.
+     *
+     * @param handler
+     *         The handler
+     */
+    public synchronized void removeHandler(@NotNull InstructionTraceHandler handler) {
+        handlers.remove(handler);
+        if (handlers.isEmpty() && thread != null) {
+            centralProcessor.setTracing(false);
+            final Thread thread = this.thread;
+            this.thread = null;
+            LockSupport.unpark(thread);
+            if (thread != Thread.currentThread()) {
+                joinUninterruptibly(thread);
+            }
+        }
+    }
+
+    /**
+     * Waits until every record written so far was handled
+     *
+     * @throws InterruptedException
+     *         If the waiting thread is interrupted
+     */
+    public void flush() throws InterruptedException {
+        final long target = written.get();
+        while (read.get() < target && thread != null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    /**
+     * Returns true if there are handlers, so that instructions are recorded
+     *
+     * @return true if instructions are recorded
+     */
+    public boolean isTracing() {
+        return ! handlers.isEmpty();
+    }
+
+    /**
+     * Returns the number of instructions that were recorded
+     *
+     * @return the number of instructions that were recorded
+     */
+    public long getRecorded() {
+        return written.get();
+    }
+
+    /**
+     * Returns the number of records that were dropped because the buffer was full
+     *
+     * @return the number of records dropped
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    public boolean isBlocking() {
+        return blocking;
+    }
+
+    /**
+     * Makes the processor wait for room in the buffer when it is full instead of dropping the records.It is off by
+     * default : a slow handler, like one that prints, would slow the processor down to its own pace.
+     *
+     * @param blocking
+     *         true to never drop a record
+     */
+    public void setBlocking(boolean blocking) {
+        this.blocking = blocking;
+    }
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * Records only every Nth instruction that is not filtered out
+     *
+     * @param sampleInterval
+     *         N;1 records every instruction
+     */
+    public void setSampleInterval(int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("The sample interval must be positive : " + sampleInterval);
+        }
+        this.sampleInterval = sampleInterval;
+        //the next instruction starts the new interval
+        this.countdown = 1;
+    }
+
+    /**
+     * Records only the instructions with the given opcodes
+     *
+     * @param opCodes
+     *         The opcodes to record
+     */
+    public void setRecordedOpCodes(int... opCodes) {
+        final boolean[] recordedOpCodes = new boolean[256];
+        for (int opCode : opCodes) {
+            recordedOpCodes[opCode & 0xff] = true;
+        }
+        this.recordedOpCodes = recordedOpCodes;
+    }
+
+    /**
+     * Records the instructions with any opcode again
+     */
+    public void recordAllOpCodes() {
+        this.recordedOpCodes = null;
+    }
+
+    /**
+     * Records an executed instruction.Only called by the processor, on its own thread.
+     */
+    void record(int programCounter, int opCode, int operandLow, int operandHigh, RegisterFile registerFile,
+                long cycles) {
+        final boolean[] recordedOpCodes = this.recordedOpCodes;
+        if ((recordedOpCodes != null && ! recordedOpCodes[opCode]) || -- countdown > 0) {
+            return;
+        }
+        countdown = sampleInterval;
+        final long writing = this.writing;
+        while (writing - read.get() >= capacity) {
+            if (! blocking) {
+                dropped++;
+                return;
+            }
+            if (thread == null) {
+                return;
+            }
+            LockSupport.parkNanos(10_000);
+        }
+        final int offset = (int) (writing & (capacity - 1)) * RECORD_LENGTH;
+        records[offset] = programCounter | (long) opCode << 16 | (long) operandLow << 24 | (long) operandHigh << 32;
+        records[offset + 1] = registerFile.getA() | registerFile.getX() << 8 | registerFile.getY() << 16 |
+                (long) registerFile.getStackPointer() << 24 | (long) registerFile.getProcessorStatus() << 32;
+        records[offset + 2] = cycles;
+        this.writing = writing + 1;
+        written.lazySet(writing + 1);
+    }
+
+    /**
+     * The loop of the thread of the tracer
+     */
+    private void deliver() {
+        final Thread current = Thread.currentThread();
+        //a thread that is stopped may still be handling a batch when the next one starts, so they have their own
+        final InstructionTraceBatch batch = new InstructionTraceBatch(records, capacity);
+        while (thread == current) {
+            final long start = read.get();
+            final int size = (int) Math.min(written.get() - start, MAX_BATCH_SIZE);
+            if (size == 0) {
+                LockSupport.parkNanos(100_000);
+                continue;
+            }
+            batch.reset(start, size);
+            for (InstructionTraceHandler handler : handlers) {
+                try {
+                    handler.handle(batch);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (thread == current) {
+                read.lazySet(start + size);
+            }
+        }
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
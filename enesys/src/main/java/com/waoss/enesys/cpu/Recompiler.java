@@ -0,0 +1,239 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cpu;
+
+import com.waoss.enesys.cpu.instructions.InstructionConstants;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.util.Locale;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * <p>The optional compiling tier of the processor.
+ * It counts how many times every {@link BasicBlock} is entered and once a block reached the threshold it is translated
+ * into a class that implements {@link CompiledBlock}.The generated code has the decoding state of every instruction as
+ * constants and calls the instruction methods of {@link CentralProcessor} directly, so there is no dispatch left and
+ * HotSpot can inline and compile it like any other code.</p>
+ * <p>The classes are loaded by a class loader of their own, so they are unloaded with the blocks.Compiled code is
+ * thrown away with its block when the memory it was decoded from changes, and it returns to the interpreter as soon as
+ * that happens in the middle of it.</p>
+ *
+ * @see CentralProcessor#getRecompiler()
+ */
+public final class Recompiler {
+
+    /**
+     * The default number of times a block is entered before it is compiled
+     */
+    public static final int DEFAULT_THRESHOLD = 256;
+
+    /**
+     * The number of classes a class loader defines before a new one is used, so that the classes of blocks that were
+     * thrown away, like self-modifying code, can be unloaded
+     */
+    private static final int CLASSES_PER_LOADER = 1024;
+
+    private static final String compiledBlock = Type.getInternalName(CompiledBlock.class);
+    private static final String compiledCode = Type.getInternalName(CompiledCode.class);
+    private static final String centralProcessor = Type.getInternalName(CentralProcessor.class);
+    private static final String decodeDescriptor = "(L" + centralProcessor + ";IIIIII)V";
+    private static final String executedDescriptor = "(L" + centralProcessor + ";Z)Z";
+
+    private boolean enabled;
+    private int threshold = DEFAULT_THRESHOLD;
+    private BlockClassLoader blockClassLoader;
+    private long compiledBlocks;
+
+    /**
+     * Returns the compiled code of the block if it is hot enough, compiling it the first time it is
+     *
+     * @param block
+     *         The block that is entered
+     *
+     * @return the compiled code, or null if the block is not compiled
+     */
+    @Nullable
+    CompiledBlock profile(@NotNull BasicBlock block) {
+        if (block.compiledBlock == null && block.executions++ == threshold) {
+            block.compiledBlock = compile(block);
+        }
+        return block.compiledBlock;
+    }
+
+    /**
+     * Compiles a block
+     *
+     * @param block
+     *         The block
+     *
+     * @return the compiled code, or null if the block has instructions that are not implemented
+     */
+    @Nullable
+    CompiledBlock compile(@NotNull BasicBlock block) {
+        for (int i = 0; i < block.length; i++) {
+            if (! InstructionDispatchTable.isSupported(block.opCodes[i])) {
+                return null;
+            }
+        }
+        if (blockClassLoader == null || blockClassLoader.classes >= CLASSES_PER_LOADER) {
+            blockClassLoader = new BlockClassLoader(Recompiler.class.getClassLoader());
+        }
+        final String name = String.format("com/waoss/enesys/cpu/compiled/Block%04X_%d", block.addresses[0],
+                compiledBlocks);
+        try {
+            final Class<?> type = blockClassLoader.define(name.replace('/', '.'), generate(name, block));
+            final CompiledBlock compiled = (CompiledBlock) type.getConstructor().newInstance();
+            compiledBlocks++;
+            return compiled;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            //the interpreter can always run the block
+            return null;
+        }
+    }
+
+    private static byte[] generate(String name, BasicBlock block) {
+        final ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        classWriter.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, name, null, "java/lang/Object",
+                new String[]{compiledBlock});
+        final MethodVisitor constructor = classWriter.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(ALOAD, 0);
+        constructor.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        constructor.visitInsn(RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+        final MethodVisitor execute = classWriter.visitMethod(ACC_PUBLIC, "execute", "(L" + centralProcessor + ";)V",
+                null, null);
+        execute.visitCode();
+        for (int i = 0; i < block.length; i++) {
+            final int opCode = block.opCodes[i];
+            execute.visitVarInsn(ALOAD, 1);
+            pushInt(execute, opCode);
+            pushInt(execute, block.addresses[i]);
+            pushInt(execute, block.sizes[i]);
+            pushInt(execute, block.operandLows[i]);
+            pushInt(execute, block.operandHighs[i]);
+            pushInt(execute, block.effectiveAddresses[i]);
+            execute.visitMethodInsn(INVOKESTATIC, compiledCode, "decode", decodeDescriptor, false);
+            execute.visitVarInsn(ALOAD, 1);
+            execute.visitVarInsn(ALOAD, 1);
+            execute.visitMethodInsn(INVOKEVIRTUAL, centralProcessor,
+                    InstructionConstants.instructions[opCode].toLowerCase(Locale.ENGLISH), "()Z", false);
+            execute.visitMethodInsn(INVOKESTATIC, compiledCode, "executed", executedDescriptor, false);
+            if (i < block.length - 1) {
+                final Label next = new Label();
+                execute.visitJumpInsn(IFNE, next);
+                execute.visitInsn(RETURN);
+                execute.visitLabel(next);
+            } else {
+                execute.visitInsn(POP);
+                execute.visitInsn(RETURN);
+            }
+        }
+        execute.visitMaxs(0, 0);
+        execute.visitEnd();
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    private static void pushInt(MethodVisitor methodVisitor, int value) {
+        if (value >= - 1 && value <= 5) {
+            methodVisitor.visitInsn(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            methodVisitor.visitIntInsn(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            methodVisitor.visitIntInsn(SIPUSH, value);
+        } else {
+            methodVisitor.visitLdcInsn(value);
+        }
+    }
+
+    /**
+     * Returns true if hot blocks are compiled
+     *
+     * @return true if hot blocks are compiled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables compiling.Code that was compiled already keeps being used until its block is thrown away.
+     *
+     * @param enabled
+     *         true to compile hot blocks
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the number of times a block is entered before it is compiled
+     *
+     * @return the threshold
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Sets the number of times a block is entered before it is compiled
+     *
+     * @param threshold
+     *         the threshold;0 compiles a block the first time it is entered
+     */
+    public void setThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("The threshold must not be negative : " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns the number of blocks that were compiled
+     *
+     * @return the number of blocks that were compiled
+     */
+    public long getCompiledBlocks() {
+        return compiledBlocks;
+    }
+
+    /**
+     * Loads the generated classes, isolated from everything but the classes of the processor
+     */
+    private static final class BlockClassLoader extends ClassLoader {
+
+        private int classes;
+
+        BlockClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            classes++;
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
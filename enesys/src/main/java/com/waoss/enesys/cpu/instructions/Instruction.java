@@ -217,16 +217,15 @@ public final class Instruction {
                 if (givenArguments != null) {
                     postXAddress = givenArguments[0] + centralProcessor.getXRegister().getValue();
                 }
-                Integer mostSignificantByte = centralProcessor.getCompleteMemory().read(postXAddress + 1);
-                Integer leastSignificantByte = centralProcessor.getCompleteMemory().read(postXAddress);
-                Integer finalAddress = (mostSignificantByte * 0x0100) + leastSignificantByte;
+                //the pointer is in the zero page, and so is its high byte after $FF
+                Integer finalAddress = centralProcessor.getCompleteMemory().readWordInPage(postXAddress & 0xff);
                 if (resultArguments != null) {
                     resultArguments[0] = centralProcessor.getCompleteMemory().read(finalAddress);
                 }
                 break;
             case INDIRECT:
-                mostSignificantByte = givenArguments != null ? givenArguments[1] : null;
-                leastSignificantByte = givenArguments != null ? givenArguments[0] : null;
+                Integer mostSignificantByte = givenArguments != null ? givenArguments[1] : null;
+                Integer leastSignificantByte = givenArguments != null ? givenArguments[0] : null;
                 finalAddress = (mostSignificantByte * 0x0100) + leastSignificantByte;
                 if (resultArguments != null) {
                     resultArguments[0] = centralProcessor.getCompleteMemory().read(finalAddress);
@@ -234,9 +233,7 @@ public final class Instruction {
                 break;
             case INDIRECT_INDEXED:
                 Integer addressToLookup = givenArguments != null ? givenArguments[0] : null;
-                mostSignificantByte = centralProcessor.getCompleteMemory().read(addressToLookup + 1);
-                leastSignificantByte = centralProcessor.getCompleteMemory().read(addressToLookup);
-                finalAddress = (mostSignificantByte * 0x0100) + leastSignificantByte;
+                finalAddress = centralProcessor.getCompleteMemory().readWordInPage(addressToLookup & 0xff);
                 finalAddress += centralProcessor.getYRegister().getValue();
                 if (resultArguments != null) {
                     resultArguments[0] = centralProcessor.getCompleteMemory().read(finalAddress);
@@ -18,6 +18,8 @@
 
 package com.waoss.enesys.cpu.instructions;
 
+import com.waoss.enesys.mem.Addressing;
+
 public final class Instructions {
 
     private Instructions() {
@@ -26,4 +28,37 @@ public final class Instructions {
     public static final int getInstructionSize(int opcode) {
         return InstructionConstants.instructionSizes[opcode];
     }
+
+    /**
+     * Returns the number of cycles the instruction takes, without the penalties for crossing pages and taking branches
+     *
+     * @param opcode
+     *         The opcode of the instruction
+     *
+     * @return the number of cycles
+     */
+    public static int getInstructionCycles(int opcode) {
+        return InstructionConstants.instructionCycles[opcode];
+    }
+
+    /**
+     * Returns the opcode of the instruction with the given name and addressing
+     *
+     * @param instructionName
+     *         The name of the instruction
+     * @param addressing
+     *         The addressing mode
+     *
+     * @return the opcode, or -1 if there is no such instruction
+     */
+    public static int getOpCode(InstructionName instructionName, Addressing addressing) {
+        final String name = instructionName.name();
+        for (int opCode = 0; opCode < InstructionConstants.instructions.length; opCode++) {
+            if (name.equals(InstructionConstants.instructions[opCode]) &&
+                    InstructionConstants.addressings[opCode] == addressing) {
+                return opCode;
+            }
+        }
+        return - 1;
+    }
 }
@@ -29,10 +29,19 @@ package com.waoss.enesys.cpu.registers;
 public class AccumalativeRegister extends IntRegister {
 
     /**
-     * Creates a new A register
-     * The constructor of {@link IntRegister#IntRegister(Integer)} takes in the default value
+     * Creates a new A register, that is not part of the register file of a console
      */
     public AccumalativeRegister() {
-        super(0x0);
+        this(new RegisterFile());
+    }
+
+    /**
+     * Creates a new A register backed by the register file
+     *
+     * @param registerFile
+     *         The register file
+     */
+    public AccumalativeRegister(RegisterFile registerFile) {
+        super(registerFile, RegisterFile.A);
     }
 }
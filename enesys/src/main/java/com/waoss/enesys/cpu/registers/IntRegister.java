@@ -18,18 +18,88 @@
 
 package com.waoss.enesys.cpu.registers;
 
+import javafx.beans.property.ObjectProperty;
+import org.jetbrains.annotations.NotNull;
+
 /**
- * An implementation of a register that is implemented as an int.
+ * <p>An implementation of a register that is implemented as an int.
+ * It is an adapter over one slot of a {@link RegisterFile} : the value lives in the primitive field of the register
+ * file and its property is the lazily created view of {@link RegisterFile#valueProperty(int)}.</p>
  */
 public class IntRegister extends RegisterImpl<Integer> {
 
     /**
-     * Creates a new IntRegister
+     * The register file the value is stored in
+     */
+    @NotNull
+    private final RegisterFile registerFile;
+
+    /**
+     * The index of the register in the register file
+     */
+    private final int index;
+
+    /**
+     * Creates a new IntRegister that is not part of the register file of a console.
+     * It is 16 bits wide.
      *
      * @param defaultValue
      *         The default value of the register
      */
     public IntRegister(Integer defaultValue) {
+        this(new RegisterFile(), RegisterFile.PROGRAM_COUNTER, defaultValue);
+    }
+
+    /**
+     * Creates a new IntRegister backed by a slot of a register file
+     *
+     * @param registerFile
+     *         The register file
+     * @param index
+     *         The index of the register in the register file, like {@link RegisterFile#A}
+     */
+    protected IntRegister(@NotNull RegisterFile registerFile, int index) {
+        this(registerFile, index, registerFile.get(index));
+    }
+
+    private IntRegister(@NotNull RegisterFile registerFile, int index, Integer defaultValue) {
         super(defaultValue);
+        this.registerFile = registerFile;
+        this.index = index;
+        registerFile.set(index, defaultValue);
+    }
+
+    /**
+     * Returns the register file the value is stored in
+     *
+     * @return the register file the value is stored in
+     */
+    @NotNull
+    public RegisterFile getRegisterFile() {
+        return registerFile;
+    }
+
+    /**
+     * Returns the value without boxing it
+     *
+     * @return the value
+     */
+    public int intValue() {
+        return registerFile.get(index);
+    }
+
+    @Override
+    public Integer getValue() {
+        return registerFile.get(index);
+    }
+
+    @Override
+    public void setValue(Integer value) {
+        registerFile.set(index, value);
+    }
+
+    @Override
+    public ObjectProperty<Integer> valueProperty() {
+        return registerFile.valueProperty(index);
     }
 }
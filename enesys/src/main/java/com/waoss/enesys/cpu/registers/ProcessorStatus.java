@@ -28,72 +28,99 @@ import java.util.List;
 /**
  * An instance of this class represents the "status" of a processor<br>
  * The processor status was a special register that stored meta-data of the 6502.<br>
- * They have been implemented as JavaFX properties
+ * <p>The status is a single packed byte in the {@link RegisterFile};every flag is one bit of it, so setting or testing
+ * a flag is a mask operation.The zero and negative flags are set from a table with an entry for every byte.The flags
+ * are also available as JavaFX properties, which are only created when they are asked for.</p>
  */
 public final class ProcessorStatus extends IntRegister {
 
     /**
      * Carry Flag : set when the last operation resulted in some sort of carry
      */
-    private final BooleanProperty carryFlagEnabled = new SimpleBooleanProperty(this, "carryFlagEnabled", false);
+    public static final int CARRY = 1 << 0;
     /**
      * Zero Flag :set when the last operation yielded zero
      */
-    private final BooleanProperty zeroFlagEnabled = new SimpleBooleanProperty(this, "zeroFlagEnabled", false);
+    public static final int ZERO = 1 << 1;
     /**
-     * Interrupt Flag : not as sure when it's set(something to work on)
+     * Interrupt Flag : set when interrupts are disabled
      */
-    private final BooleanProperty interruptFlagEnabled = new SimpleBooleanProperty(this, "interruptFlagEnabled", true);
+    public static final int INTERRUPT = 1 << 2;
     /**
      * Decimal Flag : no use to us(The NES disabled Binary Coded Decimals of the 6502)
      */
-    private final BooleanProperty decimalFlagEnabled = new SimpleBooleanProperty(this, "decimalFlagEnabled", false);
+    public static final int DECIMAL = 1 << 3;
     /**
      * Break Flag : for break instructions(BRK)
      */
-    private final BooleanProperty breakFlagEnabled = new SimpleBooleanProperty(this, "breakFlagEnabled", true);
+    public static final int BREAK = 1 << 4;
     /**
      * Unused Flag : never used
      */
-    private final transient BooleanProperty unusedFlagEnabled = new SimpleBooleanProperty(this, "unusedFlagEnabled", true);
+    public static final int UNUSED = 1 << 5;
     /**
      * Overflow Flag : set when the last operation resulted in some sort of overflow
      */
-    private final BooleanProperty overflowFlagEnabled = new SimpleBooleanProperty(this, "overflowFlagEnabled", false);
+    public static final int OVERFLOW = 1 << 6;
     /**
      * Negative Flag : set when an operation yields a negative value
      */
-    private final BooleanProperty negativeFlagEnabled = new SimpleBooleanProperty(this, "negativeFlagEnabled", false);
-
-    /*
-     * Sets the values of all the properties.
-     * The strange left shift just tells us where some bit is.
-     */ {
-        this.carryFlagEnabled.set(((this.getValue() & (1)) > 0));
-        this.zeroFlagEnabled.set(((this.getValue() & (1 << 1)) > 0));
-        this.interruptFlagEnabled.set(!((this.getValue() & (1 << 2)) > 0));
-        this.decimalFlagEnabled.set(((this.getValue() & (1 << 3)) > 0));
-        this.breakFlagEnabled.set(((this.getValue() & (1 << 4)) > 0));
-        this.unusedFlagEnabled.set(((this.getValue() & (1 << 5)) > 0));
-        this.overflowFlagEnabled.set(((this.getValue() & (1 << 6)) > 0));
-        this.negativeFlagEnabled.set(((this.getValue() & (1 << 7)) > 0));
+    public static final int NEGATIVE = 1 << 7;
+
+    /**
+     * The zero and negative flags for every byte, such that the byte is the index
+     */
+    private static final byte[] zeroAndNegativeFlags = new byte[256];
+
+    static {
+        for (int value = 0; value < zeroAndNegativeFlags.length; value++) {
+            zeroAndNegativeFlags[value] = (byte) ((value == 0 ? ZERO : 0) | (value & NEGATIVE));
+        }
     }
 
+    /**
+     * The properties of the flags, such that the bit of the flag is the index;created when they are asked for
+     */
+    private BooleanProperty[] flagProperties;
+
     /**
      * Creates a new ProcessorStatus with the default values for all the flags
      */
     public ProcessorStatus() {
-        super(0b00110100);
+        this(new RegisterFile());
     }
 
     /**
-     * Returns the property that contains the flag
+     * Creates a new ProcessorStatus backed by the register file
+     *
+     * @param registerFile
+     *         The register file
+     */
+    public ProcessorStatus(RegisterFile registerFile) {
+        super(registerFile, RegisterFile.PROCESSOR_STATUS);
+    }
+
+    /**
+     * Returns the zero and negative flags that a value sets
+     *
+     * @param value
+     *         The value;only the low byte is looked at
+     *
+     * @return the {@link #ZERO} and {@link #NEGATIVE} bits for the value
+     */
+    public static int zeroAndNegative(int value) {
+        return zeroAndNegativeFlags[value & 0xff] & 0xff;
+    }
+
+    /**
+     * Returns the property that contains the flag.
+     * The property is created the first time it is asked for.
      *
      * @return the property that contains the flag
      */
     @NotNull
     public final BooleanProperty carryFlagEnabledProperty() {
-        return carryFlagEnabled;
+        return flagProperty(CARRY, "carryFlagEnabled");
     }
 
     /**
@@ -102,7 +129,7 @@ public final class ProcessorStatus extends IntRegister {
      * @return true if the carry flag is enabled
      */
     public boolean isCarryFlagEnabled() {
-        return carryFlagEnabled.get();
+        return getRegisterFile().isFlagSet(CARRY);
     }
 
     /**
@@ -111,17 +138,18 @@ public final class ProcessorStatus extends IntRegister {
      * @param carryFlagEnabled to enable or to disable
      */
     public void setCarryFlagEnabled(boolean carryFlagEnabled) {
-        enableFlag(this.carryFlagEnabled, carryFlagEnabled, 0);
+        getRegisterFile().setFlag(CARRY, carryFlagEnabled);
     }
 
     /**
-     * Returns the property that contains the flag
+     * Returns the property that contains the flag.
+     * The property is created the first time it is asked for.
      *
      * @return the property that contains the flag
      */
     @NotNull
     public final BooleanProperty zeroFlagEnabledProperty() {
-        return zeroFlagEnabled;
+        return flagProperty(ZERO, "zeroFlagEnabled");
     }
 
     /**
@@ -130,7 +158,7 @@ public final class ProcessorStatus extends IntRegister {
      * @return true if the zero flag is enabled
      */
     public boolean isZeroFlagEnabled() {
-        return zeroFlagEnabled.get();
+        return getRegisterFile().isFlagSet(ZERO);
     }
 
     /**
@@ -139,17 +167,18 @@ public final class ProcessorStatus extends IntRegister {
      * @param zeroFlagEnabled to enable or to disable
      */
     public void setZeroFlagEnabled(boolean zeroFlagEnabled) {
-        enableFlag(this.zeroFlagEnabled, zeroFlagEnabled, 1);
+        getRegisterFile().setFlag(ZERO, zeroFlagEnabled);
     }
 
     /**
-     * Returns the property that contains the flag
+     * Returns the property that contains the flag.
+     * The property is created the first time it is asked for.
      *
      * @return the property that contains the flag
      */
     @NotNull
     public final BooleanProperty interruptFlagEnabledProperty() {
-        return interruptFlagEnabled;
+        return flagProperty(INTERRUPT, "interruptFlagEnabled");
     }
 
     /**
@@ -158,7 +187,7 @@ public final class ProcessorStatus extends IntRegister {
      * @return true if the interrupt flag is enabled
      */
     public boolean isInterruptFlagEnabled() {
-        return interruptFlagEnabled.get();
+        return getRegisterFile().isFlagSet(INTERRUPT);
     }
 
     /**
@@ -167,17 +196,18 @@ public final class ProcessorStatus extends IntRegister {
      * @param interruptFlagEnabled to enable or to disable
      */
     public void setInterruptFlagEnabled(boolean interruptFlagEnabled) {
-        enableFlag(this.interruptFlagEnabled, !interruptFlagEnabled, 2);
+        getRegisterFile().setFlag(INTERRUPT, interruptFlagEnabled);
     }
 
     /**
-     * Returns the property that contains the flag
+     * Returns the property that contains the flag.
+     * The property is created the first time it is asked for.
      *
      * @return the property that contains the flag
      */
     @NotNull
     public final BooleanProperty decimalFlagEnabledProperty() {
-        return decimalFlagEnabled;
+        return flagProperty(DECIMAL, "decimalFlagEnabled");
     }
 
     /**
@@ -186,26 +216,27 @@ public final class ProcessorStatus extends IntRegister {
      * @return true if the decimal flag is enabled
      */
     public boolean isDecimalFlagEnabled() {
-        return decimalFlagEnabled.get();
+        return getRegisterFile().isFlagSet(DECIMAL);
     }
 
     /**
      * Enables/disables the flag
      *
-     * @param interruptFlagEnabled to enable or to disable
+     * @param decimalFlagEnabled to enable or to disable
      */
-    public void setDecimalFlagEnabled(boolean interruptFlagEnabled) {
-        enableFlag(decimalFlagEnabled, interruptFlagEnabled, 3);
+    public void setDecimalFlagEnabled(boolean decimalFlagEnabled) {
+        getRegisterFile().setFlag(DECIMAL, decimalFlagEnabled);
     }
 
     /**
-     * Returns the property that contains the flag
+     * Returns the property that contains the flag.
+     * The property is created the first time it is asked for.
      *
      * @return the property that contains the flag
      */
     @NotNull
     public final BooleanProperty breakFlagEnabledProperty() {
-        return breakFlagEnabled;
+        return flagProperty(BREAK, "breakFlagEnabled");
     }
 
     /**
@@ -214,7 +245,7 @@ public final class ProcessorStatus extends IntRegister {
      * @return true if the break flag is enabled
      */
     public boolean isBreakFlagEnabled() {
-        return breakFlagEnabled.get();
+        return getRegisterFile().isFlagSet(BREAK);
     }
 
     /**
@@ -223,17 +254,18 @@ public final class ProcessorStatus extends IntRegister {
      * @param breakFlagEnabled to enable or to disable
      */
     public void setBreakFlagEnabled(boolean breakFlagEnabled) {
-        enableFlag(this.breakFlagEnabled, breakFlagEnabled, 4);
+        getRegisterFile().setFlag(BREAK, breakFlagEnabled);
     }
 
     /**
-     * Returns the property that contains the flag
+     * Returns the property that contains the flag.
+     * The property is created the first time it is asked for.
      *
      * @return the property that contains the flag
      */
     @NotNull
     public final BooleanProperty overflowFlagEnabledProperty() {
-        return overflowFlagEnabled;
+        return flagProperty(OVERFLOW, "overflowFlagEnabled");
     }
 
     /**
@@ -242,7 +274,7 @@ public final class ProcessorStatus extends IntRegister {
      * @return true if the overflow flag is enabled
      */
     public boolean isOverflowFlagEnabled() {
-        return overflowFlagEnabled.get();
+        return getRegisterFile().isFlagSet(OVERFLOW);
     }
 
     /**
@@ -251,17 +283,18 @@ public final class ProcessorStatus extends IntRegister {
      * @param overflowFlagEnabled to enable or to disable
      */
     public void setOverflowFlagEnabled(boolean overflowFlagEnabled) {
-        enableFlag(this.overflowFlagEnabled, overflowFlagEnabled, 6);
+        getRegisterFile().setFlag(OVERFLOW, overflowFlagEnabled);
     }
 
     /**
-     * Returns the property that contains the flag
+     * Returns the property that contains the flag.
+     * The property is created the first time it is asked for.
      *
      * @return the property that contains the flag
      */
     @NotNull
     public final BooleanProperty negativeFlagEnabledProperty() {
-        return negativeFlagEnabled;
+        return flagProperty(NEGATIVE, "negativeFlagEnabled");
     }
 
     /**
@@ -270,7 +303,7 @@ public final class ProcessorStatus extends IntRegister {
      * @return true if the negative flag is enabled
      */
     public boolean isNegativeFlagEnabled() {
-        return negativeFlagEnabled.get();
+        return getRegisterFile().isFlagSet(NEGATIVE);
     }
 
     /**
@@ -279,7 +312,7 @@ public final class ProcessorStatus extends IntRegister {
      * @param negativeFlagEnabled to enable or to disable
      */
     public void setNegativeFlagEnabled(boolean negativeFlagEnabled) {
-        enableFlag(this.negativeFlagEnabled, negativeFlagEnabled, 7);
+        getRegisterFile().setFlag(NEGATIVE, negativeFlagEnabled);
     }
 
     /**
@@ -289,15 +322,11 @@ public final class ProcessorStatus extends IntRegister {
      */
     @Override
     public String toString() {
-        @NotNull final String[] result = {""};
-        flags().forEach(flag -> {
-            if (flag.get()) {
-                result[0] += "1";
-            } else {
-                result[0] += "0";
-            }
-        });
-        return result[0];
+        final StringBuilder result = new StringBuilder();
+        for (int flag : new int[]{CARRY, ZERO, INTERRUPT, DECIMAL, BREAK, OVERFLOW, NEGATIVE}) {
+            result.append(getRegisterFile().isFlagSet(flag) ? '1' : '0');
+        }
+        return result.toString();
     }
 
     /**
@@ -316,21 +345,32 @@ public final class ProcessorStatus extends IntRegister {
                 negativeFlagEnabledProperty());
     }
 
-    private void enableFlag(@NotNull BooleanProperty property, boolean value, int index) {
-        property.set(value);
-        if (value) {
-            enableBit((byte) index);
-        } else {
-            clearBit((byte) index);
+    /**
+     * Creates the property of a flag, which follows the bit and writes to it
+     */
+    @NotNull
+    private synchronized BooleanProperty flagProperty(int flag, String name) {
+        if (flagProperties == null) {
+            flagProperties = new BooleanProperty[8];
+            valueProperty().addListener((observable, oldValue, newValue) -> {
+                for (int bit = 0; bit < flagProperties.length; bit++) {
+                    if (flagProperties[bit] != null) {
+                        flagProperties[bit].set((newValue & (1 << bit)) != 0);
+                    }
+                }
+            });
         }
-    }
-
-    private void enableBit(byte index) {
-        this.setValue((this.getValue() | (1 << index)));
-    }
-
-    private void clearBit(byte index) {
-        this.setValue((this.getValue() & ~(1 << index)));
+        final int bit = Integer.numberOfTrailingZeros(flag);
+        if (flagProperties[bit] == null) {
+            final BooleanProperty property = new SimpleBooleanProperty(this, name, getRegisterFile().isFlagSet(flag));
+            property.addListener((observable, oldValue, newValue) -> {
+                if (newValue != getRegisterFile().isFlagSet(flag)) {
+                    getRegisterFile().setFlag(flag, newValue);
+                }
+            });
+            flagProperties[bit] = property;
+        }
+        return flagProperties[bit];
     }
 
 }
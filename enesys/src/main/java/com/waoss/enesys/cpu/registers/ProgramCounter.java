@@ -36,6 +36,17 @@ public class ProgramCounter extends IntRegister {
      *         The default value
      */
     public ProgramCounter(int defaultValue) {
-        super(defaultValue);
+        this(new RegisterFile());
+        setValue(defaultValue);
+    }
+
+    /**
+     * Creates a new program counter backed by the register file
+     *
+     * @param registerFile
+     *         The register file
+     */
+    public ProgramCounter(RegisterFile registerFile) {
+        super(registerFile, RegisterFile.PROGRAM_COUNTER);
     }
 }
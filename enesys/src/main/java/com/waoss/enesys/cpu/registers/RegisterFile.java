@@ -0,0 +1,300 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cpu.registers;
+
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * <p>The register file of the processor.
+ * The A, X and Y registers, the stack pointer, the program counter and the processor status are stored as primitive
+ * fields and every write is masked to the width of the register(8 bits, 16 for the program counter), so reading or
+ * writing a register neither boxes nor goes through any property machinery.</p>
+ * <p>The {@link Register} implementations of this package are adapters over one slot of a register file.JavaFX
+ * properties of the registers are only created when somebody asks for them with {@link #valueProperty(int)};until then
+ * a write costs a single null check on top of the field store.</p>
+ *
+ * @see IntRegister
+ */
+public final class RegisterFile {
+
+    /**
+     * The index of the A register
+     */
+    public static final int A = 0;
+    /**
+     * The index of the X register
+     */
+    public static final int X = 1;
+    /**
+     * The index of the Y register
+     */
+    public static final int Y = 2;
+    /**
+     * The index of the stack pointer
+     */
+    public static final int STACK_POINTER = 3;
+    /**
+     * The index of the program counter
+     */
+    public static final int PROGRAM_COUNTER = 4;
+    /**
+     * The index of the processor status
+     */
+    public static final int PROCESSOR_STATUS = 5;
+
+    /**
+     * The number of registers
+     */
+    public static final int SIZE = 6;
+
+    private int a;
+    private int x;
+    private int y;
+    private int stackPointer = 0xfd;
+    private int programCounter;
+    private byte processorStatus = 0b00110100;
+
+    /**
+     * The observable views of the registers;created with the first view
+     */
+    private volatile ObjectProperty<Integer>[] views;
+
+    /**
+     * Creates a new register file with the default values of all the registers
+     */
+    public RegisterFile() {
+        super();
+    }
+
+    public int getA() {
+        return a;
+    }
+
+    public void setA(int value) {
+        a = value & 0xff;
+        if (views != null) {
+            publish(A, a);
+        }
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public void setX(int value) {
+        x = value & 0xff;
+        if (views != null) {
+            publish(X, x);
+        }
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public void setY(int value) {
+        y = value & 0xff;
+        if (views != null) {
+            publish(Y, y);
+        }
+    }
+
+    public int getStackPointer() {
+        return stackPointer;
+    }
+
+    public void setStackPointer(int value) {
+        stackPointer = value & 0xff;
+        if (views != null) {
+            publish(STACK_POINTER, stackPointer);
+        }
+    }
+
+    public int getProgramCounter() {
+        return programCounter;
+    }
+
+    public void setProgramCounter(int value) {
+        programCounter = value & 0xffff;
+        if (views != null) {
+            publish(PROGRAM_COUNTER, programCounter);
+        }
+    }
+
+    public int getProcessorStatus() {
+        return processorStatus & 0xff;
+    }
+
+    public void setProcessorStatus(int value) {
+        processorStatus = (byte) value;
+        if (views != null) {
+            publish(PROCESSOR_STATUS, value & 0xff);
+        }
+    }
+
+    /**
+     * Returns true if the flag of the processor status is set
+     *
+     * @param flag
+     *         The mask of the flag, like {@link ProcessorStatus#CARRY}
+     *
+     * @return true if the flag is set
+     */
+    public boolean isFlagSet(int flag) {
+        return (processorStatus & flag) != 0;
+    }
+
+    /**
+     * Sets or clears a flag of the processor status
+     *
+     * @param flag
+     *         The mask of the flag, like {@link ProcessorStatus#CARRY}
+     * @param value
+     *         true to set the flag, false to clear it
+     */
+    public void setFlag(int flag, boolean value) {
+        setProcessorStatus(value ? (processorStatus | flag) : (processorStatus & ~ flag));
+    }
+
+    /**
+     * Sets the zero and negative flags of the processor status according to the value, from a precomputed table
+     *
+     * @param value
+     *         The value;only the low byte is looked at
+     */
+    public void setZeroAndNegative(int value) {
+        setProcessorStatus((processorStatus & ~ (ProcessorStatus.ZERO | ProcessorStatus.NEGATIVE)) |
+                ProcessorStatus.zeroAndNegative(value));
+    }
+
+    /**
+     * Returns the value of the register at the index
+     *
+     * @param index
+     *         The index of the register, like {@link #A}
+     *
+     * @return the value of the register
+     */
+    public int get(int index) {
+        switch (index) {
+            case A:
+                return getA();
+            case X:
+                return getX();
+            case Y:
+                return getY();
+            case STACK_POINTER:
+                return getStackPointer();
+            case PROGRAM_COUNTER:
+                return getProgramCounter();
+            case PROCESSOR_STATUS:
+                return getProcessorStatus();
+            default:
+                throw new IndexOutOfBoundsException("No register at " + index);
+        }
+    }
+
+    /**
+     * Sets the value of the register at the index
+     *
+     * @param index
+     *         The index of the register, like {@link #A}
+     * @param value
+     *         The value;it is masked to the width of the register
+     */
+    public void set(int index, int value) {
+        switch (index) {
+            case A:
+                setA(value);
+                break;
+            case X:
+                setX(value);
+                break;
+            case Y:
+                setY(value);
+                break;
+            case STACK_POINTER:
+                setStackPointer(value);
+                break;
+            case PROGRAM_COUNTER:
+                setProgramCounter(value);
+                break;
+            case PROCESSOR_STATUS:
+                setProcessorStatus(value);
+                break;
+            default:
+                throw new IndexOutOfBoundsException("No register at " + index);
+        }
+    }
+
+    /**
+     * Copies the values of all the registers of another register file into this one
+     *
+     * @param that
+     *         The register file to copy
+     */
+    public void copyFrom(@NotNull RegisterFile that) {
+        for (int index = 0; index < SIZE; index++) {
+            set(index, that.get(index));
+        }
+    }
+
+    /**
+     * <p>Returns an observable view of the register at the index.
+     * The view is created the first time it is asked for.It follows every write to the register and writing to the
+     * view writes to the register.</p>
+     *
+     * @param index
+     *         The index of the register, like {@link #A}
+     *
+     * @return the property that contains the value of the register
+     */
+    @NotNull
+    @SuppressWarnings("unchecked")
+    public synchronized ObjectProperty<Integer> valueProperty(int index) {
+        ObjectProperty<Integer>[] current = views;
+        if (current == null) {
+            current = (ObjectProperty<Integer>[]) new ObjectProperty<?>[SIZE];
+        }
+        ObjectProperty<Integer> view = current[index];
+        if (view == null) {
+            view = new SimpleObjectProperty<>(this, "value", get(index));
+            view.addListener((observable, oldValue, newValue) -> {
+                if (newValue != null && newValue != get(index)) {
+                    set(index, newValue);
+                }
+            });
+            current[index] = view;
+        }
+        views = current;
+        return view;
+    }
+
+    private void publish(int index, int value) {
+        final ObjectProperty<Integer> view = views[index];
+        if (view != null) {
+            final Integer current = view.get();
+            if (current == null || current != value) {
+                view.set(value);
+            }
+        }
+    }
+}
@@ -21,8 +21,6 @@ package com.waoss.enesys.cpu.registers;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 
-import java.util.concurrent.atomic.AtomicReference;
-
 /**
  * An implemented Register
  * All Registers extend this class
@@ -35,18 +33,22 @@ public class RegisterImpl<T extends Number> implements Register<T> {
     /**
      * The default value of the register
      */
-    protected final AtomicReference<SimpleObjectProperty<T>> defaultValue = new AtomicReference<>(
-            new SimpleObjectProperty<>(this, "defaultValue"));
+    protected final T defaultValue;
 
     /**
-     * The property that stores the value
+     * The value of the register, when there is no property for it
+     */
+    private T value;
+
+    /**
+     * The property that stores the value.It is only created when it is asked for.
      * Reasons for using properties :
      * <ul>
      * <li>They can have {@link javafx.beans.value.ChangeListener}</li>
      * <li>They can be passed on and the values and can be changed, without passing the whole bean</li>
      * </ul>
      */
-    protected final AtomicReference<SimpleObjectProperty<T>> valueProperty = new AtomicReference<>();
+    private ObjectProperty<T> valueProperty;
 
 
     /**
@@ -56,18 +58,22 @@ public class RegisterImpl<T extends Number> implements Register<T> {
      *         The default value of the register
      */
     protected RegisterImpl(T defaultValue) {
-        this.defaultValue.get().set(defaultValue);
-        valueProperty.set(new SimpleObjectProperty<>(defaultValue));
+        this.defaultValue = defaultValue;
+        this.value = defaultValue;
     }
 
 
     /**
-     * Returns the property that contains the value
+     * Returns the property that contains the value.
+     * The property is created the first time it is asked for.
      *
      * @return the property that contains the value
      */
-    public final ObjectProperty<T> valueProperty() {
-        return valueProperty.get();
+    public synchronized ObjectProperty<T> valueProperty() {
+        if (valueProperty == null) {
+            valueProperty = new SimpleObjectProperty<>(this, "value", value);
+        }
+        return valueProperty;
     }
 
 
@@ -78,7 +84,7 @@ public class RegisterImpl<T extends Number> implements Register<T> {
      */
     @Override
     public T getValue() {
-        return valueProperty.get().get();
+        return valueProperty != null ? valueProperty.get() : value;
     }
 
 
@@ -90,7 +96,20 @@ public class RegisterImpl<T extends Number> implements Register<T> {
      */
     @Override
     public void setValue(T value) {
-        valueProperty.get().set(value);
+        if (valueProperty != null) {
+            valueProperty.set(value);
+        } else {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Returns the default value of the register
+     *
+     * @return the default value of the register
+     */
+    public T getDefaultValue() {
+        return defaultValue;
     }
 
     @Override
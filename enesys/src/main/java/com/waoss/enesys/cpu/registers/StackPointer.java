@@ -21,6 +21,16 @@ package com.waoss.enesys.cpu.registers;
 public class StackPointer extends IntRegister {
 
     public StackPointer() {
-        super(0xfd);
+        this(new RegisterFile());
+    }
+
+    /**
+     * Creates a new register backed by the register file
+     *
+     * @param registerFile
+     *         The register file
+     */
+    public StackPointer(RegisterFile registerFile) {
+        super(registerFile, RegisterFile.STACK_POINTER);
     }
 }
@@ -21,6 +21,16 @@ package com.waoss.enesys.cpu.registers;
 public class XRegister extends IntRegister {
 
     public XRegister() {
-        super(0x0);
+        this(new RegisterFile());
+    }
+
+    /**
+     * Creates a new register backed by the register file
+     *
+     * @param registerFile
+     *         The register file
+     */
+    public XRegister(RegisterFile registerFile) {
+        super(registerFile, RegisterFile.X);
     }
 }
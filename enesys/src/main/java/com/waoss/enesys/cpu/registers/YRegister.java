@@ -21,6 +21,16 @@ package com.waoss.enesys.cpu.registers;
 public class YRegister extends IntRegister {
 
     public YRegister() {
-        super(0x0);
+        this(new RegisterFile());
+    }
+
+    /**
+     * Creates a new register backed by the register file
+     *
+     * @param registerFile
+     *         The register file
+     */
+    public YRegister(RegisterFile registerFile) {
+        super(registerFile, RegisterFile.Y);
     }
 }
@@ -25,6 +25,8 @@
  * </ul><br>Except this, there was the {@link com.waoss.enesys.cpu.registers.ProgramCounter} and the {@link
  * com.waoss.enesys.cpu.registers.StackPointer}.All these are different implementations of {@link
  * com.waoss.enesys.cpu.registers.Register}.
+ * <p>The values themselves are stored in a {@link com.waoss.enesys.cpu.registers.RegisterFile} as primitive fields;the
+ * register objects are adapters over it.</p>
  */
 
 package com.waoss.enesys.cpu.registers;
\ No newline at end of file
@@ -19,15 +19,146 @@
 package com.waoss.enesys.mem;
 
 import javafx.beans.property.SimpleObjectProperty;
+import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * <p>The complete 64 KiB address space of the CPU, that is the CPU bus.
+ * The address space is split in 256 pages of 256 bytes.A page table maps every page either to a slice of a byte array,
+ * so that reading it is a single array access, or to a device that is a {@link Memory} itself, like the registers of
+ * the PPU or the APU.Pages can be mapped read-only, like PRG-ROM;writes to them go to the device of the page.Read-only
+ * pages can also be slices of a {@link ByteBuffer}, like a ROM file mapped in memory, so that it is never copied.</p>
+ * <p>Pages can be watched with {@link #watchPage(int)}, for example by a cache of decoded code.The {@link
+ * PageWriteListener}s are told when a watched page changes, be it through a write to the page or a page mirroring it or
+ * through a new mapping.Writes that do not go through the bus, like writes to the arrays themselves, are not seen.</p>
+ * <p>Every page of the arrays that are mapped read-write has a dirty flag that is set when the page is written through
+ * the bus, so that a snapshot can save only the pages that changed since the last one.The flags are cleared with
+ * {@link #clearDirty()};the pages of an array that was just mapped are dirty.</p>
+ * <p>A memory can be {@link #fork() forked}.The fork and the memory then share the arrays that were mapped read-write,
+ * copy-on-write : neither of them writes a shared array anymore, and the first write to a shared page copies it into an
+ * array of the memory's own, at the same offset.A memory whose arrays are shared returns the arrays it holds with
+ * {@link #getRandomAccessMemory()} and {@link #getReadWriteArrays()}, copying the pages that are still shared first;the
+ * arrays that were obtained before the fork must not be written anymore.</p>
+ * By default:
+ * <ul>
+ * <li>$0000-$1FFF is the {@link RandomAccessMemory}, mirrored every 2 KiB</li>
+ * <li>Everything else is unmapped : reading it returns 0 and writes are ignored</li>
+ * </ul>
+ */
 public class CompleteMemory implements Memory {
 
-    final AtomicReference<SimpleObjectProperty<RandomAccessMemory>> randomAccessMemory = new AtomicReference<>(
-            new SimpleObjectProperty<>(new RandomAccessMemory()));
+    /**
+     * The size of the address space
+     */
+    public static final int SIZE = 0x10000;
+
+    /**
+     * The size of a page
+     */
+    public static final int PAGE_SIZE = 0x100;
+
+    /**
+     * The number of pages
+     */
+    public static final int PAGE_COUNT = SIZE / PAGE_SIZE;
 
+    /**
+     * The device of the pages that have nothing mapped
+     */
+    private static final Memory unmapped = new Memory() {
+        @Override
+        public int read(int address) {
+            return 0;
+        }
+
+        @Override
+        public void write(int address, int value) {
+        }
+
+        @Override
+        public int size() {
+            return SIZE;
+        }
+    };
+
+    final AtomicReference<SimpleObjectProperty<RandomAccessMemory>> randomAccessMemory;
+
+    /*
+     * The page table.The offsets are the start of the page in the array, so they are multiples of the page size.
+     */
+    private final byte[][] readPages = new byte[PAGE_COUNT][];
+    private final int[] readOffsets = new int[PAGE_COUNT];
+    private final byte[][] writePages = new byte[PAGE_COUNT][];
+    private final int[] writeOffsets = new int[PAGE_COUNT];
+    private final Memory[] devices = new Memory[PAGE_COUNT];
+    private final ByteBuffer[] readBuffers = new ByteBuffer[PAGE_COUNT];
+
+    /*
+     * The watched pages.A write to a page is checked only if the page writes bytes that a watched page reads.
+     */
+    private final int[] watchCounts = new int[PAGE_COUNT];
+    private final boolean[] writesWatched = new boolean[PAGE_COUNT];
+    private PageWriteListener[] pageWriteListeners = new PageWriteListener[0];
+
+    /*
+     * The dirty flags of the pages of every array that is mapped read-write, and the flags of the array every page
+     * writes.
+     */
+    private final Map<byte[], boolean[]> dirtyPages = new IdentityHashMap<>();
+    private final boolean[][] writeDirtyPages = new boolean[PAGE_COUNT][];
+
+    /*
+     * The copy-on-write pages.A shared page reads the shared array and its writes copy it first.The pages of an array
+     * have the same origin, the array they were mapped to before the first fork, and are all copied into the same
+     * array, so that the copy has the offsets of the original.
+     */
+    private final byte[][] sharedPages = new byte[PAGE_COUNT][];
+    private final byte[][] origins = new byte[PAGE_COUNT][];
+    private final Map<byte[], byte[]> copies = new IdentityHashMap<>();
+    private int sharedPageCount;
+
+    public CompleteMemory() {
+        randomAccessMemory = new AtomicReference<>(new SimpleObjectProperty<>(new RandomAccessMemory()));
+        Arrays.fill(devices, unmapped);
+        mapRandomAccessMemory();
+        randomAccessMemory.get().addListener((observable, oldValue, newValue) -> mapRandomAccessMemory());
+    }
+
+    /**
+     * Creates a fork of a memory whose arrays were just shared
+     */
+    private CompleteMemory(@NotNull CompleteMemory memory) {
+        randomAccessMemory = new AtomicReference<>(new SimpleObjectProperty<>(memory.randomAccessMemory.get().get()));
+        System.arraycopy(memory.readPages, 0, readPages, 0, PAGE_COUNT);
+        System.arraycopy(memory.readOffsets, 0, readOffsets, 0, PAGE_COUNT);
+        System.arraycopy(memory.writePages, 0, writePages, 0, PAGE_COUNT);
+        System.arraycopy(memory.writeOffsets, 0, writeOffsets, 0, PAGE_COUNT);
+        System.arraycopy(memory.devices, 0, devices, 0, PAGE_COUNT);
+        System.arraycopy(memory.readBuffers, 0, readBuffers, 0, PAGE_COUNT);
+        System.arraycopy(memory.sharedPages, 0, sharedPages, 0, PAGE_COUNT);
+        System.arraycopy(memory.origins, 0, origins, 0, PAGE_COUNT);
+        sharedPageCount = memory.sharedPageCount;
+        updateDirtyPages();
+        randomAccessMemory.get().addListener((observable, oldValue, newValue) -> mapRandomAccessMemory());
+    }
+
+    /**
+     * Returns the RAM.If the memory was forked and the RAM was written since, this is a new RAM with the pages of this
+     * memory.
+     *
+     * @return the RAM
+     */
     public RandomAccessMemory getRandomAccessMemory() {
+        if (sharedPageCount > 0 || ! copies.isEmpty()) {
+            unshareRandomAccessMemory();
+        }
         return randomAccessMemory.get().get();
     }
 
@@ -49,11 +180,16 @@ public class CompleteMemory implements Memory {
      */
     @Override
     public int read(int address) {
-        //guy wants RAM
-        if (address < 2048) {
-            return randomAccessMemory.get().get().read(address);
+        final int page = (address >>> 8) & 0xff;
+        final byte[] data = readPages[page];
+        if (data != null) {
+            return data[readOffsets[page] | (address & 0xff)] & 0xff;
+        }
+        final ByteBuffer buffer = readBuffers[page];
+        if (buffer != null) {
+            return buffer.get(readOffsets[page] | (address & 0xff)) & 0xff;
         }
-        return 0;
+        return devices[page].read(address & 0xffff);
     }
 
     /**
@@ -66,14 +202,603 @@ public class CompleteMemory implements Memory {
      */
     @Override
     public void write(int address, int value) {
-        if (address < 2048) {
-            randomAccessMemory.get().get().write(address, value);
+        final int page = (address >>> 8) & 0xff;
+        final byte[] data = writePages[page];
+        if (data != null) {
+            final int offset = writeOffsets[page];
+            data[offset | (address & 0xff)] = (byte) value;
+            writeDirtyPages[page][offset >>> 8] = true;
+            if (writesWatched[page]) {
+                firePageWritten(page);
+            }
+        } else if (sharedPages[page] != null) {
+            copyPage(page);
+            write(address, value);
+        } else {
+            devices[page].write(address & 0xffff, value);
+        }
+    }
+
+    /**
+     * Writes the bytes of a buffer from its position to its limit, from the given address on, wrapping around at $FFFF.
+     * The bytes of the pages mapped to arrays are copied a page at a time, with the same bookkeeping as {@link
+     * #write(int, int)} once per page;the devices are written a byte at a time.The position of the buffer is moved to
+     * its limit.
+     *
+     * @param address
+     *         The address of the first byte
+     * @param source
+     *         The buffer
+     */
+    @Override
+    public void writeBlock(int address, @NotNull ByteBuffer source) {
+        while (source.hasRemaining()) {
+            address &= 0xffff;
+            final int page = address >>> 8;
+            final int count = Math.min(source.remaining(), PAGE_SIZE - (address & 0xff));
+            if (writePages[page] == null && sharedPages[page] != null) {
+                copyPage(page);
+            }
+            final byte[] data = writePages[page];
+            if (data != null) {
+                final int offset = writeOffsets[page];
+                source.get(data, offset | (address & 0xff), count);
+                writeDirtyPages[page][offset >>> 8] = true;
+                if (writesWatched[page]) {
+                    firePageWritten(page);
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    devices[page].write(address + i, source.get() & 0xff);
+                }
+            }
+            address += count;
+        }
+    }
+
+    @Override
+    public void writeBlock(int address, @NotNull byte[] source, int offset, int length) {
+        writeBlock(address, ByteBuffer.wrap(source, offset, length));
+    }
+
+    /**
+     * Reads the little-endian word at the given address.A word within a page mapped to an array is read from the
+     * array directly.
+     *
+     * @param address
+     *         The address of the low byte
+     *
+     * @return the word
+     */
+    @Override
+    public int readWord(int address) {
+        if ((address & 0xff) == 0xff) {
+            return read(address) | (read((address + 1) & 0xffff) << 8);
+        }
+        return readWordInPage(address);
+    }
+
+    @Override
+    public int readWordInPage(int address) {
+        final int page = (address >>> 8) & 0xff;
+        final byte[] data = readPages[page];
+        if (data != null) {
+            final int offset = readOffsets[page];
+            return (data[offset | (address & 0xff)] & 0xff) | ((data[offset | ((address + 1) & 0xff)] & 0xff) << 8);
         }
+        return read(address) | (read((address & 0xff00) | ((address + 1) & 0xff)) << 8);
+    }
+
+    /**
+     * Reads a block of bytes from the given address on, wrapping around at $FFFF.The pages mapped to arrays and
+     * buffers are copied a page at a time;the devices are read a byte at a time.
+     *
+     * @param address
+     *         The address of the first byte
+     * @param destination
+     *         The array
+     * @param offset
+     *         Where the bytes go in the array
+     * @param length
+     *         The number of bytes
+     */
+    @Override
+    public void readBlock(int address, @NotNull byte[] destination, int offset, int length) {
+        readBlock(address, ByteBuffer.wrap(destination, offset, length));
+    }
+
+    @Override
+    public void readBlock(int address, @NotNull ByteBuffer destination) {
+        while (destination.hasRemaining()) {
+            address &= 0xffff;
+            final int page = address >>> 8;
+            final int count = Math.min(destination.remaining(), PAGE_SIZE - (address & 0xff));
+            final byte[] data = readPages[page];
+            final ByteBuffer buffer = readBuffers[page];
+            if (data != null) {
+                destination.put(data, readOffsets[page] | (address & 0xff), count);
+            } else if (buffer != null) {
+                final ByteBuffer run = buffer.duplicate();
+                final int start = readOffsets[page] | (address & 0xff);
+                run.limit(start + count).position(start);
+                destination.put(run);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    destination.put((byte) devices[page].read(address + i));
+                }
+            }
+            address += count;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>A region is contiguous when it doesn't wrap around at $FFFF and its pages are read from consecutive pages of
+     * the same array or buffer.</p>
+     */
+    @Override
+    public ByteBuffer asReadOnlyBuffer(int address, int length) {
+        address &= 0xffff;
+        if (length <= 0 || address + length > SIZE) {
+            return null;
+        }
+        final int firstPage = address >>> 8;
+        final int lastPage = (address + length - 1) >>> 8;
+        final byte[] data = readPages[firstPage];
+        final ByteBuffer buffer = readBuffers[firstPage];
+        if (data == null && buffer == null) {
+            return null;
+        }
+        for (int page = firstPage + 1; page <= lastPage; page++) {
+            if (readPages[page] != data || readBuffers[page] != buffer ||
+                    readOffsets[page] != readOffsets[firstPage] + (page - firstPage) * PAGE_SIZE) {
+                return null;
+            }
+        }
+        final int start = readOffsets[firstPage] | (address & 0xff);
+        if (data != null) {
+            return ByteBuffer.wrap(data, start, length).slice().asReadOnlyBuffer();
+        }
+        final ByteBuffer view = buffer.duplicate();
+        view.limit(start + length).position(start);
+        return view.slice().asReadOnlyBuffer();
     }
 
     @Override
     public int size() {
-        return randomAccessMemory.get().get().size();
+        return SIZE;
+    }
+
+    /**
+     * Maps pages to a slice of an array that can be read and written
+     *
+     * @param firstPage
+     *         The first page, that is the high byte of the first address
+     * @param pageCount
+     *         The number of pages to map
+     * @param data
+     *         The array
+     * @param offset
+     *         Where the slice starts in the array;a multiple of the page size
+     */
+    public void mapReadWrite(int firstPage, int pageCount, @NotNull byte[] data, int offset) {
+        checkSlice(firstPage, pageCount, data, offset);
+        for (int i = 0; i < pageCount; i++) {
+            readPages[firstPage + i] = data;
+            readOffsets[firstPage + i] = offset + i * PAGE_SIZE;
+            readBuffers[firstPage + i] = null;
+            writePages[firstPage + i] = data;
+            writeOffsets[firstPage + i] = offset + i * PAGE_SIZE;
+        }
+        remapped(firstPage, pageCount);
+    }
+
+    /**
+     * Maps pages to a slice of an array that can only be read, like PRG-ROM.
+     * Writes to the pages go to the device mapped to them with {@link #mapDevice(int, int, Memory)}, like the
+     * registers of a mapper.
+     *
+     * @param firstPage
+     *         The first page, that is the high byte of the first address
+     * @param pageCount
+     *         The number of pages to map
+     * @param data
+     *         The array
+     * @param offset
+     *         Where the slice starts in the array;a multiple of the page size
+     */
+    public void mapReadOnly(int firstPage, int pageCount, @NotNull byte[] data, int offset) {
+        checkSlice(firstPage, pageCount, data, offset);
+        for (int i = 0; i < pageCount; i++) {
+            readPages[firstPage + i] = data;
+            readOffsets[firstPage + i] = offset + i * PAGE_SIZE;
+            readBuffers[firstPage + i] = null;
+            writePages[firstPage + i] = null;
+        }
+        remapped(firstPage, pageCount);
+    }
+
+    /**
+     * Maps pages to a slice of a buffer that can only be read, like PRG-ROM mapped from a file.
+     * The buffer is read with absolute gets, so its position and limit do not matter.Writes to the pages go to the
+     * device mapped to them with {@link #mapDevice(int, int, Memory)}.
+     *
+     * @param firstPage
+     *         The first page, that is the high byte of the first address
+     * @param pageCount
+     *         The number of pages to map
+     * @param buffer
+     *         The buffer, whose content must not change
+     * @param offset
+     *         Where the slice starts in the buffer;a multiple of the page size
+     */
+    public void mapReadOnly(int firstPage, int pageCount, @NotNull ByteBuffer buffer, int offset) {
+        checkPages(firstPage, pageCount);
+        if (offset < 0 || offset % PAGE_SIZE != 0 || offset + pageCount * PAGE_SIZE > buffer.capacity()) {
+            throw new IndexOutOfBoundsException("Slice at " + offset + " of " + pageCount + " pages is not in the buffer");
+        }
+        for (int i = 0; i < pageCount; i++) {
+            readPages[firstPage + i] = null;
+            readOffsets[firstPage + i] = offset + i * PAGE_SIZE;
+            readBuffers[firstPage + i] = buffer;
+            writePages[firstPage + i] = null;
+        }
+        remapped(firstPage, pageCount);
+    }
+
+    /**
+     * Maps pages to a device.Every read and write of the pages is passed to the device with the full address, so
+     * the device takes care of its own mirroring.
+     *
+     * @param firstPage
+     *         The first page, that is the high byte of the first address
+     * @param pageCount
+     *         The number of pages to map
+     * @param device
+     *         The device
+     */
+    public void mapDevice(int firstPage, int pageCount, @NotNull Memory device) {
+        checkPages(firstPage, pageCount);
+        for (int i = 0; i < pageCount; i++) {
+            readPages[firstPage + i] = null;
+            readBuffers[firstPage + i] = null;
+            writePages[firstPage + i] = null;
+            devices[firstPage + i] = device;
+        }
+        remapped(firstPage, pageCount);
+    }
+
+    /**
+     * Removes whatever is mapped to the pages;reading them returns 0 and writes are ignored
+     *
+     * @param firstPage
+     *         The first page, that is the high byte of the first address
+     * @param pageCount
+     *         The number of pages
+     */
+    public void unmap(int firstPage, int pageCount) {
+        mapDevice(firstPage, pageCount, unmapped);
+    }
+
+    /**
+     * Returns true if the page is mapped to an array or a buffer, so its content only changes through writes to the bus
+     * or new mappings that {@link PageWriteListener}s are told about
+     *
+     * @param page
+     *         The page, that is the high byte of its addresses
+     *
+     * @return true if the page is mapped to an array or a buffer
+     */
+    public boolean isMappedToArray(int page) {
+        return readPages[page & 0xff] != null || readBuffers[page & 0xff] != null;
+    }
+
+    /**
+     * Returns the arrays that are mapped read-write, each once, in the order of the first page they are mapped to.
+     * Together with the registers of the devices they are all the state of the address space;ROM can not change.
+     *
+     * @return the arrays that are mapped read-write
+     */
+    @NotNull
+    public List<byte[]> getReadWriteArrays() {
+        unshare();
+        final List<byte[]> arrays = new ArrayList<>();
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            final byte[] data = writePages[page];
+            if (data != null && ! containsArray(arrays, data)) {
+                arrays.add(data);
+            }
+        }
+        return arrays;
+    }
+
+    /**
+     * Tells the {@link PageWriteListener}s that an array that is mapped changed without going through the bus, for
+     * example because it was restored from a save state
+     *
+     * @param data
+     *         The array
+     */
+    public void arrayWritten(@NotNull byte[] data) {
+        final boolean[] dirty = dirtyPages.get(data);
+        if (dirty != null) {
+            Arrays.fill(dirty, true);
+        }
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            if (watchCounts[page] > 0 && readPages[page] == data) {
+                for (PageWriteListener pageWriteListener : pageWriteListeners) {
+                    pageWriteListener.pageWritten(page);
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>Returns a new memory with the same mappings, that shares the arrays mapped read-write with this one
+     * copy-on-write.
+     * Forking only copies the page table, so it costs the same whatever the size of the arrays.The devices and the
+     * read-only arrays are shared as they are.The fork has no listeners and no watched pages.</p>
+     * <p>This must be called by the thread that writes this memory, or while nobody does;the fork can then be used by
+     * another thread, since the shared arrays are never written.</p>
+     *
+     * @return the fork
+     */
+    @NotNull
+    public CompleteMemory fork() {
+        final Map<byte[], byte[]> copyOrigins = new IdentityHashMap<>();
+        for (Map.Entry<byte[], byte[]> copy : copies.entrySet()) {
+            copyOrigins.put(copy.getValue(), copy.getKey());
+        }
+        copies.clear();
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            final byte[] data = writePages[page];
+            if (data != null) {
+                final byte[] origin = copyOrigins.get(data);
+                origins[page] = origin != null ? origin : data;
+                sharedPages[page] = data;
+                writePages[page] = null;
+                sharedPageCount++;
+            }
+        }
+        updateWritesWatched();
+        updateDirtyPages();
+        return new CompleteMemory(this);
+    }
+
+    /**
+     * Returns true if a page of an array that is mapped read-write was written since the flags were last cleared
+     *
+     * @param data
+     *         The array
+     * @param page
+     *         The page in the array, that is the offset divided by the page size
+     *
+     * @return true if the page is dirty, or if the array is not mapped read-write
+     */
+    public boolean isDirty(@NotNull byte[] data, int page) {
+        final boolean[] dirty = dirtyPages.get(data);
+        return dirty == null || dirty[page];
+    }
+
+    /**
+     * Clears the dirty flags of every page, for example when a snapshot is taken
+     */
+    public void clearDirty() {
+        for (boolean[] dirty : dirtyPages.values()) {
+            Arrays.fill(dirty, false);
+        }
+    }
+
+    /**
+     * Starts watching a page.The {@link PageWriteListener}s are told every time it changes until it is unwatched as
+     * many times as it was watched.
+     *
+     * @param page
+     *         The page, that is the high byte of its addresses
+     */
+    public void watchPage(int page) {
+        if (watchCounts[page & 0xff]++ == 0) {
+            updateWritesWatched();
+        }
+    }
+
+    /**
+     * Stops watching a page
+     *
+     * @param page
+     *         The page, that is the high byte of its addresses
+     */
+    public void unwatchPage(int page) {
+        if (watchCounts[page & 0xff] > 0 && --watchCounts[page & 0xff] == 0) {
+            updateWritesWatched();
+        }
+    }
+
+    public void addPageWriteListener(@NotNull PageWriteListener pageWriteListener) {
+        pageWriteListeners = Arrays.copyOf(pageWriteListeners, pageWriteListeners.length + 1);
+        pageWriteListeners[pageWriteListeners.length - 1] = pageWriteListener;
+    }
+
+    public void removePageWriteListener(@NotNull PageWriteListener pageWriteListener) {
+        for (int i = 0; i < pageWriteListeners.length; i++) {
+            if (pageWriteListeners[i] == pageWriteListener) {
+                final PageWriteListener[] listeners = new PageWriteListener[pageWriteListeners.length - 1];
+                System.arraycopy(pageWriteListeners, 0, listeners, 0, i);
+                System.arraycopy(pageWriteListeners, i + 1, listeners, i, listeners.length - i);
+                pageWriteListeners = listeners;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tells the listeners about every watched page that reads what the page writes
+     */
+    private void firePageWritten(int page) {
+        for (int watched = 0; watched < PAGE_COUNT; watched++) {
+            if (watchCounts[watched] > 0 && readPages[watched] == writePages[page] &&
+                    readOffsets[watched] == writeOffsets[page]) {
+                for (PageWriteListener pageWriteListener : pageWriteListeners) {
+                    pageWriteListener.pageWritten(watched);
+                }
+            }
+        }
+    }
+
+    private void remapped(int firstPage, int pageCount) {
+        for (int page = firstPage; page < firstPage + pageCount; page++) {
+            if (sharedPages[page] != null) {
+                sharedPages[page] = null;
+                origins[page] = null;
+                sharedPageCount--;
+            }
+            if (watchCounts[page] > 0) {
+                for (PageWriteListener pageWriteListener : pageWriteListeners) {
+                    pageWriteListener.pageWritten(page);
+                }
+            }
+        }
+        updateWritesWatched();
+        updateDirtyPages();
+    }
+
+    private void updateDirtyPages() {
+        byte[] last = null;
+        boolean[] dirty = null;
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            final byte[] data = writePages[page];
+            if (data != null && data != last) {
+                last = data;
+                dirty = dirtyPages.get(data);
+                if (dirty == null) {
+                    dirty = new boolean[(data.length + PAGE_SIZE - 1) / PAGE_SIZE];
+                    Arrays.fill(dirty, true);
+                    dirtyPages.put(data, dirty);
+                }
+            }
+            writeDirtyPages[page] = data != null ? dirty : null;
+        }
+        dirtyPages.keySet().removeIf(data -> ! isMappedReadWrite(data));
+    }
+
+    private boolean isMappedReadWrite(byte[] data) {
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            if (writePages[page] == data) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void updateWritesWatched() {
+        Arrays.fill(writesWatched, false);
+        for (int watched = 0; watched < PAGE_COUNT; watched++) {
+            if (watchCounts[watched] > 0 && readPages[watched] != null) {
+                for (int page = 0; page < PAGE_COUNT; page++) {
+                    writesWatched[page] |= writePages[page] == readPages[watched] &&
+                            writeOffsets[page] == readOffsets[watched];
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies a shared page, with the pages that mirror it, into the copy of its array
+     */
+    private void copyPage(int page) {
+        final byte[] shared = sharedPages[page];
+        final byte[] origin = origins[page];
+        final int offset = writeOffsets[page];
+        byte[] copy = copies.get(origin);
+        if (copy == null) {
+            copy = new byte[shared.length];
+            copies.put(origin, copy);
+        }
+        System.arraycopy(shared, offset, copy, offset, Math.min(PAGE_SIZE, shared.length - offset));
+        boolean[] dirty = dirtyPages.get(copy);
+        if (dirty == null) {
+            dirty = new boolean[(copy.length + PAGE_SIZE - 1) / PAGE_SIZE];
+            Arrays.fill(dirty, true);
+            dirtyPages.put(copy, dirty);
+        }
+        for (int mirror = 0; mirror < PAGE_COUNT; mirror++) {
+            if (origins[mirror] == origin && writeOffsets[mirror] == offset && sharedPages[mirror] != null) {
+                if (readPages[mirror] == sharedPages[mirror] && readOffsets[mirror] == offset) {
+                    readPages[mirror] = copy;
+                }
+                writePages[mirror] = copy;
+                writeDirtyPages[mirror] = dirty;
+                sharedPages[mirror] = null;
+                origins[mirror] = null;
+                sharedPageCount--;
+            }
+        }
+        updateWritesWatched();
+    }
+
+    /**
+     * Copies every page that is still shared
+     */
+    private void unshare() {
+        if (sharedPageCount > 0 || ! copies.isEmpty()) {
+            unshareRandomAccessMemory();
+            for (int page = 0; page < PAGE_COUNT && sharedPageCount > 0; page++) {
+                if (sharedPages[page] != null) {
+                    copyPage(page);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the pages of the RAM that are still shared and replaces the RAM with one that holds the copy
+     */
+    private void unshareRandomAccessMemory() {
+        final byte[] bytes = randomAccessMemory.get().get().getBytes();
+        for (int page = 0; page < PAGE_COUNT && sharedPageCount > 0; page++) {
+            if (sharedPages[page] != null && origins[page] == bytes) {
+                copyPage(page);
+            }
+        }
+        final byte[] copy = copies.remove(bytes);
+        if (copy != null) {
+            setRandomAccessMemory(new RandomAccessMemory(copy));
+        }
+    }
+
+    private void mapRandomAccessMemory() {
+        final byte[] bytes = randomAccessMemory.get().get().getBytes();
+        for (int page = 0x00; page < 0x20; page++) {
+            readPages[page] = bytes;
+            readOffsets[page] = page * PAGE_SIZE % bytes.length;
+            readBuffers[page] = null;
+            writePages[page] = bytes;
+            writeOffsets[page] = page * PAGE_SIZE % bytes.length;
+        }
+        remapped(0x00, 0x20);
+    }
+
+    private static boolean containsArray(List<byte[]> arrays, byte[] data) {
+        for (byte[] array : arrays) {
+            if (array == data) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void checkPages(int firstPage, int pageCount) {
+        if (firstPage < 0 || pageCount < 0 || firstPage + pageCount > PAGE_COUNT) {
+            throw new IndexOutOfBoundsException("Pages " + firstPage + " to " + (firstPage + pageCount) +
+                    " are not in the address space");
+        }
+    }
+
+    private static void checkSlice(int firstPage, int pageCount, @NotNull byte[] data, int offset) {
+        checkPages(firstPage, pageCount);
+        if (offset < 0 || offset % PAGE_SIZE != 0 || offset + pageCount * PAGE_SIZE > data.length) {
+            throw new IndexOutOfBoundsException("Slice at " + offset + " of " + pageCount + " pages is not in the array");
+        }
     }
 
 }
@@ -18,9 +18,18 @@
 
 package com.waoss.enesys.mem;
 
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
 /**
- * Represents a sort of a memory.An interface which may be implemented as CPU Memory, PPU Memory, Mapper Memory and
- * stuff.
+ * <p>Represents a sort of a memory.An interface which may be implemented as CPU Memory, PPU Memory, Mapper Memory and
+ * stuff.</p>
+ * <p>Besides bytes, a memory reads little-endian words and blocks of bytes, and may give a read-only view of a region
+ * that is stored contiguously.The addresses of the words and the blocks wrap around at $FFFF, like the addresses of the
+ * CPU.The default methods access a byte at a time, which is what devices whose registers have side effects need;the
+ * memories that are stored in arrays copy whole runs instead.</p>
  *
  * @see RandomAccessMemory
  * @see CompleteMemory
@@ -53,4 +62,124 @@ public interface Memory {
      * @return the size of the memory
      */
     int size();
+
+    /**
+     * Reads the little-endian word at the address : the low byte at the address and the high byte at the next one,
+     * $0000 after $FFFF
+     *
+     * @param address
+     *         The address of the low byte
+     *
+     * @return the word
+     */
+    default int readWord(int address) {
+        return read(address & 0xffff) | (read((address + 1) & 0xffff) << 8);
+    }
+
+    /**
+     * Reads a little-endian word whose high byte is in the same page as its low byte : the byte after $xxFF is $xx00.
+     * This is how the 6502 reads the pointers of an indirect JMP, and the pointers in the zero page of the indexed
+     * indirect addressings.
+     *
+     * @param address
+     *         The address of the low byte
+     *
+     * @return the word
+     */
+    default int readWordInPage(int address) {
+        return read(address & 0xffff) | (read((address & 0xff00) | ((address + 1) & 0xff)) << 8);
+    }
+
+    /**
+     * Reads a block of bytes into an array
+     *
+     * @param address
+     *         The address of the first byte
+     * @param destination
+     *         The array
+     * @param offset
+     *         Where the bytes go in the array
+     * @param length
+     *         The number of bytes
+     */
+    default void readBlock(int address, @NotNull byte[] destination, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            destination[offset + i] = (byte) read((address + i) & 0xffff);
+        }
+    }
+
+    /**
+     * Reads a block of bytes into a buffer, from its position to its limit.The position of the buffer is moved to its
+     * limit.
+     *
+     * @param address
+     *         The address of the first byte
+     * @param destination
+     *         The buffer
+     */
+    default void readBlock(int address, @NotNull ByteBuffer destination) {
+        final int length = destination.remaining();
+        if (destination.hasArray()) {
+            readBlock(address, destination.array(), destination.arrayOffset() + destination.position(), length);
+            destination.position(destination.position() + length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                destination.put((byte) read((address + i) & 0xffff));
+            }
+        }
+    }
+
+    /**
+     * Writes a block of bytes from an array
+     *
+     * @param address
+     *         The address of the first byte
+     * @param source
+     *         The array
+     * @param offset
+     *         Where the bytes are in the array
+     * @param length
+     *         The number of bytes
+     */
+    default void writeBlock(int address, @NotNull byte[] source, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            write((address + i) & 0xffff, source[offset + i] & 0xff);
+        }
+    }
+
+    /**
+     * Writes the bytes of a buffer from its position to its limit.The position of the buffer is moved to its limit.
+     *
+     * @param address
+     *         The address of the first byte
+     * @param source
+     *         The buffer
+     */
+    default void writeBlock(int address, @NotNull ByteBuffer source) {
+        final int length = source.remaining();
+        if (source.hasArray()) {
+            writeBlock(address, source.array(), source.arrayOffset() + source.position(), length);
+            source.position(source.position() + length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                write((address + i) & 0xffff, source.get() & 0xff);
+            }
+        }
+    }
+
+    /**
+     * Returns a read-only view of a region, without copying it.The view sees the writes to the region, until it is
+     * mapped to something else.
+     *
+     * @param address
+     *         The address of the first byte
+     * @param length
+     *         The number of bytes
+     *
+     * @return the view, whose position 0 is the address, or null if the region is not stored contiguously
+     */
+    @Nullable
+    default ByteBuffer asReadOnlyBuffer(int address, int length) {
+        return null;
+    }
 }
@@ -0,0 +1,37 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.mem;
+
+/**
+ * <p>Listens to the changes of the pages of a {@link CompleteMemory} that are watched with {@link
+ * CompleteMemory#watchPage(int)}.
+ * A page changes when a byte that it reads is written, through the page itself or any page mirroring it, or when
+ * something else is mapped to it.</p>
+ */
+@FunctionalInterface
+public interface PageWriteListener {
+
+    /**
+     * Called after a watched page changed
+     *
+     * @param page
+     *         The page, that is the high byte of its addresses
+     */
+    void pageWritten(int page);
+}
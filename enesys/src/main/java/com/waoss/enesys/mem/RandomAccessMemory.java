@@ -18,30 +18,111 @@
 
 package com.waoss.enesys.mem;
 
-import java.nio.IntBuffer;
-import java.util.concurrent.atomic.AtomicReference;
+import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
+
+/**
+ * The 2 KiB of internal RAM of the NES.
+ * It is stored as bytes;addresses past the end wrap around, the way the NES mirrors its RAM.
+ */
 public final class RandomAccessMemory implements Memory {
 
-    private final AtomicReference<IntBuffer> buffer = new AtomicReference<>(IntBuffer.allocate(2048));
+    /**
+     * The size of the RAM
+     */
+    public static final int SIZE = 0x0800;
+
+    private final byte[] bytes;
 
     public RandomAccessMemory() {
-        super();
+        this(new byte[SIZE]);
+    }
+
+    /**
+     * Creates a RAM that is stored in the given array
+     *
+     * @param bytes
+     *         The array, of {@link #SIZE} bytes
+     */
+    RandomAccessMemory(@NotNull byte[] bytes) {
+        if (bytes.length != SIZE) {
+            throw new IllegalArgumentException("The RAM is " + SIZE + " bytes, not " + bytes.length);
+        }
+        this.bytes = bytes;
     }
 
     @Override
     public int read(int address) {
-        return buffer.get().get(address);
+        return bytes[address & (SIZE - 1)] & 0xff;
     }
 
     @Override
     public void write(int address, int value) {
-        buffer.set(buffer.get().put(address, value));
+        bytes[address & (SIZE - 1)] = (byte) value;
     }
 
     @Override
     public int size() {
-        return buffer.get().capacity();
+        return bytes.length;
+    }
+
+    @Override
+    public int readWord(int address) {
+        return (bytes[address & (SIZE - 1)] & 0xff) | ((bytes[(address + 1) & (SIZE - 1)] & 0xff) << 8);
+    }
+
+    @Override
+    public int readWordInPage(int address) {
+        final int high = (address & 0xff00) | ((address + 1) & 0xff);
+        return (bytes[address & (SIZE - 1)] & 0xff) | ((bytes[high & (SIZE - 1)] & 0xff) << 8);
+    }
+
+    @Override
+    public void readBlock(int address, @NotNull byte[] destination, int offset, int length) {
+        while (length > 0) {
+            final int index = address & (SIZE - 1);
+            final int count = Math.min(length, SIZE - index);
+            System.arraycopy(bytes, index, destination, offset, count);
+            address += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public void writeBlock(int address, @NotNull byte[] source, int offset, int length) {
+        while (length > 0) {
+            final int index = address & (SIZE - 1);
+            final int count = Math.min(length, SIZE - index);
+            System.arraycopy(source, offset, bytes, index, count);
+            address += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>A region is contiguous unless it wraps around the end of the RAM.</p>
+     */
+    @Override
+    public ByteBuffer asReadOnlyBuffer(int address, int length) {
+        final int index = address & (SIZE - 1);
+        if (length < 0 || index + length > SIZE) {
+            return null;
+        }
+        return ByteBuffer.wrap(bytes, index, length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the array the RAM is stored in.Writing to it is writing to the RAM.
+     *
+     * @return the array the RAM is stored in
+     */
+    @NotNull
+    public byte[] getBytes() {
+        return bytes;
     }
 
 }
@@ -0,0 +1,40 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.ppu;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Listens to the frames the {@link PictureProcessor} completes
+ */
+@FunctionalInterface
+public interface FrameListener {
+
+    /**
+     * Called on the thread of the PPU when the vertical blank starts, with the frame that was just rendered.
+     * The array is the framebuffer of the PPU, not a copy : it stays as it is until the next frame is completed if the
+     * PPU is double buffered, and only until rendering starts again otherwise.
+     *
+     * @param frame
+     *         The frame, as {@link PictureProcessor#WIDTH} by {@link PictureProcessor#HEIGHT} ARGB pixels, row by row
+     * @param frameNumber
+     *         The number of frames completed before this one
+     */
+    void frameCompleted(@NotNull int[] frame, long frameNumber);
+}
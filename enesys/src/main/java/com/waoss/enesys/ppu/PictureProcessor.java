@@ -0,0 +1,1187 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.ppu;
+
+import com.waoss.enesys.Console;
+import com.waoss.enesys.LazyComponent;
+import com.waoss.enesys.MasterClock;
+import com.waoss.enesys.cartridge.Mapper;
+import com.waoss.enesys.cartridge.Mirroring;
+import com.waoss.enesys.cpu.CentralProcessor;
+import com.waoss.enesys.mem.Memory;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>The PPU of the NES.
+ * It is driven by the {@link MasterClock}, a dot every {@link MasterClock#PPU_DIVIDER} master cycles, and renders the
+ * way the 2C02 fetches and shifts the tiles, so that the registers written in the middle of a frame take effect where
+ * they were written.The CPU sees its eight registers as a device mapped at $2000-$3FFF;every access to them first
+ * catches the PPU up with the CPU.</p>
+ * <p>Otherwise the PPU lags behind : it is a {@link LazyComponent} whose events are the start of the vertical blank
+ * when the NMI is enabled and the scanline at which the mapper requests an IRQ.The sprite 0 hit and the other flags are
+ * only seen by reading $2002, which catches up anyway.</p>
+ * <p>The visible part of a scanline the PPU runs through in one go is rendered at once : the tiles are fetched a row at
+ * a time, the sprites are drawn into a line buffer and the palette is looked up once for the line.Nothing can change
+ * the registers in the middle of it, since an access to them would have made the PPU catch up to it, so this renders
+ * exactly what rendering a dot at a time does.The scanlines the CPU touches the registers in the middle of, like the
+ * ones of a split screen, are rendered a dot at a time.</p>
+ * <p>The pixels are written as ARGB into a framebuffer that is allocated once.When the vertical blank starts the frame
+ * is handed as is to the {@link FrameListener}s and an NMI is requested from the CPU if $2000 enables it.If the PPU is
+ * double buffered it then renders into a second buffer and the two are swapped at every frame, so the listeners can use
+ * a frame until the next one is completed without copying it.The buffers are only allocated once the PPU runs.</p>
+ * <p>The pattern tables are read through the mapper of the console, which also says how the nametables are mirrored;
+ * without a cartridge the pattern tables are 8 KiB of RAM and the nametables are mirrored horizontally.</p>
+ *
+ * @see FrameListener
+ */
+public final class PictureProcessor implements Memory, LazyComponent {
+
+    /**
+     * The width of a frame in pixels
+     */
+    public static final int WIDTH = 256;
+
+    /**
+     * The height of a frame in pixels
+     */
+    public static final int HEIGHT = 240;
+
+    /**
+     * The number of dots in a scanline
+     */
+    public static final int DOTS = MasterClock.SCANLINE_CYCLES / MasterClock.PPU_DIVIDER;
+
+    /**
+     * The number of scanlines in a frame, counting the vertical blank and the pre-render scanline
+     */
+    public static final int SCANLINES = MasterClock.FRAME_CYCLES / MasterClock.SCANLINE_CYCLES;
+
+    /**
+     * The scanline at which the vertical blank starts
+     */
+    public static final int VERTICAL_BLANK_SCANLINE = 241;
+
+    /**
+     * The last scanline, that fetches the first tiles of the next frame
+     */
+    public static final int PRE_RENDER_SCANLINE = SCANLINES - 1;
+
+    /**
+     * The number of bytes {@link #save(ByteBuffer)} writes : the registers of the PPU, where it is in the frame and
+     * what it is rendering
+     */
+    public static final int STATE_SIZE = 9 * 4 + 1 + 8 + 2 * 4 + 1 + 8 + 8 * 4 + 4 * 8 * 4 + 4 + 1;
+
+    /*
+     * The flags of the registers
+     */
+    private static final int VERTICAL_BLANK = 0x80;
+    private static final int SPRITE_ZERO_HIT = 0x40;
+    private static final int SPRITE_OVERFLOW = 0x20;
+    private static final int NMI_ENABLED = 0x80;
+    private static final int SHOW_BACKGROUND = 0x08;
+    private static final int SHOW_SPRITES = 0x10;
+
+    /*
+     * The first dirty page of the arrays of the memory : the nametables, the palette, the OAM and the pattern tables
+     * are one after the other
+     */
+    private static final int PALETTE_PAGE = 0x10;
+    private static final int OBJECT_ATTRIBUTE_PAGE = PALETTE_PAGE + 1;
+    private static final int CHARACTER_PAGE = OBJECT_ATTRIBUTE_PAGE + 1;
+
+    /**
+     * The 64 colors of the NTSC palette, as ARGB
+     */
+    private static final int[] colors = {
+            0xff666666, 0xff002a88, 0xff1412a7, 0xff3b00a4, 0xff5c007e, 0xff6e0040, 0xff6c0600, 0xff561d00,
+            0xff333500, 0xff0b4800, 0xff005200, 0xff004f08, 0xff00404d, 0xff000000, 0xff000000, 0xff000000,
+            0xffadadad, 0xff155fd9, 0xff4240ff, 0xff7527fe, 0xffa01acc, 0xffb71e7b, 0xffb53120, 0xff994e00,
+            0xff6b6d00, 0xff388700, 0xff0c9300, 0xff008f32, 0xff007c8d, 0xff000000, 0xff000000, 0xff000000,
+            0xfffffeff, 0xff64b0ff, 0xff9290ff, 0xffc676ff, 0xfff36aff, 0xfffe6ecc, 0xfffe8170, 0xffea9e22,
+            0xffbcbe00, 0xff88d800, 0xff5ce430, 0xff45e082, 0xff48cdde, 0xff4f4f4f, 0xff000000, 0xff000000,
+            0xfffffeff, 0xffc0dfff, 0xffd3d2ff, 0xffe8c8ff, 0xfffbc2ff, 0xfffec4ea, 0xfffeccc5, 0xfff7d8a5,
+            0xffe4e594, 0xffcfef96, 0xffbdf4ab, 0xffb3f3cc, 0xffb5ebf2, 0xffb8b8b8, 0xff000000, 0xff000000
+    };
+
+    @NotNull
+    private final Console console;
+
+    /*
+     * The memory of the PPU : 2 KiB of VRAM for the nametables (4 KiB for cartridges with four screens), the palette,
+     * the OAM and the pattern tables of a console without a cartridge.The nametables and the pattern tables of a fork
+     * are shared with its console copy-on-write : neither writes them while they are shared.
+     */
+    private byte[] nametables = new byte[0x1000];
+    private final byte[] palette = new byte[0x20];
+    private final byte[] objectAttributeMemory = new byte[0x100];
+    private byte[] characterMemory = new byte[0x2000];
+    private boolean nametablesShared;
+    private boolean characterMemoryShared;
+    private List<byte[]> memoryArrays = memoryArrays();
+
+    /*
+     * The pages of the memory written since the last checkpoint, for the save states
+     */
+    private final boolean[] dirtyPages = new boolean[CHARACTER_PAGE + 0x20];
+
+    /*
+     * The registers.The VRAM address, the temporary address, the fine X scroll and the write toggle are the internal
+     * registers the scrolling is done with.
+     */
+    private int control;
+    private int mask;
+    private int status;
+    private int objectAttributeAddress;
+    private int vramAddress;
+    private int temporaryAddress;
+    private int fineX;
+    private boolean writeToggle;
+    private int readBuffer;
+    private int latch;
+
+    /*
+     * Where the PPU is in the frame
+     */
+    private long cycles;
+    private int scanline;
+    private int dot;
+    private boolean oddFrame;
+    private long frameNumber;
+
+    /*
+     * The tile being fetched and the shift registers of the two tiles being rendered
+     */
+    private int nextTile;
+    private int nextAttribute;
+    private int nextPatternLow;
+    private int nextPatternHigh;
+    private int patternShiftLow;
+    private int patternShiftHigh;
+    private int attributeShiftLow;
+    private int attributeShiftHigh;
+
+    /*
+     * The sprites of the scanline being rendered, at most 8, with their patterns already flipped
+     */
+    private final int[] spriteX = new int[8];
+    private final int[] spriteAttributes = new int[8];
+    private final int[] spritePatternLow = new int[8];
+    private final int[] spritePatternHigh = new int[8];
+    private int spriteCount;
+    private boolean spriteZeroOnScanline;
+
+    /*
+     * The buffer being rendered and the last completed frame;the same array if the PPU is not double buffered.They are
+     * allocated when they are first needed, so consoles that are never run do not pay for them.
+     */
+    private boolean doubleBuffered = true;
+    private int[] backBuffer;
+    private int[] frontBuffer;
+    private FrameListener[] frameListeners = new FrameListener[0];
+
+    /*
+     * The state of the scanline renderer : the colors of the palette and the sprites of the scanline being rendered
+     */
+    private boolean scanlineRenderingEnabled = true;
+    private boolean running;
+    private final int[] lineColors = new int[0x20];
+    private boolean paletteChanged = true;
+    private final int[] lineSprites = new int[WIDTH];
+    private boolean lineSpritesDrawn;
+
+    public PictureProcessor(@NotNull Console console) {
+        this.console = console;
+        Arrays.fill(dirtyPages, true);
+    }
+
+    /**
+     * Reads a register
+     *
+     * @param address
+     *         The address, mirrored every 8 bytes
+     *
+     * @return the value
+     */
+    @Override
+    public int read(int address) {
+        synchronize();
+        switch (address & 7) {
+            case 2: {
+                final int value = (status & 0xe0) | (latch & 0x1f);
+                status &= ~ VERTICAL_BLANK;
+                writeToggle = false;
+                return latch = value;
+            }
+            case 4:
+                return latch = objectAttributeMemory[objectAttributeAddress] & 0xff;
+            case 7: {
+                final int vramAddress = this.vramAddress & 0x3fff;
+                final int value;
+                if (vramAddress < 0x3f00) {
+                    value = readBuffer;
+                    readBuffer = readVideoMemory(vramAddress);
+                } else {
+                    value = (latch & 0xc0) | readVideoMemory(vramAddress);
+                    readBuffer = readVideoMemory(vramAddress - 0x1000);
+                }
+                incrementVramAddress();
+                return latch = value;
+            }
+            default:
+                return latch;
+        }
+    }
+
+    /**
+     * Writes a register
+     *
+     * @param address
+     *         The address, mirrored every 8 bytes
+     * @param value
+     *         The value
+     */
+    @Override
+    public void write(int address, int value) {
+        synchronize();
+        value &= 0xff;
+        latch = value;
+        switch (address & 7) {
+            case 0: {
+                final boolean nmiEnabled = (control & NMI_ENABLED) != 0;
+                control = value;
+                temporaryAddress = (temporaryAddress & ~ 0x0c00) | ((value & 0x03) << 10);
+                if (! nmiEnabled && (value & NMI_ENABLED) != 0) {
+                    if ((status & VERTICAL_BLANK) != 0) {
+                        console.getCentralProcessor().requestNonMaskableInterrupt();
+                    }
+                    console.getMasterClock().reschedule();
+                }
+                break;
+            }
+            case 1: {
+                //the greyscale bit changes the colors
+                final boolean rendering = isRendering();
+                mask = value;
+                paletteChanged = true;
+                if (rendering != isRendering()) {
+                    //the mapper only counts the scanlines that are rendered
+                    console.getMasterClock().reschedule();
+                }
+                break;
+            }
+            case 3:
+                objectAttributeAddress = value;
+                break;
+            case 4:
+                objectAttributeMemory[objectAttributeAddress] = (byte) value;
+                dirtyPages[OBJECT_ATTRIBUTE_PAGE] = true;
+                objectAttributeAddress = (objectAttributeAddress + 1) & 0xff;
+                break;
+            case 5:
+                if (! writeToggle) {
+                    temporaryAddress = (temporaryAddress & ~ 0x001f) | (value >>> 3);
+                    fineX = value & 0x07;
+                } else {
+                    temporaryAddress = (temporaryAddress & ~ 0x73e0) | ((value & 0x07) << 12) | ((value & 0xf8) << 2);
+                }
+                writeToggle = ! writeToggle;
+                break;
+            case 6:
+                if (! writeToggle) {
+                    temporaryAddress = (temporaryAddress & 0x00ff) | ((value & 0x3f) << 8);
+                } else {
+                    temporaryAddress = (temporaryAddress & 0xff00) | value;
+                    vramAddress = temporaryAddress;
+                }
+                writeToggle = ! writeToggle;
+                break;
+            case 7:
+                writeVideoMemory(vramAddress & 0x3fff, value);
+                incrementVramAddress();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public int size() {
+        return 8;
+    }
+
+    /**
+     * Returns the number of dots rendered since the PPU was created
+     *
+     * @return the number of dots rendered
+     */
+    @Override
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Sets the number of dots rendered, for example when a save state is loaded.Where the PPU is in the frame does not
+     * change.
+     *
+     * @param cycles
+     *         the number of dots rendered
+     */
+    public void setCycles(long cycles) {
+        this.cycles = cycles;
+    }
+
+    /**
+     * Renders dots until the given number of dots is reached
+     *
+     * @param cycles
+     *         The number of dots to reach
+     */
+    @Override
+    public void runUntil(long cycles) {
+        if (backBuffer == null) {
+            backBuffer = new int[WIDTH * HEIGHT];
+        }
+        running = true;
+        try {
+            while (this.cycles < cycles) {
+                final long remaining = cycles - this.cycles;
+                if (scanlineRenderingEnabled && scanline < HEIGHT && (dot & 7) == 1 && dot < WIDTH && remaining >= 8) {
+                    final int tiles = (int) Math.min(remaining >>> 3, (WIDTH - dot + 1) >>> 3);
+                    renderTiles(tiles);
+                    dot += tiles << 3;
+                    this.cycles += tiles << 3;
+                } else if (scanlineRenderingEnabled && getIdleEnd() > dot) {
+                    final int dots = (int) Math.min(remaining, getIdleEnd() - dot);
+                    this.cycles += dots;
+                    if ((dot += dots) == DOTS) {
+                        dot = 0;
+                        scanline++;
+                    }
+                } else {
+                    tick();
+                    this.cycles++;
+                }
+            }
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * Returns the dot at which the vertical blank starts if the NMI is enabled, or at which the mapper requests an IRQ,
+     * whichever comes first.Both can only move when a register of the PPU or of the mapper is written.
+     *
+     * @return the cycles of the next event, or {@link Long#MAX_VALUE} if there is none
+     */
+    @Override
+    public long getNextEventCycles() {
+        final long frame = (long) SCANLINES * DOTS;
+        final long position = scanline * DOTS + dot;
+        long event = Long.MAX_VALUE;
+        if ((control & NMI_ENABLED) != 0) {
+            //the dot after the one that starts it
+            final long verticalBlank = VERTICAL_BLANK_SCANLINE * DOTS + 2;
+            event = cycles + getDotsUntil(verticalBlank > position ? verticalBlank : verticalBlank + frame);
+        }
+        final Mapper mapper = console.getMapper();
+        int scanlines = mapper != null && isRendering() ? mapper.getScanlinesUntilInterrupt() : - 1;
+        if (scanlines > 0) {
+            //the mapper is told about the rendered scanlines at their dot 260, so the event is the dot after it
+            long line = dot <= 260 ? scanline : scanline + 1;
+            while (true) {
+                final long wrapped = line % SCANLINES;
+                if ((wrapped < HEIGHT || wrapped == PRE_RENDER_SCANLINE) && -- scanlines == 0) {
+                    break;
+                }
+                line++;
+            }
+            event = Math.min(event, cycles + getDotsUntil(line * DOTS + 261));
+        }
+        return event;
+    }
+
+    /**
+     * Returns the number of dots from the current one to a dot of this frame or of the next ones, without the dots the
+     * odd frames skip if they are rendered
+     */
+    private long getDotsUntil(long target) {
+        final long position = scanline * DOTS + dot;
+        long dots = target - position;
+        boolean odd = oddFrame;
+        for (long skipped = PRE_RENDER_SCANLINE * DOTS + DOTS - 2; skipped < target; skipped += SCANLINES * DOTS) {
+            if (odd && skipped > position && isRendering()) {
+                dots--;
+            }
+            odd = ! odd;
+        }
+        return dots;
+    }
+
+    /**
+     * Returns true if the scanlines the PPU runs through in one go are rendered at once rather than a dot at a time
+     *
+     * @return true if scanline rendering is enabled
+     */
+    public boolean isScanlineRenderingEnabled() {
+        return scanlineRenderingEnabled;
+    }
+
+    /**
+     * Sets whether the scanlines the PPU runs through in one go are rendered at once rather than a dot at a time.It is
+     * enabled by default;both render the same frames.
+     *
+     * @param scanlineRenderingEnabled
+     *         true to render whole scanlines at once
+     */
+    public void setScanlineRenderingEnabled(boolean scanlineRenderingEnabled) {
+        this.scanlineRenderingEnabled = scanlineRenderingEnabled;
+    }
+
+    /**
+     * Returns the scanline being rendered;0 to 239 are visible and {@link #PRE_RENDER_SCANLINE} is the last one
+     *
+     * @return the scanline
+     */
+    public int getScanline() {
+        return scanline;
+    }
+
+    /**
+     * Returns the dot of the scanline being rendered, from 0 to 340
+     *
+     * @return the dot
+     */
+    public int getDot() {
+        return dot;
+    }
+
+    /**
+     * Returns the number of frames completed
+     *
+     * @return the number of frames completed
+     */
+    public long getFrameNumber() {
+        return frameNumber;
+    }
+
+    /**
+     * Returns the last completed frame, as {@link #WIDTH} by {@link #HEIGHT} ARGB pixels, row by row.This is the
+     * framebuffer itself, which changes as described in {@link FrameListener#frameCompleted(int[], long)}.
+     *
+     * @return the last completed frame, or a blank one if no frame was completed yet
+     */
+    @NotNull
+    public int[] getFrame() {
+        if (frontBuffer == null) {
+            frontBuffer = new int[WIDTH * HEIGHT];
+        }
+        return frontBuffer;
+    }
+
+    /**
+     * Returns true if the PPU renders into a second buffer while the last frame is being used
+     *
+     * @return true if the PPU is double buffered
+     */
+    public boolean isDoubleBuffered() {
+        return doubleBuffered;
+    }
+
+    /**
+     * Sets whether the PPU renders into a second buffer while the last frame is being used.It is by default.
+     *
+     * @param doubleBuffered
+     *         true to double buffer
+     */
+    public void setDoubleBuffered(boolean doubleBuffered) {
+        this.doubleBuffered = doubleBuffered;
+    }
+
+    public void addFrameListener(@NotNull FrameListener frameListener) {
+        final FrameListener[] frameListeners = Arrays.copyOf(this.frameListeners, this.frameListeners.length + 1);
+        frameListeners[frameListeners.length - 1] = frameListener;
+        this.frameListeners = frameListeners;
+    }
+
+    public void removeFrameListener(@NotNull FrameListener frameListener) {
+        final FrameListener[] frameListeners = this.frameListeners;
+        for (int i = 0; i < frameListeners.length; i++) {
+            if (frameListeners[i] == frameListener) {
+                final FrameListener[] removed = new FrameListener[frameListeners.length - 1];
+                System.arraycopy(frameListeners, 0, removed, 0, i);
+                System.arraycopy(frameListeners, i + 1, removed, i, removed.length - i);
+                this.frameListeners = removed;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the OAM, the 64 sprites of 4 bytes.Writing to it is writing to the OAM, like a DMA does;the deltas of the
+     * save states only see it after {@link #arrayWritten(byte[])}.
+     *
+     * @return the OAM
+     */
+    @NotNull
+    public byte[] getObjectAttributeMemory() {
+        return objectAttributeMemory;
+    }
+
+    /**
+     * Reads the memory the PPU addresses : the pattern tables, the nametables and the palette
+     *
+     * @param address
+     *         The address, below $4000
+     *
+     * @return the value
+     */
+    public int readVideoMemory(int address) {
+        if (address < 0x2000) {
+            final Mapper mapper = console.getMapper();
+            return mapper != null ? mapper.readCharacter(address) : characterMemory[address] & 0xff;
+        }
+        if (address < 0x3f00) {
+            return nametables[getMirroring().map(address)] & 0xff;
+        }
+        return palette[paletteIndex(address)] & ((mask & 0x01) != 0 ? 0x30 : 0x3f);
+    }
+
+    /**
+     * Writes the memory the PPU addresses : the pattern tables, the nametables and the palette
+     *
+     * @param address
+     *         The address, below $4000
+     * @param value
+     *         The value
+     */
+    public void writeVideoMemory(int address, int value) {
+        if (address < 0x2000) {
+            final Mapper mapper = console.getMapper();
+            if (mapper != null) {
+                mapper.writeCharacter(address, value);
+            } else {
+                if (characterMemoryShared) {
+                    unshareCharacterMemory();
+                }
+                characterMemory[address] = (byte) value;
+                dirtyPages[CHARACTER_PAGE + (address >>> 8)] = true;
+            }
+        } else if (address < 0x3f00) {
+            final int index = getMirroring().map(address);
+            if (nametablesShared) {
+                unshareNametables();
+            }
+            nametables[index] = (byte) value;
+            dirtyPages[index >>> 8] = true;
+        } else {
+            palette[paletteIndex(address)] = (byte) (value & 0x3f);
+            dirtyPages[PALETTE_PAGE] = true;
+            paletteChanged = true;
+        }
+    }
+
+    /**
+     * Copies the state of another PPU, for a fork of its console.The nametables and the pattern tables are not copied
+     * but shared copy-on-write, by both PPUs, so this must be called by the thread that runs the other PPU or while it
+     * is stopped.
+     *
+     * @param pictureProcessor
+     *         The PPU
+     */
+    public void copyFrom(@NotNull PictureProcessor pictureProcessor) {
+        nametables = pictureProcessor.nametables;
+        characterMemory = pictureProcessor.characterMemory;
+        nametablesShared = true;
+        characterMemoryShared = true;
+        pictureProcessor.nametablesShared = true;
+        pictureProcessor.characterMemoryShared = true;
+        memoryArrays = memoryArrays();
+        System.arraycopy(pictureProcessor.palette, 0, palette, 0, palette.length);
+        System.arraycopy(pictureProcessor.objectAttributeMemory, 0, objectAttributeMemory, 0,
+                objectAttributeMemory.length);
+        System.arraycopy(pictureProcessor.dirtyPages, 0, dirtyPages, 0, dirtyPages.length);
+        control = pictureProcessor.control;
+        mask = pictureProcessor.mask;
+        status = pictureProcessor.status;
+        objectAttributeAddress = pictureProcessor.objectAttributeAddress;
+        vramAddress = pictureProcessor.vramAddress;
+        temporaryAddress = pictureProcessor.temporaryAddress;
+        fineX = pictureProcessor.fineX;
+        writeToggle = pictureProcessor.writeToggle;
+        readBuffer = pictureProcessor.readBuffer;
+        latch = pictureProcessor.latch;
+        cycles = pictureProcessor.cycles;
+        scanline = pictureProcessor.scanline;
+        dot = pictureProcessor.dot;
+        oddFrame = pictureProcessor.oddFrame;
+        frameNumber = pictureProcessor.frameNumber;
+        nextTile = pictureProcessor.nextTile;
+        nextAttribute = pictureProcessor.nextAttribute;
+        nextPatternLow = pictureProcessor.nextPatternLow;
+        nextPatternHigh = pictureProcessor.nextPatternHigh;
+        patternShiftLow = pictureProcessor.patternShiftLow;
+        patternShiftHigh = pictureProcessor.patternShiftHigh;
+        attributeShiftLow = pictureProcessor.attributeShiftLow;
+        attributeShiftHigh = pictureProcessor.attributeShiftHigh;
+        System.arraycopy(pictureProcessor.spriteX, 0, spriteX, 0, spriteX.length);
+        System.arraycopy(pictureProcessor.spriteAttributes, 0, spriteAttributes, 0, spriteAttributes.length);
+        System.arraycopy(pictureProcessor.spritePatternLow, 0, spritePatternLow, 0, spritePatternLow.length);
+        System.arraycopy(pictureProcessor.spritePatternHigh, 0, spritePatternHigh, 0, spritePatternHigh.length);
+        spriteCount = pictureProcessor.spriteCount;
+        spriteZeroOnScanline = pictureProcessor.spriteZeroOnScanline;
+        lineSpritesDrawn = false;
+        paletteChanged = true;
+        doubleBuffered = pictureProcessor.doubleBuffered;
+        scanlineRenderingEnabled = pictureProcessor.scanlineRenderingEnabled;
+        if (scanline > 0 && scanline < HEIGHT) {
+            //only the scanlines of the frame being rendered that were rendered already
+            if (backBuffer == null) {
+                backBuffer = new int[WIDTH * HEIGHT];
+            }
+            System.arraycopy(pictureProcessor.backBuffer, 0, backBuffer, 0, scanline * WIDTH);
+        }
+    }
+
+    /**
+     * Returns the arrays of the memory of the PPU : the nametables, the palette, the OAM and the pattern tables of a
+     * console without a cartridge.The save states save them like the arrays of the {@link
+     * com.waoss.enesys.mem.CompleteMemory}, and load them by writing to them, so the arrays that are shared with a fork
+     * are copied first.
+     *
+     * @return the arrays
+     */
+    @NotNull
+    public List<byte[]> getMemoryArrays() {
+        if (nametablesShared) {
+            unshareNametables();
+        }
+        if (characterMemoryShared) {
+            unshareCharacterMemory();
+        }
+        return memoryArrays;
+    }
+
+    /**
+     * Returns true if a page of an array of the memory was written since the last call to {@link #clearDirty()}
+     *
+     * @param array
+     *         One of the {@link #getMemoryArrays()}
+     * @param page
+     *         The index of the page in the array
+     *
+     * @return true if the page was written
+     */
+    public boolean isDirty(@NotNull byte[] array, int page) {
+        return dirtyPages[firstPage(array) + page];
+    }
+
+    /**
+     * Clears the dirty flags of the memory, for example when a snapshot is taken
+     */
+    public void clearDirty() {
+        Arrays.fill(dirtyPages, false);
+    }
+
+    /**
+     * Tells the PPU that an array of its memory was written from outside, like when a save state is loaded
+     *
+     * @param array
+     *         One of the {@link #getMemoryArrays()}
+     */
+    public void arrayWritten(@NotNull byte[] array) {
+        final int firstPage = firstPage(array);
+        Arrays.fill(dirtyPages, firstPage, firstPage + (array.length + 0xff >>> 8), true);
+        paletteChanged = true;
+    }
+
+    /**
+     * Writes the registers of the PPU at the position of the buffer, for a save state;its memory is saved with {@link
+     * #getMemoryArrays()}.The frame being rendered is not saved : the scanlines of it that were rendered before the
+     * state is loaded are not drawn again.
+     *
+     * @param buffer
+     *         The buffer, with at least {@link #STATE_SIZE} bytes remaining
+     */
+    public void save(@NotNull ByteBuffer buffer) {
+        buffer.putInt(control).putInt(mask).putInt(status).putInt(objectAttributeAddress);
+        buffer.putInt(vramAddress).putInt(temporaryAddress).putInt(fineX).putInt(readBuffer).putInt(latch);
+        buffer.put((byte) (writeToggle ? 1 : 0));
+        buffer.putLong(cycles).putInt(scanline).putInt(dot).put((byte) (oddFrame ? 1 : 0)).putLong(frameNumber);
+        buffer.putInt(nextTile).putInt(nextAttribute).putInt(nextPatternLow).putInt(nextPatternHigh);
+        buffer.putInt(patternShiftLow).putInt(patternShiftHigh).putInt(attributeShiftLow).putInt(attributeShiftHigh);
+        for (int[] sprites : new int[][]{spriteX, spriteAttributes, spritePatternLow, spritePatternHigh}) {
+            for (int sprite : sprites) {
+                buffer.putInt(sprite);
+            }
+        }
+        buffer.putInt(spriteCount).put((byte) (spriteZeroOnScanline ? 1 : 0));
+    }
+
+    /**
+     * Reads the registers of the PPU written by {@link #save(ByteBuffer)} at the position of the buffer
+     *
+     * @param buffer
+     *         The buffer, with at least {@link #STATE_SIZE} bytes remaining
+     */
+    public void load(@NotNull ByteBuffer buffer) {
+        control = buffer.getInt();
+        mask = buffer.getInt();
+        status = buffer.getInt();
+        objectAttributeAddress = buffer.getInt();
+        vramAddress = buffer.getInt();
+        temporaryAddress = buffer.getInt();
+        fineX = buffer.getInt();
+        readBuffer = buffer.getInt();
+        latch = buffer.getInt();
+        writeToggle = buffer.get() != 0;
+        cycles = buffer.getLong();
+        scanline = buffer.getInt();
+        dot = buffer.getInt();
+        oddFrame = buffer.get() != 0;
+        frameNumber = buffer.getLong();
+        nextTile = buffer.getInt();
+        nextAttribute = buffer.getInt();
+        nextPatternLow = buffer.getInt();
+        nextPatternHigh = buffer.getInt();
+        patternShiftLow = buffer.getInt();
+        patternShiftHigh = buffer.getInt();
+        attributeShiftLow = buffer.getInt();
+        attributeShiftHigh = buffer.getInt();
+        for (int[] sprites : new int[][]{spriteX, spriteAttributes, spritePatternLow, spritePatternHigh}) {
+            for (int i = 0; i < sprites.length; i++) {
+                sprites[i] = buffer.getInt();
+            }
+        }
+        spriteCount = buffer.getInt();
+        spriteZeroOnScanline = buffer.get() != 0;
+        lineSpritesDrawn = false;
+        paletteChanged = true;
+    }
+
+    private void unshareNametables() {
+        nametables = nametables.clone();
+        nametablesShared = false;
+        memoryArrays = memoryArrays();
+    }
+
+    private void unshareCharacterMemory() {
+        characterMemory = characterMemory.clone();
+        characterMemoryShared = false;
+        memoryArrays = memoryArrays();
+    }
+
+    private List<byte[]> memoryArrays() {
+        return Collections.unmodifiableList(Arrays.asList(nametables, palette, objectAttributeMemory, characterMemory));
+    }
+
+    private int firstPage(byte[] array) {
+        if (array == nametables) {
+            return 0;
+        } else if (array == palette) {
+            return PALETTE_PAGE;
+        } else if (array == objectAttributeMemory) {
+            return OBJECT_ATTRIBUTE_PAGE;
+        } else if (array == characterMemory) {
+            return CHARACTER_PAGE;
+        }
+        throw new IllegalArgumentException("Not an array of the memory of the PPU");
+    }
+
+    private Mirroring getMirroring() {
+        final Mapper mapper = console.getMapper();
+        return mapper != null ? mapper.getMirroring() : Mirroring.HORIZONTAL;
+    }
+
+    /**
+     * Runs the PPU up to the CPU, which is about to access a register of the PPU or of the mapper.This does nothing
+     * while the PPU is running.
+     */
+    public void synchronize() {
+        if (! running) {
+            runUntil(console.getCentralProcessor().getCycles() * (MasterClock.CPU_DIVIDER / MasterClock.PPU_DIVIDER));
+        }
+    }
+
+    private static int paletteIndex(int address) {
+        //the backdrop entries of the sprite palettes mirror the ones of the background palettes
+        final int index = address & 0x1f;
+        return (index & 0x13) == 0x10 ? index & 0x0f : index;
+    }
+
+    private boolean isRendering() {
+        return (mask & (SHOW_BACKGROUND | SHOW_SPRITES)) != 0;
+    }
+
+    private void tick() {
+        final boolean rendering = isRendering();
+        if (scanline < HEIGHT || scanline == PRE_RENDER_SCANLINE) {
+            if (scanline == PRE_RENDER_SCANLINE && dot == 1) {
+                status &= ~ (VERTICAL_BLANK | SPRITE_ZERO_HIT | SPRITE_OVERFLOW);
+            }
+            if (rendering) {
+                fetch();
+            }
+            if (scanline < HEIGHT && dot >= 1 && dot <= WIDTH) {
+                renderPixel(dot - 1);
+            }
+        } else if (scanline == VERTICAL_BLANK_SCANLINE && dot == 1) {
+            startVerticalBlank();
+        }
+        if (++dot == DOTS - 1 && scanline == PRE_RENDER_SCANLINE && oddFrame && rendering) {
+            //the odd frames skip the last dot of the pre-render scanline
+            dot++;
+        }
+        if (dot == DOTS) {
+            dot = 0;
+            if (++scanline == SCANLINES) {
+                scanline = 0;
+                oddFrame = ! oddFrame;
+            }
+        }
+    }
+
+    /**
+     * Renders the tiles of a visible scanline from the dot that starts one, like the calls to {@link #tick()} for their
+     * dots would : every tile is fetched at once and its 8 pixels are rendered from the shift registers in one go.
+     *
+     * @param count
+     *         The number of tiles;the last one ends at dot 256 at the latest
+     */
+    private void renderTiles(int count) {
+        final int[] backBuffer = this.backBuffer;
+        final int firstTile = dot >>> 3;
+        final int line = scanline * WIDTH;
+        if (! isRendering()) {
+            Arrays.fill(backBuffer, line + (firstTile << 3), line + ((firstTile + count) << 3),
+                    colors[readVideoMemory(0x3f00)]);
+            return;
+        }
+        if (paletteChanged) {
+            for (int i = 0; i < lineColors.length; i++) {
+                lineColors[i] = colors[readVideoMemory(0x3f00 | i)];
+            }
+            paletteChanged = false;
+        }
+        final boolean sprites = (mask & SHOW_SPRITES) != 0 && spriteCount > 0;
+        if (sprites && ! lineSpritesDrawn) {
+            drawSprites();
+            lineSpritesDrawn = true;
+        }
+        final boolean background = (mask & SHOW_BACKGROUND) != 0;
+        final int backgroundStart = (mask & 0x02) != 0 ? 0 : 8;
+        final int spriteStart = (mask & 0x04) != 0 ? 0 : 8;
+        for (int tile = firstTile; tile < firstTile + count; tile++) {
+            //the dots of a tile : the shift and reload of its first dot, the fetches of the next tile, and 7 shifts
+            if (tile > 0) {
+                patternShiftLow <<= 1;
+                patternShiftHigh <<= 1;
+                attributeShiftLow <<= 1;
+                attributeShiftHigh <<= 1;
+                reloadShifters();
+                nextTile = readVideoMemory(0x2000 | (vramAddress & 0x0fff));
+            }
+            final int patternLow = patternShiftLow << fineX;
+            final int patternHigh = patternShiftHigh << fineX;
+            final int attributeLow = attributeShiftLow << fineX;
+            final int attributeHigh = attributeShiftHigh << fineX;
+            final int attribute = readVideoMemory(0x23c0 | (vramAddress & 0x0c00) | ((vramAddress >>> 4) & 0x38) |
+                    ((vramAddress >>> 2) & 0x07));
+            nextAttribute = (attribute >>> (((vramAddress >>> 4) & 0x04) | (vramAddress & 0x02))) & 0x03;
+            nextPatternLow = readVideoMemory(getBackgroundPatternAddress());
+            nextPatternHigh = readVideoMemory(getBackgroundPatternAddress() + 8);
+            incrementX();
+            patternShiftLow <<= 7;
+            patternShiftHigh <<= 7;
+            attributeShiftLow <<= 7;
+            attributeShiftHigh <<= 7;
+            for (int i = 0; i < 8; i++) {
+                final int x = (tile << 3) | i;
+                final int shift = 15 - i;
+                int index = ((patternLow >>> shift) & 0x01) | (((patternHigh >>> shift) & 0x01) << 1);
+                if (index == 0 || ! background || x < backgroundStart) {
+                    index = 0;
+                } else {
+                    index |= (((attributeLow >>> shift) & 0x01) << 2) | (((attributeHigh >>> shift) & 0x01) << 3);
+                }
+                if (sprites && x >= spriteStart) {
+                    final int sprite = lineSprites[x];
+                    if (sprite != 0) {
+                        if (index == 0) {
+                            index = sprite & 0x1f;
+                        } else {
+                            if ((sprite & 0x200) != 0 && x != WIDTH - 1) {
+                                status |= SPRITE_ZERO_HIT;
+                            }
+                            if ((sprite & 0x100) == 0) {
+                                index = sprite & 0x1f;
+                            }
+                        }
+                    }
+                }
+                backBuffer[line + x] = lineColors[index];
+            }
+        }
+        if (firstTile + count == WIDTH / 8) {
+            incrementY();
+        }
+    }
+
+    /**
+     * Returns the end of the dots from the current one that do nothing, like the ones of the vertical blank
+     *
+     * @return the first dot after them, or the current dot if it does something
+     */
+    private int getIdleEnd() {
+        if (scanline == HEIGHT || (scanline > VERTICAL_BLANK_SCANLINE && scanline < PRE_RENDER_SCANLINE) ||
+                (scanline == VERTICAL_BLANK_SCANLINE && dot > 1)) {
+            return DOTS;
+        }
+        if (scanline < HEIGHT) {
+            if (! isRendering()) {
+                return dot > WIDTH ? DOTS : dot;
+            }
+            if (dot > 260 && dot < 321) {
+                return 321;
+            }
+            if (dot > 337) {
+                return DOTS;
+            }
+        }
+        return dot;
+    }
+
+    /**
+     * Draws the sprites of the scanline into the line buffer, from the last one to the first one so that the first
+     * ones are on top.Every pixel is its palette index, 0x100 if it is behind the background and 0x200 for sprite 0.
+     */
+    private void drawSprites() {
+        final int[] lineSprites = this.lineSprites;
+        Arrays.fill(lineSprites, 0);
+        for (int i = spriteCount - 1; i >= 0; i--) {
+            final int flags = 0x10 | ((spriteAttributes[i] & 0x03) << 2) | ((spriteAttributes[i] & 0x20) << 3) |
+                    (i == 0 && spriteZeroOnScanline ? 0x200 : 0);
+            for (int column = 0; column < 8 && spriteX[i] + column < WIDTH; column++) {
+                final int shift = 7 - column;
+                final int pixel = ((spritePatternLow[i] >>> shift) & 0x01) |
+                        (((spritePatternHigh[i] >>> shift) & 0x01) << 1);
+                if (pixel != 0) {
+                    lineSprites[spriteX[i] + column] = flags | pixel;
+                }
+            }
+        }
+    }
+
+    private void fetch() {
+        if ((dot >= 2 && dot <= 257) || (dot >= 321 && dot <= 337)) {
+            patternShiftLow <<= 1;
+            patternShiftHigh <<= 1;
+            attributeShiftLow <<= 1;
+            attributeShiftHigh <<= 1;
+            switch ((dot - 1) & 7) {
+                case 0:
+                    reloadShifters();
+                    nextTile = readVideoMemory(0x2000 | (vramAddress & 0x0fff));
+                    break;
+                case 2: {
+                    final int attribute = readVideoMemory(0x23c0 | (vramAddress & 0x0c00) |
+                            ((vramAddress >>> 4) & 0x38) | ((vramAddress >>> 2) & 0x07));
+                    nextAttribute = (attribute >>> (((vramAddress >>> 4) & 0x04) | (vramAddress & 0x02))) & 0x03;
+                    break;
+                }
+                case 4:
+                    nextPatternLow = readVideoMemory(getBackgroundPatternAddress());
+                    break;
+                case 6:
+                    nextPatternHigh = readVideoMemory(getBackgroundPatternAddress() + 8);
+                    break;
+                case 7:
+                    incrementX();
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (dot == 256) {
+            incrementY();
+        } else if (dot == 257) {
+            reloadShifters();
+            vramAddress = (vramAddress & ~ 0x041f) | (temporaryAddress & 0x041f);
+            evaluateSprites();
+        } else if (dot == 260) {
+            final Mapper mapper = console.getMapper();
+            if (mapper != null) {
+                mapper.scanline();
+                if (mapper.isInterruptRequested()) {
+                    console.getCentralProcessor().setInterruptLines(CentralProcessor.MAPPER_INTERRUPT, true);
+                }
+            }
+        } else if (scanline == PRE_RENDER_SCANLINE && dot >= 280 && dot <= 304) {
+            vramAddress = (vramAddress & ~ 0x7be0) | (temporaryAddress & 0x7be0);
+        }
+    }
+
+    private int getBackgroundPatternAddress() {
+        return ((control & 0x10) << 8) | (nextTile << 4) | ((vramAddress >>> 12) & 0x07);
+    }
+
+    private void reloadShifters() {
+        patternShiftLow = (patternShiftLow & 0xff00) | nextPatternLow;
+        patternShiftHigh = (patternShiftHigh & 0xff00) | nextPatternHigh;
+        attributeShiftLow = (attributeShiftLow & 0xff00) | ((nextAttribute & 0x01) != 0 ? 0xff : 0x00);
+        attributeShiftHigh = (attributeShiftHigh & 0xff00) | ((nextAttribute & 0x02) != 0 ? 0xff : 0x00);
+    }
+
+    private void incrementX() {
+        if ((vramAddress & 0x001f) == 31) {
+            vramAddress = (vramAddress & ~ 0x001f) ^ 0x0400;
+        } else {
+            vramAddress++;
+        }
+    }
+
+    private void incrementY() {
+        if ((vramAddress & 0x7000) != 0x7000) {
+            vramAddress += 0x1000;
+            return;
+        }
+        vramAddress &= ~ 0x7000;
+        int coarseY = (vramAddress & 0x03e0) >>> 5;
+        if (coarseY == 29) {
+            coarseY = 0;
+            vramAddress ^= 0x0800;
+        } else if (coarseY == 31) {
+            coarseY = 0;
+        } else {
+            coarseY++;
+        }
+        vramAddress = (vramAddress & ~ 0x03e0) | (coarseY << 5);
+    }
+
+    private void incrementVramAddress() {
+        vramAddress = (vramAddress + ((control & 0x04) != 0 ? 32 : 1)) & 0x7fff;
+    }
+
+    /**
+     * Finds the sprites of the next scanline and fetches their patterns
+     */
+    private void evaluateSprites() {
+        lineSpritesDrawn = false;
+        spriteCount = 0;
+        spriteZeroOnScanline = false;
+        if (scanline == PRE_RENDER_SCANLINE) {
+            return;
+        }
+        final int height = (control & 0x20) != 0 ? 16 : 8;
+        for (int i = 0; i < 64; i++) {
+            final int row = scanline - (objectAttributeMemory[i << 2] & 0xff);
+            if (row < 0 || row >= height) {
+                continue;
+            }
+            if (spriteCount == 8) {
+                status |= SPRITE_OVERFLOW;
+                break;
+            }
+            final int tile = objectAttributeMemory[(i << 2) + 1] & 0xff;
+            final int attributes = objectAttributeMemory[(i << 2) + 2] & 0xff;
+            final int flippedRow = (attributes & 0x80) != 0 ? height - 1 - row : row;
+            final int address = height == 8 ? ((control & 0x08) << 9) | (tile << 4) | flippedRow :
+                    ((tile & 0x01) << 12) | ((tile & 0xfe) << 4) | ((flippedRow & 0x08) << 1) | (flippedRow & 0x07);
+            int low = readVideoMemory(address);
+            int high = readVideoMemory(address + 8);
+            if ((attributes & 0x40) != 0) {
+                low = Integer.reverse(low) >>> 24;
+                high = Integer.reverse(high) >>> 24;
+            }
+            spriteZeroOnScanline |= i == 0;
+            spriteX[spriteCount] = objectAttributeMemory[(i << 2) + 3] & 0xff;
+            spriteAttributes[spriteCount] = attributes;
+            spritePatternLow[spriteCount] = low;
+            spritePatternHigh[spriteCount] = high;
+            spriteCount++;
+        }
+    }
+
+    private void renderPixel(int x) {
+        int background = 0;
+        if ((mask & SHOW_BACKGROUND) != 0 && (x >= 8 || (mask & 0x02) != 0)) {
+            final int bit = 0x8000 >>> fineX;
+            background = ((patternShiftLow & bit) != 0 ? 0x01 : 0) | ((patternShiftHigh & bit) != 0 ? 0x02 : 0);
+            if (background != 0) {
+                background |= ((attributeShiftLow & bit) != 0 ? 0x04 : 0) |
+                        ((attributeShiftHigh & bit) != 0 ? 0x08 : 0);
+            }
+        }
+        int sprite = 0;
+        boolean behind = false;
+        boolean spriteZero = false;
+        if ((mask & SHOW_SPRITES) != 0 && (x >= 8 || (mask & 0x04) != 0)) {
+            for (int i = 0; i < spriteCount; i++) {
+                final int column = x - spriteX[i];
+                if (column < 0 || column >= 8) {
+                    continue;
+                }
+                final int shift = 7 - column;
+                final int pixel = ((spritePatternLow[i] >>> shift) & 0x01) |
+                        (((spritePatternHigh[i] >>> shift) & 0x01) << 1);
+                if (pixel != 0) {
+                    sprite = 0x10 | ((spriteAttributes[i] & 0x03) << 2) | pixel;
+                    behind = (spriteAttributes[i] & 0x20) != 0;
+                    spriteZero = i == 0 && spriteZeroOnScanline;
+                    break;
+                }
+            }
+        }
+        final int index;
+        if (sprite == 0) {
+            index = background;
+        } else if (background == 0) {
+            index = sprite;
+        } else {
+            if (spriteZero && x != WIDTH - 1) {
+                status |= SPRITE_ZERO_HIT;
+            }
+            index = behind ? background : sprite;
+        }
+        backBuffer[scanline * WIDTH + x] = colors[readVideoMemory(0x3f00 | index)];
+    }
+
+    private void startVerticalBlank() {
+        status |= VERTICAL_BLANK;
+        if ((control & NMI_ENABLED) != 0) {
+            console.getCentralProcessor().requestNonMaskableInterrupt();
+        }
+        final int[] frame = backBuffer;
+        if (! doubleBuffered) {
+            frontBuffer = frame;
+        } else {
+            backBuffer = frontBuffer != null && frontBuffer != frame ? frontBuffer : new int[WIDTH * HEIGHT];
+            frontBuffer = frame;
+        }
+        final long frameNumber = this.frameNumber++;
+        for (FrameListener frameListener : frameListeners) {
+            frameListener.frameCompleted(frame, frameNumber);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <p>This package contains the PPU, the picture processing unit of the NES : a 2C02 that renders 256 by 240 pixels
+ * from the pattern tables of the cartridge, the nametables and attribute tables in VRAM and the sprites in OAM.The CPU
+ * programs it through eight registers at $2000-$2007, mirrored up to $3FFF.</p>
+ *
+ * @see com.waoss.enesys.ppu.PictureProcessor
+ */
+
+package com.waoss.enesys.ppu;
@@ -0,0 +1,88 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BatchRunnerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void runsInParallel() throws Exception {
+        //INX, BNE back to INX, INY, JMP $0600
+        final Path loop = binary("loop.bin", 0xe8, 0xd0, 0xfd, 0xc8, 0x4c, 0x00, 0x06);
+        //LDA #$42, STA $10, BRK
+        final Path brk = binary("brk.bin", 0xa9, 0x42, 0x85, 0x10, 0x00);
+        //JMP $0600
+        final Path trap = binary("trap.bin", 0x4c, 0x00, 0x06);
+        final Path missing = temporaryFolder.getRoot().toPath().resolve("missing.bin");
+        final BatchRunner batchRunner = new BatchRunner();
+        batchRunner.setThreads(2);
+        batchRunner.setBudget(10_000, BatchRunner.BudgetUnit.INSTRUCTIONS);
+        final BatchReport batchReport = batchRunner.run(Arrays.asList(loop, brk, trap, loop, missing));
+        final List<BatchReport.Run> runs = batchReport.getRuns();
+        assertEquals(5, runs.size());
+        assertEquals(BatchReport.StopReason.BUDGET, runs.get(0).getStopReason());
+        assertEquals(10_000, runs.get(0).getInstructions());
+        assertEquals(runs.get(0).getMemoryDigest(), runs.get(3).getMemoryDigest());
+        assertEquals(runs.get(0).getRegisters().getY(), runs.get(3).getRegisters().getY());
+        assertEquals(BatchReport.StopReason.BRK, runs.get(1).getStopReason());
+        assertEquals(0x42, runs.get(1).getRegisters().getA());
+        assertEquals(0x0604, runs.get(1).getRegisters().getProgramCounter());
+        assertEquals(0xfd, runs.get(1).getRegisters().getStackPointer());
+        assertNotEquals(runs.get(0).getMemoryDigest(), runs.get(1).getMemoryDigest());
+        assertEquals(BatchReport.StopReason.TRAP, runs.get(2).getStopReason());
+        assertEquals(BatchReport.StopReason.ERROR, runs.get(4).getStopReason());
+        assertTrue(batchReport.hasErrors());
+        assertTrue(batchReport.toJson().contains("\"memoryDigest\""));
+    }
+
+    @Test
+    public void cycleBudgetAndFlatMemory() throws Exception {
+        //LDA #$01, STA $8000, INC $8000, JMP $0605
+        final Path binary = binary("flat.bin", 0xa9, 0x01, 0x8d, 0x00, 0x80, 0xee, 0x00, 0x80, 0x4c, 0x05, 0x06);
+        final BatchRunner batchRunner = new BatchRunner();
+        batchRunner.setFlatMemory(true);
+        batchRunner.setBudget(1_000, BatchRunner.BudgetUnit.CYCLES);
+        final BatchReport.Run run = batchRunner.run(binary);
+        assertEquals(BatchReport.StopReason.BUDGET, run.getStopReason());
+        assertTrue(run.getCycles() >= 1_000 && run.getCycles() < 1_010);
+        final int programCounter = run.getRegisters().getProgramCounter();
+        assertTrue(programCounter == 0x0605 || programCounter == 0x0608);
+    }
+
+    private Path binary(String name, int... binaries) throws Exception {
+        final byte[] bytes = new byte[binaries.length];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) binaries[i];
+        }
+        return Files.write(temporaryFolder.newFile(name).toPath(), bytes);
+    }
+}
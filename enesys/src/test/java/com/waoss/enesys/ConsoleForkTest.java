@@ -0,0 +1,90 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys;
+
+import com.waoss.enesys.ppu.PictureProcessor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class ConsoleForkTest {
+
+    //LDA #$00, loop : CLC, ADC $00, STA $0300,X, INX, BNE loop, BRK
+    private static final int[] PROGRAM = {0xa9, 0x00, 0x18, 0x65, 0x00, 0x9d, 0x00, 0x03, 0xe8, 0xd0, 0xf7, 0x00};
+
+    @Test
+    public void forksRunIndependently() throws Exception {
+        final Console console = new Console();
+        console.loadBinaries(PROGRAM, 0x0600);
+        console.getCentralProcessor().step();
+        final List<Console> forks = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            final Console fork = console.fork();
+            fork.getCompleteMemory().write(0x00, i);
+            forks.add(fork);
+        }
+        final List<byte[]> memories = forks.parallelStream().map(fork -> {
+            while (fork.getCompleteMemory().read(fork.getRegisterFile().getProgramCounter()) != 0x00) {
+                fork.getCentralProcessor().step();
+            }
+            return fork.getCompleteMemory().getRandomAccessMemory().getBytes();
+        }).collect(Collectors.toList());
+        IntStream.range(0, forks.size()).forEach(i -> {
+            assertEquals(0x060b, forks.get(i).getRegisterFile().getProgramCounter());
+            assertEquals(i, memories.get(i)[0x00]);
+            assertEquals((byte) (i * 0x100), memories.get(i)[0x03ff]);
+            assertEquals((byte) (i * 2), memories.get(i)[0x0301]);
+        });
+        assertEquals(0x0602, console.getRegisterFile().getProgramCounter());
+        assertEquals(0x00, console.getCompleteMemory().read(0x0301));
+        assertEquals(2, console.getCentralProcessor().getCycles());
+    }
+
+    @Test
+    public void forksShareTheMemoryOfThePictureProcessor() throws Exception {
+        final Console console = new Console();
+        final PictureProcessor pictureProcessor = console.getPictureProcessor();
+        pictureProcessor.writeVideoMemory(0x0010, 0x11);
+        pictureProcessor.writeVideoMemory(0x2010, 0x22);
+        final Console fork = console.fork();
+        final PictureProcessor forkedProcessor = fork.getPictureProcessor();
+        assertEquals(0x11, forkedProcessor.readVideoMemory(0x0010));
+        assertEquals(0x22, forkedProcessor.readVideoMemory(0x2010));
+        //the first write of each copies the arrays it shares
+        forkedProcessor.writeVideoMemory(0x2010, 0x33);
+        pictureProcessor.writeVideoMemory(0x0010, 0x44);
+        assertEquals(0x22, pictureProcessor.readVideoMemory(0x2010));
+        assertEquals(0x33, forkedProcessor.readVideoMemory(0x2010));
+        assertEquals(0x44, pictureProcessor.readVideoMemory(0x0010));
+        assertEquals(0x11, forkedProcessor.readVideoMemory(0x0010));
+        //a state of the fork has the memory it sees
+        final Console other = console.fork();
+        pictureProcessor.writeVideoMemory(0x2010, 0x55);
+        SaveState.load(fork, SaveState.save(other));
+        assertEquals(0x22, forkedProcessor.readVideoMemory(0x2010));
+        assertEquals(0x44, forkedProcessor.readVideoMemory(0x0010));
+        assertEquals(0x44, other.getPictureProcessor().readVideoMemory(0x0010));
+        assertEquals(0x55, pictureProcessor.readVideoMemory(0x2010));
+    }
+}
@@ -18,9 +18,12 @@
 
 package com.waoss.enesys;
 
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+
 public class ConsoleSerializationTest {
 
     private Console console = new Console();
@@ -31,4 +34,17 @@ public class ConsoleSerializationTest {
                 new ConsoleAdapter()).create().toJson(console));
 
     }
+
+    @Test
+    public void consoleDeserialize() throws Exception {
+        console.getRegisterFile().setX(0x12);
+        console.getRegisterFile().setProgramCounter(0x0642);
+        console.getCompleteMemory().write(0x07ff, 0x34);
+        final Gson gson = new GsonBuilder().registerTypeAdapter(Console.class, new ConsoleAdapter()).create();
+        final Console read = gson.fromJson(gson.toJson(console), Console.class);
+        assertEquals(0x12, read.getRegisterFile().getX());
+        assertEquals(0x0642, read.getRegisterFile().getProgramCounter());
+        assertEquals(0x34, read.getCompleteMemory().read(0x07ff));
+        assertEquals(SaveState.save(console), SaveState.save(read));
+    }
 }
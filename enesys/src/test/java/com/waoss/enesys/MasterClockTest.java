@@ -0,0 +1,106 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MasterClockTest {
+
+    @Test
+    public void lockstep() throws Exception {
+        final Console console = new Console();
+        //an infinite loop of NOPs
+        console.loadBinaries(new int[]{0xea, 0xea, 0x4c, 0x00, 0x06}, 0x0600);
+        final CountingComponent dots = new CountingComponent();
+        final MasterClock masterClock = console.getMasterClock();
+        masterClock.add(dots, MasterClock.PPU_DIVIDER);
+        //the APU only makes samples once its ring buffer is asked for
+        console.getAudioProcessor().getSampleRing();
+        masterClock.runFor(MasterClock.FRAME_CYCLES);
+        assertEquals(MasterClock.FRAME_CYCLES, masterClock.getCycles());
+        assertEquals(MasterClock.FRAME_CYCLES / MasterClock.PPU_DIVIDER, dots.getCycles());
+        //a slice per scanline, and the two batches of samples the APU completes on the way
+        assertEquals(262 + 2, dots.catchUps);
+        final long cpuCycles = console.getCentralProcessor().getCycles();
+        assertTrue(cpuCycles >= MasterClock.FRAME_CYCLES / MasterClock.CPU_DIVIDER);
+        assertTrue(cpuCycles < MasterClock.FRAME_CYCLES / MasterClock.CPU_DIVIDER + 3);
+    }
+
+    @Test
+    public void deterministic() throws Exception {
+        final Console console1 = new Console();
+        final Console console2 = new Console();
+        final int[] binaries = {0xe8, 0xd0, 0xfd, 0xc8, 0x4c, 0x00, 0x06};
+        console1.loadBinaries(binaries, 0x0600);
+        console2.loadBinaries(binaries, 0x0600);
+        console1.getMasterClock().runFor(100_000);
+        for (int i = 0; i < 100; i++) {
+            console2.getMasterClock().runFor(1_000);
+        }
+        assertEquals(console1.getCentralProcessor().getCycles(), console2.getCentralProcessor().getCycles());
+        assertEquals(console1.getRegisterFile().getY(), console2.getRegisterFile().getY());
+    }
+
+    @Test
+    public void lazyComponents() throws Exception {
+        final Console console = new Console();
+        console.loadBinaries(new int[]{0xea, 0xea, 0x4c, 0x00, 0x06}, 0x0600);
+        final LazyCountingComponent dots = new LazyCountingComponent();
+        final MasterClock masterClock = console.getMasterClock();
+        masterClock.add(dots, MasterClock.PPU_DIVIDER);
+        masterClock.runFor(MasterClock.FRAME_CYCLES);
+        //at every event, then at the end
+        assertEquals(MasterClock.FRAME_CYCLES / MasterClock.PPU_DIVIDER, dots.getCycles());
+        assertEquals(MasterClock.FRAME_CYCLES / MasterClock.PPU_DIVIDER / LazyCountingComponent.INTERVAL + 1,
+                dots.catchUps);
+        final long cpuCycles = console.getCentralProcessor().getCycles();
+        assertTrue(cpuCycles >= MasterClock.FRAME_CYCLES / MasterClock.CPU_DIVIDER);
+        assertTrue(cpuCycles < MasterClock.FRAME_CYCLES / MasterClock.CPU_DIVIDER + 3);
+    }
+
+    private static class CountingComponent implements ClockedComponent {
+
+        private long cycles;
+        int catchUps;
+
+        @Override
+        public long getCycles() {
+            return cycles;
+        }
+
+        @Override
+        public void runUntil(long cycles) {
+            assertTrue(cycles >= this.cycles);
+            this.cycles = cycles;
+            catchUps++;
+        }
+    }
+
+    private static final class LazyCountingComponent extends CountingComponent implements LazyComponent {
+
+        private static final int INTERVAL = 1000;
+
+        @Override
+        public long getNextEventCycles() {
+            return (getCycles() / INTERVAL + 1) * INTERVAL;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys;
+
+import com.waoss.enesys.cpu.CentralProcessor;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class RewindTest {
+
+    //INX, STX $10, BNE back to INX, INY, STY $0311, JMP $0600
+    private static final int[] PROGRAM = {0xe8, 0x86, 0x10, 0xd0, 0xfb, 0xc8, 0x8c, 0x11, 0x03, 0x4c, 0x00, 0x06};
+
+    @Test
+    public void seeksBackAndResumes() throws Exception {
+        final Console console = new Console();
+        console.loadBinaries(PROGRAM, 0x0600);
+        final Rewind rewind = console.getRewind();
+        rewind.setInterval(1_000);
+        rewind.setKeyframeInterval(4);
+        rewind.setEnabled(true);
+        final MasterClock masterClock = console.getMasterClock();
+        masterClock.runFor(MasterClock.FRAME_CYCLES);
+        final int captureCount = rewind.getCaptureCount();
+        assertEquals(console.getCentralProcessor().getCycles() / 1_000, captureCount);
+        final long end = masterClock.getCycles();
+        final ByteBuffer expected = SaveState.save(console);
+        rewind.seek(6);
+        assertEquals(7, rewind.getCaptureCount());
+        assertEquals(rewind.getCaptureCycles(6), console.getCentralProcessor().getCycles());
+        assertTrue(console.getCentralProcessor().getCycles() >= 7_000);
+        masterClock.runUntil(end);
+        assertEquals(expected, SaveState.save(console));
+        assertEquals(captureCount, rewind.getCaptureCount());
+        assertEquals(rewind.getCaptureCycles(3), rewind.seekBefore(rewind.getCaptureCycles(4) - 1));
+        assertEquals(- 1, rewind.seekBefore(0));
+    }
+
+    @Test
+    public void capturesLeaveTheDeltasAlone() throws Exception {
+        final Console console = new Console();
+        console.loadBinaries(PROGRAM, 0x0600);
+        final Rewind rewind = console.getRewind();
+        final CentralProcessor centralProcessor = console.getCentralProcessor();
+        final ByteBuffer state = SaveState.save(console);
+        //pages that are written before a capture and not after it must still be in the next delta
+        console.getCompleteMemory().write(0x0400, 0x5a);
+        console.getPictureProcessor().writeVideoMemory(0x2800, 0xa5);
+        rewind.capture();
+        centralProcessor.runUntil(1_000);
+        rewind.capture();
+        SaveState.merge(state, SaveState.saveDelta(console));
+        assertEquals(SaveState.save(console), state);
+        //seeking loads a capture, so the next delta has everything it changed
+        centralProcessor.runUntil(5_000);
+        rewind.capture();
+        SaveState.merge(state, SaveState.saveDelta(console));
+        rewind.seek(1);
+        final ByteBuffer delta = SaveState.saveDelta(console);
+        rewind.capture();
+        SaveState.merge(state, delta);
+        assertEquals(SaveState.save(console), state);
+    }
+
+    @Test
+    public void evictsTheOldestCaptures() throws Exception {
+        final Console console = new Console();
+        final byte[] bytes = console.getCompleteMemory().getRandomAccessMemory().getBytes();
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i | 1);
+        }
+        console.loadBinaries(PROGRAM, 0x0600);
+        final Rewind rewind = console.getRewind();
+        rewind.setBudget(1);
+        rewind.setInterval(100);
+        rewind.setKeyframeInterval(2);
+        rewind.setEnabled(true);
+        console.getMasterClock().runFor(MasterClock.FRAME_CYCLES * 5);
+        final int captureCount = rewind.getCaptureCount();
+        assertTrue(captureCount < console.getCentralProcessor().getCycles() / 100);
+        assertTrue(rewind.getUsedBytes() <= 1 << 20);
+        final long oldest = rewind.getCaptureCycles(0);
+        assertTrue(oldest > 0);
+        rewind.seek(1);
+        assertEquals(rewind.getCaptureCycles(1), console.getCentralProcessor().getCycles());
+        rewind.seek(0);
+        assertEquals(oldest, console.getCentralProcessor().getCycles());
+        rewind.setEnabled(false);
+        assertEquals(0, rewind.getCaptureCount());
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys;
+
+import com.waoss.enesys.cartridge.Cartridge;
+import com.waoss.enesys.cartridge.Mapper;
+import com.waoss.enesys.cartridge.Mirroring;
+import com.waoss.enesys.cpu.CentralProcessor;
+import com.waoss.enesys.mem.CompleteMemory;
+import com.waoss.enesys.ppu.PictureProcessor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class SaveStateTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void savesAndLoads() throws Exception {
+        final Console console = new Console();
+        //INX, STX $10, BNE back to INX, INY, STY $11, JMP $0600
+        console.loadBinaries(new int[]{0xe8, 0x86, 0x10, 0xd0, 0xfb, 0xc8, 0x84, 0x11, 0x4c, 0x00, 0x06}, 0x0600);
+        final CentralProcessor centralProcessor = console.getCentralProcessor();
+        centralProcessor.runUntil(5_000);
+        final Path path = temporaryFolder.getRoot().toPath().resolve("state.bin");
+        console.saveState(path);
+        assertEquals(SaveState.size(console), Files.size(path));
+        centralProcessor.runUntil(10_000);
+        final ByteBuffer later = SaveState.save(console);
+        console.loadState(path);
+        assertEquals(ByteBuffer.wrap(Files.readAllBytes(path)), SaveState.save(console));
+        centralProcessor.runUntil(10_000);
+        assertEquals(later, SaveState.save(console));
+    }
+
+    @Test
+    public void loadedCodeIsDecodedAgain() throws Exception {
+        final Console console = new Console();
+        console.setDynamicRecompilationEnabled(true);
+        console.getCentralProcessor().getRecompiler().setThreshold(0);
+        //LDA #$01, STA $10, JMP $0600
+        console.loadBinaries(new int[]{0xa9, 0x01, 0x85, 0x10, 0x4c, 0x00, 0x06}, 0x0600);
+        final CentralProcessor centralProcessor = console.getCentralProcessor();
+        centralProcessor.runUntil(100);
+        final ByteBuffer state = SaveState.save(console);
+        final CompleteMemory completeMemory = console.getCompleteMemory();
+        completeMemory.write(0x0601, 0x02);
+        centralProcessor.runUntil(200);
+        assertEquals(0x02, completeMemory.read(0x10));
+        SaveState.load(console, state);
+        completeMemory.write(0x10, 0x00);
+        centralProcessor.runUntil(300);
+        assertEquals(0x01, completeMemory.read(0x10));
+    }
+
+    @Test
+    public void mapperAndAudioProcessorAreSaved() throws Exception {
+        //an MMC3 with 128 KiB of PRG-ROM, every 8 KiB bank filled with its number, and CHR-RAM
+        final byte[] file = new byte[Cartridge.HEADER_SIZE + 8 * Cartridge.PRG_ROM_UNIT];
+        ByteBuffer.wrap(file).putInt(Cartridge.MAGIC).put((byte) 8).put((byte) 0).put((byte) 0x40);
+        for (int i = 0; i < 8 * Cartridge.PRG_ROM_UNIT; i++) {
+            file[Cartridge.HEADER_SIZE + i] = (byte) (i / 0x2000);
+        }
+        final Console console = new Console();
+        console.loadCartridge(Files.write(temporaryFolder.newFile().toPath(), file));
+        final CompleteMemory completeMemory = console.getCompleteMemory();
+        final Mapper mapper = console.getMapper();
+        //bank 3 at $8000, horizontal mirroring, a byte of CHR-RAM, and the length counter of the first pulse loaded
+        completeMemory.write(0x8000, 6);
+        completeMemory.write(0x8001, 3);
+        completeMemory.write(0xa000, 1);
+        mapper.writeCharacter(0x0100, 0x55);
+        completeMemory.write(0x4015, 0x01);
+        completeMemory.write(0x4000, 0xbf);
+        completeMemory.write(0x4003, 0x08);
+        final ByteBuffer state = SaveState.save(console);
+        completeMemory.write(0x8001, 5);
+        completeMemory.write(0xa000, 0);
+        mapper.writeCharacter(0x0100, 0x00);
+        completeMemory.write(0x4015, 0x00);
+        assertEquals(0x05, completeMemory.read(0x8000));
+        assertEquals(0x00, completeMemory.read(0x4015) & 1);
+        SaveState.load(console, state.duplicate());
+        assertEquals(0x03, completeMemory.read(0x8000));
+        assertEquals(Mirroring.HORIZONTAL, mapper.getMirroring());
+        assertEquals(0x55, mapper.readCharacter(0x0100));
+        assertEquals(0x01, completeMemory.read(0x4015) & 1);
+        assertEquals(state, SaveState.save(console));
+        //a delta has the whole state of the mapper
+        mapper.writeCharacter(0x1f00, 0x66);
+        completeMemory.write(0x8001, 7);
+        SaveState.merge(state, SaveState.saveDelta(console));
+        assertEquals(SaveState.save(console), state);
+        mapper.writeCharacter(0x1f00, 0x00);
+        completeMemory.write(0x8001, 3);
+        SaveState.load(console, state.duplicate());
+        assertEquals(0x66, mapper.readCharacter(0x1f00));
+        assertEquals(0x07, completeMemory.read(0x8000));
+    }
+
+    @Test
+    public void pictureProcessorIsSaved() throws Exception {
+        final Console console = new Console();
+        final PictureProcessor pictureProcessor = console.getPictureProcessor();
+        pictureProcessor.runUntil(10_000);
+        pictureProcessor.writeVideoMemory(0x0100, 0x34);
+        pictureProcessor.writeVideoMemory(0x2042, 0x12);
+        pictureProcessor.writeVideoMemory(0x3f01, 0x21);
+        pictureProcessor.write(0x2003, 0x10);
+        pictureProcessor.write(0x2004, 0x56);
+        pictureProcessor.write(0x2005, 0x0d);
+        final ByteBuffer state = SaveState.save(console);
+        final int scanline = pictureProcessor.getScanline();
+        final int dot = pictureProcessor.getDot();
+        pictureProcessor.writeVideoMemory(0x0100, 0x00);
+        pictureProcessor.writeVideoMemory(0x2042, 0x00);
+        pictureProcessor.writeVideoMemory(0x3f01, 0x00);
+        pictureProcessor.write(0x2003, 0x10);
+        pictureProcessor.write(0x2004, 0x00);
+        pictureProcessor.write(0x2005, 0x00);
+        pictureProcessor.runUntil(20_000);
+        SaveState.load(console, state.duplicate());
+        assertEquals(0x34, pictureProcessor.readVideoMemory(0x0100));
+        assertEquals(0x12, pictureProcessor.readVideoMemory(0x2042));
+        assertEquals(0x21, pictureProcessor.readVideoMemory(0x3f01));
+        assertEquals(0x56, pictureProcessor.getObjectAttributeMemory()[0x10]);
+        assertEquals(scanline, pictureProcessor.getScanline());
+        assertEquals(dot, pictureProcessor.getDot());
+        assertEquals(state, SaveState.save(console));
+        //a delta has the pages of the memory of the PPU that were written
+        pictureProcessor.writeVideoMemory(0x2400, 0x77);
+        pictureProcessor.write(0x2005, 0x20);
+        final ByteBuffer delta = SaveState.saveDelta(console);
+        assertTrue(delta.remaining() < state.remaining() / 4);
+        SaveState.merge(state, delta);
+        assertEquals(SaveState.save(console), state);
+        SaveState.load(console, state.duplicate());
+        assertEquals(0x77, pictureProcessor.readVideoMemory(0x2400));
+    }
+
+    @Test
+    public void pendingNonMaskableInterruptIsSaved() throws Exception {
+        final Console console = new Console();
+        final CentralProcessor centralProcessor = console.getCentralProcessor();
+        final CompleteMemory completeMemory = console.getCompleteMemory();
+        //NOP, NOP, and INC $11, RTI at $F000 for the NMI
+        console.loadBinaries(new int[]{0xea, 0xea}, 0x0600);
+        final byte[] handlers = new byte[0x1000];
+        System.arraycopy(new byte[]{(byte) 0xe6, 0x11, 0x40}, 0, handlers, 0, 3);
+        handlers[0xffb] = (byte) 0xf0;
+        completeMemory.mapReadWrite(0xf0, 0x10, handlers, 0);
+        final ByteBuffer idle = SaveState.save(console);
+        centralProcessor.requestNonMaskableInterrupt();
+        final ByteBuffer pending = SaveState.save(console);
+        //a stale NMI is not taken in a state that had none
+        SaveState.load(console, idle.duplicate());
+        assertFalse(centralProcessor.isNonMaskableInterruptRequested());
+        centralProcessor.step();
+        assertEquals(0x0601, console.getRegisterFile().getProgramCounter());
+        assertEquals(0, completeMemory.read(0x11));
+        //the NMI of a state is taken after it is loaded
+        SaveState.load(console, pending.duplicate());
+        assertTrue(centralProcessor.isNonMaskableInterruptRequested());
+        assertEquals(pending, SaveState.save(console));
+        centralProcessor.step();
+        assertFalse(centralProcessor.isNonMaskableInterruptRequested());
+        assertEquals(1, completeMemory.read(0x11));
+        assertEquals(0xf002, console.getRegisterFile().getProgramCounter());
+    }
+
+    @Test
+    public void invalidStatesAreRejected() throws Exception {
+        final Console console = new Console();
+        console.getRegisterFile().setA(0x42);
+        final ByteBuffer state = SaveState.save(console);
+        console.getRegisterFile().setA(0x00);
+        final ByteBuffer notAState = ByteBuffer.allocate(state.capacity());
+        try {
+            SaveState.load(console, notAState);
+            fail();
+        } catch (IOException e) {
+            assertEquals(0x00, console.getRegisterFile().getA());
+        }
+        final ByteBuffer truncated = ByteBuffer.wrap(state.array(), 0, state.limit() - 1);
+        try {
+            SaveState.load(console, truncated);
+            fail();
+        } catch (EOFException e) {
+            assertEquals(0x00, console.getRegisterFile().getA());
+        }
+        final Console flat = new Console();
+        flat.getCompleteMemory().mapReadWrite(0x00, CompleteMemory.PAGE_COUNT, new byte[CompleteMemory.SIZE], 0);
+        try {
+            SaveState.load(flat, state);
+            fail();
+        } catch (IOException e) {
+            assertEquals(0x00, flat.getRegisterFile().getA());
+        }
+        SaveState.load(console, state);
+        assertEquals(0x42, console.getRegisterFile().getA());
+    }
+
+    @Test
+    public void deltasHaveTheWrittenPages() throws Exception {
+        final Console console = new Console();
+        //INX, STX $10, BNE back to INX, INY, STY $0311, JMP $0600
+        console.loadBinaries(new int[]{0xe8, 0x86, 0x10, 0xd0, 0xfb, 0xc8, 0x8c, 0x11, 0x03, 0x4c, 0x00, 0x06}, 0x0600);
+        final CentralProcessor centralProcessor = console.getCentralProcessor();
+        final ByteBuffer state = SaveState.save(console);
+        final int size = state.remaining();
+        centralProcessor.runUntil(1_000);
+        final ByteBuffer delta = SaveState.saveDelta(console);
+        assertTrue(delta.remaining() < size / 4);
+        SaveState.merge(state, delta);
+        assertFalse(delta.hasRemaining());
+        assertEquals(SaveState.save(console), state);
+        final ByteBuffer empty = SaveState.saveDelta(console);
+        centralProcessor.runUntil(5_000);
+        final ByteBuffer second = SaveState.saveDelta(console);
+        centralProcessor.runUntil(6_000);
+        final ByteBuffer third = SaveState.saveDelta(console);
+        final ByteBuffer expected = SaveState.save(console);
+        SaveState.merge(state, empty);
+        SaveState.merge(state, second);
+        SaveState.merge(state, third);
+        assertEquals(expected, state);
+        try {
+            SaveState.merge(state, expected);
+            fail();
+        } catch (IOException e) {
+            assertEquals(expected, state);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class SchedulerTest {
+
+    @Test
+    public void runsTheEventsInOrder() throws Exception {
+        final Scheduler scheduler = new Scheduler();
+        final List<Integer> happened = new ArrayList<>();
+        final long[] deadlines = new long[100];
+        final Random random = new Random(42);
+        for (int i = 0; i < deadlines.length; i++) {
+            final int event = scheduler.addEvent((id, cycles) -> {
+                assertEquals(deadlines[id], cycles);
+                happened.add(id);
+            });
+            deadlines[event] = random.nextInt(100);
+            scheduler.post(event, deadlines[event]);
+        }
+        final int cancelled = scheduler.addEvent((id, cycles) -> fail());
+        scheduler.post(cancelled, 10);
+        scheduler.post(cancelled, 20);
+        assertTrue(scheduler.isPending(cancelled));
+        scheduler.cancel(cancelled);
+        assertFalse(scheduler.isPending(cancelled));
+        for (long cycles = 0; cycles < 100; cycles++) {
+            assertTrue(scheduler.getNextDeadline() >= cycles);
+            scheduler.runDue(cycles);
+        }
+        //the events of the same cycle happen in the order of their ids
+        assertEquals(IntStream.range(0, deadlines.length).boxed().sorted(
+                Comparator.<Integer>comparingLong(event -> deadlines[event]).thenComparing(event -> event)).collect(
+                Collectors.toList()), happened);
+        assertEquals(Long.MAX_VALUE, scheduler.getNextDeadline());
+    }
+
+    @Test
+    public void eventsCanPostEvents() throws Exception {
+        final Scheduler scheduler = new Scheduler();
+        final int[] count = new int[1];
+        final int event = scheduler.addEvent((id, cycles) -> {
+            if (++ count[0] < 10) {
+                scheduler.post(id, cycles);
+            }
+        });
+        scheduler.post(event, 5);
+        scheduler.runDue(4);
+        assertEquals(0, count[0]);
+        scheduler.runDue(5);
+        assertEquals(10, count[0]);
+        assertFalse(scheduler.isPending(event));
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.waoss.enesys.apu;
+
+import com.waoss.enesys.Console;
+import com.waoss.enesys.MasterClock;
+import com.waoss.enesys.cpu.CentralProcessor;
+import com.waoss.enesys.mem.CompleteMemory;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AudioProcessorTest {
+
+    private static final long CPU_FREQUENCY = MasterClock.NTSC_FREQUENCY / MasterClock.CPU_DIVIDER;
+
+    private static Console newConsole() {
+        final Console console = new Console();
+        //SEI, JMP $0601
+        console.loadBinaries(new int[]{0x78, 0x4c, 0x01, 0x06}, 0x0600);
+        return console;
+    }
+
+    private static void runUntilCpuCycle(Console console, long cycles) {
+        console.getMasterClock().runUntil(cycles * MasterClock.CPU_DIVIDER);
+    }
+
+    @Test
+    public void playsAPulseAtItsFrequency() {
+        final Console console = newConsole();
+        final CompleteMemory completeMemory = console.getCompleteMemory();
+        completeMemory.write(0x4015, 0x01);
+        //half duty, halted length counter, constant volume of 15, and a period of 253 : 1789773 / 16 / 254 Hz
+        completeMemory.write(0x4000, 0xbf);
+        completeMemory.write(0x4002, 253);
+        completeMemory.write(0x4003, 0x08);
+        final SampleRing sampleRing = console.getAudioProcessor().getSampleRing();
+        final short[] samples = new short[AudioProcessor.RING_CAPACITY];
+        int rises = 0;
+        int total = 0;
+        short previous = 0;
+        for (int tenth = 1; tenth <= 10; tenth++) {
+            runUntilCpuCycle(console, CPU_FREQUENCY * tenth / 10);
+            final int count = sampleRing.read(samples, 0, samples.length);
+            for (int i = 0; i < count; i++) {
+                //the output has no DC offset once the high-pass filter settled
+                if (total + i >= AudioProcessor.DEFAULT_SAMPLE_RATE / 2 && previous < 0 && samples[i] >= 0) {
+                    rises++;
+                }
+                previous = samples[i];
+            }
+            total += count;
+        }
+        assertEquals(0, sampleRing.getDropped());
+        //the last partial batch is still in the APU
+        assertEquals(AudioProcessor.DEFAULT_SAMPLE_RATE, total, AudioProcessor.BATCH_SIZE);
+        assertEquals(1789773 / 16 / 254 / 2, rises, 2);
+    }
+
+    @Test
+    public void requestsAFrameInterrupt() {
+        final Console console = newConsole();
+        final CompleteMemory completeMemory = console.getCompleteMemory();
+        final CentralProcessor centralProcessor = console.getCentralProcessor();
+        runUntilCpuCycle(console, 29000);
+        assertEquals(0, centralProcessor.getInterruptLines());
+        //the clock stops for the interrupt rather than at the end of the slice
+        runUntilCpuCycle(console, 29900);
+        assertEquals(CentralProcessor.APU_INTERRUPT, centralProcessor.getInterruptLines());
+        assertEquals(0x40, completeMemory.read(0x4015));
+        assertEquals(0, centralProcessor.getInterruptLines());
+        assertEquals(0, completeMemory.read(0x4015));
+        //inhibited
+        completeMemory.write(0x4017, 0x40);
+        runUntilCpuCycle(console, 29900 + 40000);
+        assertEquals(0, centralProcessor.getInterruptLines());
+        //the five step sequence never interrupts
+        completeMemory.write(0x4017, 0x80);
+        runUntilCpuCycle(console, 29900 + 80000);
+        assertEquals(0, completeMemory.read(0x4015));
+    }
+
+    @Test
+    public void countsLengthsDown() {
+        final Console console = newConsole();
+        final CompleteMemory completeMemory = console.getCompleteMemory();
+        completeMemory.write(0x4017, 0x40);
+        //loading a disabled channel does nothing
+        completeMemory.write(0x400f, 0x18);
+        assertEquals(0, completeMemory.read(0x4015));
+        completeMemory.write(0x4015, 0x0f);
+        //a length of 2 half frames for the first pulse, 254 for the triangle
+        completeMemory.write(0x4003, 0x18);
+        completeMemory.write(0x400b, 0x08);
+        assertEquals(0x05, completeMemory.read(0x4015));
+        runUntilCpuCycle(console, 20000);
+        assertEquals(0x05, completeMemory.read(0x4015));
+        runUntilCpuCycle(console, 30000);
+        assertEquals(0x04, completeMemory.read(0x4015));
+        completeMemory.write(0x4015, 0x00);
+        assertEquals(0x00, completeMemory.read(0x4015));
+    }
+
+    @Test
+    public void requestsADeltaModulationInterrupt() {
+        final Console console = newConsole();
+        final CompleteMemory completeMemory = console.getCompleteMemory();
+        final CentralProcessor centralProcessor = console.getCentralProcessor();
+        completeMemory.write(0x4017, 0x40);
+        //17 bytes at the fastest rate, 54 cycles a bit once the timer ran out the 428 cycles it started with : the
+        //first byte is read at once, the others every 8 bits, and the IRQ comes when the last one is read
+        completeMemory.write(0x4010, 0x8f);
+        completeMemory.write(0x4013, 0x01);
+        completeMemory.write(0x4015, 0x10);
+        assertEquals(0x10, completeMemory.read(0x4015));
+        final long interrupt = 428 + 7 * 54 + 15 * 8 * 54;
+        runUntilCpuCycle(console, interrupt - 20);
+        assertEquals(0, centralProcessor.getInterruptLines());
+        runUntilCpuCycle(console, interrupt + 20);
+        assertEquals(CentralProcessor.APU_INTERRUPT, centralProcessor.getInterruptLines());
+        assertEquals(0x80, completeMemory.read(0x4015));
+        //acknowledged by writing the status
+        completeMemory.write(0x4015, 0x00);
+        assertEquals(0, centralProcessor.getInterruptLines());
+    }
+
+    @Test
+    public void copiesAPageToTheObjectAttributeMemory() {
+        final Console console = newConsole();
+        final CompleteMemory completeMemory = console.getCompleteMemory();
+        for (int i = 0; i < 0x100; i++) {
+            completeMemory.write(0x0200 + i, i ^ 0x5a);
+        }
+        completeMemory.write(0x2003, 0x00);
+        final long cycles = console.getCentralProcessor().getCycles();
+        completeMemory.write(0x4014, 0x02);
+        final byte[] objectAttributeMemory = console.getPictureProcessor().getObjectAttributeMemory();
+        for (int i = 0; i < 0x100; i++) {
+            assertEquals(i ^ 0x5a, objectAttributeMemory[i] & 0xff);
+        }
+        assertEquals(cycles + 513, console.getCentralProcessor().getCycles());
+    }
+
+    @Test
+    public void passesSamplesFromOneThreadToAnother() throws InterruptedException {
+        final SampleRing sampleRing = new SampleRing(1000);
+        assertEquals(1024, sampleRing.getCapacity());
+        final int total = 1_000_000;
+        final boolean[] ordered = {true};
+        final Thread consumer = new Thread(() -> {
+            final short[] samples = new short[300];
+            int expected = 0;
+            while (expected < total) {
+                final int count = sampleRing.read(samples, 0, samples.length);
+                for (int i = 0; i < count; i++) {
+                    ordered[0] &= samples[i] == (short) expected++;
+                }
+            }
+        });
+        consumer.start();
+        final short[] samples = new short[700];
+        int next = 0;
+        while (next < total) {
+            final int length = Math.min(samples.length, total - next);
+            for (int i = 0; i < length; i++) {
+                samples[i] = (short) (next + i);
+            }
+            int written = 0;
+            while (written < length) {
+                written += sampleRing.write(samples, written, length - written);
+            }
+            next += length;
+        }
+        consumer.join(10_000);
+        assertFalse(consumer.isAlive());
+        assertTrue(ordered[0]);
+    }
+}
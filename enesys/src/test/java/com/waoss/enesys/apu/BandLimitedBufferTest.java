@@ -0,0 +1,108 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.waoss.enesys.apu;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BandLimitedBufferTest {
+
+    private static final double CLOCK_RATE = 1_789_773;
+    private static final int SAMPLE_RATE = 44_100;
+
+    /**
+     * Adds a square wave of the given period and amplitude for a second, a frame of 1/60 second at a time, and returns
+     * the samples
+     */
+    private static short[] square(int period, int amplitude) {
+        final BandLimitedBuffer buffer = new BandLimitedBuffer(CLOCK_RATE, SAMPLE_RATE, 1024);
+        final short[] samples = new short[SAMPLE_RATE + 1024];
+        final long frame = (long) (CLOCK_RATE / 60);
+        int count = 0;
+        long edge = 0;
+        int level = 0;
+        for (long start = 0; start + frame <= CLOCK_RATE; start += frame) {
+            for (; edge < start + frame; edge += period / 2) {
+                final int next = level == 0 ? amplitude : 0;
+                buffer.addDelta(edge - start, next - level);
+                level = next;
+            }
+            buffer.endFrame(frame);
+            count += buffer.read(samples, count, samples.length - count);
+        }
+        assertEquals(SAMPLE_RATE, count, 60);
+        return samples;
+    }
+
+    private static double rootMeanSquare(short[] samples, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += (double) samples[i] * samples[i];
+        }
+        return Math.sqrt(sum / (to - from));
+    }
+
+    @Test
+    public void synthesizesTonesBelowTheNyquistFrequency() {
+        //about 440 Hz
+        final short[] samples = square(4068, 10000);
+        int rises = 0;
+        for (int i = SAMPLE_RATE / 4; i < SAMPLE_RATE / 4 * 3; i++) {
+            if (samples[i - 1] < 0 && samples[i] >= 0) {
+                rises++;
+            }
+        }
+        assertEquals(CLOCK_RATE / 4068 / 2, rises, 1);
+        //a square wave of amplitude 10000 without its DC offset
+        assertEquals(5000, rootMeanSquare(samples, SAMPLE_RATE / 2, SAMPLE_RATE - 60), 250);
+    }
+
+    @Test
+    public void doesNotAliasTonesAboveIt() {
+        //about 30 kHz, whose harmonics are all above the Nyquist frequency : point sampling would alias them into
+        //audible tones, but they are filtered out
+        final short[] samples = square(60, 10000);
+        assertTrue(rootMeanSquare(samples, SAMPLE_RATE / 2, SAMPLE_RATE - 60) < 500);
+    }
+
+    @Test
+    public void readsInParts() {
+        final BandLimitedBuffer buffer = new BandLimitedBuffer(CLOCK_RATE, SAMPLE_RATE, 1024);
+        buffer.addDelta(0, 1000);
+        buffer.endFrame(10_000);
+        final int available = buffer.available();
+        assertEquals(buffer.getSamplesAt(0), available);
+        //a change in the next frame, before the samples of this one are read
+        buffer.addDelta(100, - 1000);
+        final short[] samples = new short[available];
+        assertEquals(100, buffer.read(samples, 0, 100));
+        assertEquals(available - 100, buffer.read(samples, 100, available));
+        assertEquals(0, buffer.available());
+        //the step settles, and decays through the high-pass filter
+        assertTrue(samples[20] > 900);
+        assertTrue(samples[available - 1] < samples[20]);
+        buffer.endFrame(10_000);
+        final short[] next = new short[buffer.available()];
+        buffer.read(next, 0, next.length);
+        //the other step brings it below zero
+        assertTrue(next[next.length - 1] < 0);
+    }
+}
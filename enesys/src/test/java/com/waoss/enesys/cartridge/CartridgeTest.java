@@ -0,0 +1,269 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cartridge;
+
+import com.waoss.enesys.Console;
+import com.waoss.enesys.MasterClock;
+import com.waoss.enesys.mem.CompleteMemory;
+import com.waoss.enesys.mem.Memory;
+import com.waoss.enesys.ppu.PictureProcessor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CartridgeTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /*
+     * Every byte of a bank of 8 KiB of PRG-ROM or 1 KiB of CHR-ROM is the number of the bank, except the vectors at
+     * the end of the PRG-ROM, which all point to $8000
+     */
+    private static byte[] iNes(int prgBanks, int chrBanks, int mapper, int flags6) {
+        final byte[] file = new byte[Cartridge.HEADER_SIZE + prgBanks * Cartridge.PRG_ROM_UNIT +
+                chrBanks * Cartridge.CHR_ROM_UNIT];
+        ByteBuffer.wrap(file).putInt(Cartridge.MAGIC).put((byte) prgBanks).put((byte) chrBanks)
+                .put((byte) (flags6 | (mapper << 4))).put((byte) (mapper & 0xf0));
+        int offset = Cartridge.HEADER_SIZE;
+        for (int i = 0; i < prgBanks * Cartridge.PRG_ROM_UNIT; i++) {
+            file[offset++] = (byte) (i / 0x2000);
+        }
+        for (int i = 0; i < chrBanks * Cartridge.CHR_ROM_UNIT; i++) {
+            file[offset++] = (byte) (i / 0x400);
+        }
+        final int vectors = Cartridge.HEADER_SIZE + prgBanks * Cartridge.PRG_ROM_UNIT - 6;
+        for (int i = 0; i < 6; i += 2) {
+            file[vectors + i] = 0x00;
+            file[vectors + i + 1] = (byte) 0x80;
+        }
+        return file;
+    }
+
+    private Path write(byte[] file) throws IOException {
+        return Files.write(temporaryFolder.newFile().toPath(), file);
+    }
+
+    private static Mapper attach(byte[] file, CompleteMemory completeMemory) throws IOException {
+        final Mapper mapper = Cartridge.parse(ByteBuffer.wrap(file)).createMapper();
+        mapper.attach(completeMemory);
+        return mapper;
+    }
+
+    @Test
+    public void parsesTheHeader() throws Exception {
+        final Cartridge cartridge = Cartridge.load(write(iNes(2, 1, 4, 0x03)));
+        assertEquals(4, cartridge.getMapperNumber());
+        assertEquals(2 * Cartridge.PRG_ROM_UNIT, cartridge.getPrg().capacity());
+        assertEquals(Cartridge.CHR_ROM_UNIT, cartridge.getChr().capacity());
+        assertEquals(Mirroring.VERTICAL, cartridge.getMirroring());
+        assertTrue(cartridge.hasBattery());
+        assertFalse(cartridge.isNes2());
+        assertTrue(cartridge.getPrg().isReadOnly());
+        assertNull(cartridge.getTrainer());
+        final Cartridge chrRam = Cartridge.parse(ByteBuffer.wrap(iNes(1, 0, 2, 0)));
+        assertEquals(0x2000, chrRam.getChrRamSize());
+        final byte[] notINes = iNes(1, 0, 0, 0);
+        notINes[0] = 'M';
+        try {
+            Cartridge.parse(ByteBuffer.wrap(notINes));
+            fail();
+        } catch (IOException expected) {
+        }
+        try {
+            Cartridge.parse(ByteBuffer.wrap(iNes(1, 0, 0, 0), 0, 0x1000));
+            fail();
+        } catch (IOException expected) {
+        }
+        try {
+            Cartridge.parse(ByteBuffer.wrap(iNes(1, 0, 0xff, 0))).createMapper();
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void runsFromTheResetVector() throws Exception {
+        final byte[] file = iNes(1, 1, 0, 0);
+        //LDA #$42, STA $6000, JMP $8005
+        final byte[] program = {(byte) 0xa9, 0x42, (byte) 0x8d, 0x00, 0x60, 0x4c, 0x05, (byte) 0x80};
+        System.arraycopy(program, 0, file, Cartridge.HEADER_SIZE, program.length);
+        final Console console = new Console();
+        console.loadCartridge(write(file));
+        assertEquals(0x8000, console.getRegisterFile().getProgramCounter());
+        console.getCentralProcessor().runUntil(100);
+        final CompleteMemory completeMemory = console.getCompleteMemory();
+        assertEquals(0x42, completeMemory.read(0x6000));
+        assertEquals(0xa9, completeMemory.read(0xc000));
+        completeMemory.write(0x8000, 0x00);
+        assertEquals(0xa9, completeMemory.read(0x8000));
+        assertEquals(0x00, console.getMapper().readCharacter(0x0000));
+        assertEquals(0x07, console.getMapper().readCharacter(0x1fff));
+    }
+
+    @Test
+    public void switchesUxromAndCnromBanks() throws Exception {
+        final CompleteMemory uxromMemory = new CompleteMemory();
+        final Mapper uxrom = attach(iNes(8, 0, 2, 0), uxromMemory);
+        assertEquals(0x00, uxromMemory.read(0x8000));
+        assertEquals(0x0e, uxromMemory.read(0xc000));
+        uxromMemory.write(0x8000, 3);
+        assertEquals(0x06, uxromMemory.read(0x8000));
+        assertEquals(0x07, uxromMemory.read(0xa000));
+        assertEquals(0x0f, uxromMemory.read(0xe000));
+        uxrom.writeCharacter(0x0123, 0x55);
+        assertEquals(0x55, uxrom.readCharacter(0x0123));
+        final CompleteMemory cnromMemory = new CompleteMemory();
+        final Mapper cnrom = attach(iNes(2, 4, 3, 0), cnromMemory);
+        cnromMemory.write(0xffff, 2);
+        assertEquals(0x10, cnrom.readCharacter(0x0000));
+        cnrom.writeCharacter(0x0000, 0x55);
+        assertEquals(0x10, cnrom.readCharacter(0x0000));
+    }
+
+    @Test
+    public void switchesMmc1Banks() throws Exception {
+        final CompleteMemory completeMemory = new CompleteMemory();
+        final Mapper mmc1 = attach(iNes(8, 4, 1, 0), completeMemory);
+        assertEquals(0x0e, completeMemory.read(0xc000));
+        //control : vertical mirroring, switch $8000, 4 KiB CHR banks
+        writeSerially(completeMemory, 0x8000, 0x1e);
+        assertEquals(Mirroring.VERTICAL, mmc1.getMirroring());
+        writeSerially(completeMemory, 0xe000, 0x05);
+        assertEquals(0x0a, completeMemory.read(0x8000));
+        assertEquals(0x0e, completeMemory.read(0xc000));
+        writeSerially(completeMemory, 0xa000, 0x03);
+        writeSerially(completeMemory, 0xc000, 0x06);
+        assertEquals(0x0c, mmc1.readCharacter(0x0000));
+        assertEquals(0x18, mmc1.readCharacter(0x1000));
+        //a reset in the middle of a write is not a write
+        completeMemory.write(0xe000, 1);
+        completeMemory.write(0xe000, 0x80);
+        writeSerially(completeMemory, 0xe000, 0x02);
+        assertEquals(0x04, completeMemory.read(0x8000));
+    }
+
+    private static void writeSerially(CompleteMemory completeMemory, int address, int value) {
+        for (int i = 0; i < 5; i++) {
+            completeMemory.write(address, value >>> i);
+        }
+    }
+
+    @Test
+    public void switchesMmc3BanksAndCountsScanlines() throws Exception {
+        final CompleteMemory completeMemory = new CompleteMemory();
+        final Mapper mmc3 = attach(iNes(8, 8, 4, 0), completeMemory);
+        assertEquals(0x0e, completeMemory.read(0xc000));
+        assertEquals(0x0f, completeMemory.read(0xe000));
+        completeMemory.write(0x8000, 0x06);
+        completeMemory.write(0x8001, 0x03);
+        assertEquals(0x03, completeMemory.read(0x8000));
+        completeMemory.write(0x8000, 0x46);
+        assertEquals(0x0e, completeMemory.read(0x8000));
+        assertEquals(0x03, completeMemory.read(0xc000));
+        completeMemory.write(0x8000, 0x82);
+        completeMemory.write(0x8001, 0x21);
+        assertEquals(0x21, mmc3.readCharacter(0x0000));
+        completeMemory.write(0xa000, 0x01);
+        assertEquals(Mirroring.HORIZONTAL, mmc3.getMirroring());
+        completeMemory.write(0xc000, 2);
+        completeMemory.write(0xc001, 0);
+        completeMemory.write(0xe001, 0);
+        for (int i = 0; i < 2; i++) {
+            mmc3.scanline();
+            assertFalse(mmc3.isInterruptRequested());
+        }
+        mmc3.scanline();
+        assertTrue(mmc3.isInterruptRequested());
+        completeMemory.write(0xe000, 0);
+        assertFalse(mmc3.isInterruptRequested());
+    }
+
+    @Test
+    public void mmc3InterruptsTheProcessorAtAScanline() throws Exception {
+        final byte[] file = iNes(8, 8, 4, 0);
+        final int fixedBank = Cartridge.HEADER_SIZE + 8 * Cartridge.PRG_ROM_UNIT - 0x2000;
+        //inhibits the frame interrupt of the APU, shows the background, sets the counter to 16 and enables the IRQ,
+        //then loops at $E016
+        final int[] program = {0xa9, 0x40, 0x8d, 0x17, 0x40, 0xa9, 0x08, 0x8d, 0x01, 0x20, 0xa9, 0x10, 0x8d, 0x00,
+                0xc0, 0x8d, 0x01, 0xc0, 0x8d, 0x01, 0xe0, 0x58, 0x4c, 0x16, 0xe0};
+        //the IRQ handler at $E100 reads $5000, acknowledges and disables the IRQ and returns
+        final int[] handler = {0xad, 0x00, 0x50, 0x8d, 0x00, 0xe0, 0x40};
+        for (int i = 0; i < program.length; i++) {
+            file[fixedBank + i] = (byte) program[i];
+        }
+        for (int i = 0; i < handler.length; i++) {
+            file[fixedBank + 0x100 + i] = (byte) handler[i];
+        }
+        file[fixedBank + 0x1ffc] = 0x00;
+        file[fixedBank + 0x1ffd] = (byte) 0xe0;
+        file[fixedBank + 0x1ffe] = 0x00;
+        file[fixedBank + 0x1fff] = (byte) 0xe1;
+        final Console console = new Console();
+        console.loadCartridge(write(file));
+        final PictureProcessor pictureProcessor = console.getPictureProcessor();
+        final List<Integer> scanlines = new ArrayList<>();
+        console.getCompleteMemory().mapDevice(0x50, 1, new Memory() {
+            @Override
+            public int read(int address) {
+                pictureProcessor.synchronize();
+                scanlines.add(pictureProcessor.getScanline());
+                return 0;
+            }
+
+            @Override
+            public void write(int address, int value) {
+            }
+
+            @Override
+            public int size() {
+                return CompleteMemory.PAGE_SIZE;
+            }
+        });
+        console.getMasterClock().runFor(2 * MasterClock.FRAME_CYCLES);
+        //the counter is reloaded at scanline 0 and counts down 16 scanlines
+        assertEquals(Collections.singletonList(16), scanlines);
+        assertFalse(console.getMapper().isInterruptRequested());
+        assertEquals(0, console.getCentralProcessor().getInterruptLines());
+        assertEquals(0xe016, console.getRegisterFile().getProgramCounter());
+    }
+
+    @Test
+    public void forksKeepTheirOwnBanks() throws Exception {
+        final byte[] file = iNes(8, 0, 2, 0);
+        final Console console = new Console();
+        console.loadCartridge(write(file));
+        final Console fork = console.fork();
+        fork.getCompleteMemory().write(0x8000, 1);
+        assertEquals(0x00, console.getCompleteMemory().read(0x8000));
+        assertEquals(0x02, fork.getCompleteMemory().read(0x8000));
+        fork.getMapper().writeCharacter(0x0000, 0x55);
+        assertEquals(0x00, console.getMapper().readCharacter(0x0000));
+    }
+}
@@ -20,7 +20,10 @@ package com.waoss.enesys.cpu;
 
 import com.waoss.enesys.Console;
 import com.waoss.enesys.cpu.instructions.Instruction;
+import com.waoss.enesys.cpu.registers.ProcessorStatus;
+import com.waoss.enesys.cpu.registers.RegisterFile;
 import com.waoss.enesys.mem.Addressing;
+import com.waoss.enesys.mem.CompleteMemory;
 import com.waoss.enesys.mem.Memory;
 import org.junit.Before;
 import org.junit.Test;
@@ -36,6 +39,8 @@ public class CentralProcessorTest {
     public void initTargets() {
         targetConsole = new Console();
         target = new CentralProcessor(targetConsole);
+        //the programs run in the thread end with a BRK
+        target.setHaltingOnBreak(true);
     }
 
     @Test
@@ -69,7 +74,7 @@ public class CentralProcessorTest {
     @Test
     public void interruptSetting() throws Exception {
         testUniArgumented(0x0600, 0x78);
-        assertFalse(target.getProcessorStatus().isInterruptFlagEnabled());
+        assertTrue(target.getProcessorStatus().isInterruptFlagEnabled());
     }
 
     @Test
@@ -84,6 +89,78 @@ public class CentralProcessorTest {
         assert target.getProcessorStatus().isDecimalFlagEnabled();
     }
 
+    @Test
+    public void zeroAndNegativeFlags() throws Exception {
+        final Memory memory = target.getCompleteMemory();
+        memory.write(0x0600, 0xa9);
+        memory.write(0x0601, 0x00);
+        memory.write(0x0602, 0xa9);
+        memory.write(0x0603, 0x80);
+        target.step();
+        assertTrue(target.getProcessorStatus().isZeroFlagEnabled());
+        assertFalse(target.getProcessorStatus().isNegativeFlagEnabled());
+        target.step();
+        assertFalse(target.getProcessorStatus().isZeroFlagEnabled());
+        assertTrue(target.getProcessorStatus().isNegativeFlagEnabled());
+        assertTrue(target.getProcessorStatus().negativeFlagEnabledProperty().get());
+    }
+
+    @Test
+    public void cycleCounting() throws Exception {
+        //LDA #$01, LDA $02ff,X, STA $02ff,X, BNE back to the previous page
+        targetConsole.loadBinaries(new int[]{0xa9, 0x01, 0xbd, 0xff, 0x02, 0x9d, 0xff, 0x02, 0xd0, 0x80}, 0x0600);
+        targetConsole.getRegisterFile().setX(1);
+        targetConsole.getCompleteMemory().write(0x0300, 0x42);
+        assertEquals(2, target.step());
+        assertEquals(5, target.step());
+        assertEquals(5, target.step());
+        assertEquals(4, target.step());
+        assertEquals(16, target.getCycles());
+        assertEquals(0x058a, targetConsole.getRegisterFile().getProgramCounter());
+    }
+
+    @Test
+    public void selfModifyingCode() throws Exception {
+        //LDA #$05, STA $0606, LDA #$00 : the store changes the operand of the second load
+        targetConsole.loadBinaries(new int[]{0xa9, 0x05, 0x8d, 0x06, 0x06, 0xa9, 0x00, 0x00}, 0x0600);
+        target.step();
+        target.step();
+        target.step();
+        assertEquals(5, targetConsole.getRegisterFile().getA());
+    }
+
+    @Test
+    public void loopsRunFromTheBlockCache() throws Exception {
+        //LDX #$00, INX, BNE back to INX, BRK
+        targetConsole.loadBinaries(new int[]{0xa2, 0x00, 0xe8, 0xd0, 0xfd, 0x00}, 0x0600);
+        for (int i = 0; i < 1 + 2 * 256; i++) {
+            target.step();
+        }
+        assertEquals(0x0605, targetConsole.getRegisterFile().getProgramCounter());
+        assertEquals(2, target.getBasicBlockCache().getDecodedBlocks());
+    }
+
+    @Test
+    public void haltingBreakStopsTheClock() throws Exception {
+        //LDA #$42, BRK : the thread stops right after the BRK, not at the end of the frame
+        final CentralProcessor centralProcessor = targetConsole.getCentralProcessor();
+        centralProcessor.setHaltingOnBreak(true);
+        targetConsole.loadBinaries(new int[]{0xa9, 0x42, 0x00}, 0x0600);
+        final int[] breaks = new int[1];
+        centralProcessor.addInstructionExecutionHandler((processor, executed) -> {
+            if (executed.getOpCode() == 0x00) {
+                breaks[0]++;
+            }
+        });
+        centralProcessor.start();
+        centralProcessor.getThread().join(5000);
+        assertFalse(centralProcessor.getThread().isRunning());
+        assertEquals(1, breaks[0]);
+        assertEquals(0x0602, targetConsole.getRegisterFile().getProgramCounter());
+        assertEquals(0x42, targetConsole.getRegisterFile().getA());
+        assertTrue(centralProcessor.getCycles() < 100);
+    }
+
     @Test
     public void aslTest() throws Exception {
         testBiArgumented(0x0600, 0x0e, 0x0601, 0x05);
@@ -93,21 +170,144 @@ public class CentralProcessorTest {
     public void compareTest() throws Exception {
         testBiArgumented(0x0600, 0xc9, 0x0601, 0x00);
         assertTrue(target.getProcessorStatus().isZeroFlagEnabled());
-        assertFalse(target.getProcessorStatus().isCarryFlagEnabled());
+        assertTrue(target.getProcessorStatus().isCarryFlagEnabled());
+    }
+
+    @Test
+    public void compareSetsTheCarryUnlessLower() throws Exception {
+        //SEC, LDA #$01, CMP #$02, SEC, LDA #$05, CMP #$05, CLC, CMP #$03, LDX #$05, CPX #$06, LDY #$05, CPY #$05
+        targetConsole.loadBinaries(new int[]{0x38, 0xa9, 0x01, 0xc9, 0x02, 0x38, 0xa9, 0x05, 0xc9, 0x05, 0x18, 0xc9,
+                0x03, 0xa2, 0x05, 0xe0, 0x06, 0xa0, 0x05, 0xc0, 0x05}, 0x0600);
+        final ProcessorStatus processorStatus = target.getProcessorStatus();
+        target.step();
+        target.step();
+        target.step();
+        assertFalse(processorStatus.isCarryFlagEnabled());
+        assertFalse(processorStatus.isZeroFlagEnabled());
+        assertTrue(processorStatus.isNegativeFlagEnabled());
+        target.step();
+        target.step();
+        target.step();
+        assertTrue(processorStatus.isCarryFlagEnabled());
+        assertTrue(processorStatus.isZeroFlagEnabled());
+        assertFalse(processorStatus.isNegativeFlagEnabled());
+        target.step();
+        target.step();
+        assertTrue(processorStatus.isCarryFlagEnabled());
+        assertFalse(processorStatus.isZeroFlagEnabled());
+        assertFalse(processorStatus.isNegativeFlagEnabled());
+        target.step();
+        target.step();
+        assertFalse(processorStatus.isCarryFlagEnabled());
+        assertTrue(processorStatus.isNegativeFlagEnabled());
+        target.step();
+        target.step();
+        assertTrue(processorStatus.isCarryFlagEnabled());
+        assertTrue(processorStatus.isZeroFlagEnabled());
+    }
+
+    @Test
+    public void interrupts() throws Exception {
+        final CompleteMemory completeMemory = targetConsole.getCompleteMemory();
+        final RegisterFile registerFile = targetConsole.getRegisterFile();
+        //CLI, then JMP $0601
+        targetConsole.loadBinaries(new int[]{0x58, 0x4c, 0x01, 0x06}, 0x0600);
+        //INC $10, RTI at $F000 for the IRQ and INC $11, RTI at $F003 for the NMI
+        final byte[] handlers = new byte[0x1000];
+        System.arraycopy(new byte[]{(byte) 0xe6, 0x10, 0x40, (byte) 0xe6, 0x11, 0x40}, 0, handlers, 0, 6);
+        handlers[0xffa] = 0x03;
+        handlers[0xffb] = (byte) 0xf0;
+        handlers[0xfff] = (byte) 0xf0;
+        completeMemory.mapReadWrite(0xf0, 0x10, handlers, 0);
+        target.runUntil(20);
+        assertEquals(0, completeMemory.read(0x10));
+        target.setInterruptLines(CentralProcessor.MAPPER_INTERRUPT, true);
+        final long cycles = target.getCycles();
+        target.runUntil(cycles + 1);
+        assertEquals(0xf000, registerFile.getProgramCounter());
+        assertEquals(cycles + 7, target.getCycles());
+        assertTrue(registerFile.isFlagSet(ProcessorStatus.INTERRUPT));
+        //the program counter, then the status without the break bit
+        assertEquals(0xfa, registerFile.getStackPointer());
+        assertEquals(0x06, completeMemory.read(0x01fd));
+        assertEquals(0x01, completeMemory.read(0x01fc));
+        assertEquals(ProcessorStatus.UNUSED, completeMemory.read(0x01fb) & (ProcessorStatus.BREAK |
+                ProcessorStatus.UNUSED | ProcessorStatus.INTERRUPT));
+        //the IRQ is taken again after RTI until the line is released
+        target.runUntil(target.getCycles() + 100);
+        assertTrue(completeMemory.read(0x10) > 1);
+        target.setInterruptLines(CentralProcessor.MAPPER_INTERRUPT, false);
+        target.runUntil(target.getCycles() + 20);
+        final int taken = completeMemory.read(0x10);
+        target.runUntil(target.getCycles() + 100);
+        assertEquals(taken, completeMemory.read(0x10));
+        assertEquals(0x0601, registerFile.getProgramCounter());
+        //the NMI is taken even if the interrupt flag is set
+        registerFile.setFlag(ProcessorStatus.INTERRUPT, true);
+        target.setInterruptLines(CentralProcessor.MAPPER_INTERRUPT, true);
+        target.requestNonMaskableInterrupt();
+        assertTrue(target.isNonMaskableInterruptRequested());
+        target.runUntil(target.getCycles() + 100);
+        assertFalse(target.isNonMaskableInterruptRequested());
+        assertEquals(1, completeMemory.read(0x11));
+        assertEquals(taken, completeMemory.read(0x10));
+    }
+
+    @Test
+    public void stepTakesPendingInterrupts() throws Exception {
+        final CompleteMemory completeMemory = targetConsole.getCompleteMemory();
+        final RegisterFile registerFile = targetConsole.getRegisterFile();
+        //NOP, NOP, and INC $11, RTI at $F000 for the NMI
+        targetConsole.loadBinaries(new int[]{0xea, 0xea}, 0x0600);
+        final byte[] handlers = new byte[0x1000];
+        System.arraycopy(new byte[]{(byte) 0xe6, 0x11, 0x40}, 0, handlers, 0, 3);
+        handlers[0xffb] = (byte) 0xf0;
+        completeMemory.mapReadWrite(0xf0, 0x10, handlers, 0);
+        assertEquals(2, target.step());
+        target.requestNonMaskableInterrupt();
+        //the NMI, then the INC of the handler
+        assertEquals(7 + 5, target.step());
+        assertFalse(target.isNonMaskableInterruptRequested());
+        assertEquals(1, completeMemory.read(0x11));
+        assertEquals(0xf002, registerFile.getProgramCounter());
+        assertEquals(0x06, completeMemory.read(0x01fd));
+        assertEquals(0x01, completeMemory.read(0x01fc));
+        assertEquals(6, target.step());
+        assertEquals(0x0601, registerFile.getProgramCounter());
+    }
+
+    @Test
+    public void breakIsASoftwareInterrupt() throws Exception {
+        final CompleteMemory completeMemory = targetConsole.getCompleteMemory();
+        final RegisterFile registerFile = targetConsole.getRegisterFile();
+        target.setHaltingOnBreak(false);
+        //BRK and its padding byte
+        targetConsole.loadBinaries(new int[]{0x00, 0xff}, 0x0600);
+        final byte[] vectors = new byte[0x100];
+        vectors[0xfe] = 0x34;
+        vectors[0xff] = 0x12;
+        completeMemory.mapReadWrite(0xff, 1, vectors, 0);
+        assertEquals(7, target.step());
+        assertEquals(0x1234, registerFile.getProgramCounter());
+        assertTrue(registerFile.isFlagSet(ProcessorStatus.INTERRUPT));
+        assertEquals(0x06, completeMemory.read(0x01fd));
+        assertEquals(0x02, completeMemory.read(0x01fc));
+        assertEquals(ProcessorStatus.BREAK | ProcessorStatus.UNUSED, completeMemory.read(0x01fb) &
+                (ProcessorStatus.BREAK | ProcessorStatus.UNUSED));
     }
 
     @Test
     public void compareXTest() throws Exception {
         testBiArgumented(0x0600, 0xe0, 0x0601, 0x00);
         assertTrue(target.getProcessorStatus().isZeroFlagEnabled());
-        assertFalse(target.getProcessorStatus().isCarryFlagEnabled());
+        assertTrue(target.getProcessorStatus().isCarryFlagEnabled());
     }
 
     @Test
     public void compareYTest() throws Exception {
         testBiArgumented(0x0600, 0xc0, 0x0601, 0x00);
         assertTrue(target.getProcessorStatus().isZeroFlagEnabled());
-        assertFalse(target.getProcessorStatus().isCarryFlagEnabled());
+        assertTrue(target.getProcessorStatus().isCarryFlagEnabled());
     }
 
     @Test
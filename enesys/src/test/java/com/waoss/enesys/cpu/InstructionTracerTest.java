@@ -0,0 +1,155 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cpu;
+
+import com.waoss.enesys.Console;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class InstructionTracerTest {
+
+    private Console console;
+    private CentralProcessor centralProcessor;
+    private InstructionTracer instructionTracer;
+    private final List<Integer> programCounters = new ArrayList<>();
+    private final List<Integer> opCodes = new ArrayList<>();
+    private final InstructionTraceHandler handler = batch -> {
+        for (int i = 0; i < batch.size(); i++) {
+            programCounters.add(batch.getProgramCounter(i));
+            opCodes.add(batch.getOpCode(i));
+        }
+    };
+
+    @Before
+    public void initTargets() {
+        console = new Console();
+        //LDX #$00, INX, BNE back to INX, JMP $0600
+        console.loadBinaries(new int[]{0xa2, 0x00, 0xe8, 0xd0, 0xfd, 0x4c, 0x00, 0x06}, 0x0600);
+        centralProcessor = console.getCentralProcessor();
+        instructionTracer = centralProcessor.getInstructionTracer();
+    }
+
+    @Test
+    public void nothingIsRecordedWithoutHandlers() throws Exception {
+        runSteps(100);
+        assertFalse(instructionTracer.isTracing());
+        assertEquals(0, instructionTracer.getRecorded());
+    }
+
+    @Test
+    public void everyInstructionIsDelivered() throws Exception {
+        instructionTracer.setBlocking(true);
+        instructionTracer.addHandler(handler);
+        runSteps(100_000);
+        instructionTracer.flush();
+        instructionTracer.removeHandler(handler);
+        assertEquals(100_000, programCounters.size());
+        assertEquals(0x0600, (int) programCounters.get(0));
+        assertEquals(0x0602, (int) programCounters.get(1));
+        assertEquals(0x0603, (int) programCounters.get(2));
+        assertEquals(0xe8, (int) opCodes.get(1));
+    }
+
+    @Test
+    public void sampling() throws Exception {
+        instructionTracer.setSampleInterval(10);
+        instructionTracer.addHandler(handler);
+        runSteps(1_000);
+        instructionTracer.flush();
+        assertEquals(100, programCounters.size());
+        programCounters.clear();
+        opCodes.clear();
+        instructionTracer.setSampleInterval(1);
+        instructionTracer.setRecordedOpCodes(0x4c);
+        runSteps(1 + 2 * 256 + 1);
+        instructionTracer.flush();
+        instructionTracer.removeHandler(handler);
+        assertEquals(1, opCodes.size());
+        assertEquals(0x4c, (int) opCodes.get(0));
+    }
+
+    @Test
+    public void fullBuffersDropRecords() throws Exception {
+        final CountDownLatch released = new CountDownLatch(1);
+        final InstructionTraceHandler stuck = batch -> {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        instructionTracer.addHandler(stuck);
+        runSteps(2 * InstructionTracer.DEFAULT_CAPACITY);
+        assertTrue(instructionTracer.getDropped() > 0);
+        assertEquals(2 * InstructionTracer.DEFAULT_CAPACITY,
+                instructionTracer.getRecorded() + instructionTracer.getDropped());
+        released.countDown();
+        instructionTracer.flush();
+        instructionTracer.removeHandler(stuck);
+    }
+
+    @Test
+    public void handlersAddedAfterTheLastRemovalGetEveryRecordOnce() throws Exception {
+        final InstructionTraceHandler slow = batch -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        instructionTracer.addHandler(slow);
+        runSteps(1_000);
+        //waits for the thread to be in the handler
+        Thread.sleep(10);
+        instructionTracer.removeHandler(slow);
+        instructionTracer.addHandler(handler);
+        runSteps(1_000);
+        instructionTracer.flush();
+        Thread.sleep(100);
+        instructionTracer.removeHandler(handler);
+        assertEquals(1_000, programCounters.size());
+    }
+
+    @Test
+    public void recordsHaveTheRegisters() throws Exception {
+        final long[] records = new long[3];
+        instructionTracer.addHandler(batch -> {
+            if (batch.getOpCode(batch.size() - 1) == 0xe8) {
+                records[0] = batch.getX(batch.size() - 1);
+                records[1] = batch.getCycles(batch.size() - 1);
+                records[2] = batch.getStackPointer(batch.size() - 1);
+            }
+        });
+        runSteps(2);
+        instructionTracer.flush();
+        assertArrayEquals(new long[]{1, 4, 0xfd}, records);
+    }
+
+    private void runSteps(int steps) {
+        for (int i = 0; i < steps; i++) {
+            centralProcessor.step();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cpu;
+
+import com.waoss.enesys.Console;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the same programs interpreted and compiled and checks that they end up in the same state
+ */
+public class RecompilerTest {
+
+    private static final long CYCLES = 200_000;
+
+    @Test
+    public void countingLoops() throws Exception {
+        //LDX #$00, LDY #$00, INY, BNE, INX, BNE, JMP $0600
+        testDifferentially(2, 0xa2, 0x00, 0xa0, 0x00, 0xc8, 0xd0, 0xfd, 0xe8, 0xd0, 0xfa, 0x4c, 0x00, 0x06);
+    }
+
+    @Test
+    public void memoryFill() throws Exception {
+        //fills $0200-$05FF with every value in turn, then starts over
+        testDifferentially(2, 0xa9, 0x00, 0xaa, 0x9d, 0x00, 0x02, 0x9d, 0x00, 0x03, 0x9d, 0x00, 0x04, 0x9d, 0x00, 0x05,
+                0xe8, 0xd0, 0xf1, 0x18, 0x69, 0x01, 0xd0, 0xeb, 0x4c, 0x00, 0x06);
+    }
+
+    @Test
+    public void subroutines() throws Exception {
+        //LDX #$00, JSR $060C, INX, BNE, JMP $0600, NOP, TXA, PHA, STA ($10),Y, PLA, INY, RTS
+        testDifferentially(2, 0xa2, 0x00, 0x20, 0x0c, 0x06, 0xe8, 0xd0, 0xfa, 0x4c, 0x00, 0x06, 0xea, 0x8a, 0x48, 0x91,
+                0x10, 0x68, 0xc8, 0x60);
+    }
+
+    @Test
+    public void arithmetic() throws Exception {
+        //LDA #$37, loop : ADC #$91, ROL, EOR $10, STA $10, SBC #$05, ROR, CMP #$40, BIT $10, BVS loop, CLV, LSR,
+        //ASL $11, DEC $12, BNE loop, SEC, JMP $0600
+        testDifferentially(2, 0xa9, 0x37, 0x69, 0x91, 0x2a, 0x45, 0x10, 0x85, 0x10, 0xe9, 0x05, 0x6a, 0xc9, 0x40, 0x24,
+                0x10, 0x70, 0xf0, 0xb8, 0x4a, 0x06, 0x11, 0xc6, 0x12, 0xd0, 0xe8, 0x38, 0x4c, 0x00, 0x06);
+    }
+
+    @Test
+    public void selfModifyingCode() throws Exception {
+        //LDA #$00, INC $0601, CLC, ADC $10, STA $10, JMP $0600 : the increment changes the operand of the load
+        //the block is thrown away every time it runs, so it is compiled the first time
+        testDifferentially(0, 0xa9, 0x00, 0xee, 0x01, 0x06, 0x18, 0x65, 0x10, 0x85, 0x10, 0x4c, 0x00, 0x06);
+    }
+
+    private void testDifferentially(int threshold, int... binaries) {
+        final Console interpreted = new Console();
+        final Console compiled = new Console();
+        interpreted.loadBinaries(binaries, 0x0600);
+        compiled.loadBinaries(binaries, 0x0600);
+        compiled.setDynamicRecompilationEnabled(true);
+        compiled.getCentralProcessor().getRecompiler().setThreshold(threshold);
+        for (long cycles = 1_000; cycles <= CYCLES; cycles += 1_000) {
+            interpreted.getCentralProcessor().runUntil(cycles);
+            compiled.getCentralProcessor().runUntil(cycles);
+            assertEquals(interpreted.getCentralProcessor().getCycles(), compiled.getCentralProcessor().getCycles());
+            for (int register = 0; register < 6; register++) {
+                assertEquals(interpreted.getRegisterFile().get(register), compiled.getRegisterFile().get(register));
+            }
+        }
+        assertArrayEquals(interpreted.getCompleteMemory().getRandomAccessMemory().getBytes(),
+                compiled.getCompleteMemory().getRandomAccessMemory().getBytes());
+        assertTrue(compiled.getCentralProcessor().getRecompiler().getCompiledBlocks() > 0);
+        assertEquals(0, interpreted.getCentralProcessor().getRecompiler().getCompiledBlocks());
+    }
+}
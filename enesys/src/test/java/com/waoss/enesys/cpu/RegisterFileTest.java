@@ -0,0 +1,126 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.cpu;
+
+import com.waoss.enesys.cpu.registers.IntRegister;
+import com.waoss.enesys.cpu.registers.ProcessorStatus;
+import com.waoss.enesys.cpu.registers.ProgramCounter;
+import com.waoss.enesys.cpu.registers.RegisterFile;
+import com.waoss.enesys.cpu.registers.Registers;
+import com.waoss.enesys.cpu.registers.XRegister;
+import javafx.beans.property.ObjectProperty;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RegisterFileTest {
+
+    private RegisterFile registerFile;
+
+    @Before
+    public void initTargets() {
+        registerFile = new RegisterFile();
+    }
+
+    @Test
+    public void defaultValues() {
+        assertEquals(0, registerFile.getA());
+        assertEquals(0xfd, registerFile.getStackPointer());
+        assertEquals(0b00110100, registerFile.getProcessorStatus());
+    }
+
+    @Test
+    public void eightBitRegistersAreMasked() {
+        registerFile.setA(0x1ff);
+        assertEquals(0xff, registerFile.getA());
+        registerFile.set(RegisterFile.X, -1);
+        assertEquals(0xff, registerFile.getX());
+        registerFile.setY(0x100);
+        assertEquals(0, registerFile.getY());
+        registerFile.set(RegisterFile.STACK_POINTER, 0x2ab);
+        assertEquals(0xab, registerFile.get(RegisterFile.STACK_POINTER));
+        registerFile.setProcessorStatus(0x1c3);
+        assertEquals(0xc3, registerFile.getProcessorStatus());
+        assertTrue(registerFile.isFlagSet(ProcessorStatus.NEGATIVE));
+    }
+
+    @Test
+    public void programCounterIsMaskedTo16Bits() {
+        registerFile.setProgramCounter(0x12345);
+        assertEquals(0x2345, registerFile.getProgramCounter());
+        registerFile.set(RegisterFile.PROGRAM_COUNTER, -1);
+        assertEquals(0xffff, registerFile.get(RegisterFile.PROGRAM_COUNTER));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void badIndicesAreRejected() {
+        registerFile.set(RegisterFile.SIZE, 0);
+    }
+
+    @Test
+    public void viewsFollowTheFields() {
+        registerFile.setA(0x12);
+        final ObjectProperty<Integer> view = registerFile.valueProperty(RegisterFile.A);
+        assertSame(view, registerFile.valueProperty(RegisterFile.A));
+        assertEquals(0x12, (int) view.get());
+        registerFile.setA(0x134);
+        assertEquals(0x34, (int) view.get());
+        final ObjectProperty<Integer> processorStatus = registerFile.valueProperty(RegisterFile.PROCESSOR_STATUS);
+        registerFile.setProcessorStatus(0x1b5);
+        assertEquals(0xb5, (int) processorStatus.get());
+        registerFile.setFlag(ProcessorStatus.CARRY, false);
+        assertEquals(0xb4, (int) processorStatus.get());
+    }
+
+    @Test
+    public void fieldsFollowTheViews() {
+        final ObjectProperty<Integer> view = registerFile.valueProperty(RegisterFile.PROGRAM_COUNTER);
+        view.set(0x0600);
+        assertEquals(0x0600, registerFile.getProgramCounter());
+        view.set(0x10601);
+        assertEquals(0x0601, registerFile.getProgramCounter());
+        assertEquals(0x0601, (int) view.get());
+    }
+
+    @Test
+    public void registersAreAdaptersOverTheRegisterFile() {
+        final XRegister xRegister = new XRegister(registerFile);
+        Registers.loadRegister(xRegister, 0x1aa);
+        assertEquals(0xaa, registerFile.getX());
+        registerFile.setX(0x55);
+        assertEquals(0x55, xRegister.intValue());
+        assertEquals(Integer.valueOf(0x55), xRegister.getValue());
+        assertSame(registerFile.valueProperty(RegisterFile.X), xRegister.valueProperty());
+        xRegister.valueProperty().set(0x66);
+        assertEquals(0x66, registerFile.getX());
+        final ProgramCounter programCounter = new ProgramCounter(registerFile);
+        programCounter.setValue(0x8000);
+        assertEquals(0x8000, registerFile.getProgramCounter());
+    }
+
+    @Test
+    public void standaloneRegistersAre16BitsWide() {
+        final IntRegister intRegister = new IntRegister(0x1234);
+        assertEquals(0x1234, intRegister.intValue());
+        intRegister.setValue(0x12345);
+        assertEquals(0x2345, intRegister.intValue());
+        assertNotSame(registerFile, intRegister.getRegisterFile());
+    }
+}
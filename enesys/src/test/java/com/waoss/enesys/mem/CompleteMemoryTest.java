@@ -0,0 +1,276 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.mem;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CompleteMemoryTest {
+
+    private CompleteMemory target;
+
+    @Before
+    public void initTarget() {
+        target = new CompleteMemory();
+    }
+
+    @Test
+    public void randomAccessMemoryMirroring() throws Exception {
+        target.write(0x0012, 0x34);
+        assertEquals(0x34, target.read(0x0812));
+        assertEquals(0x34, target.read(0x1812));
+        target.write(0x1fff, 0xab);
+        assertEquals(0xab, target.read(0x07ff));
+        assertEquals(0xab, target.getRandomAccessMemory().read(0x07ff));
+    }
+
+    @Test
+    public void valuesAreBytes() throws Exception {
+        target.write(0x0000, 0x1ff);
+        assertEquals(0xff, target.read(0x0000));
+    }
+
+    @Test
+    public void unmappedPages() throws Exception {
+        target.write(0x8000, 0x12);
+        assertEquals(0, target.read(0x8000));
+        assertEquals(0x10000, target.size());
+    }
+
+    @Test
+    public void readOnlyPages() throws Exception {
+        final byte[] rom = new byte[0x4000];
+        rom[0x3ffc] = 0x42;
+        target.mapReadOnly(0xc0, 0x40, rom, 0);
+        assertEquals(0x42, target.read(0xfffc));
+        target.write(0xfffc, 0x00);
+        assertEquals(0x42, target.read(0xfffc));
+    }
+
+    @Test
+    public void devicePages() throws Exception {
+        final int[] lastWrite = new int[2];
+        target.mapDevice(0x20, 0x20, new Memory() {
+            @Override
+            public int read(int address) {
+                return 0x2000 | (address & 0x07);
+            }
+
+            @Override
+            public void write(int address, int value) {
+                lastWrite[0] = address;
+                lastWrite[1] = value;
+            }
+
+            @Override
+            public int size() {
+                return 8;
+            }
+        });
+        assertEquals(0x2002, target.read(0x3ffa));
+        target.write(0x2006, 0x21);
+        assertArrayEquals(new int[]{0x2006, 0x21}, lastWrite);
+    }
+
+    @Test
+    public void watchedPages() throws Exception {
+        final List<Integer> written = new ArrayList<>();
+        target.addPageWriteListener(written::add);
+        target.watchPage(0x06);
+        target.write(0x0700, 0x01);
+        assertTrue(written.isEmpty());
+        target.write(0x0e10, 0x01);
+        target.write(0x0610, 0x01);
+        assertEquals(Arrays.asList(0x06, 0x06), written);
+        target.unmap(0x06, 1);
+        assertEquals(3, written.size());
+        target.unwatchPage(0x06);
+        target.mapReadWrite(0x06, 1, new byte[0x100], 0);
+        assertEquals(3, written.size());
+    }
+
+    @Test
+    public void dirtyPages() throws Exception {
+        final byte[] bytes = target.getRandomAccessMemory().getBytes();
+        assertTrue(target.isDirty(bytes, 0x03));
+        target.clearDirty();
+        assertFalse(target.isDirty(bytes, 0x03));
+        target.write(0x0b10, 0x01);
+        assertTrue(target.isDirty(bytes, 0x03));
+        assertFalse(target.isDirty(bytes, 0x02));
+        final byte[] saveRam = new byte[0x2000];
+        target.mapReadWrite(0x60, 0x20, saveRam, 0);
+        assertTrue(target.isDirty(saveRam, 0x1f));
+        assertTrue(target.isDirty(bytes, 0x03));
+        target.clearDirty();
+        target.arrayWritten(saveRam);
+        assertTrue(target.isDirty(saveRam, 0x00));
+        assertFalse(target.isDirty(bytes, 0x00));
+    }
+
+    @Test
+    public void forkedPagesAreCopiedOnWrite() throws Exception {
+        target.write(0x0010, 0x01);
+        final CompleteMemory fork = target.fork();
+        assertEquals(0x01, fork.read(0x0010));
+        fork.write(0x0010, 0x02);
+        assertEquals(0x01, target.read(0x0010));
+        assertEquals(0x02, fork.read(0x0810));
+        target.write(0x0020, 0x03);
+        assertEquals(0x00, fork.read(0x0020));
+        final CompleteMemory forkOfFork = fork.fork();
+        fork.write(0x0110, 0x04);
+        assertEquals(0x02, forkOfFork.read(0x0010));
+        assertEquals(0x00, forkOfFork.read(0x0110));
+        assertNotSame(target.getRandomAccessMemory(), fork.getRandomAccessMemory());
+        assertEquals(0x03, target.getRandomAccessMemory().read(0x0020));
+        assertEquals(0x02, fork.getRandomAccessMemory().read(0x0010));
+        assertEquals(0x04, fork.getRandomAccessMemory().read(0x0110));
+        assertEquals(0x02, forkOfFork.getRandomAccessMemory().read(0x0010));
+        final byte[] flat = new byte[CompleteMemory.SIZE];
+        flat[0x8000] = 0x05;
+        target.mapReadWrite(0x00, CompleteMemory.PAGE_COUNT, flat, 0);
+        final CompleteMemory flatFork = target.fork();
+        flatFork.write(0x8001, 0x06);
+        final List<byte[]> arrays = flatFork.getReadWriteArrays();
+        assertEquals(1, arrays.size());
+        assertNotSame(flat, arrays.get(0));
+        assertEquals(0x05, arrays.get(0)[0x8000]);
+        assertEquals(0x06, arrays.get(0)[0x8001]);
+        assertEquals(0x00, target.read(0x8001));
+    }
+
+    @Test
+    public void blockWrites() throws Exception {
+        final byte[] block = new byte[0x300];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) i;
+        }
+        final List<Integer> written = new ArrayList<>();
+        target.watchPage(0x09);
+        target.addPageWriteListener(written::add);
+        final int[] device = new int[0x100];
+        target.mapDevice(0x20, 0x02, new Memory() {
+            @Override
+            public int read(int address) {
+                return device[address & 0xff];
+            }
+
+            @Override
+            public void write(int address, int value) {
+                device[address & 0xff] = value;
+            }
+
+            @Override
+            public int size() {
+                return CompleteMemory.PAGE_SIZE;
+            }
+        });
+        target.clearDirty();
+        final ByteBuffer buffer = ByteBuffer.wrap(block);
+        target.writeBlock(0x0180, buffer);
+        assertFalse(buffer.hasRemaining());
+        assertEquals(0x00, target.read(0x0180));
+        assertEquals(0x80, target.read(0x0200));
+        assertEquals(0xff, target.read(0x047f));
+        //through the mirrors, and only the pages that were written are dirty
+        assertEquals(0x80, target.read(0x0a00));
+        assertEquals(Collections.singletonList(0x09), written);
+        assertTrue(target.isDirty(target.getRandomAccessMemory().getBytes(), 0x04));
+        assertFalse(target.isDirty(target.getRandomAccessMemory().getBytes(), 0x05));
+        //the shared pages are copied first
+        final CompleteMemory fork = target.fork();
+        target.writeBlock(0x0200, ByteBuffer.wrap(block, 0x100, 0x01));
+        assertEquals(0x00, target.read(0x0200));
+        assertEquals(0x80, fork.read(0x0200));
+        //a device is written a byte at a time, and the address wraps around
+        target.writeBlock(0x1ff0, ByteBuffer.wrap(block, 0, 0x20));
+        assertEquals(0x0f, target.read(0x1fff));
+        target.writeBlock(0x20fe, ByteBuffer.wrap(block, 0x10, 0x04));
+        assertEquals(0x10, device[0xfe]);
+        assertEquals(0x13, device[0x01]);
+        target.writeBlock(0xffff, ByteBuffer.wrap(block, 0x20, 0x02));
+        assertEquals(0x21, target.read(0x0000));
+    }
+
+    @Test
+    public void wordsAndBlockReads() throws Exception {
+        final byte[] block = new byte[0x800];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) (i * 7);
+        }
+        target.writeBlock(0x0000, block, 0, block.length);
+        //the high byte of a word is in the next page, unless it is read in the page
+        assertEquals(0xff & (0x0ff * 7) | (0xff & (0x100 * 7)) << 8, target.readWord(0x00ff));
+        assertEquals(0xff & (0x0ff * 7) | (0xff & (0x000 * 7)) << 8, target.readWordInPage(0x00ff));
+        assertEquals(target.read(0x07ff) | target.read(0x0000) << 8, target.readWord(0x07ff));
+        assertEquals(target.read(0x0004) | target.read(0x0005) << 8, target.readWordInPage(0x1004));
+        //the blocks are read through the mirrors, into arrays and direct buffers
+        final byte[] read = new byte[4];
+        target.readBlock(0x17fe, read, 0, read.length);
+        assertArrayEquals(new byte[]{block[0x7fe], block[0x7ff], block[0x000], block[0x001]}, read);
+        target.getRandomAccessMemory().readBlock(0x07fe, read, 0, read.length);
+        assertArrayEquals(new byte[]{block[0x7fe], block[0x7ff], block[0x000], block[0x001]}, read);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(0x202);
+        target.readBlock(0x00ff, direct);
+        assertFalse(direct.hasRemaining());
+        assertEquals(block[0x300], direct.get(0x201));
+        //a view sees the writes, and there is none of a region that isn't contiguous
+        final ByteBuffer view = target.asReadOnlyBuffer(0x0100, 0x200);
+        assertNotNull(view);
+        assertTrue(view.isReadOnly());
+        target.write(0x0180, 0x42);
+        assertEquals(0x42, view.get(0x80));
+        assertNull(target.asReadOnlyBuffer(0x0700, 0x200));
+        assertNull(target.asReadOnlyBuffer(0xff00, 0x200));
+        assertNull(target.asReadOnlyBuffer(0x4000, 0x10));
+        final ByteBuffer rom = ByteBuffer.allocateDirect(0x200);
+        rom.put(0x100, (byte) 0x24);
+        target.mapReadOnly(0x80, 0x02, rom, 0);
+        final ByteBuffer romView = target.asReadOnlyBuffer(0x80ff, 0x02);
+        assertNotNull(romView);
+        assertEquals(0x24, romView.get(1));
+        assertEquals(0x2400, target.readWord(0x80ff));
+        //a device is read a byte at a time
+        target.mapDevice(0x20, 0x02, new Memory() {
+            @Override
+            public int read(int address) {
+                return address >>> 8;
+            }
+
+            @Override
+            public void write(int address, int value) {
+            }
+
+            @Override
+            public int size() {
+                return CompleteMemory.PAGE_SIZE;
+            }
+        });
+        assertEquals(0x2120, target.readWord(0x20ff));
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.waoss.enesys.ppu;
+
+import com.waoss.enesys.Console;
+import com.waoss.enesys.MasterClock;
+import com.waoss.enesys.mem.CompleteMemory;
+import com.waoss.enesys.mem.Memory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PictureProcessorTest {
+
+    private static final int BLACK = 0xff000000;
+    private static final int WHITE = 0xfffffeff;
+    private static final int RED = 0xffb53120;
+
+    private static Console newConsole() {
+        final Console console = new Console();
+        //JMP $0600
+        console.loadBinaries(new int[]{0x4c, 0x00, 0x06}, 0x0600);
+        return console;
+    }
+
+    private static void writeVideoMemory(CompleteMemory completeMemory, int address, int... values) {
+        completeMemory.write(0x2006, address >>> 8);
+        completeMemory.write(0x2006, address);
+        for (int value : values) {
+            completeMemory.write(0x2007, value);
+        }
+    }
+
+    @Test
+    public void readsAndWritesVideoMemory() {
+        final Console console = newConsole();
+        final CompleteMemory completeMemory = console.getCompleteMemory();
+        writeVideoMemory(completeMemory, 0x2800, 0x12, 0x34);
+        writeVideoMemory(completeMemory, 0x3f10, 0x2a);
+        completeMemory.write(0x2006, 0x2c);
+        completeMemory.write(0x2006, 0x00);
+        //reads are delayed by a buffer, and $2C00 mirrors $2800
+        completeMemory.read(0x2007);
+        assertEquals(0x12, completeMemory.read(0x2007));
+        assertEquals(0x34, completeMemory.read(0x2007));
+        //the palette is read without delay, and $3F10 mirrors $3F00
+        completeMemory.write(0x2006, 0x3f);
+        completeMemory.write(0x2006, 0x00);
+        assertEquals(0x2a, completeMemory.read(0x2007) & 0x3f);
+        completeMemory.write(0x2003, 0x10);
+        completeMemory.write(0x2004, 0x55);
+        assertEquals(0x55, console.getPictureProcessor().getObjectAttributeMemory()[0x10]);
+    }
+
+    @Test
+    public void requestsAnNmiAtVerticalBlank() {
+        final Console console = newConsole();
+        final CompleteMemory completeMemory = console.getCompleteMemory();
+        //INC $10, RTI at $F000, which the NMI vector points to
+        final byte[] handler = new byte[0x1000];
+        handler[0] = (byte) 0xe6;
+        handler[1] = 0x10;
+        handler[2] = 0x40;
+        handler[0xffa] = 0x00;
+        handler[0xffb] = (byte) 0xf0;
+        completeMemory.mapReadWrite(0xf0, 0x10, handler, 0);
+        final MasterClock masterClock = console.getMasterClock();
+        masterClock.runFor(MasterClock.FRAME_CYCLES);
+        assertEquals(0, completeMemory.read(0x10));
+        assertEquals(1, console.getPictureProcessor().getFrameNumber());
+        completeMemory.write(0x2000, 0x80);
+        masterClock.runFor(3 * MasterClock.FRAME_CYCLES);
+        assertEquals(3, completeMemory.read(0x10));
+        assertEquals(0x0600, console.getRegisterFile().getProgramCounter() & 0xfff0);
+    }
+
+    @Test
+    public void lagsBehindUntilTheVerticalBlank() {
+        final Console console = new Console();
+        //LDA $0500, JMP $0600
+        console.loadBinaries(new int[]{0xad, 0x00, 0x05, 0x4c, 0x00, 0x06}, 0x0600);
+        final CompleteMemory completeMemory = console.getCompleteMemory();
+        final PictureProcessor pictureProcessor = console.getPictureProcessor();
+        final long[] lag = new long[1];
+        completeMemory.mapDevice(0x05, 1, new Memory() {
+            @Override
+            public int read(int address) {
+                final long dots = console.getCentralProcessor().getCycles() * 3 - pictureProcessor.getCycles();
+                lag[0] = Math.max(lag[0], dots);
+                return 0;
+            }
+
+            @Override
+            public void write(int address, int value) {
+            }
+
+            @Override
+            public int size() {
+                return CompleteMemory.PAGE_SIZE;
+            }
+        });
+        //INC $10, RTI at $F000, which the NMI vector points to
+        final byte[] handler = new byte[0x1000];
+        handler[0] = (byte) 0xe6;
+        handler[1] = 0x10;
+        handler[2] = 0x40;
+        handler[0xffb] = (byte) 0xf0;
+        completeMemory.mapReadWrite(0xf0, 0x10, handler, 0);
+        completeMemory.write(0x2000, 0x80);
+        final MasterClock masterClock = console.getMasterClock();
+        final long verticalBlank = (PictureProcessor.VERTICAL_BLANK_SCANLINE * PictureProcessor.DOTS + 1) *
+                MasterClock.PPU_DIVIDER;
+        masterClock.runUntil(verticalBlank - MasterClock.CPU_DIVIDER);
+        assertEquals(0, completeMemory.read(0x10));
+        //the PPU did not catch up at every scanline
+        assertTrue(lag[0] > PictureProcessor.DOTS);
+        //but the NMI is taken as soon as the vertical blank starts : 7 cycles, then INC
+        masterClock.runUntil(verticalBlank + 15 * MasterClock.CPU_DIVIDER);
+        assertEquals(1, completeMemory.read(0x10));
+    }
+
+    @Test
+    public void rendersTheBackgroundAndTheSprites() {
+        final Console console = newConsole();
+        final CompleteMemory completeMemory = console.getCompleteMemory();
+        final PictureProcessor pictureProcessor = console.getPictureProcessor();
+        //tile 1 is solid color 1
+        writeVideoMemory(completeMemory, 0x0010, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff);
+        writeVideoMemory(completeMemory, 0x2022, 0x01);
+        writeVideoMemory(completeMemory, 0x2085, 0x01);
+        writeVideoMemory(completeMemory, 0x3f00, 0x0f, 0x30);
+        writeVideoMemory(completeMemory, 0x3f11, 0x16);
+        completeMemory.write(0x2003, 0x00);
+        for (int i = 0; i < 0x100; i++) {
+            completeMemory.write(0x2004, 0xff);
+        }
+        //sprite 0 at (40, 32), over the second tile
+        completeMemory.write(0x2003, 0x00);
+        completeMemory.write(0x2004, 31);
+        completeMemory.write(0x2004, 0x01);
+        completeMemory.write(0x2004, 0x00);
+        completeMemory.write(0x2004, 40);
+        completeMemory.write(0x2000, 0x00);
+        completeMemory.write(0x2005, 0x00);
+        completeMemory.write(0x2005, 0x00);
+        completeMemory.write(0x2001, 0x1e);
+        final List<int[]> frames = new ArrayList<>();
+        final List<Integer> statuses = new ArrayList<>();
+        pictureProcessor.addFrameListener((frame, frameNumber) -> {
+            frames.add(frame);
+            statuses.add(completeMemory.read(0x2002));
+        });
+        console.getMasterClock().runFor(3 * MasterClock.FRAME_CYCLES);
+        assertEquals(3, frames.size());
+        final int[] frame = frames.get(2);
+        assertSame(frame, pictureProcessor.getFrame());
+        assertNotSame(frame, frames.get(1));
+        assertSame(frame, frames.get(0));
+        assertEquals(BLACK, frame[0]);
+        assertEquals(WHITE, frame[8 * PictureProcessor.WIDTH + 16]);
+        assertEquals(WHITE, frame[15 * PictureProcessor.WIDTH + 23]);
+        assertEquals(BLACK, frame[8 * PictureProcessor.WIDTH + 24]);
+        assertEquals(BLACK, frame[16 * PictureProcessor.WIDTH + 16]);
+        assertEquals(RED, frame[32 * PictureProcessor.WIDTH + 40]);
+        assertEquals(RED, frame[39 * PictureProcessor.WIDTH + 47]);
+        assertEquals(0xc0, statuses.get(2) & 0xe0);
+        //scrolled by 8 pixels, the tile moves left
+        completeMemory.write(0x2005, 0x08);
+        completeMemory.write(0x2005, 0x00);
+        console.getMasterClock().runFor(MasterClock.FRAME_CYCLES);
+        final int[] scrolled = pictureProcessor.getFrame();
+        assertEquals(WHITE, scrolled[8 * PictureProcessor.WIDTH + 8]);
+        assertEquals(BLACK, scrolled[8 * PictureProcessor.WIDTH + 16]);
+    }
+
+    @Test
+    public void scanlineRenderingMatchesDotRendering() {
+        final List<int[]> frames = new ArrayList<>();
+        for (boolean scanlineRendering : new boolean[]{false, true}) {
+            final Console console = new Console();
+            //INX, STX $2005, STX $2005, LDY #$3B, DEY, BNE back to DEY, LDA $2002, JMP $0600
+            console.loadBinaries(new int[]{0xe8, 0x8e, 0x05, 0x20, 0x8e, 0x05, 0x20, 0xa0, 0x3b, 0x88, 0xd0, 0xfd, 0xad,
+                    0x02, 0x20, 0x4c, 0x00, 0x06}, 0x0600);
+            final CompleteMemory completeMemory = console.getCompleteMemory();
+            final PictureProcessor pictureProcessor = console.getPictureProcessor();
+            pictureProcessor.setScanlineRenderingEnabled(scanlineRendering);
+            //tile n is the pattern n, and the nametables and the sprites are made of tiles of every kind
+            completeMemory.write(0x2006, 0x00);
+            completeMemory.write(0x2006, 0x00);
+            for (int i = 0; i < 0x2000; i++) {
+                completeMemory.write(0x2007, i >>> 4);
+            }
+            completeMemory.write(0x2006, 0x20);
+            completeMemory.write(0x2006, 0x00);
+            for (int i = 0; i < 0x800; i++) {
+                completeMemory.write(0x2007, i * 7);
+            }
+            for (int i = 0; i < 0x20; i++) {
+                writeVideoMemory(completeMemory, 0x3f00 | i, i * 3);
+            }
+            completeMemory.write(0x2003, 0x00);
+            for (int i = 0; i < 0x100; i++) {
+                completeMemory.write(0x2004, i * 13);
+            }
+            completeMemory.write(0x2000, 0x18);
+            completeMemory.write(0x2001, 0x1e);
+            pictureProcessor.addFrameListener((frame, frameNumber) -> frames.add(frame.clone()));
+            console.getMasterClock().runFor(4 * MasterClock.FRAME_CYCLES);
+        }
+        assertEquals(8, frames.size());
+        for (int i = 0; i < 4; i++) {
+            assertArrayEquals(frames.get(i), frames.get(i + 4));
+        }
+        assertFalse(Arrays.equals(frames.get(2), frames.get(3)));
+    }
+
+    @Test
+    public void singleBufferingRendersIntoTheSameFrame() {
+        final Console console = newConsole();
+        final PictureProcessor pictureProcessor = console.getPictureProcessor();
+        pictureProcessor.setDoubleBuffered(false);
+        final List<int[]> frames = new ArrayList<>();
+        pictureProcessor.addFrameListener((frame, frameNumber) -> frames.add(frame));
+        console.getMasterClock().runFor(2 * MasterClock.FRAME_CYCLES);
+        assertEquals(2, frames.size());
+        assertSame(frames.get(0), frames.get(1));
+        assertSame(frames.get(0), pictureProcessor.getFrame());
+    }
+}
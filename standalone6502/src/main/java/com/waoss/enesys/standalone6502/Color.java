@@ -18,21 +18,39 @@
 
 package com.waoss.enesys.standalone6502;
 
+/**
+ * The 16 colors of the display of the classic 6502 simulators, in the order of the values that select them
+ */
 public enum Color {
-    BLACK,
-    WHITE,
-    RED,
-    CYAN,
-    PURPLE,
-    GREEN,
-    BLUE,
-    YELLOW,
-    ORANGE,
-    BROWN,
-    LIGHT_RED,
-    DARK_GREY,
-    GREY,
-    LIGHT_GREEN,
-    LIGHT_BLUE,
-    LIGHT_GREY
+    BLACK(0x000000),
+    WHITE(0xffffff),
+    RED(0x880000),
+    CYAN(0xaaffee),
+    PURPLE(0xcc44cc),
+    GREEN(0x00cc55),
+    BLUE(0x0000aa),
+    YELLOW(0xeeee77),
+    ORANGE(0xdd8855),
+    BROWN(0x664400),
+    LIGHT_RED(0xff7777),
+    DARK_GREY(0x333333),
+    GREY(0x777777),
+    LIGHT_GREEN(0xaaff66),
+    LIGHT_BLUE(0x0088ff),
+    LIGHT_GREY(0xbbbbbb);
+
+    private final int rgb;
+
+    Color(int rgb) {
+        this.rgb = rgb;
+    }
+
+    /**
+     * Returns the color as an opaque ARGB value
+     *
+     * @return the ARGB value
+     */
+    public int getArgb() {
+        return 0xff000000 | rgb;
+    }
 }
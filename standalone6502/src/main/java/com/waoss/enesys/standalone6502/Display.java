@@ -0,0 +1,178 @@
+/*
+ * Enesys : An NES Emulator
+ * Copyright (C) 2017  Rahul Chhabra and Waoss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.waoss.enesys.standalone6502;
+
+import com.waoss.enesys.mem.Memory;
+import javafx.animation.AnimationTimer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>The 32 by 32 display of the classic 6502 simulators, mapped at $0200-$05FF : a byte per cell, whose low 4 bits are
+ * its {@link Color}.
+ * The processor writes the cells on its own thread, which marks them in a bitmap of dirty cells.The cells are drawn on
+ * the JavaFX application thread into a {@link WritableImage}, only the dirty ones, through its {@link PixelWriter}.
+ * The redraws are driven by an {@link AnimationTimer}, so there is at most one per pulse of the display however fast
+ * the processor writes, and the application thread never lags behind.</p>
+ */
+public class Display implements Memory {
+
+    /**
+     * The number of cells of a side of the display
+     */
+    public static final int SIZE = 32;
+
+    /**
+     * The first address of the display
+     */
+    public static final int ADDRESS = 0x0200;
+
+    private static final Color[] colors = Color.values();
+
+    private final byte[] cells = new byte[SIZE * SIZE];
+    private final AtomicLongArray dirtyCells = new AtomicLongArray(SIZE * SIZE / Long.SIZE);
+    private volatile boolean redrawRequested;
+    private final int scale;
+    private final WritableImage image;
+    /**
+     * The pixels of a cell of every color, as ARGB
+     */
+    private final int[][] cellPixels = new int[colors.length][];
+    private Runnable redrawListener = () -> {
+    };
+
+    /**
+     * Creates a display and starts redrawing it at every pulse;it must be created on the JavaFX application thread
+     *
+     * @param scale
+     *         The number of pixels of a side of a cell in the image
+     */
+    public Display(int scale) {
+        this.scale = scale;
+        this.image = new WritableImage(SIZE * scale, SIZE * scale);
+        for (int color = 0; color < colors.length; color++) {
+            cellPixels[color] = new int[scale * scale];
+            Arrays.fill(cellPixels[color], colors[color].getArgb());
+        }
+        for (int i = 0; i < dirtyCells.length(); i++) {
+            dirtyCells.set(i, - 1L);
+        }
+        redraw();
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (redrawRequested) {
+                    redraw();
+                }
+            }
+        }.start();
+    }
+
+    @Override
+    public int read(int address) {
+        return cells[(address - ADDRESS) & (cells.length - 1)] & 0xff;
+    }
+
+    @Override
+    public void readBlock(int address, byte[] destination, int offset, int length) {
+        while (length > 0) {
+            final int cell = (address - ADDRESS) & (cells.length - 1);
+            final int count = Math.min(length, cells.length - cell);
+            System.arraycopy(cells, cell, destination, offset, count);
+            address += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public ByteBuffer asReadOnlyBuffer(int address, int length) {
+        final int cell = (address - ADDRESS) & (cells.length - 1);
+        if (length < 0 || cell + length > cells.length) {
+            return null;
+        }
+        return ByteBuffer.wrap(cells, cell, length).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public void write(int address, int value) {
+        final int cell = (address - ADDRESS) & (cells.length - 1);
+        if (cells[cell] == (byte) value) {
+            return;
+        }
+        cells[cell] = (byte) value;
+        //always atomic, so the store is seen by a redraw that takes the bit, or the bit is set again after it
+        dirtyCells.getAndAccumulate(cell >>> 6, 1L << cell, (bits, set) -> bits | set);
+        if (! redrawRequested) {
+            redrawRequested = true;
+        }
+    }
+
+    @Override
+    public int size() {
+        return cells.length;
+    }
+
+    /**
+     * Returns the image the cells are drawn into
+     *
+     * @return the image
+     */
+    public WritableImage getImage() {
+        return image;
+    }
+
+    /**
+     * Sets what runs on the JavaFX application thread after the image was redrawn, like drawing it on a canvas
+     *
+     * @param redrawListener
+     *         The listener
+     */
+    public void setRedrawListener(Runnable redrawListener) {
+        this.redrawListener = redrawListener;
+    }
+
+    /**
+     * Draws the dirty cells into the image.The request is cleared first, so the cells written while it draws are
+     * drawn at the next pulse.
+     */
+    private void redraw() {
+        redrawRequested = false;
+        final PixelWriter pixelWriter = image.getPixelWriter();
+        final PixelFormat<IntBuffer> format = PixelFormat.getIntArgbInstance();
+        for (int word = 0; word < dirtyCells.length(); word++) {
+            long bits = dirtyCells.getAndSet(word, 0);
+            while (bits != 0) {
+                final int cell = (word << 6) | Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                final int[] pixels = cellPixels[cells[cell] & 0x0f];
+                pixelWriter.setPixels((cell % SIZE) * scale, (cell / SIZE) * scale, scale, scale, format, pixels, 0,
+                        scale);
+            }
+        }
+        redrawListener.run();
+    }
+}
@@ -19,28 +19,66 @@
 package com.waoss.enesys.standalone6502;
 
 import com.waoss.enesys.Console;
-import org.apache.commons.lang3.ArrayUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
 
 public class Emulator {
 
+    /**
+     * The number of pixels of a side of a cell of the display
+     */
+    private static final int DISPLAY_SCALE = 10;
+
+    /**
+     * The address the binaries are loaded at
+     */
+    private static final int PROGRAM_COUNTER = 0x0600;
+
     private final Console console = new Console();
-    private int[] binaries;
+    private final Display display = new Display(DISPLAY_SCALE);
 
     {
-        console.getCentralProcessor().addInstructionExecutionHandler((centralProcessor, executed) -> {
-            System.out.println("Instruction executed was " + executed);
+        console.getCompleteMemory().mapDevice(Display.ADDRESS >>> 8, Display.SIZE * Display.SIZE >>> 8, display);
+        //the programs end with a BRK
+        console.getCentralProcessor().setHaltingOnBreak(true);
+        //the executed instructions are printed in batches, on the thread of the tracer
+        console.getCentralProcessor().getInstructionTracer().addHandler(batch -> {
+            final StringBuilder stringBuilder = new StringBuilder();
+            for (int i = 0; i < batch.size(); i++) {
+                stringBuilder.append("Instruction executed was ").append(batch.toString(i)).append(
+                        System.lineSeparator());
+            }
+            System.out.print(stringBuilder);
         });
     }
 
-    public int[] getBinaries() {
-        return binaries;
+    /**
+     * Returns the display mapped at $0200-$05FF
+     *
+     * @return the display
+     */
+    public Display getDisplay() {
+        return display;
     }
 
-    public void setBinaries(final int[] binaries) {
-        this.binaries = binaries;
+    /**
+     * Loads the binaries of a file at $0600
+     *
+     * @param path
+     *         The file
+     *
+     * @throws IOException
+     *         If the file can not be read
+     */
+    public void loadBinaries(Path path) throws IOException {
+        console.loadBinaries(path, PROGRAM_COUNTER);
     }
 
+    /**
+     * Starts executing the binaries that were loaded, on the thread of the processor
+     */
     public void executeBinaries() {
-        console.loadAndExecuteBinaries(ArrayUtils.remove(binaries, binaries.length - 1), 0x0600);
+        console.getCentralProcessor().start();
     }
 }
@@ -24,12 +24,11 @@ import javafx.fxml.Initializable;
 import javafx.scene.canvas.*;
 import javafx.stage.FileChooser;
 import javafx.stage.Window;
-import org.apache.commons.lang3.ArrayUtils;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.util.ResourceBundle;
-import java.util.Vector;
 
 public class Standalone6502Controller extends Window implements Initializable {
 
@@ -38,28 +37,26 @@ public class Standalone6502Controller extends Window implements Initializable {
     @FXML
     public Canvas screen;
 
-    private static Integer[] readFully(InputStream inputStream) throws IOException {
-        Vector<Integer> integerVector = new Vector<>();
-        int b = 0;
-        while (b != - 1) {
-            b = inputStream.read();
-            integerVector.add(b);
-        }
-        Integer[] result = new Integer[integerVector.size()];
-        return integerVector.toArray(result);
-    }
-
     @Override
     public void initialize(final URL location, final ResourceBundle resources) {
-
+        final Display display = emulator.getDisplay();
+        screen.setWidth(display.getImage().getWidth());
+        screen.setHeight(display.getImage().getHeight());
+        final GraphicsContext graphicsContext = screen.getGraphicsContext2D();
+        display.setRedrawListener(() -> graphicsContext.drawImage(display.getImage(), 0, 0));
+        graphicsContext.drawImage(display.getImage(), 0, 0);
     }
 
     public void loadBinariesButtonOnAction(ActionEvent actionEvent) {
         final File file = fileChooser.showOpenDialog(this);
+        if (file == null) {
+            return;
+        }
         try {
-            emulator.setBinaries(ArrayUtils.toPrimitive(readFully(new FileInputStream(file))));
+            emulator.loadBinaries(file.toPath());
         } catch (IOException e) {
             e.printStackTrace();
+            return;
         }
         emulator.executeBinaries();
     }